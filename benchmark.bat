@@ -0,0 +1,5 @@
+set targetdir=target
+
+call compile.bat
+javac -sourcepath src -d %targetdir% -extdirs lib/ src/benchmark/*.java
+java -Xmx4G -cp %targetdir%;lib/ECLA.jar;lib/DTNConsoleConnection.jar benchmark.BenchmarkRunner %*
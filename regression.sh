@@ -0,0 +1,6 @@
+#! /bin/sh
+targetdir=target
+
+./compile.sh
+javac -sourcepath src -d $targetdir -extdirs lib/ src/benchmark/*.java
+java -Xmx4G -cp $targetdir:lib/ECLA.jar:lib/DTNConsoleConnection.jar benchmark.RegressionSuite $*
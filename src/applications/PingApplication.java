@@ -29,6 +29,8 @@ import core.World;
  * @author teemuk
  */
 public class PingApplication extends Application {
+	private static final long serialVersionUID = 1L;
+
 	/** Run in passive mode - don't generate pings but respond */
 	public static final String PING_PASSIVE = "passive";
 	/** Ping generation interval */
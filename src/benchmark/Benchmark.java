@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import input.EventQueueHandler;
+
+import java.io.ByteArrayInputStream;
+
+import movement.MovementModel;
+import core.DTNSim;
+import core.Settings;
+import core.SimContext;
+import core.SimScenario;
+
+/**
+ * Superclass of micro benchmarks run by {@link BenchmarkRunner}. A
+ * benchmark is set up once for every parameter value and then its
+ * operation ({@link #run()}) is called repeatedly while the runner measures
+ * the average time of one operation.
+ */
+public abstract class Benchmark {
+	/** number of bytes one operation may allocate in a steady state, i.e.,
+	 * when the operations don't create new simulation objects; enough for
+	 * boxing the result of {@link #run()} (see
+	 * {@link #getAllocationBound(String)}) */
+	public static final double STEADY_STATE_ALLOCATION = 16;
+
+	/**
+	 * Returns the parameter values this benchmark is run with by default
+	 * @return The parameter values
+	 */
+	public abstract String[] getParams();
+
+	/**
+	 * Sets up the benchmark state for a parameter value
+	 * @param param The parameter value
+	 * @throws Exception If the set up fails
+	 */
+	public abstract void setUp(String param) throws Exception;
+
+	/**
+	 * Runs one operation of the benchmark. The setup must keep the state
+	 * such that the operations are repeatable.
+	 * @return Result of the operation; used by the runner so that the
+	 * operation can't be optimized away
+	 */
+	public abstract Object run();
+
+	/**
+	 * Releases the benchmark state. This implementation does nothing.
+	 */
+	public void tearDown() {}
+
+	/**
+	 * Returns the maximum number of bytes one operation may allocate with
+	 * a parameter value. The runner reports the benchmark as failed if the
+	 * operations allocate more (and the JVM supports measuring the
+	 * allocations). This implementation returns {@link Double#NaN}, i.e.,
+	 * the allocations are not bounded.
+	 * @param param The parameter value
+	 * @return The maximum number of bytes per operation or NaN
+	 */
+	public double getAllocationBound(String param) {
+		return Double.NaN;
+	}
+
+	/**
+	 * Returns the name of the benchmark
+	 * @return The name of the benchmark
+	 */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * Creates a new simulation context with empty settings for the current
+	 * thread. Settings can be added using {@link #putSetting(String, String)}
+	 * (or by reading a settings file).
+	 */
+	protected static void initSettings() {
+		SimContext.setCurrent(new SimContext(null));
+		Settings.initFromStream(new ByteArrayInputStream(new byte[0]));
+	}
+
+	/**
+	 * Creates a new simulation context for the current thread and reads
+	 * the settings from a file (and the default settings file, if it
+	 * exists; see {@link Settings#init(String)})
+	 * @param fileName Path of the settings file or null for only the
+	 * default settings
+	 */
+	protected static void initSettings(String fileName) {
+		SimContext.setCurrent(new SimContext(null));
+		Settings.init(fileName);
+	}
+
+	/**
+	 * Creates a new simulation context with the settings of a simple
+	 * scenario: one group of hosts with one {@link
+	 * interfaces.SimpleBroadcastInterface} in a square world without any
+	 * events. The settings can be modified before creating the run.
+	 * @param nrofHosts Number of hosts
+	 * @param worldSize Width and height of the world
+	 * @param range Transmit range of the interfaces
+	 * @param movementModel Name of the hosts' movement model class
+	 * @param router Name of the hosts' router class
+	 */
+	protected static void initScenario(int nrofHosts, int worldSize,
+			double range, String movementModel, String router) {
+		initSettings();
+		String sns = SimScenario.SCENARIO_NS + ".";
+		String gns = SimScenario.GROUP_NS + ".";
+		putSetting(sns + SimScenario.NAME_S, "benchmark");
+		putSetting(sns + SimScenario.NROF_GROUPS_S, "1");
+		putSetting(sns + SimScenario.END_TIME_S, "1000000");
+		putSetting(sns + SimScenario.UP_INT_S, "0.1");
+		putSetting(sns + SimScenario.SIM_CON_S, "true");
+		putSetting(EventQueueHandler.SETTINGS_NAMESPACE + "." +
+				EventQueueHandler.NROF_SETTING, "0");
+		putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, worldSize + "," + worldSize);
+
+		putSetting(gns + SimScenario.GROUP_ID_S, "n");
+		putSetting(gns + SimScenario.NROF_HOSTS_S, "" + nrofHosts);
+		putSetting(gns + SimScenario.MOVEMENT_MODEL_S, movementModel);
+		putSetting(gns + SimScenario.ROUTER_S, router);
+		putSetting(gns + SimScenario.NROF_INTERF_S, "1");
+		putSetting(gns + SimScenario.INTERFACENAME_S + "1", "radio");
+		putSetting(gns + "bufferSize", "10M");
+		putSetting(gns + "speed", "0.5,1.5");
+		putSetting(gns + "waitTime", "0,120");
+		putSetting("radio.type", "SimpleBroadcastInterface");
+		putSetting("radio.transmitSpeed", "250k");
+		putSetting("radio.transmitRange", "" + range);
+	}
+
+	/**
+	 * Puts a new setting or overrides an existing one
+	 * @param name Full name of the setting
+	 * @param value Value of the setting
+	 */
+	protected static void putSetting(String name, String value) {
+		BenchmarkSettings.put(name, value);
+	}
+
+	/**
+	 * Creates the context of a simulation run from the current settings.
+	 * The scenario can then be created with
+	 * {@link core.SimScenario#getInstance()}.
+	 */
+	protected static void createRun() {
+		DTNSim.createRunContext(0);
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * <P>Runs the micro benchmarks of the simulator's hot paths and prints the
+ * average time of one operation for every benchmark and parameter value.
+ * Every measurement consists of warmup iterations, whose results are
+ * discarded, and measurement iterations. One iteration runs the operation
+ * repeatedly for the iteration time. The score is the mean of the
+ * measurement iterations' average operation times, and the error is their
+ * standard deviation. The allocation rate, i.e., the mean number of bytes
+ * allocated by one operation, is reported if the JVM supports measuring
+ * the threads' allocations. Benchmarks can bound their allocation rate
+ * (see {@link Benchmark#getAllocationBound(String)}); a benchmark that
+ * allocates more is reported as failed and the runner exits with a
+ * non-zero status.</P>
+ * <P>Usage: <CODE>BenchmarkRunner [-wi warmupIterations] [-i iterations]
+ * [-t iterationSeconds] [-p param1,param2,...] [regex]</CODE>. Only the
+ * benchmarks whose name matches the (optional) regular expression are run.
+ * Parameter values given with <CODE>-p</CODE> replace the default
+ * parameter values of the benchmarks.</P>
+ */
+public class BenchmarkRunner {
+	/** default number of warmup iterations */
+	public static final int DEF_WARMUP_ITERATIONS = 3;
+	/** default number of measurement iterations */
+	public static final int DEF_ITERATIONS = 5;
+	/** default duration of one iteration (seconds) */
+	public static final double DEF_ITERATION_TIME = 1.0;
+
+	/** sink for the results of the operations (so that they're not
+	 * optimized away) */
+	private static volatile Object sink;
+	/** for measuring the allocations (null if not supported) */
+	private static final com.sun.management.ThreadMXBean allocations =
+		getAllocationsBean();
+
+	private int warmupIterations = DEF_WARMUP_ITERATIONS;
+	private int iterations = DEF_ITERATIONS;
+	private long iterationNanos = (long)(DEF_ITERATION_TIME * 1e9);
+	/** number of operations run in the last iteration */
+	private long lastOps;
+	/** number of benchmarks that failed or exceeded their allocation
+	 * bound */
+	private int nrofFailures;
+
+	/**
+	 * Returns all the benchmarks
+	 * @return All the benchmarks
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		return Arrays.asList(new Benchmark[] {
+			new WorldUpdateBenchmark(),
+			new ConnectivityBenchmark(),
+			new RouterBenchmark(),
+			new SteadyStateBenchmark(),
+			new PathFinderBenchmark(),
+			new EventsReaderBenchmark()
+		});
+	}
+
+	/**
+	 * Runs a benchmark with a parameter value and prints the result
+	 * @param b The benchmark
+	 * @param param The parameter value
+	 * @throws Exception If the benchmark fails
+	 */
+	public void run(Benchmark b, String param) throws Exception {
+		b.setUp(param);
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				iteration(b);
+			}
+			double[] times = new double[iterations];
+			double allocated = 0;
+			for (int i = 0; i < iterations; i++) {
+				long bytes = getAllocatedBytes();
+				times[i] = iteration(b);
+				allocated += (getAllocatedBytes() - bytes) / (double)lastOps;
+			}
+			double allocRate = allocations != null ?
+					allocated / iterations : Double.NaN;
+			print(b.getName(), param, times, allocRate);
+			double bound = b.getAllocationBound(param);
+			if (allocRate > bound) {
+				System.err.println(b.getName() + " " + param + " allocates " +
+						allocRate + " bytes per operation (bound " + bound +
+						")");
+				nrofFailures++;
+			}
+		} finally {
+			b.tearDown();
+		}
+	}
+
+	/**
+	 * Runs the operation of a benchmark for one iteration
+	 * @param b The benchmark
+	 * @return The average time of one operation (microseconds)
+	 */
+	private double iteration(Benchmark b) {
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink = b.run();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+
+		lastOps = ops;
+		return elapsed / 1e3 / ops;
+	}
+
+	/**
+	 * Returns the bean for measuring the threads' allocations
+	 * @return The bean or null if measuring isn't supported
+	 */
+	private static com.sun.management.ThreadMXBean getAllocationsBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean allocBean =
+			(com.sun.management.ThreadMXBean)bean;
+		if (!allocBean.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		allocBean.setThreadAllocatedMemoryEnabled(true);
+		return allocBean;
+	}
+
+	/**
+	 * Returns the number of bytes the current thread has allocated
+	 * @return The number of bytes or 0 if measuring isn't supported
+	 */
+	private static long getAllocatedBytes() {
+		if (allocations == null) {
+			return 0;
+		}
+		return allocations.getThreadAllocatedBytes(
+				Thread.currentThread().getId());
+	}
+
+	private void print(String name, String param, double[] times,
+			double allocated) {
+		double mean = 0;
+		for (double t : times) {
+			mean += t;
+		}
+		mean /= times.length;
+		double var = 0;
+		for (double t : times) {
+			var += (t - mean) * (t - mean);
+		}
+		double stdDev = times.length > 1 ?
+				Math.sqrt(var / (times.length - 1)) : 0;
+
+		System.out.println(String.format("%-22s %-36s %5d %14.3f +- " +
+				"%12.3f us/op %14.1f B/op", name, param, times.length, mean,
+				stdDev, allocated));
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: BenchmarkRunner [-wi warmupIterations] " +
+				"[-i iterations] [-t iterationSeconds] [-p param1,param2,...] " +
+				"[regex]");
+	}
+
+	/**
+	 * Starts the benchmarks
+	 * @param args Command line arguments (see the class description)
+	 */
+	public static void main(String[] args) {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Pattern pattern = null;
+		String[] params = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-wi")) {
+					runner.warmupIterations = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-i")) {
+					runner.iterations = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-t")) {
+					runner.iterationNanos =
+						(long)(Double.parseDouble(args[++i]) * 1e9);
+				}
+				else if (args[i].equals("-p")) {
+					params = args[++i].split(",");
+				}
+				else if (pattern == null && !args[i].startsWith("-")) {
+					pattern = Pattern.compile(args[i]);
+				}
+				else {
+					printUsage();
+					System.exit(-1);
+				}
+			}
+		} catch (RuntimeException e) { // bad number or missing value
+			printUsage();
+			System.exit(-1);
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (Benchmark b : getBenchmarks()) {
+			if (pattern == null || pattern.matcher(b.getName()).find()) {
+				benchmarks.add(b);
+			}
+		}
+
+		System.out.println(String.format("%-22s %-36s %5s %14s    %12s " +
+				"%20s", "Benchmark", "Param", "Cnt", "Score", "Error",
+				"Alloc"));
+		for (Benchmark b : benchmarks) {
+			for (String param : params != null ? params : b.getParams()) {
+				try {
+					runner.run(b, param);
+				} catch (Exception e) {
+					System.err.println(b.getName() + " " + param + " failed: " +
+							e);
+					e.printStackTrace();
+					runner.nrofFailures++;
+				}
+			}
+		}
+
+		if (runner.nrofFailures > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import core.Settings;
+
+/**
+ * Gives the benchmarks access to the settings of the current run
+ */
+class BenchmarkSettings extends Settings {
+
+	/**
+	 * Puts a new setting or overrides an existing one
+	 * @param name Full name of the setting
+	 * @param value Value of the setting
+	 */
+	static void put(String name, String value) {
+		putProperty(name, value);
+	}
+}
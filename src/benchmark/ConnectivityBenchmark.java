@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.List;
+
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Benchmark of the connectivity detection: one operation updates all
+ * interfaces ({@link interfaces.SimpleBroadcastInterface#update()}), which
+ * queries the near interfaces from the
+ * {@link interfaces.ConnectivityGrid}. The parameter is the number of
+ * hosts. The hosts are first moved around with random waypoint movement
+ * and then kept at their locations, so every operation examines the same
+ * neighbourhoods. The world size grows with the number of hosts so that
+ * the host density stays the same. The operations must not allocate
+ * memory.
+ */
+public class ConnectivityBenchmark extends Benchmark {
+	/** area of the world per host (square meters) */
+	public static final int AREA_PER_HOST = 100 * 100;
+	/** transmit range of the interfaces */
+	public static final double RANGE = 30;
+	/** number of updates run before the measurements */
+	public static final int WARMUP_UPDATES = 600;
+
+	private List<DTNHost> hosts;
+
+	@Override
+	public String[] getParams() {
+		return new String[] {"100", "1000", "10000"};
+	}
+
+	@Override
+	public void setUp(String param) {
+		int nrofHosts = Integer.parseInt(param);
+		int worldSize = (int)Math.sqrt(1.0 * nrofHosts * AREA_PER_HOST);
+		initScenario(nrofHosts, worldSize, RANGE, "RandomWaypoint",
+				"PassiveRouter");
+		createRun();
+
+		World world = SimScenario.getInstance().getWorld();
+		for (int i = 0; i < WARMUP_UPDATES; i++) {
+			world.update();
+		}
+		hosts = world.getHosts();
+	}
+
+	@Override
+	public Object run() {
+		int nrofConnections = 0;
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			List<NetworkInterface> interfaces = hosts.get(i).getInterfaces();
+			for (int j=0, m = interfaces.size(); j < m; j++) {
+				NetworkInterface ni = interfaces.get(j);
+				ni.update();
+				nrofConnections += ni.getConnections().size();
+			}
+		}
+		return nrofConnections;
+	}
+
+	@Override
+	public double getAllocationBound(String param) {
+		return STEADY_STATE_ALLOCATION;
+	}
+}
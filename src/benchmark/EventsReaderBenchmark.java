@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import input.ExternalEvent;
+import input.StandardEventsReader;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Benchmark of {@link StandardEventsReader#readEvents(int)}. One operation
+ * reads all the events of an external events file. The parameter is the
+ * path of the file.
+ */
+public class EventsReaderBenchmark extends Benchmark {
+	/** number of events read with one call (as with
+	 * {@link input.ExternalEventsQueue}) */
+	public static final int NROF_PRELOAD = 500;
+	private File eventsFile;
+
+	@Override
+	public String[] getParams() {
+		return new String[] {"ee/70_events_100_nodes_700ks.txt",
+				"ee/1400_events_2000_nodes_700ks.txt",
+				"ee/1000c_100n_12h.txt"};
+	}
+
+	@Override
+	public void setUp(String param) {
+		eventsFile = new File(param);
+		if (!eventsFile.exists()) {
+			throw new IllegalArgumentException("No events file " + param);
+		}
+	}
+
+	@Override
+	public Object run() {
+		StandardEventsReader reader = new StandardEventsReader(eventsFile);
+		int nrofEvents = 0;
+		List<ExternalEvent> events;
+		do {
+			events = reader.readEvents(NROF_PRELOAD);
+			nrofEvents += events.size();
+		} while (events.size() > 0);
+		reader.close();
+		return nrofEvents;
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import movement.map.DijkstraPathFinder;
+import movement.map.MapNode;
+
+/**
+ * Benchmark of {@link DijkstraPathFinder#getShortestPath(MapNode, MapNode)}.
+ * One operation finds the shortest path between a pair of random map
+ * nodes; the operations cycle through a fixed set of pairs. The parameter
+ * is the path of the map (WKT) file.
+ */
+public class PathFinderBenchmark extends Benchmark {
+	/** number of different node pairs */
+	public static final int NROF_PAIRS = 1000;
+
+	private DijkstraPathFinder pathFinder;
+	private MapNode[] from;
+	private MapNode[] to;
+	private int next;
+
+	@Override
+	public String[] getParams() {
+		return new String[] {"data/roads.wkt"};
+	}
+
+	@Override
+	public void setUp(String param) throws IOException {
+		WKTMapReader reader = new WKTMapReader(true);
+		reader.addPaths(new File(param), 1);
+		List<MapNode> nodes = reader.getMap().getNodes();
+
+		Random rng = new Random(0);
+		from = new MapNode[NROF_PAIRS];
+		to = new MapNode[NROF_PAIRS];
+		for (int i = 0; i < NROF_PAIRS; i++) {
+			from[i] = nodes.get(rng.nextInt(nodes.size()));
+			to[i] = nodes.get(rng.nextInt(nodes.size()));
+		}
+		pathFinder = new DijkstraPathFinder(null);
+		next = 0;
+	}
+
+	@Override
+	public Object run() {
+		List<MapNode> path = pathFinder.getShortestPath(from[next], to[next]);
+		next = (next + 1) % NROF_PAIRS;
+		return path;
+	}
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import core.DTNSim;
+
+/**
+ * <P>Regression suite that guards the simulation results against
+ * unintended changes, e.g., by performance refactorings. The suite runs a
+ * fixed catalogue of scenarios: every settings file in the example_settings
+ * directory (on top of the default settings) and every external events
+ * trace in the ee directory replayed with every router (except the
+ * {@link #QUADRATIC_ROUTERS} with the biggest traces). The outputs of
+ * the {@link #REPORTS} are canonicalised (line endings and trailing white
+ * space are normalised and the event log lines of the same time instant are
+ * sorted) and hashed, and the hashes are compared to the golden values
+ * stored in {@link #GOLDEN_FILE}. The suite fails if any hash has drifted
+ * or is missing.</P>
+ * <P>Every scenario is run in its own JVM. The wall clock time and peak
+ * heap usage of every scenario are appended to {@link #HISTORY_FILE}, so
+ * the suite also tracks the performance of the simulator over time.</P>
+ * <P>Usage: <CODE>RegressionSuite [-update] [regex]</CODE>. Only the
+ * scenarios whose name matches the (optional) regular expression are run.
+ * With <CODE>-update</CODE>, the golden values of the run scenarios are
+ * replaced with the new hashes instead of comparing them.</P>
+ */
+public class RegressionSuite {
+	/** directory of the suite's files */
+	public static final String SUITE_DIR = "regression/";
+	/** file of the golden hash values */
+	public static final String GOLDEN_FILE = SUITE_DIR + "golden.txt";
+	/** file where the wall clock times and peak heap usages are appended */
+	public static final String HISTORY_FILE = SUITE_DIR + "history.txt";
+	/** directory where the reports and logs of the scenarios are written */
+	public static final String OUTPUT_DIR = SUITE_DIR + "out/";
+	/** base settings of the external events trace replays */
+	public static final String EE_SCENARIO_FILE = SUITE_DIR +
+		"ee_scenario.txt";
+	/** router specific settings of the external events trace replays */
+	public static final String ROUTER_SETTINGS_FILE = SUITE_DIR +
+		"router_settings.txt";
+	/** directory of the example scenarios */
+	public static final String EXAMPLE_DIR = "example_settings/";
+	/** directory of the external events traces */
+	public static final String EE_DIR = "ee/";
+
+	/** reports whose outputs are hashed */
+	public static final String[] REPORTS = {"MessageStatsReport",
+		"EventLogReport", "ContactTimesReport"};
+	/** routers the external events traces are replayed with */
+	public static final String[] ROUTERS = {"AntRouter",
+		"DirectDeliveryRouter", "EpidemicOracleRouter", "EpidemicRouter",
+		"FirstContactRouter", "LifeRouter", "MaxPropRouter",
+		"MaxPropRouterWithEstimation", "PassiveRouter", "ProphetRouter",
+		"ProphetRouterWithEstimation", "ProphetV2Router",
+		"SprayAndWaitRouter", "WaveRouter"};
+	/** routers whose memory usage grows with the square of the number of
+	 * hosts (every host keeps the meeting probabilities of all hosts) */
+	public static final List<String> QUADRATIC_ROUTERS = Arrays.asList(
+		"MaxPropRouter", "MaxPropRouterWithEstimation");
+	/** maximum number of hosts in the traces replayed with the
+	 * {@link #QUADRATIC_ROUTERS} */
+	public static final int MAX_QUADRATIC_HOSTS = 500;
+	/** simulated time of the example scenarios (seconds) */
+	public static final int EXAMPLE_END_TIME = 3600;
+	/** area of the world per host in the trace replays (square meters) */
+	public static final int EE_AREA_PER_HOST = 100 * 100;
+	/** maximum wall time of one scenario (seconds) */
+	public static final int SCENARIO_TIMEOUT = 900;
+
+	/** command line flag for updating the golden values */
+	public static final String UPDATE_FLAG = "-update";
+	/** command line flag for running one scenario in the current JVM */
+	public static final String RUN_FLAG = "-run";
+	/** line that a scenario JVM prints, followed by its peak heap usage in
+	 * bytes, when the scenario has finished */
+	public static final String PEAK_HEAP_MARKER = "#peak heap ";
+
+	/** pattern of the number of hosts in the trace file names */
+	private static final Pattern EE_HOSTS_PATTERN =
+		Pattern.compile("(\\d+)(?:n|_nodes)_");
+
+	/**
+	 * A scenario of the catalogue
+	 */
+	private static class Scenario {
+		private final String name;
+		private final List<String> files;
+		private final Map<String, String> settings;
+
+		/**
+		 * Constructor.
+		 * @param name Name of the scenario
+		 * @param files The settings files of the scenario
+		 */
+		public Scenario(String name, String... files) {
+			this.name = name;
+			this.files = Arrays.asList(files);
+			this.settings = new TreeMap<String, String>();
+		}
+	}
+
+	/**
+	 * Returns the catalogue of the scenarios
+	 * @return The scenarios
+	 */
+	private static List<Scenario> getCatalogue() {
+		List<Scenario> catalogue = new ArrayList<Scenario>();
+
+		for (String file : listFiles(EXAMPLE_DIR)) {
+			Scenario s = new Scenario("example-" + baseName(file),
+					EXAMPLE_DIR + file);
+			s.settings.put("Scenario.endTime", "" + EXAMPLE_END_TIME);
+			catalogue.add(s);
+		}
+
+		for (String file : listFiles(EE_DIR)) {
+			Matcher m = EE_HOSTS_PATTERN.matcher(file);
+			if (!m.find()) {
+				System.err.println("Warning: skipping trace " + file +
+						" (unknown number of hosts)");
+				continue;
+			}
+			int nrofHosts = Integer.parseInt(m.group(1));
+			int worldSize = (int)Math.sqrt(1.0 * nrofHosts * EE_AREA_PER_HOST);
+
+			for (String router : ROUTERS) {
+				if (nrofHosts > MAX_QUADRATIC_HOSTS &&
+						QUADRATIC_ROUTERS.contains(router)) {
+					continue;
+				}
+				Scenario s = new Scenario("ee-" + baseName(file) + "-" + router,
+						EE_SCENARIO_FILE, ROUTER_SETTINGS_FILE);
+				s.settings.put("Events1.filePath", EE_DIR + file);
+				s.settings.put("Group.router", router);
+				s.settings.put("Group.nrofHosts", "" + nrofHosts);
+				s.settings.put("MovementModel.worldSize", worldSize + "," +
+						worldSize);
+				catalogue.add(s);
+			}
+		}
+
+		return catalogue;
+	}
+
+	private static List<String> listFiles(String dir) {
+		String[] names = new File(dir).list();
+		List<String> files = new ArrayList<String>();
+		if (names != null) {
+			for (String name : names) {
+				if (name.endsWith(".txt")) {
+					files.add(name);
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static String baseName(String file) {
+		return file.substring(0, file.lastIndexOf('.'));
+	}
+
+	/**
+	 * Runs a scenario in a new JVM
+	 * @param s The scenario
+	 * @param outDir Directory for the scenario's settings, log and reports
+	 * @return Peak heap usage of the scenario (bytes)
+	 * @throws IOException If the scenario fails
+	 * @throws InterruptedException If interrupted while waiting for the
+	 * scenario to finish
+	 */
+	private static long run(Scenario s, File outDir) throws IOException,
+			InterruptedException {
+		deleteFiles(outDir);
+		outDir.mkdirs();
+
+		File settingsFile = new File(outDir, "settings.txt");
+		PrintWriter out = new PrintWriter(new FileWriter(settingsFile));
+		for (Map.Entry<String, String> e : s.settings.entrySet()) {
+			out.println(e.getKey() + " = " + e.getValue());
+		}
+		out.println("Scenario.name = " + s.name);
+		out.println("Report.reportDir = " + outDir.getPath());
+		out.println("Report.warmup = 0");
+		out.println("Report.nrofReports = " + REPORTS.length);
+		for (int i = 0; i < REPORTS.length; i++) {
+			out.println("Report.report" + (i+1) + " = " + REPORTS[i]);
+		}
+		out.close();
+
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(new File(new File(System.getProperty("java.home"), "bin"),
+				"java").getPath());
+		cmd.add("-Xmx" + Runtime.getRuntime().maxMemory() / (1024 * 1024) +
+				"m");
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(RegressionSuite.class.getName());
+		cmd.add(RUN_FLAG);
+		cmd.addAll(s.files);
+		cmd.add(settingsFile.getPath());
+
+		File log = new File(outDir, "log.txt");
+		ProcessBuilder pb = new ProcessBuilder(cmd);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(log);
+		int exitValue = waitFor(pb.start(), log);
+
+		long peakHeap = -1;
+		BufferedReader in = new BufferedReader(new FileReader(log));
+		for (String line; (line = in.readLine()) != null; ) {
+			if (line.startsWith(PEAK_HEAP_MARKER)) {
+				peakHeap = Long.parseLong(line.substring(
+						PEAK_HEAP_MARKER.length()).trim());
+			}
+		}
+		in.close();
+
+		if (exitValue != 0 || peakHeap < 0) {
+			throw new IOException("scenario failed (exit value " +
+					exitValue + "); see " + log);
+		}
+		return peakHeap;
+	}
+
+	/**
+	 * Waits until a scenario's process exits or {@link #SCENARIO_TIMEOUT}
+	 * has passed
+	 * @param p The process
+	 * @param log The log file of the process
+	 * @return The exit value of the process
+	 * @throws IOException If the process timed out (it is destroyed)
+	 * @throws InterruptedException If the waiting was interrupted
+	 */
+	private static int waitFor(Process p, File log)
+			throws IOException, InterruptedException {
+		long end = System.currentTimeMillis() + SCENARIO_TIMEOUT * 1000L;
+		while (true) {
+			try {
+				return p.exitValue();
+			} catch (IllegalThreadStateException e) {
+				/* still running */
+			}
+			if (System.currentTimeMillis() > end) {
+				p.destroy();
+				throw new IOException("scenario timed out after " +
+						SCENARIO_TIMEOUT + "s; see " + log);
+			}
+			Thread.sleep(100);
+		}
+	}
+
+	private static void deleteFiles(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+	}
+
+	/**
+	 * Canonicalises and hashes the output of a report
+	 * @param report The report file
+	 * @return The hash as a hexadecimal string
+	 * @throws IOException If the file can't be read
+	 */
+	private static String hash(File report) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new FileReader(report));
+		for (String line; (line = in.readLine()) != null; ) {
+			line = line.replaceAll("\\s+$", "");
+			if (line.length() > 0) {
+				lines.add(line);
+			}
+		}
+		in.close();
+
+		if (report.getName().endsWith("_EventLogReport.txt")) {
+			sortByTime(lines);
+		}
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			for (String line : lines) {
+				md.update(line.getBytes("UTF-8"));
+				md.update((byte)'\n');
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Sorts the runs of lines that start with the same time stamp. The
+	 * order of the events of one time instant depends on the order in which
+	 * the hosts are processed, which isn't part of the results.
+	 * @param lines The lines to sort
+	 */
+	private static void sortByTime(List<String> lines) {
+		int start = 0;
+		for (int i = 1; i <= lines.size(); i++) {
+			if (i == lines.size() || !timeOf(lines.get(i)).equals(
+					timeOf(lines.get(start)))) {
+				Collections.sort(lines.subList(start, i));
+				start = i;
+			}
+		}
+	}
+
+	private static String timeOf(String line) {
+		int space = line.indexOf(' ');
+		return space < 0 ? line : line.substring(0, space);
+	}
+
+	/**
+	 * Reads the golden values
+	 * @return The golden hashes by "scenario report" keys
+	 */
+	private static Map<String, String> readGolden() throws IOException {
+		Map<String, String> golden = new TreeMap<String, String>();
+		File f = new File(GOLDEN_FILE);
+		if (!f.exists()) {
+			return golden;
+		}
+		BufferedReader in = new BufferedReader(new FileReader(f));
+		for (String line; (line = in.readLine()) != null; ) {
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\\s+");
+			golden.put(parts[0] + " " + parts[1], parts[2]);
+		}
+		in.close();
+		return golden;
+	}
+
+	private static void writeGolden(Map<String, String> golden)
+			throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(GOLDEN_FILE));
+		out.println("# Golden hashes of the regression suite " +
+				"(see benchmark.RegressionSuite)");
+		out.println("# scenario report sha1");
+		for (Map.Entry<String, String> e : golden.entrySet()) {
+			out.println(e.getKey() + " " + e.getValue());
+		}
+		out.close();
+	}
+
+	/**
+	 * Runs the simulation of one scenario in this JVM and prints the peak
+	 * heap usage
+	 * @param files The settings files of the scenario
+	 */
+	private static void runScenario(String[] files) {
+		String[] args = new String[files.length + 2];
+		args[0] = DTNSim.BATCH_MODE_FLAG;
+		args[1] = "1";
+		System.arraycopy(files, 0, args, 2, files.length);
+		DTNSim.main(args);
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool :
+				ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		System.out.println(PEAK_HEAP_MARKER + peak);
+	}
+
+	/**
+	 * Starts the suite
+	 * @param args Command line arguments (see the class description)
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals(RUN_FLAG)) {
+			runScenario(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		boolean update = false;
+		Pattern pattern = null;
+		for (String arg : args) {
+			if (arg.equals(UPDATE_FLAG)) {
+				update = true;
+			}
+			else if (pattern == null && !arg.startsWith("-")) {
+				pattern = Pattern.compile(arg);
+			}
+			else {
+				System.err.println("Usage: RegressionSuite [" + UPDATE_FLAG +
+						"] [regex]");
+				System.exit(-1);
+			}
+		}
+
+		Map<String, String> golden = readGolden();
+		String date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(
+				new Date());
+		PrintWriter history = new PrintWriter(new FileWriter(HISTORY_FILE,
+				true));
+		int nrofRun = 0;
+		int nrofFailed = 0;
+
+		for (Scenario s : getCatalogue()) {
+			if (pattern != null && !pattern.matcher(s.name).find()) {
+				continue;
+			}
+			nrofRun++;
+			File outDir = new File(OUTPUT_DIR + s.name);
+			String status = "OK";
+			long start = System.currentTimeMillis();
+			long peakHeap = -1;
+
+			try {
+				peakHeap = run(s, outDir);
+				String drifted = "";
+				for (String report : REPORTS) {
+					String key = s.name + " " + report;
+					String hash = hash(new File(outDir, s.name + "_" + report +
+							".txt"));
+					if (update) {
+						golden.put(key, hash);
+					}
+					else if (!hash.equals(golden.get(key))) {
+						drifted += " " + (golden.containsKey(key) ? report :
+							report + "(new)");
+					}
+				}
+				if (drifted.length() > 0) {
+					status = "DRIFT" + drifted;
+				}
+			} catch (IOException e) {
+				status = "ERROR " + e.getMessage();
+			}
+
+			double wallTime = (System.currentTimeMillis() - start) / 1000.0;
+			String result = String.format("%-56s %8.2fs %8.1fMB  %s", s.name,
+					wallTime, peakHeap / (1024.0 * 1024.0), status);
+			System.out.println(result);
+			history.println(date + "  " + result);
+			history.flush();
+			if (!status.equals("OK")) {
+				nrofFailed++;
+			}
+		}
+		history.close();
+
+		if (update) {
+			writeGolden(golden);
+			System.out.println("Updated the golden values of " + nrofRun +
+					" scenarios");
+		}
+		else {
+			System.out.println(nrofRun + " scenarios, " + nrofFailed +
+					" failed");
+			if (nrofFailed > 0) {
+				System.exit(1);
+			}
+		}
+	}
+}
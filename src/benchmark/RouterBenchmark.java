@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.List;
+
+import movement.StationaryMovement;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.Settings;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Benchmark of the message exchange of an active router with full buffers:
+ * one operation is one call of
+ * {@link routing.ActiveRouter#tryAllMessagesToAllConnections()} by a host
+ * that is connected to peers that already have all of its messages, so
+ * every message is offered to every peer and denied. The parameter is
+ * <CODE>peersxmessages</CODE>, i.e., the number of connected peers and the
+ * number of messages in the (full) buffers. The operations must not
+ * allocate memory.
+ */
+public class RouterBenchmark extends Benchmark {
+	/** size of the messages (bytes) */
+	public static final int MSG_SIZE = 1000;
+
+	private BenchmarkRouter router;
+
+	@Override
+	public String[] getParams() {
+		return new String[] {"10x100", "10x1000", "50x1000"};
+	}
+
+	@Override
+	public void setUp(String param) {
+		String[] parts = param.split("x");
+		int nrofPeers = Integer.parseInt(parts[0]);
+		int nrofMessages = Integer.parseInt(parts[1]);
+
+		initScenario(nrofPeers + 1, 100, 10, "StationaryMovement",
+				"EpidemicRouter");
+		putSetting(SimScenario.GROUP_NS + "." + StationaryMovement.LOCATION_S,
+				"50,50");
+		putSetting(SimScenario.GROUP_NS + "." + MessageRouter.B_SIZE_S,
+				"" + nrofMessages * MSG_SIZE);
+		createRun();
+
+		World world = SimScenario.getInstance().getWorld();
+		List<DTNHost> hosts = world.getHosts();
+		DTNHost hub = hosts.get(0);
+		hub.replaceRouter(new BenchmarkRouter(
+				new Settings(SimScenario.GROUP_NS)));
+		router = (BenchmarkRouter)hub.getRouter();
+		world.update(); // connects all the hosts
+
+		for (int i = 0; i < nrofMessages; i++) {
+			for (DTNHost host : hosts) {
+				host.createNewMessage(new Message(hub, hub, "M" + i, MSG_SIZE));
+			}
+		}
+	}
+
+	@Override
+	public Object run() {
+		return router.tryAll();
+	}
+
+	@Override
+	public double getAllocationBound(String param) {
+		return STEADY_STATE_ALLOCATION;
+	}
+
+	/**
+	 * Epidemic router that exposes the message exchange to the benchmark
+	 */
+	private static class BenchmarkRouter extends EpidemicRouter {
+		private static final long serialVersionUID = 1L;
+
+		public BenchmarkRouter(Settings s) {
+			super(s);
+		}
+
+		protected BenchmarkRouter(BenchmarkRouter r) {
+			super(r);
+		}
+
+		public Connection tryAll() {
+			Connection con = tryAllMessagesToAllConnections();
+			if (con != null) {
+				throw new IllegalStateException("Transfer started");
+			}
+			return con;
+		}
+
+		@Override
+		public BenchmarkRouter replicate() {
+			return new BenchmarkRouter(this);
+		}
+	}
+}
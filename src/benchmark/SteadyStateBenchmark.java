@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.List;
+
+import movement.StationaryMovement;
+import routing.MessageRouter;
+import core.DTNHost;
+import core.Message;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Benchmark of {@link World#update()} in a steady state: the hosts don't
+ * move, all of them are connected to each other and they all carry the
+ * same messages, so every update checks the connections and offers every
+ * message to the peers without creating connections or starting
+ * transfers. The parameter is <CODE>hostsxmessages</CODE>, i.e., the
+ * number of hosts and the number of messages in every buffer. Such
+ * updates must not allocate memory.
+ */
+public class SteadyStateBenchmark extends Benchmark {
+	/** size of the messages (bytes) */
+	public static final int MSG_SIZE = 1000;
+	/** number of updates run before the measurements */
+	public static final int WARMUP_UPDATES = 100;
+
+	private World world;
+
+	@Override
+	public String[] getParams() {
+		return new String[] {"10x100", "50x100"};
+	}
+
+	@Override
+	public void setUp(String param) {
+		String[] parts = param.split("x");
+		int nrofHosts = Integer.parseInt(parts[0]);
+		int nrofMessages = Integer.parseInt(parts[1]);
+
+		initScenario(nrofHosts, 100, 10, "StationaryMovement",
+				"EpidemicRouter");
+		putSetting(SimScenario.GROUP_NS + "." + StationaryMovement.LOCATION_S,
+				"50,50");
+		putSetting(SimScenario.GROUP_NS + "." + MessageRouter.B_SIZE_S,
+				"" + nrofMessages * MSG_SIZE);
+		createRun();
+
+		world = SimScenario.getInstance().getWorld();
+		List<DTNHost> hosts = world.getHosts();
+		DTNHost hub = hosts.get(0);
+		world.update(); // connects all the hosts
+		for (int i = 0; i < nrofMessages; i++) {
+			for (DTNHost host : hosts) {
+				host.createNewMessage(new Message(hub, hub, "M" + i, MSG_SIZE));
+			}
+		}
+		for (int i = 0; i < WARMUP_UPDATES; i++) {
+			world.update();
+		}
+	}
+
+	@Override
+	public Object run() {
+		world.update();
+		return world;
+	}
+
+	@Override
+	public double getAllocationBound(String param) {
+		return STEADY_STATE_ALLOCATION;
+	}
+}
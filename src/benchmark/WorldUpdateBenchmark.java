@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import input.EventQueueHandler;
+import input.MessageEventGenerator;
+import core.Settings;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Benchmark of one {@link World#update()} of a bundled scenario. The
+ * parameter is <CODE>scenario:hosts</CODE>, where the scenario is
+ * "default" (only the default settings) or the name of a settings file in
+ * the example_settings directory (without the .txt extension) and the
+ * hosts is the total number of hosts. The number of hosts of every group
+ * is scaled so that the group sizes keep their proportions, and the hosts
+ * of the message event generators are changed to cover all the hosts.
+ */
+public class WorldUpdateBenchmark extends Benchmark {
+	/** directory of the bundled scenarios */
+	public static final String SCENARIO_DIR = "example_settings/";
+	/** number of updates run before the measurements */
+	public static final int WARMUP_UPDATES = 100;
+
+	private World world;
+
+	@Override
+	public String[] getParams() {
+		return new String[] {"default:100", "default:1000", "default:10000",
+				"cluster_settings:100", "cluster_settings:1000",
+				"cluster_settings:10000"};
+	}
+
+	@Override
+	public void setUp(String param) {
+		String[] parts = param.split(":");
+		String scenario = parts[0];
+		int nrofHosts = Integer.parseInt(parts[1]);
+
+		initSettings(scenario.equals("default") ? null :
+			SCENARIO_DIR + scenario + ".txt");
+		scaleGroups(nrofHosts);
+		createRun();
+
+		world = SimScenario.getInstance().getWorld();
+		for (int i = 0; i < WARMUP_UPDATES; i++) {
+			world.update();
+		}
+	}
+
+	/**
+	 * Scales the group sizes to the given total number of hosts
+	 * @param nrofHosts The total number of hosts
+	 */
+	private void scaleGroups(int nrofHosts) {
+		Settings s = new Settings(SimScenario.SCENARIO_NS);
+		int nrofGroups = s.getInt(SimScenario.NROF_GROUPS_S);
+		int[] sizes = new int[nrofGroups];
+		int total = 0;
+		int largest = 0;
+		for (int i = 0; i < nrofGroups; i++) {
+			s.setNameSpace(SimScenario.GROUP_NS + (i+1));
+			s.setSecondaryNamespace(SimScenario.GROUP_NS);
+			sizes[i] = s.getInt(SimScenario.NROF_HOSTS_S);
+			total += sizes[i];
+			if (sizes[i] > sizes[largest]) {
+				largest = i;
+			}
+		}
+
+		/* scale proportionally; the largest group absorbs rounding errors */
+		int assigned = 0;
+		for (int i = 0; i < nrofGroups; i++) {
+			sizes[i] = Math.max(1,
+					(int)Math.round(1.0 * sizes[i] * nrofHosts / total));
+			assigned += sizes[i];
+		}
+		sizes[largest] += nrofHosts - assigned;
+		if (sizes[largest] < 1) {
+			throw new IllegalArgumentException("Can't scale " + nrofGroups +
+					" groups to " + nrofHosts + " hosts");
+		}
+		for (int i = 0; i < nrofGroups; i++) {
+			putSetting(SimScenario.GROUP_NS + (i+1) + "." +
+					SimScenario.NROF_HOSTS_S, "" + sizes[i]);
+		}
+
+		s = new Settings(EventQueueHandler.SETTINGS_NAMESPACE);
+		int nrofEvents = s.getInt(EventQueueHandler.NROF_SETTING, 0);
+		for (int i = 1; i <= nrofEvents; i++) {
+			String ns = EventQueueHandler.SETTINGS_NAMESPACE + i;
+			s.setNameSpace(ns);
+			if (s.contains(MessageEventGenerator.HOST_RANGE_S)) {
+				putSetting(ns + "." + MessageEventGenerator.HOST_RANGE_S,
+						"0," + nrofHosts);
+			}
+			if (s.contains(MessageEventGenerator.TO_HOST_RANGE_S)) {
+				putSetting(ns + "." + MessageEventGenerator.TO_HOST_RANGE_S,
+						"0," + nrofHosts);
+			}
+		}
+	}
+
+	@Override
+	public Object run() {
+		world.update();
+		return world;
+	}
+}
@@ -4,6 +4,7 @@
  */
 package core;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
@@ -32,7 +33,8 @@ import java.util.List;
  * @author mjpitka
  * @author teemuk
  */
-public abstract class Application {
+public abstract class Application implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	private List<ApplicationListener> aListeners = null;
 
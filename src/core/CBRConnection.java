@@ -10,6 +10,7 @@ import routing.MessageRouter;
  * A constant bit-rate connection between two DTN nodes.
  */
 public class CBRConnection extends Connection {
+	private static final long serialVersionUID = 1L;
 	private int speed;
 	private double transferDoneTime;
 
@@ -49,7 +50,7 @@ public class CBRConnection extends Connection {
 			"start transfer of " + m + " from " + from;
 
 		this.msgFromNode = from;
-		Message newMessage = m.replicate();
+		Message newMessage = replicate(m);
 		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
 
 		if (retVal == MessageRouter.RCV_OK) {
@@ -57,6 +58,9 @@ public class CBRConnection extends Connection {
 			this.transferDoneTime = SimClock.getTime() +
 			(1.0*m.getSize()) / this.speed;
 		}
+		else {
+			refused(newMessage);
+		}
 
 		return retVal;
 	}
@@ -75,6 +79,7 @@ public class CBRConnection extends Connection {
 	/**
 	 * Gets the transferdonetime
 	 */
+	@Override
 	public double getTransferDoneTime() {
 		return transferDoneTime;
 	}
@@ -4,12 +4,16 @@
  */
 package core;
 
+import java.io.Serializable;
+
 import routing.MessageRouter;
 
 /**
  * A connection between two DTN nodes.
  */
-public abstract class Connection {
+public abstract class Connection implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	protected DTNHost toNode;
 	protected NetworkInterface toInterface;
 	protected DTNHost fromNode;
@@ -20,6 +24,9 @@ public abstract class Connection {
 	protected Message msgOnFly;
 	/** how many bytes this connection has transferred */
 	protected int bytesTransferred;
+	/** replica of a message the receiver refused; reused by the next
+	 * {@link #replicate(Message)} */
+	private transient Message spareReplica;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -115,6 +122,45 @@ public abstract class Connection {
 	 */
 	public abstract int getRemainingByteCount();
 
+	/**
+	 * Returns the sim time when the ongoing transfer is finished. Connections
+	 * whose speed can change during the transfer can't predict that and
+	 * this implementation returns the current time.
+	 * @return The time when the ongoing transfer is finished
+	 */
+	public double getTransferDoneTime() {
+		return SimClock.getTime();
+	}
+
+	/**
+	 * Returns a replica of a message for offering it to the receiving
+	 * host. If the receiver refused the previous replica (see
+	 * {@link #refused(Message)}), that object is reused, so offering
+	 * messages that the receiver already has doesn't create garbage.
+	 * @param m The message to replicate
+	 * @return The replica
+	 */
+	protected Message replicate(Message m) {
+		Message replica = this.spareReplica;
+		if (replica == null || m.getClass() != Message.class) {
+			return m.replicate();
+		}
+		this.spareReplica = null;
+		replica.replicateFrom(m);
+		return replica;
+	}
+
+	/**
+	 * Tells that the receiving host refused a replica created by
+	 * {@link #replicate(Message)}, so it can be reused
+	 * @param replica The refused replica
+	 */
+	protected void refused(Message replica) {
+		if (replica.getClass() == Message.class) {
+			this.spareReplica = replica;
+		}
+	}
+
 	/**
 	 * Clears the message that is currently being transferred.
 	 * Calls to {@link #getMessage()} will return null after this.
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.BinaryEventsReader;
+import input.ConnectionEvent;
+import input.ExternalEvent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays a contact trace recorded by {@link ContactTraceCache}. The
+ * {@link World} applies the recorded connection events at the same points
+ * of its updates where the recording run created the connections: the
+ * events of a host when the interfaces of the host would be updated, all
+ * due events at once when the connectivity of all hosts would be updated,
+ * or one event at a time with kinetic connectivity detection.
+ */
+class ContactReplay {
+	/** number of events read from the trace file at a time */
+	private static final int READ_CHUNK = 1000;
+
+	/** the recorded events in the recorded order */
+	private final List<ConnectionEvent> events;
+	/** has the event with the same index been applied */
+	private final boolean[] applied;
+	/** indexes of the events by the address of the host they are from */
+	private final int[][] hostEvents;
+	/** index (to hostEvents) of the next event of every host */
+	private final int[] hostNext;
+	/** index of the first event that hasn't been applied */
+	private int next;
+
+	/**
+	 * Reads a recorded trace for replaying
+	 * @param traceFile The file of the trace
+	 * @param nrofHosts Number of hosts in the world
+	 */
+	public ContactReplay(File traceFile, int nrofHosts) {
+		this.events = new ArrayList<ConnectionEvent>();
+		BinaryEventsReader reader = new BinaryEventsReader(traceFile);
+		List<ExternalEvent> read;
+		do {
+			read = reader.readEvents(READ_CHUNK);
+			for (ExternalEvent ee : read) {
+				events.add((ConnectionEvent)ee);
+			}
+		} while (read.size() == READ_CHUNK);
+		reader.close();
+
+		int[] counts = new int[nrofHosts];
+		for (ConnectionEvent ce : events) {
+			counts[getFrom(ce)]++;
+		}
+		this.hostEvents = new int[nrofHosts][];
+		for (int i=0; i < nrofHosts; i++) {
+			hostEvents[i] = new int[counts[i]];
+		}
+		this.hostNext = new int[nrofHosts];
+		for (int i=0, n = events.size(); i < n; i++) {
+			int from = getFrom(events.get(i));
+			hostEvents[from][hostNext[from]++] = i;
+		}
+		Arrays.fill(hostNext, 0);
+		this.applied = new boolean[events.size()];
+	}
+
+	/**
+	 * Returns the address of the host an event is from
+	 * @param ce The event
+	 * @return The address of the host whose interface changed the connection
+	 */
+	private static int getFrom(ConnectionEvent ce) {
+		return ce.getHostAddresses()[0];
+	}
+
+	/**
+	 * Returns the time of the earliest event that hasn't been applied
+	 * @return The time or Double.MAX_VALUE if all events have been applied
+	 */
+	public double nextEventTime() {
+		while (next < applied.length && applied[next]) {
+			next++;
+		}
+		return next < applied.length ? events.get(next).getTime() :
+			Double.MAX_VALUE;
+	}
+
+	/**
+	 * Applies the due events of a host in the recorded order. An event is
+	 * due if its time is not after the current sim time and it is before
+	 * the given limit.
+	 * @param host The host whose events are applied
+	 * @param limit Time at and after which no events are applied
+	 * @param world The world of the hosts
+	 */
+	public void applyEvents(DTNHost host, double limit, World world) {
+		int address = host.getAddress();
+		int[] indexes = hostEvents[address];
+		double now = SimClock.getTime();
+
+		while (hostNext[address] < indexes.length) {
+			int i = indexes[hostNext[address]];
+			double time = events.get(i).getTime();
+			if (time > now || time >= limit) {
+				return;
+			}
+			apply(i, world);
+			hostNext[address]++;
+		}
+	}
+
+	/**
+	 * Applies the due events of all hosts in the recorded order (see
+	 * {@link #applyEvents(DTNHost, double, World)})
+	 * @param limit Time at and after which no events are applied
+	 * @param world The world of the hosts
+	 */
+	public void applyEvents(double limit, World world) {
+		double now = SimClock.getTime();
+		for (int i = next, n = events.size(); i < n; i++) {
+			double time = events.get(i).getTime();
+			if (time > now || time >= limit) {
+				return;
+			}
+			if (!applied[i]) {
+				apply(i, world);
+				hostNext[getFrom(events.get(i))]++;
+			}
+		}
+	}
+
+	/**
+	 * Applies the earliest event that hasn't been applied
+	 * @param world The world of the hosts
+	 * @return The hosts whose connections changed
+	 */
+	public DTNHost[] applyNextEvent(World world) {
+		nextEventTime();
+		ConnectionEvent ce = events.get(next);
+		apply(next, world);
+		hostNext[getFrom(ce)]++;
+		int[] addresses = ce.getHostAddresses();
+		return new DTNHost[] {world.getNodeByAddress(addresses[0]),
+				world.getNodeByAddress(addresses[1])};
+	}
+
+	/**
+	 * Applies an event
+	 * @param i Index of the event
+	 * @param world The world of the hosts
+	 */
+	private void apply(int i, World world) {
+		events.get(i).processEvent(world);
+		applied[i] = true;
+	}
+}
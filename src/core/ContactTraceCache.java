@@ -0,0 +1,371 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.BinaryEventsReader;
+import input.ConnectionEvent;
+import input.EventQueueHandler;
+import input.ExternalEvent;
+import input.MessageEventGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import routing.MessageRouter;
+import routing.util.EnergyModel;
+
+/**
+ * <P>Cache of recorded contact traces. The connection up and down events of
+ * a run are recorded and stored to the cache directory when the run ends.
+ * Later runs whose movement and connectivity settings are the same replay
+ * the recorded trace as external {@link ConnectionEvent}s instead of
+ * simulating the movement and connectivity. This speeds up experiments
+ * where only the routing (or e.g. the message generation) differs between
+ * the runs.</P>
+ * <P>The cache key is computed from all the settings of the run except
+ * the ones that can't affect the contacts: reports, message event
+ * generators, checkpoints, the scenario name, the routers of the groups,
+ * and the settings of all router classes. The contents of the external
+ * events files are part of the key. If energy is modeled, the contacts can
+ * depend on the routing and all settings are part of the key.</P>
+ * <P>Replayed runs don't move the hosts, so the hosts stay at their
+ * initial locations and movement listeners are not informed about
+ * movement. The recorded contacts are applied at the same points of the
+ * world updates where they were created in the recorded run (see
+ * {@link ContactReplay}), so the routers see the contacts just like when
+ * the connectivity is simulated. The contacts of external connection
+ * events are not recorded since the events are processed in the replayed
+ * runs too.</P>
+ */
+public class ContactTraceCache implements ConnectionListener {
+	/**
+	 * Directory of the contact trace cache -setting id ({@value}) in the
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} namespace. If set, contact traces
+	 * are recorded to and replayed from this directory.
+	 */
+	public static final String CACHE_DIR_S = "contactCacheDir";
+
+	/** version of the trace format; part of the cache key */
+	private static final String TRACE_VERSION = "contactTrace2";
+	/** package of the router classes */
+	private static final String ROUTING_PACKAGE = "routing.";
+	/** prefix of the trace file names */
+	private static final String FILE_PREFIX = "contacts-";
+	/** namespaces whose settings don't affect the contacts */
+	private static final Set<String> IGNORED_NAMESPACES =
+		new HashSet<String>(Arrays.asList("Report", "Checkpoint", "Settings"));
+	/** group settings that don't affect the contacts */
+	private static final Set<String> IGNORED_GROUP_SETTINGS =
+		new HashSet<String>(Arrays.asList(SimScenario.ROUTER_S,
+				MessageRouter.B_SIZE_S, MessageRouter.MSG_TTL_S,
+				MessageRouter.SEND_QUEUE_MODE_S));
+
+	/** the file of this run's trace */
+	private final File traceFile;
+	/** end time of the simulation */
+	private final double endTime;
+	/** recorded events (null if the trace is replayed) */
+	private List<ExternalEvent> events;
+	/** the world whose contacts are recorded or replayed */
+	private World world;
+
+	/**
+	 * Creates a cache handle for the current run
+	 * @param dir The cache directory
+	 * @param key The cache key of the run
+	 * @param endTime End time of the simulation
+	 */
+	private ContactTraceCache(File dir, String key, double endTime) {
+		this.traceFile = new File(dir, FILE_PREFIX + key +
+				BinaryEventsReader.BINARY_EXT);
+		this.endTime = endTime;
+		if (!traceFile.exists()) {
+			this.events = new ArrayList<ExternalEvent>();
+		}
+	}
+
+	/**
+	 * Returns the contact trace cache of the current run if the cache is
+	 * enabled (see {@link #CACHE_DIR_S})
+	 * @param endTime End time of the simulation
+	 * @return The cache or null if the cache is not enabled
+	 */
+	public static ContactTraceCache open(double endTime) {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		if (!s.contains(CACHE_DIR_S)) {
+			return null;
+		}
+
+		File dir = new File(s.valueFillString(s.getSetting(CACHE_DIR_S)));
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new SettingsError("Can't create contact cache directory " +
+					dir);
+		}
+		return new ContactTraceCache(dir, getKey(), endTime);
+	}
+
+	/**
+	 * Returns true if the trace of this run has already been recorded and
+	 * it is replayed instead of simulating the contacts
+	 * @return true if the trace is replayed
+	 */
+	public boolean isReplay() {
+		return this.events == null;
+	}
+
+	/**
+	 * Attaches the cache to the world of the run. If the trace is replayed,
+	 * the world applies the recorded contacts instead of simulating the
+	 * connectivity and doesn't move the hosts. Otherwise the contacts of
+	 * the world are recorded (if the cache is added as a connection
+	 * listener of the run).
+	 * @param world The world
+	 */
+	public void attach(World world) {
+		this.world = world;
+		if (isReplay()) {
+			world.setContactReplay(new ContactReplay(traceFile,
+					world.getHosts().size()));
+			world.setSimulateMovement(false);
+		}
+	}
+
+	/**
+	 * Stores the recorded trace to the cache if the simulation has reached
+	 * its end time. The trace is first written to a temporary file so
+	 * concurrent runs never see partial traces.
+	 */
+	public void done() {
+		if (events == null || SimClock.getTime() < endTime) {
+			return; /* replayed or incomplete run */
+		}
+
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(FILE_PREFIX,
+					BinaryEventsReader.BINARY_EXT, traceFile.getParentFile());
+			BinaryEventsReader.storeToBinaryFile(tmp.getPath(), events);
+			if (!tmp.renameTo(traceFile)) {
+				tmp.delete(); /* e.g. stored concurrently by another run */
+			}
+		} catch (IOException e) {
+			if (tmp != null) {
+				tmp.delete();
+			}
+			throw new SimError("Can't store contact trace to " + traceFile +
+					": " + e, e);
+		}
+		events = null;
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		record(host1, host2, true);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		record(host1, host2, false);
+	}
+
+	/**
+	 * Records a connection event unless it was created by an external
+	 * event
+	 * @param from The host whose interface created or destroyed the
+	 * connection
+	 * @param to The other host
+	 * @param up Was the connection created (true) or destroyed (false)
+	 */
+	private void record(DTNHost from, DTNHost to, boolean up) {
+		if (world != null && world.isProcessingEvent()) {
+			return; /* the external event is processed when replaying too */
+		}
+		events.add(new ConnectionEvent(from.getAddress(), to.getAddress(),
+				getInterfaceType(from, to, up), up, SimClock.getTime()));
+	}
+
+	/**
+	 * Returns the type of the interface whose connection changed. Listeners
+	 * are informed about a new connection before the other end has added it,
+	 * and about a destroyed connection after it has been set down.
+	 * @param from The host whose interface changed the connection
+	 * @param to The other host
+	 * @param up Was the connection created or destroyed
+	 * @return The interface type
+	 */
+	private String getInterfaceType(DTNHost from, DTNHost to, boolean up) {
+		for (NetworkInterface ni : from.getInterfaces()) {
+			for (Connection con : ni.getConnections()) {
+				if (con.getOtherNode(from) != to) {
+					continue;
+				}
+				boolean changed = up ? !con.getOtherInterface(ni).
+						getConnections().contains(con) : !con.isUp();
+				if (changed) {
+					return ni.getInterfaceType();
+				}
+			}
+		}
+		throw new SimError("No changed connection between " + from +
+				" and " + to);
+	}
+
+	/**
+	 * Computes the cache key of the current run from the settings that can
+	 * affect the contacts
+	 * @return The key as a hexadecimal string
+	 */
+	private static String getKey() {
+		SortedMap<String, String> settings = Settings.getRunSettings();
+		Set<String> eventNamespaces = new HashSet<String>();
+		List<String> eventFiles = new ArrayList<String>();
+		getContactEvents(eventNamespaces, eventFiles);
+		boolean energyModeled = false;
+
+		for (String name : settings.keySet()) {
+			if (name.endsWith("." + EnergyModel.INIT_ENERGY_S)) {
+				energyModeled = true;
+			}
+		}
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(TRACE_VERSION.getBytes("UTF-8"));
+			for (Map.Entry<String, String> e : settings.entrySet()) {
+				if (!energyModeled &&
+						!affectsContacts(e.getKey(), eventNamespaces)) {
+					continue;
+				}
+				md.update(("\n" + e.getKey() + "=" + e.getValue()).
+						getBytes("UTF-8"));
+			}
+			for (String path : eventFiles) {
+				md.update(("\n" + path + ":" + getFileDigest(path)).
+						getBytes("UTF-8"));
+			}
+
+			StringBuilder key = new StringBuilder();
+			for (byte b : md.digest()) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Finds the event queues of the run that can affect the contacts, i.e.,
+	 * all queues except the message event generators (see
+	 * {@link EventQueueHandler})
+	 * @param namespaces The set where the namespaces of the queues' settings
+	 * are added
+	 * @param files The list where the paths of the external events files
+	 * are added
+	 */
+	private static void getContactEvents(Set<String> namespaces,
+			List<String> files) {
+		Settings s = new Settings(EventQueueHandler.SETTINGS_NAMESPACE);
+		int nrof = s.getInt(EventQueueHandler.NROF_SETTING, 0);
+
+		for (int i=1; i <= nrof; i++) {
+			String ns = EventQueueHandler.SETTINGS_NAMESPACE + i;
+			s.setNameSpace(ns);
+			if (s.contains(EventQueueHandler.PATH_SETTING)) {
+				namespaces.add(ns);
+				files.add(s.getSetting(EventQueueHandler.PATH_SETTING));
+			}
+			else if (s.contains(EventQueueHandler.CLASS_SETTING) &&
+					!isMessageGenerator(s.getSetting(
+							EventQueueHandler.CLASS_SETTING))) {
+				namespaces.add(ns);
+			}
+			s.restoreNameSpace();
+		}
+	}
+
+	/**
+	 * Returns true if an event generator class only generates messages
+	 * @param className Name of the class in the event generator package
+	 * @return true if the class is a {@link MessageEventGenerator}
+	 */
+	private static boolean isMessageGenerator(String className) {
+		try {
+			return MessageEventGenerator.class.isAssignableFrom(Class.forName(
+					EventQueueHandler.CLASS_PACKAGE + "." + className));
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the digest of an external events file's contents
+	 * @param path Path of the file
+	 * @return The digest as a hexadecimal string
+	 */
+	private static String getFileDigest(String path) {
+		try {
+			return ResourceCache.getDigest(new File(path));
+		} catch (IOException e) {
+			throw new SettingsError("Can't read external events file " +
+					path + ": " + e);
+		}
+	}
+
+	/**
+	 * Returns true if a setting can affect the contacts of a run
+	 * @param name Full name of the setting
+	 * @param eventNamespaces Namespaces of the event queues that can
+	 * affect the contacts
+	 * @return true if the setting is part of the cache key
+	 */
+	private static boolean affectsContacts(String name,
+			Set<String> eventNamespaces) {
+		int dot = name.indexOf('.');
+		String ns = dot < 0 ? name : name.substring(0, dot);
+		String setting = name.substring(dot + 1);
+
+		if (ns.startsWith(EventQueueHandler.SETTINGS_NAMESPACE)) {
+			return eventNamespaces.contains(ns);
+		}
+		if (IGNORED_NAMESPACES.contains(ns) || isRouterNamespace(ns)) {
+			return false;
+		}
+		if (ns.equals(SimScenario.SCENARIO_NS)) {
+			return !setting.equals(SimScenario.NAME_S);
+		}
+		if (ns.equals(World.OPTIMIZATION_SETTINGS_NS)) {
+			return !setting.equals(CACHE_DIR_S);
+		}
+		if (ns.startsWith(SimScenario.GROUP_NS)) {
+			return !IGNORED_GROUP_SETTINGS.contains(setting);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if a namespace is the namespace of a router class
+	 * @param ns The namespace
+	 * @return true if there's a router class with the same name
+	 */
+	private static boolean isRouterNamespace(String ns) {
+		try {
+			return MessageRouter.class.isAssignableFrom(
+					Class.forName(ROUTING_PACKAGE + ns));
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+}
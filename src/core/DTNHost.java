@@ -4,9 +4,14 @@
  */
 package core;
 
+import input.BinaryMovementWriter.HostRecorder;
+
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.MovementModel;
 import movement.Path;
@@ -18,11 +23,22 @@ import static core.Constants.DEBUG;
 /**
  * A DTN capable host.
  */
-public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
+public class DTNHost implements Comparable<DTNHost>, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** next address to give (per simulation run) */
+	private static final RunLocal<AtomicInteger> nextAddress =
+		new RunLocal<AtomicInteger>() {
+			@Override
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger(0);
+			}
+		};
 	private int address;
 
 	private Coord location; 	// where is the host
+	/** locations of all hosts of the run; kept up to date with location */
+	private HostPositions positions;
 	private Coord destination;	// where is it going
 
 	private MessageRouter router;
@@ -33,8 +49,19 @@ public class DTNHost implements Comparable<DTNHost> {
 	private String name;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
+	/** has the host moved during the latest movement step */
+	private boolean moved;
+	/** trajectory of the latest movement step (null if not recorded) */
+	private transient StepTrajectory trajectory;
+	/** is the radio active during the ongoing two-phase connectivity update */
+	private boolean radioActiveInUpdate;
 	private List<NetworkInterface> net;
+	/** the connections of all interfaces (see {@link #getConnections()});
+	 * the list is replaced, never modified, when the connections change */
+	private transient volatile List<Connection> connections;
 	private ModuleCommunicationBus comBus;
+	/** recorder of the movement model's answers (null if not recorded) */
+	private transient HostRecorder movementRecorder;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -55,9 +82,37 @@ public class DTNHost implements Comparable<DTNHost> {
 			String groupId, List<NetworkInterface> interf,
 			ModuleCommunicationBus comBus,
 			MovementModel mmProto, MessageRouter mRouterProto) {
+		this(msgLs, movLs, groupId, interf, comBus, mmProto, mRouterProto,
+				true);
+	}
+
+	/**
+	 * Creates a new DTNHost whose movement may be initialized later. The
+	 * address, the interfaces, the movement model and the router are
+	 * always created here, in the order of the constructor calls.
+	 * @param msgLs Message listeners
+	 * @param movLs Movement listeners
+	 * @param groupId GroupID of this host
+	 * @param interf List of NetworkInterfaces for the class
+	 * @param comBus Module communication bus object
+	 * @param mmProto Prototype of the movement model of this host
+	 * @param mRouterProto Prototype of the message router of this host
+	 * @param initMovement If false, the initial location isn't requested
+	 * from the movement model and {@link #initMovement()} must be called
+	 * before the host is used
+	 */
+	DTNHost(List<MessageListener> msgLs,
+			List<MovementListener> movLs,
+			String groupId, List<NetworkInterface> interf,
+			ModuleCommunicationBus comBus,
+			MovementModel mmProto, MessageRouter mRouterProto,
+			boolean initMovement) {
 		this.comBus = comBus;
 		this.location = new Coord(0,0);
 		this.address = getNextAddress();
+		this.positions = HostPositions.getInstance();
+		this.positions.ensureCapacity(this.address);
+		this.positions.set(this.address, this.location);
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
 
@@ -79,13 +134,29 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.movement.setHost(this);
 		setRouter(mRouterProto.replicate());
 
+		if (initMovement) {
+			initMovement();
+		}
+	}
+
+	/**
+	 * Sets the initial location and the time of the first path of this host
+	 * from its movement model and informs the movement listeners about the
+	 * location. If the movement model can be used in parallel with other
+	 * models (see {@link #canMoveInParallel()}), this can be called for
+	 * different hosts concurrently.
+	 */
+	void initMovement() {
 		this.location = movement.getInitialLocation();
+		if (this.location != null) {
+			this.positions.set(this.address, this.location);
+		}
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
 
-		if (movLs != null) { // inform movement listeners about the location
-			for (MovementListener l : movLs) {
+		if (movListeners != null) { // inform listeners about the location
+			for (MovementListener l : movListeners) {
 				l.initialLocation(this, this.location);
 			}
 		}
@@ -96,15 +167,28 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextAddress() {
-		return nextAddress++;
+	private static int getNextAddress() {
+		return nextAddress.get().getAndIncrement();
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		nextAddress.remove();
+		HostPositions.reset();
+	}
+
+	/**
+	 * Starts recording the answers of this host's movement model to a
+	 * binary movement trace. Must be called before the host is moved for
+	 * the first time.
+	 * @param recorder The recorder of this host
+	 */
+	public void setMovementRecorder(HostRecorder recorder) {
+		this.movementRecorder = recorder;
+		recorder.initialLocation(this.location);
+		recorder.nextPathAvailable(this.nextTimeToMove);
 	}
 
 	/**
@@ -115,14 +199,26 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.movement.isActive();
 	}
 
+	/**
+	 * Returns true if this host can be moved concurrently with other hosts,
+	 * i.e., its movement model supports that and there are no movement
+	 * listeners to inform about the movement
+	 * @return true if this host can be moved in parallel with other hosts
+	 * @see MovementModel#isParallelSafe()
+	 */
+	public boolean canMoveInParallel() {
+		return (this.movListeners == null || this.movListeners.isEmpty()) &&
+			this.movement.isParallelSafe();
+	}
+
 	/**
 	 * Returns true if this node's radio is active (false if not)
 	 * @return true if this node's radio is active (false if not)
 	 */
 	public boolean isRadioActive() {
 		// Radio is active if any of the network interfaces are active.
-		for (final NetworkInterface i : this.net) {
-			if (i.isActive()) return true;
+		for (int i=0, n = this.net.size(); i < n; i++) {
+			if (this.net.get(i).isActive()) return true;
 		}
 		return false;
 	}
@@ -136,6 +232,17 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router = router;
 	}
 
+	/**
+	 * Replaces the router of this host with a new router replicated from the
+	 * given prototype. The messages of the old router are discarded. Any
+	 * transfers of the old router should be aborted before this.
+	 * @param mRouterProto Prototype of the new router
+	 * @see SimScenario#replaceRouters()
+	 */
+	public void replaceRouter(MessageRouter mRouterProto) {
+		setRouter(mRouterProto.replicate());
+	}
+
 	/**
 	 * Returns the router of this host
 	 * @return the router of this host
@@ -173,19 +280,44 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns the connections this host has with other hosts. The list
+	 * can't be modified and it doesn't change when the connections change.
+	 * The same list is returned until the connections change.
+	 * @return the list of connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
-
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+		List<Connection> lc = this.connections;
+		if (lc == null || !isCurrent(lc)) {
+			ArrayList<Connection> copy = new ArrayList<Connection>();
+			for (int i=0, n = net.size(); i < n; i++) {
+				copy.addAll(net.get(i).getConnections());
+			}
+			lc = Collections.unmodifiableList(copy);
+			this.connections = lc;
 		}
-
 		return lc;
 	}
 
+	/**
+	 * Returns true if a list contains the current connections of all the
+	 * interfaces of this host (in the order of the interfaces)
+	 * @param lc The list
+	 * @return True if the list is up to date
+	 */
+	private boolean isCurrent(List<Connection> lc) {
+		int index = 0;
+		int size = lc.size();
+		for (int i=0, n = net.size(); i < n; i++) {
+			List<Connection> cons = net.get(i).getConnections();
+			for (int j=0, m = cons.size(); j < m; j++) {
+				if (index >= size || lc.get(index++) != cons.get(j)) {
+					return false;
+				}
+			}
+		}
+		return index == size;
+	}
+
 	/**
 	 * Returns the current location of this host.
 	 * @return The location
@@ -194,6 +326,14 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.location;
 	}
 
+	/**
+	 * Returns the positions of all the hosts of this host's simulation run
+	 * @return The positions
+	 */
+	public HostPositions getPositions() {
+		return this.positions;
+	}
+
 	/**
 	 * Returns the Path this node is currently traveling or null if no
 	 * path is in use at the moment.
@@ -210,6 +350,8 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		this.positions.set(this.address, this.location);
+		this.moved = true;
 	}
 
 	/**
@@ -332,20 +474,203 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param simulateConnections Should network layer be updated too
 	 */
 	public void update(boolean simulateConnections) {
+		if (updateInterfaces(simulateConnections)) {
+			this.router.update();
+		}
+	}
+
+	/**
+	 * Updates node's network layer; the first half of
+	 * {@link #update(boolean)}.
+	 * @param simulateConnections Should the interfaces be updated
+	 * @return True if the radio is active and the router should be updated
+	 * next (using {@link #updateRouter()}), false if not
+	 */
+	boolean updateInterfaces(boolean simulateConnections) {
 		if (!isRadioActive()) {
 			// Make sure inactive nodes don't have connections
 			tearDownAllConnections();
-			return;
+			return false;
 		}
 
 		if (simulateConnections) {
-			for (NetworkInterface i : net) {
-				i.update();
+			for (int i=0, n = net.size(); i < n; i++) {
+				net.get(i).update();
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * Updates node's router; the second half of {@link #update(boolean)}.
+	 */
+	void updateRouter() {
 		this.router.update();
 	}
 
+	/**
+	 * Prepares this host for the two-phase connectivity update (see
+	 * {@link World#CONNECTIVITY_THREADS_S}): checks whether the radio is
+	 * active (which may change the transmit ranges) and updates the
+	 * locations of the interfaces to the connectivity optimizers. Must be
+	 * called serially for all hosts before
+	 * {@link #findConnectivityChanges()}.
+	 */
+	public void prepareConnectivityUpdate() {
+		this.radioActiveInUpdate = isRadioActive();
+		for (int i=0, n = net.size(); i < n; i++) {
+			net.get(i).updateLocation();
+		}
+	}
+
+	/**
+	 * Finds the connectivity changes of this host's interfaces without
+	 * changing any state (see {@link NetworkInterface#findConnectivityChanges()}).
+	 * Can be called concurrently for different hosts.
+	 */
+	public void findConnectivityChanges() {
+		if (!this.radioActiveInUpdate) {
+			return; /* connections are torn down when applying the changes */
+		}
+		for (int i=0, n = net.size(); i < n; i++) {
+			net.get(i).findConnectivityChanges();
+		}
+	}
+
+	/**
+	 * Applies the connectivity changes found by
+	 * {@link #findConnectivityChanges()}, or tears down all connections if
+	 * the radio is not active. The router is not updated; that is done by
+	 * calling {@link #update(boolean)} with false after all hosts' changes
+	 * have been applied.
+	 */
+	public void applyConnectivityChanges() {
+		if (!this.radioActiveInUpdate) {
+			// Make sure inactive nodes don't have connections
+			tearDownAllConnections();
+			return;
+		}
+		for (int i=0, n = net.size(); i < n; i++) {
+			net.get(i).applyConnectivityChanges();
+		}
+	}
+
+	/**
+	 * Returns the earliest sim time when this host may need to be moved or
+	 * updated without any external event concerning it, i.e., when its
+	 * movement, radio, transfers or router state can change on their own.
+	 * Used by the event driven update mode of {@link World}.
+	 * @return The earliest time of the next self-initiated activity. Current
+	 * sim time (or earlier) if the host must be updated on every interval and
+	 * Double.MAX_VALUE if the host is idle until something else happens.
+	 */
+	public double getNextActivityTime() {
+		double next;
+
+		if (this.destination != null) {
+			return SimClock.getTime(); // on the move
+		}
+
+		/* waiting for the next path (and possibly the movement activeness) */
+		next = this.nextTimeToMove;
+		if (!isMovementActive()) {
+			next = Math.max(next, movement.getNextActivenessChange());
+		}
+
+		return Math.min(next, getNextNetworkActivityTime());
+	}
+
+	/**
+	 * Returns the earliest sim time when the interfaces or the router of
+	 * this host may need an update on their own (see
+	 * {@link NetworkInterface#getNextActivityTime()} and
+	 * {@link MessageRouter#getNextActivityTime()})
+	 * @return The earliest time of the next interface or router activity
+	 */
+	double getNextNetworkActivityTime() {
+		double next = Double.MAX_VALUE;
+
+		for (NetworkInterface i : net) {
+			next = Math.min(next, i.getNextActivityTime());
+		}
+
+		return Math.min(next, this.router.getNextActivityTime());
+	}
+
+	/**
+	 * Returns the X component of the velocity the host is currently moving
+	 * at
+	 * @return The X component or 0 if the host isn't moving
+	 */
+	double getVelocityX() {
+		return getVelocity(this.destination == null ? 0 :
+			this.destination.getX() - this.location.getX());
+	}
+
+	/**
+	 * Returns the Y component of the velocity the host is currently moving
+	 * at
+	 * @return The Y component or 0 if the host isn't moving
+	 */
+	double getVelocityY() {
+		return getVelocity(this.destination == null ? 0 :
+			this.destination.getY() - this.location.getY());
+	}
+
+	/**
+	 * Returns one component of the velocity the host is currently moving at
+	 * @param delta The same component of the vector from the location to
+	 * the destination
+	 * @return The velocity component or 0 if the host isn't moving
+	 */
+	private double getVelocity(double delta) {
+		if (this.destination == null || !isMovementActive()) {
+			return 0;
+		}
+		double distance = this.location.distance(this.destination);
+		if (distance == 0) {
+			return 0;
+		}
+		return this.speed * delta / distance;
+	}
+
+	/**
+	 * Returns the earliest sim time when the speed or the direction of this
+	 * host may change: the host reaches its current destination, starts
+	 * moving along a new path or its movement becomes active. Used by the
+	 * adaptive update interval of {@link World}.
+	 * @return The earliest time of the next movement change or
+	 * Double.MAX_VALUE if the host won't move anymore on its own
+	 */
+	double getNextMovementChange() {
+		double next;
+
+		if (this.destination != null && isMovementActive()) {
+			if (this.speed <= 0) {
+				return SimClock.getTime(); /* proceeds on the next move */
+			}
+			return SimClock.getTime() +
+				this.location.distance(this.destination) / this.speed;
+		}
+
+		next = this.nextTimeToMove;
+		if (!isMovementActive()) {
+			next = Math.max(next, movement.getNextActivenessChange());
+		}
+		return next;
+	}
+
+	/**
+	 * Returns true if updating this host would not change anything at the
+	 * moment: the host hasn't moved during the latest movement step and
+	 * it has no activity due (see {@link #getNextActivityTime()}). Used by
+	 * the idle host skipping of {@link World}.
+	 * @return True if the host is idle, false if it should be updated
+	 */
+	public boolean isIdle() {
+		return !this.moved && getNextActivityTime() > SimClock.getTime();
+	}
+
 	/**
 	 * Tears down all connections for this host.
 	 */
@@ -377,6 +702,10 @@ public class DTNHost implements Comparable<DTNHost> {
 		double distance;
 		double dx, dy;
 
+		this.moved = false;
+		if (this.trajectory != null) {
+			this.trajectory.start(this.location);
+		}
 		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
 			return;
 		}
@@ -388,13 +717,20 @@ public class DTNHost implements Comparable<DTNHost> {
 
 		possibleMovement = timeIncrement * speed;
 		distance = this.location.distance(this.destination);
+		this.moved = true;
+		double totalMovement = possibleMovement;
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
+			if (this.trajectory != null && totalMovement > 0) {
+				this.trajectory.add(timeIncrement *
+						(1 - possibleMovement / totalMovement), this.location);
+			}
 			if (!setNextWaypoint()) { // get a new waypoint
 				this.destination = null; // No more waypoints left, therefore the destination must be null
+				this.positions.set(this.address, this.location);
 				return; // no more waypoints left
 			}
 			distance = this.location.distance(this.destination);
@@ -406,6 +742,27 @@ public class DTNHost implements Comparable<DTNHost> {
 		dy = (possibleMovement/distance) * (this.destination.getY() -
 				this.location.getY());
 		this.location.translate(dx, dy);
+		this.positions.set(this.address, this.location);
+		if (this.trajectory != null) {
+			this.trajectory.add(timeIncrement, this.location);
+		}
+	}
+
+	/**
+	 * Sets whether the trajectory of every movement step is recorded (see
+	 * {@link KineticConnectivity})
+	 * @param record True to record the trajectories, false to not
+	 */
+	void setRecordTrajectory(boolean record) {
+		this.trajectory = record ? new StepTrajectory() : null;
+	}
+
+	/**
+	 * Returns the trajectory of the latest movement step
+	 * @return The trajectory or null if trajectories aren't recorded
+	 */
+	StepTrajectory getTrajectory() {
+		return this.trajectory;
 	}
 
 	/**
@@ -417,10 +774,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	private boolean setNextWaypoint() {
 		if (path == null) {
 			path = movement.getPath();
+			if (this.movementRecorder != null) {
+				this.movementRecorder.newPath(path);
+			}
 		}
 
 		if (path == null || !path.hasNext()) {
 			this.nextTimeToMove = movement.nextPathAvailable();
+			if (this.movementRecorder != null) {
+				this.movementRecorder.nextPathAvailable(this.nextTimeToMove);
+			}
 			this.path = null;
 			return false;
 		}
@@ -531,6 +894,19 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this == otherHost;
 	}
 
+	/**
+	 * Returns the address of the host as its hash code. The hosts are still
+	 * equal only to themselves, but hash based collections of hosts are
+	 * iterated in the same order on every run instead of in the order of
+	 * the identity hash codes, which would make the results of the routers
+	 * that iterate them vary between runs.
+	 * @return The address of the host
+	 */
+	@Override
+	public int hashCode() {
+		return this.address;
+	}
+
 	/**
 	 * Compares two DTNHosts by their addresses.
 	 * @see Comparable#compareTo(Object)
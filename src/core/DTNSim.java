@@ -5,11 +5,22 @@
 package core;
 import gui.DTNSimGUI;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import ui.DTNSimBatchUI;
 import ui.DTNSimTextUI;
+import ui.DTNSimUI;
 
 /**
  * Simulator's main class
@@ -20,12 +31,32 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** Command line option for running batch runs in parallel (-p). Must be
+	 * given after the number of batch runs and followed by the number of
+	 * parallel worker processes. */
+	public static final String PARALLEL_FLAG = "-p";
+	/** Command line option that starts a worker process of a parallel batch
+	 * (-w). The worker reads run indexes from standard input, one per line,
+	 * until the input is closed.
+	 * @see #PARALLEL_FLAG */
+	public static final String BATCH_WORKER_FLAG = "-w";
+	/** Command line option for running batch runs concurrently in threads
+	 * of this JVM (-t). Must be given after the number of batch runs and
+	 * followed by the number of threads. Every run has its own run context
+	 * (see {@link #createRunContext(int)}). The lines of the settings
+	 * output (see {@link Settings#SETTING_OUTPUT_S}) of concurrent runs may
+	 * be interleaved. */
+	public static final String THREADS_FLAG = "-t";
+	/** Line that a batch worker prints, followed by the run's wall clock
+	 * time, after every finished run */
+	public static final String RUN_DONE_MARKER = "#run done ";
 
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
 	public static final String RESET_METHOD_NAME = "reset";
 	/** List of class names that should be reset between batch runs */
-	private static List<Class<?>> resetList = new ArrayList<Class<?>>();
+	private static List<Class<?>> resetList =
+		Collections.synchronizedList(new ArrayList<Class<?>>());
 
 	/**
 	 * Starts the user interface with given arguments.
@@ -35,12 +66,21 @@ public class DTNSim {
 	 * delimited with a {@value #RANGE_DELIMETER}. Different settings from run
 	 * arrays are used for different runs (see
 	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings
-	 * files for the simulation run (if any). For GUI mode, the number before
+	 * files for the simulation run (if any). In batch mode, the number of runs
+	 * can be followed by {@value #PARALLEL_FLAG} and a number of worker
+	 * processes to spread the runs across, or by {@value #THREADS_FLAG} and
+	 * a number of threads to run the runs in. If the settings define a fork time
+	 * (see {@link SimCheckpoint#FORK_TIME_S}), the part of the simulation
+	 * before it is run only once and all the batch runs continue from
+	 * there. For GUI mode, the number before
 	 * settings files (if given) is the run index to use for that run.
 	 * @param args Command line arguments
 	 */
 	public static void main(String[] args) {
 		boolean batchMode = false;
+		boolean workerMode = false;
+		int nrofWorkers = 1;
+		int nrofThreads = 1;
 		int nrofRuns[] = {0,1};
 		String confFiles[];
 		int firstConfIndex = 0;
@@ -59,6 +99,20 @@ public class DTNSim {
                     nrofRuns = parseNrofRuns(args[1]);
                     firstConfIndex = 2;
                 }
+				if (args.length > firstConfIndex + 1 &&
+						args[firstConfIndex].equals(PARALLEL_FLAG)) {
+					nrofWorkers = parseNrofWorkers(args[firstConfIndex + 1]);
+					firstConfIndex += 2;
+				}
+				else if (args.length > firstConfIndex + 1 &&
+						args[firstConfIndex].equals(THREADS_FLAG)) {
+					nrofThreads = parseNrofWorkers(args[firstConfIndex + 1]);
+					firstConfIndex += 2;
+				}
+			}
+			else if (args[0].equals(BATCH_WORKER_FLAG)) {
+				workerMode = true;
+				firstConfIndex = 1;
 			}
 			else { /* GUI mode */
 				try { /* is there a run index for the GUI mode ? */
@@ -76,13 +130,43 @@ public class DTNSim {
 
 		initSettings(confFiles, firstConfIndex);
 
-		if (batchMode) {
+		if (workerMode) {
+			runBatchWorker();
+		}
+		else if (batchMode && nrofWorkers > 1) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			List<String> files = new ArrayList<String>();
+			for (int i=firstConfIndex; i<confFiles.length; i++) {
+				files.add(confFiles[i]);
+			}
+			String forkFile = runSharedPrefix(nrofRuns[0]);
+			if (forkFile != null) {
+				files.add(forkFile);
+			}
+			boolean allDone = new DTNSimBatchUI(nrofWorkers, nrofRuns[0],
+					nrofRuns[1], files).start();
+			double duration = (System.currentTimeMillis() - startTime)/1000.0;
+			print("All done in " + String.format("%.2f", duration) + "s");
+			if (!allDone) {
+				System.exit(-1);
+			}
+		}
+		else if (batchMode) {
+			long startTime = System.currentTimeMillis();
+			String forkFile = runSharedPrefix(nrofRuns[0]);
+			if (forkFile != null) {
+				Settings.addSettings(forkFile);
+			}
+			if (nrofThreads > 1) {
+				runBatchThreads(nrofThreads, nrofRuns[0], nrofRuns[1]);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -93,6 +177,157 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Runs batch runs concurrently in threads of this JVM. Every thread
+	 * takes the next run that hasn't been started yet and runs it in a new
+	 * run context (see {@link #createRunContext(int)}) until all runs have
+	 * been started. Returns when all the runs are done.
+	 * @param nrofThreads Number of threads to use
+	 * @param firstRun Index of the first run
+	 * @param lastRun Index of the last run + 1
+	 */
+	private static void runBatchThreads(int nrofThreads, int firstRun,
+			final int lastRun) {
+		final AtomicInteger nextRun = new AtomicInteger(firstRun);
+		Thread[] threads = new Thread[nrofThreads];
+
+		for (int i=0; i<nrofThreads; i++) {
+			threads[i] = new Thread("batch-" + i) {
+				@Override
+				public void run() {
+					int run;
+					while ((run = nextRun.getAndIncrement()) < lastRun) {
+						print("Run " + (run+1) + "/" + lastRun);
+						/* each run starts from the settings of the batch */
+						SimContext.setCurrent(null);
+						createRunContext(run);
+						new DTNSimTextUI().start();
+					}
+					SimContext.setCurrent(null);
+				}
+			};
+			threads[i].start();
+		}
+
+		try {
+			for (Thread t : threads) {
+				t.join();
+			}
+		} catch (InterruptedException e) {
+			System.err.println("Interrupted while waiting for the runs");
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Runs the runs whose indexes are read from standard input, one per
+	 * line, until the input is closed. After every run, the
+	 * {@link #RUN_DONE_MARKER} is printed with the run's wall clock time.
+	 */
+	private static void runBatchWorker() {
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(System.in));
+		String line;
+		try {
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				long startTime = System.currentTimeMillis();
+				Settings.setRunIndex(Integer.parseInt(line.trim()));
+				resetForNextRun();
+				new DTNSimTextUI().start();
+				double duration = (System.currentTimeMillis() - startTime) /
+					1000.0;
+				print(RUN_DONE_MARKER + duration);
+			}
+		} catch (IOException e) {
+			System.err.println("Batch worker input failed: " + e);
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Runs the shared prefix of a forking batch up to the fork time (see
+	 * {@link SimCheckpoint#FORK_TIME_S}) and writes a checkpoint of it to a
+	 * temporary file.
+	 * @param runIndex Index of the run whose settings are used for the
+	 * prefix
+	 * @return Path of a temporary settings file that makes runs continue
+	 * from the checkpoint with new routers, or null if no fork time is set
+	 */
+	private static String runSharedPrefix(int runIndex) {
+		Settings.setRunIndex(runIndex);
+		Settings cpSettings = new Settings(SimCheckpoint.CHECKPOINT_NS);
+		if (!cpSettings.contains(SimCheckpoint.FORK_TIME_S)) {
+			return null;
+		}
+
+		long startTime = System.currentTimeMillis();
+		OutputStream out = null;
+		try {
+			double forkTime = cpSettings.getDouble(SimCheckpoint.FORK_TIME_S);
+			print("Running shared prefix up to " + forkTime + "s");
+			resetForNextRun();
+
+			Settings settings = new Settings();
+			double warmupTime = 0;
+			if (settings.contains(DTNSimUI.MM_WARMUP_S)) {
+				warmupTime = settings.getDouble(DTNSimUI.MM_WARMUP_S);
+				if (warmupTime > 0) {
+					SimClock.getInstance().setTime(-warmupTime);
+				}
+			}
+			SimScenario scen = SimScenario.getInstance();
+			if (forkTime >= scen.getEndTime()) {
+				throw new SettingsError("Fork time " + forkTime + " is not " +
+						"before the end time " + scen.getEndTime());
+			}
+			World world = scen.getWorld();
+			world.warmupMovementModel(warmupTime);
+			while (SimClock.getTime() < forkTime) {
+				world.update();
+			}
+
+			File cpFile = File.createTempFile("one-fork", ".ckp");
+			cpFile.deleteOnExit();
+			SimCheckpoint.save(cpFile.getPath());
+
+			Properties forkSettings = new Properties();
+			forkSettings.setProperty(SimCheckpoint.CHECKPOINT_NS + "." +
+					SimCheckpoint.RESTORE_FILE_S, cpFile.getPath());
+			forkSettings.setProperty(SimCheckpoint.CHECKPOINT_NS + "." +
+					SimCheckpoint.NEW_ROUTERS_S, "true");
+			File settingsFile = File.createTempFile("one-fork", ".txt");
+			settingsFile.deleteOnExit();
+			out = new FileOutputStream(settingsFile);
+			forkSettings.store(out, "continues runs from the shared prefix");
+
+			double duration = (System.currentTimeMillis() - startTime)/1000.0;
+			print("Shared prefix done in " + String.format("%.2f", duration) +
+					"s");
+			return settingsFile.getPath();
+		} catch (SettingsError se) {
+			System.err.println("Can't run shared prefix: error in " +
+					"configuration file(s)");
+			System.err.println(se.getMessage());
+		} catch (SimError er) {
+			System.err.println("Can't run shared prefix: " + er.getMessage());
+		} catch (IOException e) {
+			System.err.println("Can't write shared prefix: " + e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// nothing sensible to do
+				}
+			}
+		}
+		System.exit(-1);
+		return null;
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings
@@ -159,11 +394,21 @@ public class DTNSim {
 		resetList.add(c);
 	}
 
+	/**
+	 * Returns the classes that have been registered for resetting
+	 * @return The classes in registration order
+	 */
+	static List<Class<?>> getResetClasses() {
+		synchronized (resetList) {
+			return new ArrayList<Class<?>>(resetList);
+		}
+	}
+
 	/**
 	 * Resets all registered classes.
 	 */
 	private static void resetForNextRun() {
-		for (Class<?> c : resetList) {
+		for (Class<?> c : getResetClasses()) {
 			try {
 				Method m = c.getMethod(RESET_METHOD_NAME);
 				m.invoke(null);
@@ -175,6 +420,24 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Creates a new simulation run context for running a simulation
+	 * concurrently with other runs in the same JVM. The new context uses a
+	 * copy of the settings of the current context with the given run index. The context
+	 * is bound to the calling thread and all registered classes are reset
+	 * in it.
+	 * @param runIndex Run index of the run
+	 * @return The new context
+	 * @see SimContext#setCurrent(SimContext)
+	 */
+	public static SimContext createRunContext(int runIndex) {
+		SimContext context = new SimContext(SimContext.getCurrent());
+		SimContext.setCurrent(context);
+		Settings.setRunIndex(runIndex);
+		resetForNextRun();
+		return context;
+	}
+
 	/**
 	 * Parses the number of runs, and an optional starting run index, from a
 	 * command line argument
@@ -216,6 +479,27 @@ public class DTNSim {
 		return val;
 	}
 
+	/**
+	 * Parses the number of parallel batch workers (processes or threads)
+	 * from a command line argument
+	 * @param arg The argument to parse
+	 * @return The number of workers
+	 */
+	private static int parseNrofWorkers(String arg) {
+		int val = 0;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			val = 0;
+		}
+		if (val < 1) {
+			System.err.println("Invalid argument '" + arg + "' for" +
+					" number of parallel workers");
+			System.exit(-1);
+		}
+		return val;
+	}
+
 	/**
 	 * Prints text to stdout
 	 * @param txt Text to print
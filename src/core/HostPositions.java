@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Serializable;
+
+/**
+ * Locations of all the hosts of a simulation run in primitive arrays
+ * indexed by the host addresses. The hosts update their entries whenever
+ * their location changes (see {@link DTNHost#move(double)}), so the range
+ * checks of the interfaces and the connectivity optimizers can read the
+ * coordinates from two contiguous arrays instead of following the
+ * references from the hosts to their scattered {@link Coord} objects.
+ */
+public class HostPositions implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** relative margin of the squared distance comparisons within which
+	 * the distances are compared exactly */
+	private static final double EXACT_MARGIN = 1e-9;
+
+	/** positions of the current simulation run */
+	private static final RunLocal<HostPositions> positions =
+		new RunLocal<HostPositions>() {
+			@Override
+			protected HostPositions initialValue() {
+				return new HostPositions();
+			}
+		};
+
+	static {
+		DTNSim.registerForReset(HostPositions.class.getCanonicalName());
+	}
+
+	private double[] xs;
+	private double[] ys;
+
+	/**
+	 * Resets the positions of the current simulation run
+	 */
+	public static void reset() {
+		positions.remove();
+	}
+
+	/**
+	 * Returns the positions of the current simulation run
+	 * @return The positions
+	 */
+	public static HostPositions getInstance() {
+		return positions.get();
+	}
+
+	private HostPositions() {
+		this.xs = new double[0];
+		this.ys = new double[0];
+	}
+
+	/**
+	 * Makes room for the position of a host. Hosts are created serially,
+	 * so this is never called concurrently with the other methods.
+	 * @param address Address of the host
+	 */
+	void ensureCapacity(int address) {
+		if (address < xs.length) {
+			return;
+		}
+		int capacity = Math.max(address + 1, xs.length * 2);
+		double[] newXs = new double[capacity];
+		double[] newYs = new double[capacity];
+		System.arraycopy(xs, 0, newXs, 0, xs.length);
+		System.arraycopy(ys, 0, newYs, 0, ys.length);
+		xs = newXs;
+		ys = newYs;
+	}
+
+	/**
+	 * Sets the position of a host
+	 * @param address Address of the host
+	 * @param c The location of the host
+	 */
+	void set(int address, Coord c) {
+		xs[address] = c.getX();
+		ys[address] = c.getY();
+	}
+
+	/**
+	 * Returns the x coordinate of a host
+	 * @param address Address of the host
+	 * @return The x coordinate
+	 */
+	public double getX(int address) {
+		return xs[address];
+	}
+
+	/**
+	 * Returns the y coordinate of a host
+	 * @param address Address of the host
+	 * @return The y coordinate
+	 */
+	public double getY(int address) {
+		return ys[address];
+	}
+
+	/**
+	 * Returns the array of the x coordinates indexed by the host addresses.
+	 * The array is replaced when new hosts are created, so it must not be
+	 * kept over the creation of hosts.
+	 * @return The x coordinates
+	 */
+	public double[] getXs() {
+		return xs;
+	}
+
+	/**
+	 * Returns the array of the y coordinates indexed by the host addresses
+	 * (see {@link #getXs()})
+	 * @return The y coordinates
+	 */
+	public double[] getYs() {
+		return ys;
+	}
+
+	/**
+	 * Returns true if the distance of two hosts is at most the given
+	 * distance. The squared distances are compared and the square root is
+	 * computed only when they are too close to each other to decide, so the
+	 * result is always the same as comparing
+	 * {@link Coord#distance(Coord)} of the hosts' locations.
+	 * @param a Address of the first host
+	 * @param b Address of the second host
+	 * @param distance The distance
+	 * @return True if the hosts are within the distance of each other
+	 */
+	public boolean isWithinDistance(int a, int b, double distance) {
+		double dx = xs[a] - xs[b];
+		double dy = ys[a] - ys[b];
+		return isWithin(dx*dx + dy*dy, distance);
+	}
+
+	/**
+	 * Returns true if a squared distance is at most the given distance,
+	 * computing the square root only when the squares are too close to
+	 * each other to decide (see {@link #isWithinDistance(int, int, double)})
+	 * @param d2 The squared distance
+	 * @param distance The distance
+	 * @return True if the squared distance is within the distance
+	 */
+	public static boolean isWithin(double d2, double distance) {
+		double limit2 = distance * distance;
+
+		if (d2 < limit2 * (1 - EXACT_MARGIN)) {
+			return true;
+		}
+		if (d2 > limit2 * (1 + EXACT_MARGIN)) {
+			return false;
+		}
+		return Math.sqrt(d2) <= distance;
+	}
+}
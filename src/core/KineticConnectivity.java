@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <P>Kinetic connectivity detection (see {@link World#KINETIC_CONTACTS_S}).
+ * The hosts move along straight line segments at constant speed during a
+ * movement step, so the moments when the distance of two hosts crosses
+ * their transmit range can be solved analytically from the hosts'
+ * trajectories (see {@link StepTrajectory}). The crossings of every movement
+ * step are collected as contact events, which the {@link World} applies in
+ * the order of their times, interleaved with the external events, instead
+ * of detecting the connectivity changes only at the end of the step.</P>
+ * <P>The pairs of interfaces that are examined are the ones that are near
+ * each other (according to the connectivity optimizer) at the start or at
+ * the end of the step and the ones that are connected. A contact that
+ * starts and ends within one step is found only if the hosts are near
+ * each other at the start or at the end of the step.</P>
+ */
+public class KineticConnectivity {
+	/** orders the events by their time and then by the host addresses */
+	private static final Comparator<ContactEvent> EVENT_ORDER =
+		new Comparator<ContactEvent>() {
+			public int compare(ContactEvent e1, ContactEvent e2) {
+				if (e1.time != e2.time) {
+					return e1.time < e2.time ? -1 : 1;
+				}
+				int diff = e1.from.getHost().getAddress() -
+					e2.from.getHost().getAddress();
+				if (diff != 0) {
+					return diff;
+				}
+				return e1.to.getHost().getAddress() -
+					e2.to.getHost().getAddress();
+			}
+		};
+
+	private final List<DTNHost> hosts;
+	/** interfaces near every interface at the start of the step */
+	private final Map<NetworkInterface, List<NetworkInterface>> startNear;
+	/** contact events of the current step, in the order of their times */
+	private final List<ContactEvent> events;
+	/** index of the next event to apply */
+	private int nextEvent;
+
+	/**
+	 * Constructor. Starts recording the trajectories of the hosts.
+	 * @param hosts All the hosts of the world
+	 */
+	KineticConnectivity(List<DTNHost> hosts) {
+		this.hosts = hosts;
+		this.startNear =
+			new IdentityHashMap<NetworkInterface, List<NetworkInterface>>();
+		this.events = new ArrayList<ContactEvent>();
+
+		for (DTNHost host : hosts) {
+			host.setRecordTrajectory(true);
+		}
+	}
+
+	/**
+	 * Collects the interfaces that are near each other at the start of a
+	 * movement step. Must be called before the hosts are moved.
+	 */
+	void startStep() {
+		updateLocations();
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			for (NetworkInterface ni : hosts.get(i).getInterfaces()) {
+				if (ni.optimizer == null) {
+					continue;
+				}
+				List<NetworkInterface> near = startNear.get(ni);
+				if (near == null) {
+					near = new ArrayList<NetworkInterface>();
+					startNear.put(ni, near);
+				}
+				near.clear();
+				addLaterHosts(ni, ni.getNearInterfaces(), near);
+			}
+		}
+	}
+
+	/**
+	 * Finds the contact events of a movement step. Must be called after the
+	 * hosts are moved.
+	 * @param startTime Sim time at the start of the step
+	 * @param duration Duration of the step
+	 */
+	void endStep(double startTime, double duration) {
+		events.clear();
+		nextEvent = 0;
+
+		updateLocations();
+
+		List<NetworkInterface> candidates = new ArrayList<NetworkInterface>();
+		Set<NetworkInterface> examined = Collections.newSetFromMap(
+				new IdentityHashMap<NetworkInterface, Boolean>());
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			if (!host.isRadioActive()) {
+				continue; /* connections are torn down in the host update */
+			}
+			for (NetworkInterface ni : host.getInterfaces()) {
+				if (ni.optimizer == null) {
+					continue;
+				}
+				candidates.clear();
+				List<NetworkInterface> near = startNear.get(ni);
+				if (near != null) {
+					candidates.addAll(near);
+				}
+				addLaterHosts(ni, ni.getNearInterfaces(),
+						candidates);
+				for (Connection con : ni.getConnections()) {
+					addLaterHosts(ni, Collections.singletonList(
+							con.getOtherInterface(ni)), candidates);
+				}
+
+				examined.clear();
+				for (int j=0, m = candidates.size(); j < m; j++) {
+					NetworkInterface other = candidates.get(j);
+					if (examined.add(other) &&
+							other.getHost().isRadioActive()) {
+						findCrossings(ni, other, startTime, duration);
+					}
+				}
+			}
+		}
+
+		Collections.sort(events, EVENT_ORDER);
+	}
+
+	/**
+	 * Updates the locations of all interfaces to the connectivity optimizers
+	 */
+	private void updateLocations() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			for (NetworkInterface ni : hosts.get(i).getInterfaces()) {
+				ni.updateLocation();
+			}
+		}
+	}
+
+	/**
+	 * Adds the interfaces whose hosts have a bigger address than the host
+	 * of the given interface to a list, so that every pair is examined from
+	 * one end only
+	 * @param ni The interface
+	 * @param from The interfaces to add
+	 * @param to The list to add the interfaces to
+	 */
+	private void addLaterHosts(NetworkInterface ni,
+			Collection<NetworkInterface> from, List<NetworkInterface> to) {
+		int address = ni.getHost().getAddress();
+		for (NetworkInterface other : from) {
+			if (other.getHost().getAddress() > address) {
+				to.add(other);
+			}
+		}
+	}
+
+	/**
+	 * Finds the moments when the distance of two interfaces' hosts crosses
+	 * the smaller of their transmit ranges during the step and adds the
+	 * changes of the connection state as events
+	 * @param a The first interface
+	 * @param b The second interface
+	 * @param startTime Sim time at the start of the step
+	 * @param duration Duration of the step
+	 */
+	private void findCrossings(NetworkInterface a, NetworkInterface b,
+			double startTime, double duration) {
+		StepTrajectory ta = a.getHost().getTrajectory();
+		StepTrajectory tb = b.getHost().getTrajectory();
+		double range = Math.min(a.getTransmitRange(), b.getTransmitRange());
+		double range2 = range * range;
+		boolean connected = a.isConnected(b);
+
+		double t0 = 0;
+		double dx0 = tb.getX(0) - ta.getX(0);
+		double dy0 = tb.getY(0) - ta.getY(0);
+		boolean inRange = dx0 * dx0 + dy0 * dy0 <= range2;
+		if (inRange != connected) {
+			addEvent(a, b, startTime, inRange);
+			connected = inRange;
+		}
+
+		int ia = 1;
+		int ib = 1;
+		while (t0 < duration) {
+			/* next point of either trajectory is the end of the segment */
+			double t1 = duration;
+			while (ia < ta.size() && ta.getTime(ia) <= t0) {
+				ia++;
+			}
+			while (ib < tb.size() && tb.getTime(ib) <= t0) {
+				ib++;
+			}
+			if (ia < ta.size()) {
+				t1 = Math.min(t1, ta.getTime(ia));
+			}
+			if (ib < tb.size()) {
+				t1 = Math.min(t1, tb.getTime(ib));
+			}
+
+			double dx1 = tb.getX(t1) - ta.getX(t1);
+			double dy1 = tb.getY(t1) - ta.getY(t1);
+			double wx = dx1 - dx0;
+			double wy = dy1 - dy0;
+
+			/* |d0 + w*u| = range, u in [0,1] over the segment */
+			double qa = wx * wx + wy * wy;
+			double qb = 2 * (dx0 * wx + dy0 * wy);
+			double qc = dx0 * dx0 + dy0 * dy0 - range2;
+			double disc = qb * qb - 4 * qa * qc;
+			if (qa > 0 && disc > 0) {
+				double sq = Math.sqrt(disc);
+				double enter = (-qb - sq) / (2 * qa);
+				double exit = (-qb + sq) / (2 * qa);
+				if (enter > 0 && enter <= 1 && !connected) {
+					addEvent(a, b, startTime + t0 + enter * (t1 - t0), true);
+					connected = true;
+				}
+				if (exit >= 0 && exit < 1 && connected) {
+					addEvent(a, b, startTime + t0 + exit * (t1 - t0), false);
+					connected = false;
+				}
+			}
+
+			t0 = t1;
+			dx0 = dx1;
+			dy0 = dy1;
+		}
+
+		/* the state at the end must match the range check of the hosts'
+		 * final locations also when rounding errors disagree */
+		inRange = dx0 * dx0 + dy0 * dy0 <= range2;
+		if (inRange != connected) {
+			addEvent(a, b, startTime + duration, inRange);
+		}
+	}
+
+	private void addEvent(NetworkInterface from, NetworkInterface to,
+			double time, boolean up) {
+		events.add(new ContactEvent(from, to, time, up));
+	}
+
+	/**
+	 * Returns the time of the next contact event of the step
+	 * @return The time of the next event or Double.MAX_VALUE if all the
+	 * events of the step have been applied
+	 */
+	double nextEventTime() {
+		return nextEvent < events.size() ? events.get(nextEvent).time :
+			Double.MAX_VALUE;
+	}
+
+	/**
+	 * Applies the next contact event of the step: creates or destroys the
+	 * connection of the event's interfaces. The sim time must be set to
+	 * the event's time before this.
+	 * @return The hosts whose connections changed
+	 */
+	DTNHost[] applyNextEvent() {
+		ContactEvent e = events.get(nextEvent++);
+		if (e.up) {
+			e.from.createConnection(e.to);
+		}
+		else {
+			e.from.destroyConnection(e.to);
+		}
+		return new DTNHost[] {e.from.getHost(), e.to.getHost()};
+	}
+
+	/**
+	 * A change in the connection state of two interfaces
+	 */
+	private static class ContactEvent {
+		private final NetworkInterface from;
+		private final NetworkInterface to;
+		private final double time;
+		private final boolean up;
+
+		public ContactEvent(NetworkInterface from, NetworkInterface to,
+				double time, boolean up) {
+			this.from = from;
+			this.to = to;
+			this.time = time;
+			this.up = up;
+		}
+	}
+}
@@ -4,16 +4,19 @@
  */
 package core;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A message that is created at a node or passed between nodes.
  */
-public class Message implements Comparable<Message> {
+public class Message implements Comparable<Message>, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
 	private DTNHost from;
@@ -24,8 +27,14 @@ public class Message implements Comparable<Message> {
 	private int size;
 	/** List of nodes this message has passed */
 	private List<DTNHost> path;
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** Next unique identifier to be given (per simulation run) */
+	private static final RunLocal<AtomicInteger> nextUniqueId =
+		new RunLocal<AtomicInteger>() {
+			@Override
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger(0);
+			}
+		};
 	/** Unique ID of this message */
 	private int uniqueId;
 	/** The time this message was received */
@@ -68,7 +77,7 @@ public class Message implements Comparable<Message> {
 		this.id = id;
 		this.size = size;
 		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		this.uniqueId = nextUniqueId.get().getAndIncrement();
 
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -78,7 +87,6 @@ public class Message implements Comparable<Message> {
 		this.properties = null;
 		this.appID = null;
 
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 
@@ -256,21 +264,43 @@ public class Message implements Comparable<Message> {
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.path.clear();
+		for (int i=0, n = m.path.size(); i < n; i++) {
+			this.path.add(m.path.get(i));
+		}
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
 		this.appID = m.appID;
 
+		if (this.properties != null) {
+			this.properties.clear();
+		}
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
+			for (Map.Entry<String, Object> e : m.properties.entrySet()) {
+				updateProperty(e.getKey(), e.getValue());
 			}
 		}
 	}
 
+	/**
+	 * Makes this message a replica of another message: sets it to the same
+	 * state that {@link #replicate()} gives to a new message, but reuses
+	 * this object and its path list and properties map. Must only be used
+	 * for messages that nobody else refers to.
+	 * @param m The message to replicate
+	 */
+	void replicateFrom(Message m) {
+		this.from = m.from;
+		this.to = m.to;
+		this.id = m.id;
+		this.size = m.size;
+		this.uniqueId = nextUniqueId.get().getAndIncrement();
+		this.timeReceived = SimClock.getTime();
+		copyFrom(m);
+	}
+
 	/**
 	 * Adds a generic property for this message. The key can be any string but
 	 * it should be such that no other class accidently uses the same value.
@@ -343,7 +373,7 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		nextUniqueId.remove();
 	}
 
 	/**
@@ -4,11 +4,13 @@
  */
 package core;
 
+import java.io.Serializable;
+
 /**
  * This interface should be implemented by classes that want to be notified
  * of variable value changes in ModuleCommunicationBuses.
  */
-public interface ModuleCommunicationListener {
+public interface ModuleCommunicationListener extends Serializable {
 
 	/**
 	 * This method is called whenever a variable, whose changes the module has
@@ -5,9 +5,15 @@
 package core;
 
 import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityKdTree;
+import interfaces.ConnectivityNeighbourLists;
 import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.NearPairHandler;
+import interfaces.SparseConnectivityGrid;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
@@ -19,6 +25,8 @@ import util.ActivenessHandler;
  * Network interface of a DTNHost. Takes care of connectivity among hosts.
  */
 abstract public class NetworkInterface implements ModuleCommunicationListener {
+	private static final long serialVersionUID = 1L;
+
 	/** transmit range -setting id ({@value})*/
 	public static final String TRANSMIT_RANGE_S = "transmitRange";
 	/** transmit speed -setting id ({@value})*/
@@ -49,11 +57,20 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
 
-	private static Random rng;
+	/** random number generator for jitter and scan times (per run) */
+	private static final RunLocal<Random> rng = new RunLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random(0);
+		}
+	};
 	protected DTNHost host = null;
 
 	protected String interfacetype;
 	protected List<Connection> connections; // connected hosts
+	/** list of the near interfaces; reused by every
+	 * {@link #getNearInterfaces()} call */
+	private transient List<NetworkInterface> nearInterfaces;
 	private List<ConnectionListener> cListeners = null; // list of listeners
 	private int address; // network interface address
 	protected double transmitRange;
@@ -70,17 +87,47 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private int activenessJitterMax;
 	/** this interface's activeness jitter value */
 	private int activenessJitterValue;
+	/** number of range checks made by this interface */
+	private long nrofRangeChecks;
+	/** number of connections created by this interface */
+	private long nrofConnectionsCreated;
+
+	/** connections found to be out of range by {@link #findLinkChanges()} */
+	private List<Connection> linksDown;
+	/** interfaces found to be within range by {@link #findLinkChanges()} */
+	private List<NetworkInterface> linksUp;
+	/** have the links up been found already by {@link #findNearLinks(
+	 * ConnectivityOptimizer)} */
+	private transient boolean nearLinksFound;
+
+	/** comparator that orders interfaces by their hosts' addresses */
+	private static final Comparator<NetworkInterface> ADDRESS_ORDER =
+		new Comparator<NetworkInterface>() {
+			public int compare(NetworkInterface i1, NetworkInterface i2) {
+				return i1.getHost().getAddress() - i2.getHost().getAddress();
+			}
+		};
+
+	/** adds the pairs of interfaces within range of each other that are
+	 * not connected to the links up of both interfaces */
+	private static final NearPairHandler LINK_FINDER = new NearPairHandler() {
+		public void nearPair(NetworkInterface ni1, NetworkInterface ni2) {
+			if (!ni1.isConnected(ni2)) {
+				ni1.linksUp.add(ni2);
+				ni2.linksUp.add(ni1);
+			}
+		}
+	};
 
 	static {
 		DTNSim.registerForReset(NetworkInterface.class.getCanonicalName());
-		reset();
 	}
 
 	/**
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		rng = new Random(0);
+		rng.remove();
 	}
 
 	/**
@@ -118,14 +165,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.ah = ni.ah;
 
 		if (ni.activenessJitterMax > 0) {
-			this.activenessJitterValue = rng.nextInt(ni.activenessJitterMax);
+			this.activenessJitterValue = rng.get().nextInt(ni.activenessJitterMax);
 		} else {
 			this.activenessJitterValue = 0;
 		}
 
 		this.scanInterval = ni.scanInterval;
 		/* draw lastScanTime of [0 -- scanInterval] */
-		this.lastScanTime = rng.nextDouble() * this.scanInterval;
+		this.lastScanTime = rng.get().nextDouble() * this.scanInterval;
 	}
 
 	/**
@@ -155,8 +202,26 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 
 		if (transmitRange > 0) {
-			optimizer = ConnectivityGrid.ConnectivityGridFactory(
-					this.interfacetype.hashCode(), transmitRange);
+			Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+			if (s.getBoolean(ConnectivityKdTree.KD_TREE_S, false)) {
+				optimizer = ConnectivityKdTree.ConnectivityKdTreeFactory(
+						this.interfacetype.hashCode());
+			}
+			else if (s.getBoolean(
+					ConnectivityNeighbourLists.NEIGHBOUR_LISTS_S, false)) {
+				optimizer = ConnectivityNeighbourLists.
+					ConnectivityNeighbourListsFactory(
+						this.interfacetype.hashCode(), transmitRange);
+			}
+			else if (s.getBoolean(SparseConnectivityGrid.SPARSE_GRID_S,
+					false)) {
+				optimizer = SparseConnectivityGrid.SparseConnectivityGridFactory(
+						this.interfacetype.hashCode(), transmitRange);
+			}
+			else {
+				optimizer = ConnectivityGrid.ConnectivityGridFactory(
+						this.interfacetype.hashCode(), transmitRange);
+			}
 			optimizer.addInterface(this);
 		} else {
 			optimizer = null;
@@ -224,6 +289,64 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 
+	/**
+	 * Returns the interfaces that are near this interface according to the
+	 * connectivity optimizer (see
+	 * {@link ConnectivityOptimizer#addNearInterfaces(NetworkInterface,
+	 * List)}). The same list is reused by every call, so the list must not
+	 * be used after the next call.
+	 * @return The near interfaces
+	 */
+	protected List<NetworkInterface> getNearInterfaces() {
+		if (this.nearInterfaces == null) {
+			this.nearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		this.nearInterfaces.clear();
+		if (this.optimizer != null) {
+			this.optimizer.addNearInterfaces(this, this.nearInterfaces);
+		}
+		return this.nearInterfaces;
+	}
+
+	/**
+	 * Returns the other interfaces that are within range of this interface
+	 * according to the connectivity optimizer (see
+	 * {@link ConnectivityOptimizer#addInterfacesInRange(NetworkInterface,
+	 * List)}). The same list is reused by every call and by
+	 * {@link #getNearInterfaces()}, so the list must not be used after the
+	 * next call.
+	 * @return The interfaces within range
+	 */
+	protected List<NetworkInterface> getInterfacesInRange() {
+		if (this.nearInterfaces == null) {
+			this.nearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		this.nearInterfaces.clear();
+		if (this.optimizer != null) {
+			this.nrofRangeChecks += this.optimizer.addInterfacesInRange(this,
+					this.nearInterfaces);
+		}
+		return this.nearInterfaces;
+	}
+
+	/**
+	 * Returns the number of times this interface has checked whether
+	 * another interface is within range, i.e., the number of connections
+	 * examined (see {@link PerformanceMonitor})
+	 * @return The number of range checks
+	 */
+	public long getNrofRangeChecks() {
+		return this.nrofRangeChecks;
+	}
+
+	/**
+	 * Returns the number of connections this interface has created
+	 * @return The number of created connections
+	 */
+	public long getNrofConnectionsCreated() {
+		return this.nrofConnectionsCreated;
+	}
+
 	/**
 	 * Returns true if the interface is on at the moment (false if not)
 	 * @return true if the interface is on at the moment (false if not)
@@ -284,6 +407,35 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return true;
 	}
 
+	/**
+	 * Returns the earliest sim time when the state of this interface may
+	 * change on its own: activeness changes, next scanning round starts or
+	 * an ongoing transfer finishes.
+	 * @return The time of the next possible change or Double.MAX_VALUE if
+	 * the interface is idle until its connectivity changes
+	 */
+	public double getNextActivityTime() {
+		double now = SimClock.getTime();
+		double next = Double.MAX_VALUE;
+
+		if (ah != null) {
+			next = ah.getNextChangeTime(this.activenessJitterValue);
+		}
+
+		if (scanInterval > 0.0) {
+			next = Math.min(next, Math.max(now, lastScanTime + scanInterval));
+		}
+
+		for (int i=0, n = this.connections.size(); i < n; i++) {
+			Connection c = this.connections.get(i);
+			if (c.isTransferring()) {
+				next = Math.min(next, c.getTransferDoneTime());
+			}
+		}
+
+		return next;
+	}
+
 	/**
 	 * Returns true if one of the connections of this interface is transferring
 	 * data
@@ -316,6 +468,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @param anotherInterface The interface to connect to
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
+		this.nrofConnectionsCreated++;
 		this.connections.add(con);
 		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
 
@@ -354,14 +507,16 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @return True if the interface is within range, false if not
 	 */
 	protected boolean isWithinRange(NetworkInterface anotherInterface) {
+		this.nrofRangeChecks++;
 		double smallerRange = anotherInterface.getTransmitRange();
 		double myRange = getTransmitRange();
 		if (myRange < smallerRange) {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+		return this.host.getPositions().isWithinDistance(
+				this.host.getAddress(), anotherInterface.getHost().getAddress(),
+				smallerRange);
 	}
 
 	/**
@@ -398,6 +553,135 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	abstract public void update();
 
+	/**
+	 * Updates the location of this interface to the connectivity optimizer.
+	 * Must be called (serially) for all interfaces before
+	 * {@link #findConnectivityChanges()}.
+	 */
+	public void updateLocation() {
+		if (optimizer != null) {
+			optimizer.updateLocation(this);
+		}
+	}
+
+	/**
+	 * First phase of the two-phase connectivity update (see
+	 * {@link World#CONNECTIVITY_THREADS_S}). Finds the changes in the
+	 * connectivity of this interface without changing the state of any
+	 * interface or connection, so this can be called concurrently for
+	 * different interfaces. This implementation does nothing; interfaces
+	 * that support the two-phase update should override this and
+	 * {@link #applyConnectivityChanges()}.
+	 */
+	public void findConnectivityChanges() {
+		/* all work is done by update() in the second phase */
+	}
+
+	/**
+	 * Second phase of the two-phase connectivity update. Applies the
+	 * changes found by {@link #findConnectivityChanges()}. Called serially
+	 * for all interfaces in the order of host addresses. This
+	 * implementation simply calls {@link #update()}.
+	 */
+	public void applyConnectivityChanges() {
+		update();
+	}
+
+	/**
+	 * Finds the current connections whose other end is out of range and the
+	 * near interfaces that are within range but not connected to this
+	 * interface. Doesn't change the state of any interface, so this can be
+	 * called concurrently for different interfaces. The changes can be
+	 * applied using {@link #applyLinkChanges()}.
+	 */
+	protected void findLinkChanges() {
+		initLinkChanges();
+		linksDown.clear();
+		if (nearLinksFound) {
+			nearLinksFound = false;
+		}
+		else {
+			linksUp.clear();
+			if (optimizer == null) {
+				return; /* nothing to do */
+			}
+
+			List<NetworkInterface> inRange = getInterfacesInRange();
+			for (int i=0, n = inRange.size(); i < n; i++) {
+				NetworkInterface ni = inRange.get(i);
+				if (!isConnected(ni)) {
+					linksUp.add(ni);
+				}
+			}
+		}
+
+		for (int i=0, n = this.connections.size(); i < n; i++) {
+			Connection con = this.connections.get(i);
+			if (!isWithinRange(con.getOtherInterface(this))) {
+				linksDown.add(con);
+			}
+		}
+		Collections.sort(linksUp, ADDRESS_ORDER);
+	}
+
+	/**
+	 * Creates the lists of the link changes if they don't exist yet
+	 */
+	private void initLinkChanges() {
+		if (linksDown == null) {
+			linksDown = new ArrayList<Connection>();
+			linksUp = new ArrayList<NetworkInterface>();
+		}
+	}
+
+	/**
+	 * Finds the near interfaces that are within range but not connected
+	 * for all the interfaces of a connectivity optimizer by examining
+	 * every pair of near interfaces only once (see
+	 * {@link ConnectivityOptimizer#forEachPairInRange(NearPairHandler)}),
+	 * instead of every interface examining its near interfaces in
+	 * {@link #findLinkChanges()}. The next {@link #findLinkChanges()} call
+	 * of every interface uses the links found here. Must be called after
+	 * the locations of all interfaces have been updated and before any
+	 * interface's {@link #findLinkChanges()}.
+	 * @param optimizer The connectivity optimizer
+	 */
+	static void findNearLinks(ConnectivityOptimizer optimizer) {
+		for (NetworkInterface ni : optimizer.getAllInterfaces()) {
+			ni.initLinkChanges();
+			ni.linksUp.clear();
+			ni.nearLinksFound = true;
+		}
+		optimizer.forEachPairInRange(LINK_FINDER);
+	}
+
+	/**
+	 * Applies the changes found by {@link #findLinkChanges()}: tears down
+	 * the connections that went out of range and tries to connect (using
+	 * {@link #connect(NetworkInterface)}) to the interfaces that came within
+	 * range. Connections that were already torn down or created from the
+	 * other end are skipped.
+	 */
+	protected void applyLinkChanges() {
+		if (linksDown == null) {
+			return; /* no changes found */
+		}
+
+		for (int i=0, n = linksDown.size(); i < n; i++) {
+			Connection con = linksDown.get(i);
+			if (con.isUp()) {
+				disconnect(con, con.getOtherInterface(this));
+				connections.remove(con);
+			}
+		}
+		for (int i=0, n = linksUp.size(); i < n; i++) {
+			connect(linksUp.get(i));
+		}
+
+		linksDown.clear();
+		linksUp.clear();
+	}
+
 	/**
 	 * Notifies all the connection listeners about a change in connections.
 	 * @param type Type of the change (e.g. {@link #CON_DOWN} )
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import interfaces.ConnectivityOptimizer;
+import routing.MessageRouter;
+
+/**
+ * <P>Timers and counters of the phases of {@link World#update()}: external
+ * event processing, host movement, connectivity updates of the interfaces,
+ * router updates and update listener (report) callbacks. Makes it possible
+ * to tell whether a run is mobility, connectivity or routing bound without
+ * attaching a profiler.</P>
+ * <P>The counters (events processed, connections examined and created,
+ * transfers tried and started) are always collected. The phase timers are
+ * collected only when the monitor is enabled, either with the
+ * {@link #PERFORMANCE_MONITOR_S} setting or by the
+ * {@link report.PerformanceReport}. An enabled monitor is also registered
+ * to the platform MBean server as {@link #MBEAN_NAME}, so the progress of
+ * a run can be followed with any JMX console.</P>
+ */
+public class PerformanceMonitor implements PerformanceMonitorMBean {
+	/** Should the phase timers be collected and exposed using JMX -setting
+	 * id ({@value}) in the {@link World#OPTIMIZATION_SETTINGS_NS} namespace.
+	 * Boolean. Default is false. */
+	public static final String PERFORMANCE_MONITOR_S = "performanceMonitor";
+	/** Object name of the monitor's MBean ({@value}) */
+	public static final String MBEAN_NAME = "core:type=PerformanceMonitor";
+
+	/** phase of processing external events */
+	public static final int EVENTS = 0;
+	/** phase of moving the hosts */
+	public static final int MOVEMENT = 1;
+	/** phase of updating the connectivity of the interfaces */
+	public static final int CONNECTIVITY = 2;
+	/** phase of updating the routers */
+	public static final int ROUTING = 3;
+	/** phase of informing the update listeners */
+	public static final int LISTENERS = 4;
+	/** names of the phases */
+	public static final String[] PHASE_NAMES = {"events", "movement",
+		"connectivity", "routing", "listeners"};
+
+	private final List<DTNHost> hosts;
+	/** cumulative time (nanoseconds) spent in each phase */
+	private final long[] phaseNanos;
+	private long updates;
+	private long eventsProcessed;
+	private boolean enabled;
+
+	/**
+	 * Constructor.
+	 * @param hosts The hosts of the world
+	 */
+	public PerformanceMonitor(List<DTNHost> hosts) {
+		this.hosts = hosts;
+		this.phaseNanos = new long[PHASE_NAMES.length];
+	}
+
+	/**
+	 * Returns true if the phase timers are collected
+	 * @return true if the monitor is enabled
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Enables the phase timers and registers the monitor to the platform
+	 * MBean server (replacing the monitor of any earlier run)
+	 */
+	public void enable() {
+		if (this.enabled) {
+			return;
+		}
+		this.enabled = true;
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			System.err.println("Warning: can't register performance " +
+					"monitor MBean: " + e);
+		}
+	}
+
+	/**
+	 * Starts timing a phase
+	 * @return The start time to give to {@link #stop(int, long)}
+	 */
+	public long start() {
+		return this.enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Stops timing a phase
+	 * @param phase The phase (e.g., {@link #MOVEMENT})
+	 * @param start The start time returned by {@link #start()} (or by the
+	 * previous call of this method)
+	 * @return The stop time, which can be used as the start time of the
+	 * next phase
+	 */
+	public long stop(int phase, long start) {
+		if (!this.enabled) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		this.phaseNanos[phase] += now - start;
+		return now;
+	}
+
+	/**
+	 * Counts a processed external event
+	 */
+	public void eventProcessed() {
+		this.eventsProcessed++;
+	}
+
+	/**
+	 * Counts a finished world update
+	 */
+	public void updateDone() {
+		this.updates++;
+	}
+
+	/**
+	 * Returns the cumulative time spent in a phase
+	 * @param phase The phase (e.g., {@link #MOVEMENT})
+	 * @return The time in milliseconds
+	 */
+	public double getPhaseTimeMillis(int phase) {
+		return this.phaseNanos[phase] / 1e6;
+	}
+
+	public double getSimTime() {
+		return SimClock.getTime();
+	}
+
+	public long getUpdates() {
+		return this.updates;
+	}
+
+	public double getEventTimeMillis() {
+		return getPhaseTimeMillis(EVENTS);
+	}
+
+	public double getMovementTimeMillis() {
+		return getPhaseTimeMillis(MOVEMENT);
+	}
+
+	public double getConnectivityTimeMillis() {
+		return getPhaseTimeMillis(CONNECTIVITY);
+	}
+
+	public double getRoutingTimeMillis() {
+		return getPhaseTimeMillis(ROUTING);
+	}
+
+	public double getListenerTimeMillis() {
+		return getPhaseTimeMillis(LISTENERS);
+	}
+
+	public long getEventsProcessed() {
+		return this.eventsProcessed;
+	}
+
+	public long getConnectionsExamined() {
+		long sum = 0;
+		List<ConnectivityOptimizer> optimizers =
+			new ArrayList<ConnectivityOptimizer>();
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			for (NetworkInterface ni : hosts.get(i).getInterfaces()) {
+				sum += ni.getNrofRangeChecks();
+				if (ni.optimizer != null && !optimizers.contains(ni.optimizer)) {
+					optimizers.add(ni.optimizer);
+					sum += ni.optimizer.getNrofRangeChecks();
+				}
+			}
+		}
+		return sum;
+	}
+
+	public long getConnectionsCreated() {
+		long sum = 0;
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			for (NetworkInterface ni : hosts.get(i).getInterfaces()) {
+				sum += ni.getNrofConnectionsCreated();
+			}
+		}
+		return sum;
+	}
+
+	public long getTransfersTried() {
+		long sum = 0;
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			MessageRouter r = hosts.get(i).getRouter();
+			sum += r.getNrofTransfersTried();
+		}
+		return sum;
+	}
+
+	public long getTransfersStarted() {
+		long sum = 0;
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			MessageRouter r = hosts.get(i).getRouter();
+			sum += r.getNrofTransfersStarted();
+		}
+		return sum;
+	}
+}
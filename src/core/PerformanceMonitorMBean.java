@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * Management interface of {@link PerformanceMonitor}. The times are
+ * cumulative wall clock times (milliseconds) spent in the phases of
+ * {@link World#update()}.
+ */
+public interface PerformanceMonitorMBean {
+	/** @return current simulation time */
+	public double getSimTime();
+	/** @return number of world updates */
+	public long getUpdates();
+	/** @return time spent processing external events */
+	public double getEventTimeMillis();
+	/** @return time spent moving the hosts */
+	public double getMovementTimeMillis();
+	/** @return time spent updating the connectivity of the interfaces */
+	public double getConnectivityTimeMillis();
+	/** @return time spent updating the routers */
+	public double getRoutingTimeMillis();
+	/** @return time spent in the update listeners (e.g., reports) */
+	public double getListenerTimeMillis();
+	/** @return number of external events processed */
+	public long getEventsProcessed();
+	/** @return number of interface pairs checked for being within range */
+	public long getConnectionsExamined();
+	/** @return number of connections created */
+	public long getConnectionsCreated();
+	/** @return number of times routers tried to start a transfer */
+	public long getTransfersTried();
+	/** @return number of transfers started */
+	public long getTransfersStarted();
+}
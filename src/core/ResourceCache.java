@@ -0,0 +1,343 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <P>Cache of immutable scenario inputs (e.g., maps and points read from
+ * WKT files and external events) that are shared by all simulation runs of
+ * the JVM. Batch runs and concurrent runs that use the same input files
+ * parse the files only once instead of on every run.</P>
+ * <P>The resources are keyed by the kind of the resource and the contents
+ * of the files they are created from, so a changed file is read again
+ * even if its name is the same. The digests of the files are recomputed
+ * only when the size or the modification time of a file changes.</P>
+ * <P>The size of the cache is bounded by the total size of the input files
+ * of the cached resources (see {@link #CACHE_SIZE_S}). When the bound is
+ * exceeded, the least recently used resources are evicted. The resources
+ * are also softly referenced, so the garbage collector can evict them if
+ * the JVM runs out of memory.</P>
+ * <P>The cached resources are shared, so they must not be modified by
+ * their users.</P>
+ */
+public class ResourceCache {
+	/**
+	 * Maximum total size of the input files of the cached resources
+	 * -setting id ({@value}) in the {@link World#OPTIMIZATION_SETTINGS_NS}
+	 * namespace. Supports the kilo (k), mega (M) and giga (G) suffixes.
+	 * Resources whose files are bigger than this are not cached and 0
+	 * disables the cache. Default is {@link #DEFAULT_CACHE_SIZE} bytes.
+	 */
+	public static final String CACHE_SIZE_S = "resourceCacheSize";
+	/** default value for the cache size setting (64 MB) */
+	public static final long DEFAULT_CACHE_SIZE = 64000000;
+
+	/** cached resources by their keys, in least recently used order */
+	private static final LinkedHashMap<String, Entry> entries =
+		new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	/** digests of the files by their canonical paths */
+	private static final Map<String, FileDigest> digests =
+		new HashMap<String, FileDigest>();
+	/** total size of the input files of the cached resources */
+	private static long totalSize = 0;
+	/** loads in progress by the keys of the resources */
+	private static final Map<String, FutureTask<Object>> loading =
+		new HashMap<String, FutureTask<Object>>();
+
+	/**
+	 * Creates a resource from its input files
+	 * @param <T> Type of the resource
+	 */
+	public interface Loader<T> {
+		/**
+		 * Reads the resource
+		 * @return The resource
+		 * @throws IOException if the files couldn't be read
+		 */
+		public T load() throws IOException;
+	}
+
+	/**
+	 * Returns a cached resource or loads it and caches it if it isn't in
+	 * the cache. The resource is loaded outside the lock of the cache, so
+	 * different resources can be loaded concurrently; concurrent requests
+	 * of the same resource wait for the first request to load it.
+	 * @param kind Kind of the resource. Must identify also the way the
+	 * resource is created from the files.
+	 * @param files The files the resource is created from
+	 * @param loader Loader for reading the resource if it isn't cached
+	 * @return The resource
+	 * @throws IOException if the files couldn't be read
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String kind, File[] files,
+			final Loader<T> loader) throws IOException {
+		long maxSize = getMaxSize();
+		long size = getSize(files);
+		if (size < 0 || size > maxSize) {
+			return loader.load(); /* loader reports any missing files */
+		}
+
+		StringBuilder keyBuilder = new StringBuilder(kind);
+		for (File f : files) {
+			keyBuilder.append(':').append(getDigest(f));
+		}
+		String key = keyBuilder.toString();
+
+		FutureTask<Object> task;
+		boolean loadHere = false;
+		synchronized (ResourceCache.class) {
+			Entry entry = entries.get(key);
+			Object value = entry != null ? entry.value.get() : null;
+			if (value != null) {
+				return (T)value;
+			}
+			task = loading.get(key);
+			if (task == null) {
+				task = new FutureTask<Object>(new Callable<Object>() {
+					public Object call() throws IOException {
+						return loader.load();
+					}
+				});
+				loading.put(key, task);
+				loadHere = true;
+			}
+		}
+
+		if (loadHere) {
+			task.run();
+			finishLoading(key, task, size, maxSize);
+		}
+		return (T)getResult(task);
+	}
+
+	/**
+	 * Caches the result of a finished load (unless the load failed) and
+	 * evicts resources if the cache got too big
+	 * @param key Key of the resource
+	 * @param task The finished load
+	 * @param size Total size of the resource's input files
+	 * @param maxSize Maximum size of the cache
+	 */
+	private static synchronized void finishLoading(String key,
+			FutureTask<Object> task, long size, long maxSize) {
+		loading.remove(key);
+		Object value;
+		try {
+			value = task.get();
+		} catch (ExecutionException e) {
+			return; /* failed loads aren't cached */
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		Entry old = entries.put(key, new Entry(value, size));
+		if (old != null) {
+			totalSize -= old.size; /* value was garbage collected */
+		}
+		totalSize += size;
+		evict(maxSize);
+	}
+
+	/**
+	 * Waits for a load to finish and returns the loaded resource
+	 * @param task The load
+	 * @return The resource
+	 * @throws IOException if the files couldn't be read
+	 */
+	private static Object getResult(FutureTask<Object> task)
+			throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting " +
+					"for a resource to load");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new SimError((Exception)cause);
+		}
+	}
+
+	/**
+	 * Returns true if a resource created from the given files would be
+	 * cached (i.e., the files exist and they fit in the cache)
+	 * @param files The files
+	 * @return True if the resource is cacheable
+	 */
+	public static boolean isCacheable(File[] files) {
+		long size = getSize(files);
+		return size >= 0 && size <= getMaxSize();
+	}
+
+	/**
+	 * Returns the total size of files
+	 * @param files The files
+	 * @return The total size or -1 if some of the files doesn't exist
+	 */
+	private static long getSize(File[] files) {
+		long size = 0;
+		for (File f : files) {
+			if (!f.isFile()) {
+				return -1;
+			}
+			size += f.length();
+		}
+		return size;
+	}
+
+	/**
+	 * Removes all resources from the cache
+	 */
+	public static synchronized void clear() {
+		entries.clear();
+		synchronized (digests) {
+			digests.clear();
+		}
+		totalSize = 0;
+	}
+
+	/**
+	 * Returns the number of resources in the cache
+	 * @return The number of resources
+	 */
+	public static synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the maximum size of the cache from the settings of the
+	 * current run
+	 * @return The maximum size
+	 */
+	private static long getMaxSize() {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		if (!s.contains(CACHE_SIZE_S)) {
+			return DEFAULT_CACHE_SIZE;
+		}
+		long maxSize = s.getLong(CACHE_SIZE_S);
+		if (maxSize < 0) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(CACHE_SIZE_S) + ": " + maxSize);
+		}
+		return maxSize;
+	}
+
+	/**
+	 * Evicts the least recently used resources (and the ones that have been
+	 * garbage collected) until the cache size is within the bound
+	 * @param maxSize Maximum size of the cache
+	 */
+	private static void evict(long maxSize) {
+		Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext()) {
+			Entry e = i.next();
+			if (totalSize > maxSize || e.value.get() == null) {
+				totalSize -= e.size;
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the digest of a file's contents
+	 * @param f The file
+	 * @return The digest as a hexadecimal string
+	 * @throws IOException if the file couldn't be read
+	 */
+	static String getDigest(File f) throws IOException {
+		String path = f.getCanonicalPath();
+		FileDigest d;
+		synchronized (digests) {
+			d = digests.get(path);
+		}
+		if (d == null || d.length != f.length() ||
+				d.lastModified != f.lastModified()) {
+			d = new FileDigest(f); /* reads the file outside the lock */
+			synchronized (digests) {
+				digests.put(path, d);
+			}
+		}
+		return d.digest;
+	}
+
+	/**
+	 * A cached resource
+	 */
+	private static class Entry {
+		private final SoftReference<Object> value;
+		/** total size of the resource's input files */
+		private final long size;
+
+		public Entry(Object value, long size) {
+			this.value = new SoftReference<Object>(value);
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Digest of a file's contents with the file's size and modification
+	 * time when the digest was computed
+	 */
+	private static class FileDigest {
+		private final long length;
+		private final long lastModified;
+		private final String digest;
+
+		public FileDigest(File f) throws IOException {
+			this.length = f.length();
+			this.lastModified = f.lastModified();
+
+			MessageDigest md;
+			try {
+				md = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new SimError(e);
+			}
+
+			InputStream in = new FileInputStream(f);
+			try {
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					md.update(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+
+			StringBuilder digest = new StringBuilder();
+			for (byte b : md.digest()) {
+				digest.append(String.format("%02x", b));
+			}
+			this.digest = digest.toString();
+		}
+	}
+}
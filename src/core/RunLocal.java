@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * A variable whose value is local to a simulation run, i.e., to a
+ * {@link SimContext}. Used instead of mutable static fields so that
+ * several runs can be executed concurrently in one JVM. Works like
+ * {@link ThreadLocal}, but the value is shared by all threads that are
+ * bound to the same context.
+ * @param <T> Type of the value
+ */
+public class RunLocal<T> {
+
+	/**
+	 * Returns the initial value of the variable in a context. Called on the
+	 * first {@link #get()} in a context (and after {@link #remove()}). This
+	 * implementation returns null.
+	 * @return The initial value
+	 */
+	protected T initialValue() {
+		return null;
+	}
+
+	/**
+	 * Returns the value of this variable in the current context
+	 * @return The value
+	 */
+	public T get() {
+		return SimContext.getCurrent().getValue(this);
+	}
+
+	/**
+	 * Sets the value of this variable in the current context
+	 * @param value The new value
+	 */
+	public void set(T value) {
+		SimContext.getCurrent().setValue(this, value);
+	}
+
+	/**
+	 * Removes the value of this variable from the current context. The next
+	 * {@link #get()} returns the initial value.
+	 */
+	public void remove() {
+		SimContext.getCurrent().removeValue(this);
+	}
+}
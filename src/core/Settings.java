@@ -8,11 +8,11 @@ import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Properties;
 import java.util.Scanner;
-import java.util.Set;
+import java.util.SortedMap;
 import java.util.Stack;
+import java.util.TreeMap;
 
 import util.Range;
 
@@ -33,8 +33,6 @@ import util.Range;
  * </P>
  */
 public class Settings {
-	/** properties object where the setting files are read into */
-	protected static Properties props;
 	/** file name of the default settings file ({@value}) */
 	public static final String DEF_SETTINGS_FILE ="default_settings.txt";
 
@@ -49,12 +47,6 @@ public class Settings {
 	 * @see #valueFillString(String) */
 	public static final String FILL_DELIMITER = "%%";
 
-	/** Stream where all read settings are written to */
-	private static PrintStream out = null;
-	private static Set<String> writtenSettings = new HashSet<String>();
-
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -91,12 +83,97 @@ public class Settings {
 	 * To disable whole run-index-thing, set index to value smaller than
 	 * zero (e.g. -1). When disabled, run-arrays are returned as normal values,
 	 * including the brackets.
+	 * <P>All settings are resolved for the run index into a snapshot (see
+	 * {@link SettingsSnapshot}) that serves the subsequent requests until
+	 * the settings are changed.</P>
 	 * @param index The run index to use for subsequent settings calls, or
 	 * -1 to disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
+		SimContext context = SimContext.getCurrent();
+		context.runIndex = index;
+		synchronized (context.writtenSettings) {
+			context.writtenSettings.clear();
+		}
+		if (context.settings != null) {
+			context.settingsSnapshot = new SettingsSnapshot(context.settings,
+					index, context.settingsVersion.get());
+		}
+	}
+
+	/**
+	 * Returns the properties object where the setting files of the current
+	 * run ({@link SimContext}) are read into. The properties must not be
+	 * modified directly; use {@link #putProperty(String, String)}.
+	 * @return The properties or null if the settings haven't been initialized
+	 */
+	protected static Properties getProps() {
+		return SimContext.getCurrent().settings;
+	}
+
+	/**
+	 * Sets the properties object of the current run ({@link SimContext})
+	 * @param props The properties
+	 */
+	protected static void setProps(Properties props) {
+		SimContext context = SimContext.getCurrent();
+		context.settingsVersion.incrementAndGet();
+		context.settings = props;
+	}
+
+	/**
+	 * Puts a new setting to the settings of the current run or overrides
+	 * an existing one
+	 * @param name Full name of the setting
+	 * @param value Value of the setting
+	 */
+	protected static void putProperty(String name, String value) {
+		SimContext.getCurrent().settingsVersion.incrementAndGet();
+		getProps().setProperty(name, value);
+	}
+
+	/**
+	 * Returns the settings snapshot of the current run if it is valid for
+	 * the current settings
+	 * @param props The current properties
+	 * @return The snapshot or null if there is no valid snapshot
+	 */
+	private static SettingsSnapshot getSnapshot(Properties props) {
+		SimContext context = SimContext.getCurrent();
+		SettingsSnapshot snapshot = context.settingsSnapshot;
+		if (snapshot != null &&
+				snapshot.isValidFor(props, context.runIndex,
+						context.settingsVersion.get())) {
+			return snapshot;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns all settings of the current run with run array values
+	 * resolved for the current run index
+	 * @return The settings sorted by their names (empty if the settings
+	 * haven't been initialized)
+	 */
+	static SortedMap<String, String> getRunSettings() {
+		return getRunSettings(getProps());
+	}
+
+	/**
+	 * Returns all the given settings with run array values resolved for
+	 * the current run index
+	 * @param props The settings
+	 * @return The settings sorted by their names (empty if props is null)
+	 */
+	static SortedMap<String, String> getRunSettings(Properties props) {
+		SortedMap<String, String> settings = new TreeMap<String, String>();
+		if (props == null) {
+			return settings;
+		}
+		for (String name : props.stringPropertyNames()) {
+			settings.put(name, parseRunSetting(props.getProperty(name).trim()));
+		}
+		return settings;
 	}
 
 	/**
@@ -170,7 +247,7 @@ public class Settings {
 			return null;
 		}
 
-		if (props.getProperty(getFullPropertyName(setting, false)) != null) {
+		if (getProps().getProperty(getFullPropertyName(setting, false)) != null) {
 			return getFullPropertyName(setting, false);
 		}
 
@@ -244,7 +321,7 @@ public class Settings {
 	 * @throws SettingsError If loading the settings file(s) didn't succeed
 	 */
 	public static void init(String propFile) throws SettingsError {
-		String outFile;
+		Properties props;
 		try {
 			if (new File(DEF_SETTINGS_FILE).exists()) {
 				Properties defProperties = new Properties();
@@ -260,20 +337,8 @@ public class Settings {
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
-
-		outFile = props.getProperty(SETTING_OUTPUT_S);
-		if (outFile != null) {
-			if (outFile.trim().length() == 0) {
-				out = System.out;
-			} else {
-				try {
-					out = new PrintStream(new File(outFile));
-				} catch (FileNotFoundException e) {
-					throw new SettingsError("Can't open Settings output file:" +
-							e);
-				}
-			}
-		}
+		setProps(props);
+		initOutput(props.getProperty(SETTING_OUTPUT_S));
 	}
 
 	/**
@@ -288,14 +353,25 @@ public class Settings {
 	 */
 	public static void initFromStream(final InputStream settingsStream)
 	throws SettingsError {
-		props = new Properties();
+		Properties props = new Properties();
 		try {
 			props.load(settingsStream);
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
+		setProps(props);
+		initOutput(props.getProperty(SETTING_OUTPUT_S));
+	}
 
-		String outFile = props.getProperty(SETTING_OUTPUT_S);
+	/**
+	 * Sets the stream where the settings of the current run
+	 * ({@link SimContext}) are written to
+	 * @param outFile Path of the output file, an empty string for standard
+	 * output or null for no output
+	 * @throws SettingsError If the output file can't be opened
+	 */
+	private static void initOutput(String outFile) throws SettingsError {
+		PrintStream out = null;
 		if (outFile != null) {
 			if (outFile.trim().length() == 0) {
 				out = System.out;
@@ -308,6 +384,7 @@ public class Settings {
 				}
 			}
 		}
+		SimContext.getCurrent().settingsOut = out;
 	}
 
 	/**
@@ -318,8 +395,9 @@ public class Settings {
 	 * @see #init(String)
 	 */
 	public static void addSettings(String propFile) throws SettingsError {
+		SimContext.getCurrent().settingsVersion.incrementAndGet();
 		try {
-			props.load(new FileInputStream(propFile));
+			getProps().load(new FileInputStream(propFile));
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
@@ -330,12 +408,19 @@ public class Settings {
 	 * @param setting The string to write
 	 */
 	private static void outputSetting(String setting) {
-		if (out != null && !writtenSettings.contains(setting)) {
-			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+		SimContext context = SimContext.getCurrent();
+		PrintStream out = context.settingsOut;
+		if (out == null) {
+			return;
+		}
+		synchronized (context.writtenSettings) {
+			if (!context.writtenSettings.contains(setting)) {
+				if (context.writtenSettings.size() == 0) {
+					out.println("# Settings for run " + (context.runIndex + 1));
+				}
+				out.println(setting);
+				context.writtenSettings.add(setting);
 			}
-			out.println(setting);
-			writtenSettings.add(setting);
 		}
 	}
 
@@ -389,9 +474,16 @@ public class Settings {
 	 */
 	public String getSetting(String name) {
 		String fullPropName;
+		Properties props = getProps();
 		if (props == null) {
 			init(null);
+			props = getProps();
 		}
+		SettingsSnapshot snapshot = getSnapshot(props);
+		if (snapshot != null) {
+			return getEntry(snapshot, name).getValue();
+		}
+
 		fullPropName = getFullPropertyName(name, false);
 		String value = props.getProperty(fullPropName);
 
@@ -419,6 +511,47 @@ public class Settings {
 		return value;
 	}
 
+	/**
+	 * Returns the snapshot entry of a setting. The setting is looked up
+	 * like in {@link #getSetting(String)}.
+	 * @param snapshot The snapshot
+	 * @param name Name of the setting to get
+	 * @return The entry of the setting
+	 * @throws SettingsError if the setting is not found from either one of
+	 * the namespaces
+	 */
+	private SettingsSnapshot.Entry getEntry(SettingsSnapshot snapshot,
+			String name) {
+		String fullPropName = getFullPropertyName(name, false);
+		SettingsSnapshot.Entry entry = snapshot.get(fullPropName);
+
+		if (entry == null && this.secondaryNamespace != null) {
+			fullPropName = getFullPropertyName(name, true);
+			entry = snapshot.get(fullPropName);
+		}
+
+		if (entry == null) {
+			throw new SettingsError("Can't find setting " +
+					getPropertyNamesString(name));
+		}
+
+		outputSetting(fullPropName + " = " + entry.getValue());
+		return entry;
+	}
+
+	/**
+	 * Returns the snapshot entry of a setting if the settings snapshot of
+	 * the current run is valid
+	 * @param name Name of the setting to get
+	 * @return The entry or null if there is no valid snapshot
+	 * @throws SettingsError if the setting is not found
+	 */
+	private SettingsSnapshot.Entry getEntry(String name) {
+		Properties props = getProps();
+		SettingsSnapshot snapshot = props == null ? null : getSnapshot(props);
+		return snapshot == null ? null : getEntry(snapshot, name);
+	}
+
 	/**
 	 * Returns the given setting if it exists, or defaultValue if the setting
 	 * does not exist
@@ -445,6 +578,7 @@ public class Settings {
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = SimContext.getCurrent().runIndex;
 
 		if (!value.startsWith(RUN_ARRAY_START) ||
 			!value.endsWith(RUN_ARRAY_END) ||
@@ -486,7 +620,12 @@ public class Settings {
 	 * @return Value of the setting as a double
 	 */
 	public double getDouble(String name) {
-		return parseDouble(getSetting(name), name);
+		SettingsSnapshot.Entry entry = getEntry(name);
+		if (entry != null && entry.getNumber() != null) {
+			return entry.getNumber();
+		}
+		return parseDouble(entry != null ? entry.getValue() :
+			getSetting(name), name);
 	}
 
 	/**
@@ -509,7 +648,7 @@ public class Settings {
 	 * @throws SettingsError if the value wasn't a numeric value
 	 * (or the suffix wasn't recognized)
 	 */
-	private double parseDouble(String value, String setting) {
+	static double parseDouble(String value, String setting) {
 		double number;
 		int multiplier = getMultiplier(value);
 
@@ -558,7 +697,7 @@ public class Settings {
 	 * @param value The setting value
 	 * @return The muliplier as a number
 	 */
-	private int getMultiplier(String value) {
+	private static int getMultiplier(String value) {
 		value = value.trim();
 		
 		if (value.endsWith("k")) {
@@ -595,8 +734,20 @@ public class Settings {
 	 * @throws SettingsError if something went wrong with reading
 	 */
 	public String[] getCsvSetting(String name) {
+		SettingsSnapshot.Entry entry = getEntry(name);
+		if (entry != null) {
+			return entry.getCsv().clone();
+		}
+		return splitCsv(getSetting(name));
+	}
+
+	/**
+	 * Splits a comma separated value into its (trimmed) values
+	 * @param csv The comma separated value
+	 * @return The values
+	 */
+	static String[] splitCsv(String csv) {
 		ArrayList<String> values = new ArrayList<String>();
-		String csv = getSetting(name);
 		Scanner s = new Scanner(csv);
 		s.useDelimiter(",");
 
@@ -639,6 +790,11 @@ public class Settings {
 	 * @see #getCsvSetting(String, int)
 	 */
 	public double[] getCsvDoubles(String name, int expectedCount) {
+		SettingsSnapshot.Entry entry = getEntry(name);
+		if (entry != null && entry.getNumbers() != null &&
+				entry.getNumbers().length == expectedCount) {
+			return entry.getNumbers().clone();
+		}
 		return parseDoubles(getCsvSetting(name, expectedCount),name);
 	}
 
@@ -649,6 +805,10 @@ public class Settings {
 	 * @see #getCsvSetting(String)
 	 */
 	public double[] getCsvDoubles(String name) {
+		SettingsSnapshot.Entry entry = getEntry(name);
+		if (entry != null && entry.getNumbers() != null) {
+			return entry.getNumbers().clone();
+		}
 		return parseDoubles(getCsvSetting(name), name);
 	}
 
@@ -694,7 +854,13 @@ public class Settings {
 	 * @throws SettingsError if something went wrong with reading
 	 */
 	public Range[] getCsvRanges(String name) {
-		String[] strRanges = getCsvSetting(name);
+		SettingsSnapshot.Entry entry = getEntry(name);
+		if (entry != null && entry.getRanges() != null) {
+			return entry.getRanges().clone();
+		}
+
+		String[] strRanges = entry != null ? entry.getCsv() :
+			getCsvSetting(name);
 		Range[] ranges = new Range[strRanges.length];
 
 		try {
@@ -706,6 +872,9 @@ public class Settings {
 					name, nfe);
 		}
 
+		if (entry != null) {
+			entry.setRanges(ranges.clone());
+		}
 		return ranges;
 	}
 
@@ -919,6 +1088,12 @@ public class Settings {
 	private Class<?> getClass(String name) {
 		String className = name;
 		Class<?> c;
+		Properties props = getProps();
+		SettingsSnapshot snapshot = props == null ? null : getSnapshot(props);
+
+		if (snapshot != null && (c = snapshot.getClass(className)) != null) {
+			return c;
+		}
 
 		try {
 			c = Class.forName(className);
@@ -927,6 +1102,9 @@ public class Settings {
 					"\n" + e.getMessage(),e);
 		}
 
+		if (snapshot != null) {
+			snapshot.putClass(className, c);
+		}
 		return c;
 	}
 
@@ -971,7 +1149,7 @@ public class Settings {
 	 * @return a String representation of the stored settings
 	 */
 	public String toString() {
-		return props.toString();
+		return String.valueOf(getProps());
 	}
 
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import util.Range;
+
+/**
+ * Snapshot of all settings of a run, resolved for the run index of the run
+ * (see {@link Settings#setRunIndex(int)}). The values are trimmed, the run
+ * arrays are resolved and the numeric and comma separated values are parsed
+ * when the snapshot is created, so {@link Settings} can serve the requests
+ * without looking up and parsing the properties again on every request.
+ * Ranges and classes are parsed and loaded on the first request. The
+ * snapshot is valid only as long as the settings are not changed.
+ */
+class SettingsSnapshot {
+	/** the properties the snapshot was created from */
+	private final Properties props;
+	/** the run index the snapshot was created for */
+	private final int runIndex;
+	/** version of the settings the snapshot was created from */
+	private final int version;
+	/** settings with a (non-empty) value by their full names */
+	private final Map<String, Entry> entries;
+	/** classes by their names */
+	private final Map<String, Class<?>> classes;
+
+	/**
+	 * Creates a snapshot of the given properties
+	 * @param props The properties
+	 * @param runIndex The run index to resolve the run arrays for
+	 * @param version Version of the settings
+	 */
+	SettingsSnapshot(Properties props, int runIndex, int version) {
+		this.props = props;
+		this.runIndex = runIndex;
+		this.version = version;
+		this.entries = new HashMap<String, Entry>();
+		this.classes = new ConcurrentHashMap<String, Class<?>>();
+
+		for (Map.Entry<String, String> e :
+				Settings.getRunSettings(props).entrySet()) {
+			if (e.getValue().length() > 0) {
+				entries.put(e.getKey(), new Entry(e.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Returns true if this snapshot was created from the given settings
+	 * @param props The properties of the settings
+	 * @param runIndex The run index of the settings
+	 * @param version Version of the settings
+	 * @return True if the snapshot is valid for the settings
+	 */
+	boolean isValidFor(Properties props, int runIndex, int version) {
+		return this.props == props && this.runIndex == runIndex &&
+			this.version == version;
+	}
+
+	/**
+	 * Returns the entry of a setting
+	 * @param fullName Full name of the setting
+	 * @return The entry or null if the setting has no value
+	 */
+	Entry get(String fullName) {
+		return entries.get(fullName);
+	}
+
+	/**
+	 * Returns a previously loaded class
+	 * @param name Full name of the class
+	 * @return The class or null if it hasn't been loaded
+	 */
+	Class<?> getClass(String name) {
+		return classes.get(name);
+	}
+
+	/**
+	 * Stores a loaded class
+	 * @param name Full name of the class
+	 * @param c The class
+	 */
+	void putClass(String name, Class<?> c) {
+		classes.put(name, c);
+	}
+
+	/**
+	 * Resolved value of one setting with its pre-parsed forms
+	 */
+	static class Entry {
+		private final String value;
+		private final String[] csv;
+		/** the value as a number (null if it isn't numeric) */
+		private final Double number;
+		/** the comma separated values as numbers (null if not numeric) */
+		private final double[] numbers;
+		/** the comma separated values as ranges (null until parsed) */
+		private volatile Range[] ranges;
+
+		/**
+		 * Creates an entry and parses the value
+		 * @param value The resolved value
+		 */
+		Entry(String value) {
+			this.value = value;
+			this.csv = Settings.splitCsv(value);
+			this.number = parseNumber(value);
+
+			double[] parsed = new double[csv.length];
+			for (int i=0; i < csv.length && parsed != null; i++) {
+				Double d = parseNumber(csv[i]);
+				if (d == null) {
+					parsed = null;
+				}
+				else {
+					parsed[i] = d;
+				}
+			}
+			this.numbers = parsed;
+		}
+
+		/**
+		 * Parses a numeric value
+		 * @param s The value to parse
+		 * @return The number or null if the value isn't a valid number
+		 */
+		private static Double parseNumber(String s) {
+			try {
+				return Settings.parseDouble(s, null);
+			} catch (SettingsError e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Returns the value
+		 * @return The value
+		 */
+		String getValue() {
+			return this.value;
+		}
+
+		/**
+		 * Returns the comma separated values
+		 * @return The values (the array is shared; don't modify)
+		 */
+		String[] getCsv() {
+			return this.csv;
+		}
+
+		/**
+		 * Returns the value as a number
+		 * @return The number or null if the value isn't numeric
+		 */
+		Double getNumber() {
+			return this.number;
+		}
+
+		/**
+		 * Returns the comma separated values as numbers
+		 * @return The numbers (the array is shared; don't modify) or null
+		 * if some of the values aren't numeric
+		 */
+		double[] getNumbers() {
+			return this.numbers;
+		}
+
+		/**
+		 * Returns the comma separated values as ranges if they have been
+		 * parsed already
+		 * @return The ranges (the array is shared; don't modify) or null
+		 */
+		Range[] getRanges() {
+			return this.ranges;
+		}
+
+		/**
+		 * Stores the comma separated values parsed as ranges
+		 * @param ranges The ranges
+		 */
+		void setRanges(Range[] ranges) {
+			this.ranges = ranges;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <P>Checkpoint of the complete state of a simulation run: the simulation
+ * time and the values of all run local variables of classes registered
+ * for resetting (see {@link DTNSim#registerForReset(String)}). These
+ * include the {@link SimScenario} with its {@link World}, hosts, movement
+ * models and paths, routers and their message buffers, connections, event
+ * queues and all random number generator states.</P>
+ * <P>Listeners (e.g. reports) are not part of the checkpoint. A restored
+ * run gets new, empty listener lists where the reports of the restored run
+ * are added, so reports only see the events after the checkpoint time.
+ * Checkpoints can only be restored with the same version of the simulator
+ * and the same settings that were used for writing them.</P>
+ */
+public class SimCheckpoint implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** checkpoint settings namespace ({@value}) */
+	public static final String CHECKPOINT_NS = "Checkpoint";
+	/** simulation time when the checkpoint is written -setting id
+	 * ({@value}). Requires {@link #SAVE_FILE_S}. */
+	public static final String SAVE_TIME_S = "saveTime";
+	/** file where the checkpoint is written -setting id ({@value}) */
+	public static final String SAVE_FILE_S = "saveFile";
+	/** checkpoint file where the simulation is restored from instead of
+	 * starting from the beginning -setting id ({@value}) */
+	public static final String RESTORE_FILE_S = "restoreFile";
+	/** should a restored run replace the routers of the hosts with new
+	 * ones created from its own group settings -setting id ({@value}).
+	 * Boolean valued, default = false.
+	 * @see SimScenario#replaceRouters() */
+	public static final String NEW_ROUTERS_S = "newRouters";
+	/** simulation time where the runs of a batch fork from a shared
+	 * prefix -setting id ({@value}). If set, the simulation is run once up
+	 * to this time and every run of the batch continues from there with
+	 * new routers (see {@link #NEW_ROUTERS_S}). The runs should thus differ
+	 * only by their router settings. */
+	public static final String FORK_TIME_S = "forkTime";
+
+	/** simulation time of the checkpoint */
+	private final double time;
+	/** values of the run local variables keyed by "className.fieldName" */
+	private final Map<String, Object> runValues;
+
+	/**
+	 * Creates a checkpoint of the current simulation run
+	 */
+	private SimCheckpoint() {
+		SimContext context = SimContext.getCurrent();
+		this.time = SimClock.getTime();
+		this.runValues = new LinkedHashMap<String, Object>();
+
+		for (Class<?> c : DTNSim.getResetClasses()) {
+			for (Field f : getRunLocalFields(c)) {
+				RunLocal<?> var = getRunLocal(f);
+				if (context.hasValue(var)) {
+					runValues.put(c.getName() + "." + f.getName(), var.get());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the current simulation run to a file
+	 * @param fileName Path of the file
+	 * @throws SimError If writing the checkpoint failed
+	 */
+	public static void save(String fileName) {
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(fileName));
+			write(out);
+		} catch (IOException e) {
+			throw new SimError("Can't write checkpoint to " + fileName +
+					": " + e, e);
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Restores a simulation run from a checkpoint file to the current
+	 * simulation run
+	 * @param fileName Path of the file
+	 * @throws SimError If reading the checkpoint failed
+	 */
+	public static void restore(String fileName) {
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(fileName));
+			read(in);
+		} catch (IOException e) {
+			throw new SimError("Can't read checkpoint from " + fileName +
+					": " + e, e);
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the current simulation run to a stream
+	 * @param out The stream
+	 * @throws IOException If writing fails (e.g. some part of the state
+	 * isn't serializable)
+	 */
+	public static void write(OutputStream out) throws IOException {
+		SimCheckpoint cp = new SimCheckpoint();
+		CheckpointOutputStream oos = new CheckpointOutputStream(out,
+				SimScenario.getInstance().getListenerLists());
+		oos.writeObject(cp);
+		oos.flush();
+	}
+
+	/**
+	 * Reads a checkpoint from a stream and restores its state to the
+	 * current simulation run
+	 * @param in The stream
+	 * @throws IOException If reading fails
+	 */
+	public static void read(InputStream in) throws IOException {
+		SimCheckpoint cp;
+		try {
+			cp = (SimCheckpoint)new CheckpointInputStream(in).readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid checkpoint: " + e, e);
+		}
+
+		for (Map.Entry<String, Object> e : cp.runValues.entrySet()) {
+			String name = e.getKey();
+			int dot = name.lastIndexOf('.');
+			try {
+				Field f = Class.forName(name.substring(0, dot)).
+					getDeclaredField(name.substring(dot + 1));
+				setValue(getRunLocal(f), e.getValue());
+			} catch (ClassNotFoundException ex) {
+				throw new IOException("Invalid checkpoint: " + ex, ex);
+			} catch (NoSuchFieldException ex) {
+				throw new IOException("Invalid checkpoint: " + ex, ex);
+			}
+		}
+		SimClock.getInstance().setTime(cp.time);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void setValue(RunLocal<T> var, Object value) {
+		var.set((T)value);
+	}
+
+	/**
+	 * Returns the static run local fields of a class
+	 * @param c The class
+	 * @return The fields
+	 */
+	private static List<Field> getRunLocalFields(Class<?> c) {
+		List<Field> fields = new ArrayList<Field>();
+		for (Field f : c.getDeclaredFields()) {
+			if (Modifier.isStatic(f.getModifiers()) &&
+					RunLocal.class.isAssignableFrom(f.getType())) {
+				fields.add(f);
+			}
+		}
+		return fields;
+	}
+
+	private static RunLocal<?> getRunLocal(Field f) {
+		try {
+			f.setAccessible(true);
+			return (RunLocal<?>)f.get(null);
+		} catch (IllegalAccessException e) {
+			throw new SimError("Can't access " + f + ": " + e, e);
+		}
+	}
+
+	private static void close(Closeable c) {
+		if (c == null) {
+			return;
+		}
+		try {
+			c.close();
+		} catch (IOException e) {
+			// nothing sensible to do
+		}
+	}
+
+	/**
+	 * Placeholder for one of the scenario's listener lists in a checkpoint
+	 */
+	private static class ListenerListRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final int index;
+
+		private ListenerListRef(int index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Output stream that writes placeholders instead of the scenario's
+	 * listener lists
+	 */
+	private static class CheckpointOutputStream extends ObjectOutputStream {
+		private final Map<Object, Integer> lists;
+
+		private CheckpointOutputStream(OutputStream out, List<?>[] lists)
+				throws IOException {
+			super(out);
+			this.lists = new IdentityHashMap<Object, Integer>();
+			for (int i = 0; i < lists.length; i++) {
+				this.lists.put(lists[i], i);
+			}
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			Integer index = lists.get(obj);
+			return index != null ? new ListenerListRef(index) : obj;
+		}
+	}
+
+	/**
+	 * Input stream that replaces the listener list placeholders with new,
+	 * empty lists
+	 */
+	private static class CheckpointInputStream extends ObjectInputStream {
+		private final Map<Integer, List<Object>> lists;
+
+		private CheckpointInputStream(InputStream in) throws IOException {
+			super(in);
+			this.lists = new LinkedHashMap<Integer, List<Object>>();
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) {
+			if (!(obj instanceof ListenerListRef)) {
+				return obj;
+			}
+			int index = ((ListenerListRef)obj).index;
+			List<Object> list = lists.get(index);
+			if (list == null) {
+				list = new ArrayList<Object>();
+				lists.put(index, list);
+			}
+			return list;
+		}
+	}
+}
@@ -5,28 +5,26 @@
 package core;
 
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. Every simulation run
+ * ({@link SimContext}) has its own clock; the static methods use the clock
+ * of the current run.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+	private double clockTime = 0.0;
 
-	private SimClock() {}
+	/** Only the simulation context creates clocks */
+	SimClock() {}
 
 	static {
 		DTNSim.registerForReset(SimClock.class.getCanonicalName());
-		reset();
 	}
 
 	/**
 	 * Get the instance of the class that can also change the time.
-	 * @return The instance of this clock
+	 * @return The instance of the current run's clock
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
-		}
-		return clock;
+		return SimContext.getCurrent().getClock();
 	}
 
 	/**
@@ -34,7 +32,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return getInstance().clockTime;
 	}
 
 	/**
@@ -42,7 +40,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getInstance().clockTime);
 	}
 
 	/**
@@ -52,7 +50,7 @@ public class SimClock {
 	 * @return The sim time
 	 */
 	public static String getFormattedTime(int decimals) {
-		return String.format("%." + decimals + "f", clockTime);
+		return String.format("%." + decimals + "f", getInstance().clockTime);
 	}
 
 	/**
@@ -83,6 +81,6 @@ public class SimClock {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		clockTime = 0;
+		getInstance().clockTime = 0;
 	}
 }
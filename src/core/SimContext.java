@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <P>Context of one simulation run. Owns the state that used to be
+ * JVM-global: the simulation clock, the settings with their version, run
+ * index and output stream, and the values of all {@link RunLocal}
+ * variables (e.g. the scenario instance, host address counter, movement
+ * model random number generators and connectivity grids).</P>
+ * <P>Every thread has a current context. By default all threads share the
+ * default context, so single runs (and the GUI) work just like before.
+ * Several runs can be executed concurrently in one JVM by binding a
+ * separate context (see {@link DTNSim#createRunContext(int)}) to every
+ * thread that runs a simulation, using {@link #setCurrent(SimContext)}.
+ * Helper threads of a run (e.g. movement threads of {@link World}) must be
+ * bound to the run's context too.</P>
+ */
+public class SimContext {
+	/** context used by threads that aren't bound to any context */
+	private static final SimContext DEFAULT = new SimContext(null);
+	/** contexts bound to threads */
+	private static final ThreadLocal<SimContext> bound =
+		new ThreadLocal<SimContext>();
+	/** has any context ever been bound to a thread */
+	private static volatile boolean bindingUsed = false;
+
+	/** marker for null values in the run local values map */
+	private static final Object NULL = new Object();
+
+	private final SimClock clock;
+	/** the settings of this run */
+	Properties settings;
+	/** version of the settings; incremented whenever the settings change */
+	final AtomicInteger settingsVersion;
+	/** run index for run-specific settings */
+	int runIndex;
+	/** the settings resolved for the run index (null if not resolved) */
+	volatile SettingsSnapshot settingsSnapshot;
+	/** stream where the read settings are written to (null for none) */
+	volatile PrintStream settingsOut;
+	/** settings that have been written to the settings output */
+	final Set<String> writtenSettings;
+	/** values of the run local variables */
+	private final ConcurrentHashMap<RunLocal<?>, Object> values;
+
+	/**
+	 * Creates a new context. The settings, the run index and the settings
+	 * output are inherited from the parent context. The settings are copied,
+	 * so changing them in one context doesn't affect the other. All other
+	 * state starts from the initial values.
+	 * @param parent The parent context or null for none
+	 */
+	public SimContext(SimContext parent) {
+		this.clock = new SimClock();
+		this.settingsVersion = new AtomicInteger();
+		this.writtenSettings = new HashSet<String>();
+		this.values = new ConcurrentHashMap<RunLocal<?>, Object>();
+		if (parent != null) {
+			this.settings = copySettings(parent.settings);
+			this.runIndex = parent.runIndex;
+			this.settingsOut = parent.settingsOut;
+		}
+	}
+
+	/**
+	 * Returns a copy of settings properties, including their defaults
+	 * @param props The properties to copy (or null)
+	 * @return The copy (or null if props was null)
+	 */
+	private static Properties copySettings(Properties props) {
+		if (props == null) {
+			return null;
+		}
+		Properties copy = new Properties();
+		for (String name : props.stringPropertyNames()) {
+			copy.setProperty(name, props.getProperty(name));
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the context of the current thread
+	 * @return The context bound to the current thread or the default
+	 * context if no context is bound to the thread
+	 */
+	public static SimContext getCurrent() {
+		if (!bindingUsed) {
+			return DEFAULT;
+		}
+		SimContext context = bound.get();
+		return context != null ? context : DEFAULT;
+	}
+
+	/**
+	 * Binds a context to the current thread
+	 * @param context The context to bind or null to use the default context
+	 * @return The context that was bound to the thread before (or null if
+	 * none was)
+	 */
+	public static SimContext setCurrent(SimContext context) {
+		SimContext previous = bound.get();
+		if (context == null) {
+			bound.remove();
+		}
+		else {
+			bindingUsed = true;
+			bound.set(context);
+		}
+		return previous;
+	}
+
+	/**
+	 * Returns the simulation clock of this context
+	 * @return The clock
+	 */
+	public SimClock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Returns the value of a run local variable in this context. The value
+	 * is initialized using {@link RunLocal#initialValue()} on the first
+	 * request.
+	 * @param var The variable
+	 * @return The value of the variable
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T getValue(RunLocal<T> var) {
+		Object value = values.get(var);
+		if (value == null) {
+			value = var.initialValue();
+			Object old = values.putIfAbsent(var, value == null ? NULL : value);
+			if (old != null) {
+				value = old;
+			}
+		}
+		return (T)(value == NULL ? null : value);
+	}
+
+	/**
+	 * Sets the value of a run local variable in this context
+	 * @param var The variable
+	 * @param value The new value
+	 */
+	<T> void setValue(RunLocal<T> var, T value) {
+		values.put(var, value == null ? NULL : value);
+	}
+
+	/**
+	 * Returns true if a run local variable has a value in this context
+	 * @param var The variable
+	 * @return True if the variable has been initialized or set
+	 */
+	boolean hasValue(RunLocal<?> var) {
+		return values.containsKey(var);
+	}
+
+	/**
+	 * Removes the value of a run local variable from this context so that
+	 * it is initialized again on the next request
+	 * @param var The variable
+	 */
+	void removeValue(RunLocal<?> var) {
+		values.remove(var);
+	}
+}
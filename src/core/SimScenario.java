@@ -4,12 +4,16 @@
  */
 package core;
 
+import input.BinaryMovementWriter;
 import input.EventQueue;
 import input.EventQueueHandler;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import movement.MapBasedMovement;
 import movement.MovementModel;
@@ -21,9 +25,11 @@ import routing.MessageRouter;
  * simulation run.
  */
 public class SimScenario implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/** a way to get a hold of this... */
-	private static SimScenario myinstance=null;
+	private static final RunLocal<SimScenario> myinstance =
+		new RunLocal<SimScenario>();
 
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
@@ -106,6 +112,12 @@ public class SimScenario implements Serializable {
 	private boolean simulateConnections;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
+	/** Contact trace cache of the run (null if not used or restored from
+	 * a checkpoint) */
+	private transient ContactTraceCache contactCache;
+	/** Recorder of the host movement (null if not recorded or restored
+	 * from a checkpoint) */
+	private transient BinaryMovementWriter movementWriter;
 
 	/** Global connection event listeners */
 	private List<ConnectionListener> connectionListeners;
@@ -120,11 +132,10 @@ public class SimScenario implements Serializable {
 
 	static {
 		DTNSim.registerForReset(SimScenario.class.getCanonicalName());
-		reset();
 	}
 
 	public static void reset() {
-		myinstance = null;
+		myinstance.remove();
 	}
 
 	/**
@@ -161,19 +172,64 @@ public class SimScenario implements Serializable {
 
 		createHosts();
 
+		if (s.contains(BinaryMovementWriter.RECORD_FILE_S)) {
+			this.movementWriter = new BinaryMovementWriter(s.valueFillString(
+					s.getSetting(BinaryMovementWriter.RECORD_FILE_S)),
+					worldSizeX, worldSizeY);
+			for (DTNHost host : hosts) {
+				host.setMovementRecorder(movementWriter.addHost(host));
+			}
+		}
+
+		boolean replayContacts = false;
+		if (simulateConnections) {
+			this.contactCache = ContactTraceCache.open(endTime);
+		}
+		if (contactCache != null && contactCache.isReplay()) {
+			replayContacts = true;
+		}
+		else if (contactCache != null) {
+			addConnectionListener(contactCache);
+		}
+
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval,
-				updateListeners, simulateConnections,
+				updateListeners, simulateConnections && !replayContacts,
 				eqHandler.getEventQueues());
+		if (contactCache != null) {
+			contactCache.attach(world);
+		}
+	}
+
+	/**
+	 * Informs the scenario that the simulation has ended. Stores the
+	 * recorded contact trace to the contact trace cache (if enabled; see
+	 * {@link ContactTraceCache#CACHE_DIR_S}) and the recorded movement trace
+	 * (if enabled; see {@link BinaryMovementWriter#RECORD_FILE_S}).
+	 */
+	public void simulationDone() {
+		if (contactCache != null) {
+			contactCache.done();
+		}
+		if (movementWriter != null) {
+			try {
+				movementWriter.store();
+			} catch (IOException e) {
+				throw new SimError("Can't store movement trace: " + e, e);
+			}
+			movementWriter = null;
+		}
 	}
 
 	/**
 	 * Returns the SimScenario instance and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
+		SimScenario scenario = myinstance.get();
+		if (scenario == null) {
+			scenario = new SimScenario();
+			myinstance.set(scenario);
 		}
-		return myinstance;
+		return scenario;
 	}
 
 
@@ -252,6 +308,16 @@ public class SimScenario implements Serializable {
 		return this.simMap;
 	}
 
+	/**
+	 * Returns all the global listener lists of this scenario
+	 * @return The connection, message, movement, update and application
+	 * listener lists
+	 */
+	List<?>[] getListenerLists() {
+		return new List<?>[] {connectionListeners, messageListeners,
+				movementListeners, updateListeners, appListeners};
+	}
+
 	/**
 	 * Adds a new connection listener for all nodes
 	 * @param cl The listener
@@ -316,10 +382,19 @@ public class SimScenario implements Serializable {
 	}
 
 	/**
-	 * Creates hosts for the scenario
+	 * Creates hosts for the scenario. The hosts are created in the order of
+	 * their addresses. If more than one movement thread is requested (see
+	 * {@link World#MOVEMENT_THREADS_S}), the initial locations of the hosts
+	 * whose movement models can be used in parallel are requested in
+	 * parallel after all hosts have been created. Those models have their
+	 * own random number streams, so the locations are the same as when
+	 * created serially.
 	 */
 	protected void createHosts() {
 		this.hosts = new ArrayList<DTNHost>();
+		List<DTNHost> deferred = new ArrayList<DTNHost>();
+		Settings os = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		int nrofThreads = os.getInt(World.MOVEMENT_THREADS_S, 1);
 
 		for (int i=1; i<=nrofGroups; i++) {
 			List<NetworkInterface> interfaces =
@@ -329,7 +404,6 @@ public class SimScenario implements Serializable {
 			String gid = s.getSetting(GROUP_ID_S);
 			int nrofHosts = s.getInt(NROF_HOSTS_S);
 			int nrofInterfaces = s.getInt(NROF_INTERF_S);
-			int appCount;
 
 			// creates prototypes of MessageRouter and MovementModel
 			MovementModel mmProto =
@@ -355,40 +429,15 @@ public class SimScenario implements Serializable {
 				interfaces.add(iface);
 			}
 
-			// setup applications
-			if (s.contains(APPCOUNT_S)) {
-				appCount = s.getInt(APPCOUNT_S);
-			} else {
-				appCount = 0;
-			}
-			for (int j=1; j<=appCount; j++) {
-				String appname = null;
-				Application protoApp = null;
-				try {
-					// Get name of the application for this group
-					appname = s.getSetting(GAPPNAME_S+j);
-					// Get settings for the given application
-					Settings t = new Settings(appname);
-					// Load an instance of the application
-					protoApp = (Application)t.createIntializedObject(
-							APP_PACKAGE + t.getSetting(APPTYPE_S));
-					// Set application listeners
-					protoApp.setAppListeners(this.appListeners);
-					// Set the proto application in proto router
-					//mRouterProto.setApplication(protoApp);
-					mRouterProto.addApplication(protoApp);
-				} catch (SettingsError se) {
-					// Failed to create an application for this group
-					System.err.println("Failed to setup an application: " + se);
-					System.err.println("Caught at " + se.getStackTrace()[0]);
-					System.exit(-1);
-				}
-			}
+			addApplications(s, mRouterProto);
 
 			if (mmProto instanceof MapBasedMovement) {
 				this.simMap = ((MapBasedMovement)mmProto).getMap();
 			}
 
+			boolean defer = nrofThreads > 1 && mmProto.isParallelSafe() &&
+				this.movementListeners.isEmpty();
+
 			// creates hosts of ith group
 			for (int j=0; j<nrofHosts; j++) {
 				ModuleCommunicationBus comBus = new ModuleCommunicationBus();
@@ -397,8 +446,153 @@ public class SimScenario implements Serializable {
 				// new instances of movement model and message router
 				DTNHost host = new DTNHost(this.messageListeners,
 						this.movementListeners,	gid, interfaces, comBus,
-						mmProto, mRouterProto);
+						mmProto, mRouterProto, !defer);
 				hosts.add(host);
+				if (defer) {
+					deferred.add(host);
+				}
+			}
+		}
+
+		if (deferred.size() > 0) {
+			ForkJoinPool pool = new ForkJoinPool(nrofThreads);
+			try {
+				pool.invoke(new MovementInitializer(SimContext.getCurrent(),
+						deferred, 0, deferred.size()));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Task that initializes the movement of a range of hosts (see
+	 * {@link DTNHost#initMovement()}); splits the range between threads if
+	 * it is big enough
+	 */
+	@SuppressWarnings("serial")
+	private static class MovementInitializer extends RecursiveAction {
+		/** minimum number of hosts that one task initializes */
+		private static final int MIN_HOSTS_PER_TASK = 16;
+		private final SimContext context;
+		private final List<DTNHost> hosts;
+		private final int from;
+		private final int to;
+
+		/**
+		 * Constructor.
+		 * @param context Context of the simulation run
+		 * @param hosts The hosts
+		 * @param from Index of the first host to initialize
+		 * @param to Index after the last host to initialize
+		 */
+		public MovementInitializer(SimContext context, List<DTNHost> hosts,
+				int from, int to) {
+			this.context = context;
+			this.hosts = hosts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= MIN_HOSTS_PER_TASK) {
+				// pool threads must see the state of the run
+				SimContext previous = SimContext.setCurrent(context);
+				try {
+					for (int i = from; i < to; i++) {
+						hosts.get(i).initMovement();
+					}
+				} finally {
+					SimContext.setCurrent(previous);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new MovementInitializer(context, hosts, from, mid),
+					new MovementInitializer(context, hosts, mid, to));
+		}
+	}
+
+	/**
+	 * Sets up the applications of a host group to a router prototype
+	 * @param s Settings of the group
+	 * @param mRouterProto The router prototype
+	 */
+	private void addApplications(Settings s, MessageRouter mRouterProto) {
+		int appCount;
+		if (s.contains(APPCOUNT_S)) {
+			appCount = s.getInt(APPCOUNT_S);
+		} else {
+			appCount = 0;
+		}
+		for (int j=1; j<=appCount; j++) {
+			String appname = null;
+			Application protoApp = null;
+			try {
+				// Get name of the application for this group
+				appname = s.getSetting(GAPPNAME_S+j);
+				// Get settings for the given application
+				Settings t = new Settings(appname);
+				// Load an instance of the application
+				protoApp = (Application)t.createIntializedObject(
+						APP_PACKAGE + t.getSetting(APPTYPE_S));
+				// Set application listeners
+				protoApp.setAppListeners(this.appListeners);
+				// Set the proto application in proto router
+				//mRouterProto.setApplication(protoApp);
+				mRouterProto.addApplication(protoApp);
+			} catch (SettingsError se) {
+				// Failed to create an application for this group
+				System.err.println("Failed to setup an application: " + se);
+				System.err.println("Caught at " + se.getStackTrace()[0]);
+				System.exit(-1);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the routers of all hosts with new routers created from the
+	 * group settings of the current run. Transfers in progress are aborted,
+	 * the messages of the old routers are discarded and the new routers are
+	 * informed about the connections that are up. This is used for
+	 * continuing a simulation from a checkpoint with different routing.
+	 */
+	public void replaceRouters() {
+		List<MessageRouter> protos = new ArrayList<MessageRouter>();
+		for (int i=1; i<=nrofGroups; i++) {
+			Settings s = new Settings(GROUP_NS+i);
+			s.setSecondaryNamespace(GROUP_NS);
+			MessageRouter mRouterProto =
+				(MessageRouter)s.createIntializedObject(ROUTING_PACKAGE +
+						s.getSetting(ROUTER_S));
+			addApplications(s, mRouterProto);
+			for (int j=0, n=s.getInt(NROF_HOSTS_S); j<n; j++) {
+				protos.add(mRouterProto);
+			}
+		}
+		if (protos.size() != hosts.size()) {
+			throw new SettingsError("Number of hosts (" + protos.size() +
+					") differs from the number of hosts in the checkpoint (" +
+					hosts.size() + ")");
+		}
+
+		for (DTNHost host : hosts) {
+			for (Connection con : host.getConnections()) {
+				if (con.isTransferring()) {
+					con.abortTransfer();
+				}
+			}
+		}
+		for (int i=0; i<hosts.size(); i++) {
+			hosts.get(i).replaceRouter(protos.get(i));
+		}
+		for (DTNHost host : hosts) {
+			for (Connection con : host.getConnections()) {
+				if (con.isUp()) {
+					host.connectionUp(con);
+				}
 			}
 		}
 	}
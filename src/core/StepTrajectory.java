@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Piecewise linear trajectory of a host during one movement step. The
+ * points are the location at the start of the step, the waypoints passed
+ * during the step and the location at the end of the step, with their
+ * times relative to the start of the step. After the last point's time,
+ * the host stays at the last point. Used by {@link KineticConnectivity}.
+ */
+class StepTrajectory {
+	private static final int INITIAL_SIZE = 4;
+
+	private double[] times = new double[INITIAL_SIZE];
+	private double[] xs = new double[INITIAL_SIZE];
+	private double[] ys = new double[INITIAL_SIZE];
+	private int size;
+
+	/**
+	 * Starts a new trajectory
+	 * @param c Location at the start of the step
+	 */
+	public void start(Coord c) {
+		this.size = 0;
+		add(0, c);
+	}
+
+	/**
+	 * Adds a point to the trajectory
+	 * @param time Time of the point from the start of the step
+	 * @param c Location of the point
+	 */
+	public void add(double time, Coord c) {
+		if (size == times.length) {
+			int newSize = size * 2;
+			times = Arrays.copyOf(times, newSize);
+			xs = Arrays.copyOf(xs, newSize);
+			ys = Arrays.copyOf(ys, newSize);
+		}
+		times[size] = time;
+		xs[size] = c.getX();
+		ys[size] = c.getY();
+		size++;
+	}
+
+	/**
+	 * Returns the number of points in the trajectory
+	 * @return The number of points
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the time of a point
+	 * @param index Index of the point
+	 * @return The time from the start of the step
+	 */
+	public double getTime(int index) {
+		return times[index];
+	}
+
+	/**
+	 * Returns the x coordinate of the host at the given time
+	 * @param time Time from the start of the step
+	 * @return The x coordinate
+	 */
+	public double getX(double time) {
+		return interpolate(xs, time);
+	}
+
+	/**
+	 * Returns the y coordinate of the host at the given time
+	 * @param time Time from the start of the step
+	 * @return The y coordinate
+	 */
+	public double getY(double time) {
+		return interpolate(ys, time);
+	}
+
+	private double interpolate(double[] values, double time) {
+		int i = 0;
+		while (i < size - 1 && times[i + 1] <= time) {
+			i++;
+		}
+		if (i == size - 1 || times[i + 1] == times[i]) {
+			return values[i];
+		}
+		double fraction = (time - times[i]) / (times[i + 1] - times[i]);
+		return values[i] + fraction * (values[i + 1] - values[i]);
+	}
+}
@@ -11,6 +11,7 @@ import routing.MessageRouter;
  * is updated every round from the end point transmission speeds
  */
 public class VBRConnection extends Connection {
+	private static final long serialVersionUID = 1L;
 	private int msgsize;
 	private int msgsent;
 	private int currentspeed = 0;
@@ -49,7 +50,7 @@ public class VBRConnection extends Connection {
 			"start transfer of " + m + " from " + from;
 
 		this.msgFromNode = from;
-		Message newMessage = m.replicate();
+		Message newMessage = replicate(m);
 		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
 
 		if (retVal == MessageRouter.RCV_OK) {
@@ -57,6 +58,9 @@ public class VBRConnection extends Connection {
 			this.msgsize = m.getSize();
 			this.msgsent = 0;
 		}
+		else {
+			refused(newMessage);
+		}
 
 		return retVal;
 	}
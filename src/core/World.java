@@ -7,17 +7,25 @@ package core;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import interfaces.ConnectivityOptimizer;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
  * location and connections.
  */
-public class World {
+public class World implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** name space of optimization settings ({@value})*/
 	public static final String OPTIMIZATION_SETTINGS_NS = "Optimization";
 
@@ -37,25 +45,194 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the update intervals during which nothing can happen be skipped
+	 * -setting id ({@value}). Boolean (true/false) variable. Default is false.
+	 * When enabled, the World computes the next time when any event is due,
+	 * any host starts moving, a transfer finishes, a scanning round starts,
+	 * a router needs an update etc. (see {@link DTNHost#getNextActivityTime()})
+	 * and advances the clock directly to the last update interval before
+	 * that time. The clock is advanced in the same steps as without skipping,
+	 * so the simulation results don't change, but {@link UpdateListener}s
+	 * are not informed about the skipped intervals.
+	 */
+	public static final String EVENT_DRIVEN_S = "eventDrivenUpdates";
+
+	/**
+	 * Number of threads used for moving the hosts -setting id ({@value}).
+	 * Integer. Default is 1 (hosts are moved serially). With more threads,
+	 * hosts are moved in parallel if every host's movement model supports
+	 * that (see {@link movement.MovementModel#isParallelSafe()}); this
+	 * requires per host random number streams
+	 * ({@link movement.MovementModel#RNG_PER_HOST_S}). Otherwise, or if
+	 * there are movement listeners, hosts are moved serially. The same
+	 * threads are used for requesting the initial locations of the hosts
+	 * when the scenario is created (see {@link SimScenario#createHosts()}).
+	 * The results are identical regardless of the number of threads.
+	 */
+	public static final String MOVEMENT_THREADS_S = "movementThreads";
+
+	/**
+	 * Number of threads used for detecting connectivity changes -setting id
+	 * ({@value}). Integer. Default is 0, which means that every host's
+	 * interfaces find and apply their connectivity changes when the host is
+	 * updated. With a positive value, connectivity is updated in two phases
+	 * before the hosts are updated: first the link up and down candidates of
+	 * all interfaces are found (in parallel, without changing any state),
+	 * then the changes are applied serially in the order of host addresses
+	 * (see {@link NetworkInterface#findConnectivityChanges()}). The results
+	 * are identical for any positive number of threads, but they differ from
+	 * the results of the default mode where the connectivity changes are
+	 * interleaved with the (possibly randomly ordered) host updates. With
+	 * one thread, the interfaces that came within range are found by
+	 * examining every pair of near interfaces once for the whole
+	 * connectivity optimizer (see
+	 * {@link ConnectivityOptimizer#forEachNearPair(
+	 * ConnectivityOptimizer.NearPairHandler)}) instead of from both ends.
+	 */
+	public static final String CONNECTIVITY_THREADS_S = "connectivityThreads";
+
+	/**
+	 * Should the external events be processed in batches -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false, which
+	 * means that all hosts are updated after every event. When enabled, all
+	 * the events that are due at the same time (or within
+	 * {@link #EVENT_BATCH_EPSILON_S} from the first event of the batch) are
+	 * processed first and only the hosts that the events concern
+	 * (see {@link ExternalEvent#getHostAddresses()}) are updated after
+	 * the batch. Hosts are not moved between events, so only the routers
+	 * of the other hosts would miss the extra updates.
+	 */
+	public static final String BATCH_EVENTS_S = "batchEvents";
+
+	/**
+	 * Maximum time difference of the events in one batch -setting id
+	 * ({@value}). Double (seconds). Default is 0, i.e., only the events
+	 * with the same time are batched. A batch never crosses the end of
+	 * an update interval. See {@link #BATCH_EVENTS_S}.
+	 */
+	public static final String EVENT_BATCH_EPSILON_S = "eventBatchEpsilon";
+
+	/**
+	 * Should the idle hosts be left out of the host updates -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false. When
+	 * enabled, a host is updated only if it has moved during the latest
+	 * movement step or it has some activity due
+	 * (see {@link DTNHost#isIdle()}), e.g., it has connections and
+	 * messages, an ongoing transfer, a TTL check or a scanning round. The
+	 * connectivity of an idle host is kept up to date by the updates of
+	 * the hosts that move. All hosts are updated on the first update.
+	 */
+	public static final String SKIP_IDLE_HOSTS_S = "skipIdleHosts";
+
+	/**
+	 * Should the contact times be computed exactly from the hosts' movement
+	 * -setting id ({@value}). Boolean (true/false) variable. Default is
+	 * false, which means that connectivity changes are detected at the end
+	 * of every update interval. When enabled, the hosts are moved at the
+	 * start of the interval and the moments when the hosts come within and
+	 * go out of range during the interval are solved from their
+	 * trajectories (see {@link KineticConnectivity}). The connections are
+	 * created and torn down at those moments, in time order with the
+	 * external events, and the routers of the two hosts are updated right
+	 * after every change. Interfaces aren't updated otherwise, so their
+	 * scanning intervals are ignored.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+
+	/**
+	 * Maximum length of an adaptive update interval -setting id ({@value}).
+	 * Double (seconds). Default is 0, which means that the update interval
+	 * is always the scenario's update interval. With a bigger value, every
+	 * update interval is as long as it can be without any host coming
+	 * within or going out of range of another host, changing its speed or
+	 * direction, having router or interface activity due (see
+	 * {@link DTNHost#getNextActivityTime()}) or missing an event. The range
+	 * crossings are solved for the near interfaces of every interface from
+	 * the hosts' current velocities; the farther interfaces limit the step
+	 * by the distance covered by the connectivity optimizer (see
+	 * {@link ConnectivityOptimizer#getNearDistance(NetworkInterface)}) at the
+	 * highest current speed. The interval is a multiple of the scenario's
+	 * update interval, which is also the minimum interval, and at most this
+	 * value. The results are the same as with fixed intervals, except for
+	 * the rounding differences of moving the hosts in longer steps, but
+	 * {@link UpdateListener}s are informed only once per adaptive interval.
+	 */
+	public static final String MAX_UPDATE_INTERVAL_S = "maxUpdateInterval";
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
 	private double updateInterval;
-	private SimClock simClock;
+	private transient SimClock simClock;
+	/** context of the simulation run this world belongs to */
+	private transient SimContext context;
 	private double nextQueueEventTime;
 	private EventQueue nextEventQueue;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
+	/** should the hosts be moved */
+	private boolean simulateMovement;
 	/** nodes in the order they should be updated (if the order should be
 	 * randomized; null value means that the order should not be randomized) */
 	private ArrayList<DTNHost> updateOrder;
+	/** random number generator for shuffling the update order; re-seeded
+	 * for every shuffle */
+	private final Random shuffleRng = new Random();
 	/** is cancellation of simulation requested from UI */
 	private boolean isCancelled;
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** should idle update intervals be skipped */
+	private boolean eventDriven;
+	/** end time of the simulation (used when skipping idle intervals) */
+	private double endTime;
+	/** have all hosts been updated at least once */
+	private boolean initialUpdateDone;
+	/** number of threads for moving the hosts */
+	private int movementThreads;
+	/** pool for moving hosts in parallel (null if hosts are moved serially) */
+	private transient ForkJoinPool movementPool;
+	/** has it been checked whether hosts can be moved in parallel */
+	private transient boolean movementModeChecked;
+	/** number of threads for connectivity detection (0 = not two-phase) */
+	private int connectivityThreads;
+	/** pool for finding connectivity changes in parallel (or null) */
+	private transient ForkJoinPool connectivityPool;
+	/** connectivity optimizers of the interfaces; reused by every
+	 * {@link #findNearLinks()} call */
+	private transient List<ConnectivityOptimizer> optimizers;
+	/** timers and counters of the update phases */
+	private transient PerformanceMonitor monitor;
+	/** kinetic connectivity detection (null if not in use) */
+	private transient KineticConnectivity kinetic;
+	/** replayed contact trace (null if the contacts aren't replayed) */
+	private transient ContactReplay replay;
+	/** time at and after which the replayed contacts are not applied yet
+	 * (the end of the update interval until the hosts are moved there) */
+	private transient double replayLimit;
+	/** is an external event being processed */
+	private transient boolean processingEvent;
+	/** should the idle hosts be left out of the updates */
+	private boolean skipIdleHosts;
+	/** should the events be processed in batches */
+	private boolean batchEvents;
+	/** maximum time difference of the events in one batch */
+	private double eventBatchEpsilon;
+	/** hosts that the events of the current batch concern */
+	private transient List<DTNHost> touchedHosts;
+	/** flags of the touched hosts (indexed by host address) */
+	private transient boolean[] isTouched;
+	/** maximum adaptive update interval (0 = adaptive intervals not used) */
+	private double maxUpdateInterval;
+	/** velocity components and speeds of the hosts, reused by every
+	 * {@link #getSafeStep(double)} call */
+	private transient double[] velocityX;
+	private transient double[] velocityY;
+	private transient double[] speeds;
 
 	/**
 	 * Constructor.
@@ -69,11 +246,14 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
+		this.simulateMovement = true;
 		this.eventQueues = eventQueues;
 
+		this.context = SimContext.getCurrent();
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;
+		this.monitor = new PerformanceMonitor(hosts);
 
 		setNextEventQueue();
 		initSettings();
@@ -90,6 +270,50 @@ public class World {
 			randomizeUpdates = s.getBoolean(RANDOMIZE_UPDATES_S);
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
+		eventDriven = s.getBoolean(EVENT_DRIVEN_S, false);
+		movementThreads = s.getInt(MOVEMENT_THREADS_S, 1);
+		if (movementThreads < 1) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(MOVEMENT_THREADS_S) + ": " +
+					movementThreads + ". Must be at least 1");
+		}
+		connectivityThreads = s.getInt(CONNECTIVITY_THREADS_S, 0);
+		if (connectivityThreads < 0) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(CONNECTIVITY_THREADS_S) + ": " +
+					connectivityThreads + ". Must not be negative");
+		}
+		if (connectivityThreads > 1) {
+			connectivityPool = new ForkJoinPool(connectivityThreads);
+		}
+		if (s.getBoolean(PerformanceMonitor.PERFORMANCE_MONITOR_S, false)) {
+			monitor.enable();
+		}
+		skipIdleHosts = s.getBoolean(SKIP_IDLE_HOSTS_S, false);
+		if (s.getBoolean(KINETIC_CONTACTS_S, false)) {
+			kinetic = new KineticConnectivity(hosts);
+		}
+		batchEvents = s.getBoolean(BATCH_EVENTS_S, false);
+		eventBatchEpsilon = s.getDouble(EVENT_BATCH_EPSILON_S, 0);
+		if (eventBatchEpsilon < 0) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(EVENT_BATCH_EPSILON_S) + ": " +
+					eventBatchEpsilon + ". Must not be negative");
+		}
+
+		maxUpdateInterval = s.getDouble(MAX_UPDATE_INTERVAL_S, 0);
+		if (maxUpdateInterval != 0 && maxUpdateInterval < updateInterval) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(MAX_UPDATE_INTERVAL_S) + ": " +
+					maxUpdateInterval + ". Must be 0 or at least the " +
+					"update interval (" + updateInterval + ")");
+		}
+
+		if (eventDriven || maxUpdateInterval > 0) {
+			s.setNameSpace(SimScenario.SCENARIO_NS);
+			endTime = s.getDouble(SimScenario.END_TIME_S);
+			s.restoreNameSpace();
+		}
 
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
@@ -100,6 +324,28 @@ public class World {
 		}
 	}
 
+	/**
+	 * Restores a world from a checkpoint into the current simulation run
+	 * @param in The stream to read the world from
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.context = SimContext.getCurrent();
+		this.simClock = SimClock.getInstance();
+		if (connectivityThreads > 1) {
+			connectivityPool = new ForkJoinPool(connectivityThreads);
+		}
+		this.monitor = new PerformanceMonitor(hosts);
+		Settings s = new Settings(OPTIMIZATION_SETTINGS_NS);
+		if (s.getBoolean(PerformanceMonitor.PERFORMANCE_MONITOR_S, false)) {
+			monitor.enable();
+		}
+		if (s.getBoolean(KINETIC_CONTACTS_S, false)) {
+			kinetic = new KineticConnectivity(hosts);
+		}
+	}
+
 	/**
 	 * Moves hosts in the world for the time given time initialize host
 	 * positions properly. SimClock must be set to <CODE>-time</CODE> before
@@ -131,7 +377,8 @@ public class World {
 		double earliest = nextQueue.nextEventsTime();
 
 		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
+		for (int i=0, n = eventQueues.size(); i < n; i++) {
+			EventQueue eq = eventQueues.get(i);
 			if (eq.nextEventsTime() < earliest){
 				nextQueue = eq;
 				earliest = eq.nextEventsTime();
@@ -145,63 +392,589 @@ public class World {
 	/**
 	 * Update (move, connect, disconnect etc.) all hosts in the world.
 	 * Runs all external events that are due between the time when
-	 * this method is called and after one update interval.
+	 * this method is called and after one update interval (or an adaptive
+	 * interval, see {@link #MAX_UPDATE_INTERVAL_S}).
 	 */
 	public void update () {
+		if (this.eventDriven) {
+			skipIdleIntervals();
+		}
+
 		double runUntil = SimClock.getTime() + this.updateInterval;
+		if (this.maxUpdateInterval > 0 && this.initialUpdateDone) {
+			/* cover the intervals like they would be covered one by one */
+			for (int i = getNrofAdaptiveIntervals(); i > 1; i--) {
+				if (this.updateOrder != null) {
+					shuffleUpdateOrder((int)Math.round(runUntil));
+				}
+				runUntil += this.updateInterval;
+			}
+		}
+		double interval = runUntil - SimClock.getTime();
+		boolean kineticStep = isKineticStep();
+		double nextContact = Double.MAX_VALUE;
+		this.replayLimit = runUntil;
+
+		if (kineticStep) {
+			/* move first to know the contacts during the interval */
+			long start = monitor.start();
+			kinetic.startStep();
+			start = monitor.stop(PerformanceMonitor.CONNECTIVITY, start);
+			moveHosts(interval);
+			start = monitor.stop(PerformanceMonitor.MOVEMENT, start);
+			kinetic.endStep(SimClock.getTime(), interval);
+			monitor.stop(PerformanceMonitor.CONNECTIVITY, start);
+			nextContact = kinetic.nextEventTime();
+		}
+		else if (isKineticReplay()) {
+			nextContact = replay.nextEventTime();
+		}
 
 		setNextEventQueue();
 
 		/* process all events that are due until next interval update */
-		while (this.nextQueueEventTime <= runUntil) {
+		while (this.nextQueueEventTime <= runUntil || nextContact <= runUntil) {
+			if (nextContact <= this.nextQueueEventTime) {
+				applyContactEvent(nextContact);
+				nextContact = kineticStep ? kinetic.nextEventTime() :
+					replay.nextEventTime();
+				continue;
+			}
+			if (this.batchEvents) {
+				processEventBatch(Math.min(runUntil, nextContact));
+				continue;
+			}
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
+			processEvent(this.nextEventQueue.nextEvent());
 			updateHosts(); // update all hosts after every event
 			setNextEventQueue();
 		}
 
-		moveHosts(this.updateInterval);
+		long start;
+		if (!kineticStep) {
+			start = monitor.start();
+			moveHosts(interval);
+			monitor.stop(PerformanceMonitor.MOVEMENT, start);
+		}
 		simClock.setTime(runUntil);
 
+		this.replayLimit = Double.MAX_VALUE;
 		updateHosts();
+		if (this.replay != null) {
+			/* e.g. contacts of hosts that weren't updated (cancelled) */
+			replay.applyEvents(this.replayLimit, this);
+		}
 
 		/* inform all update listeners */
-		for (UpdateListener ul : this.updateListeners) {
-			ul.updated(this.hosts);
+		start = monitor.start();
+		for (int i=0, n = this.updateListeners.size(); i < n; i++) {
+			this.updateListeners.get(i).updated(this.hosts);
+		}
+		monitor.stop(PerformanceMonitor.LISTENERS, start);
+		monitor.updateDone();
+	}
+
+	/**
+	 * Returns true if the connectivity of the current update interval is
+	 * detected kinetically (see {@link #KINETIC_CONTACTS_S})
+	 * @return True if kinetic connectivity detection is in use
+	 */
+	private boolean isKineticStep() {
+		return this.kinetic != null && this.simulateMovement &&
+			this.simulateConnections;
+	}
+
+	/**
+	 * Returns true if the replayed contacts (see {@link ContactTraceCache})
+	 * were detected kinetically and are applied one at a time like the
+	 * contacts of kinetic connectivity detection
+	 * @return True if the contacts are replayed kinetically
+	 */
+	private boolean isKineticReplay() {
+		return this.kinetic != null && this.replay != null;
+	}
+
+	/**
+	 * Returns true if the connectivity of the hosts is updated when the
+	 * hosts are updated, i.e., the connectivity is simulated (or replayed)
+	 * but not detected kinetically
+	 * @return True if the connectivity is updated with the hosts
+	 */
+	private boolean updatesConnectivity() {
+		if (this.replay != null) {
+			return !isKineticReplay();
+		}
+		return this.simulateConnections && !isKineticStep();
+	}
+
+	/**
+	 * Processes an external event
+	 * @param ee The event
+	 */
+	private void processEvent(ExternalEvent ee) {
+		long start = monitor.start();
+		this.processingEvent = true;
+		try {
+			ee.processEvent(this);
+		} finally {
+			this.processingEvent = false;
+		}
+		monitor.stop(PerformanceMonitor.EVENTS, start);
+		monitor.eventProcessed();
+	}
+
+	/**
+	 * Returns true if an external event is being processed, i.e., the
+	 * changes happen because of the event
+	 * @return True if an external event is being processed
+	 */
+	boolean isProcessingEvent() {
+		return this.processingEvent;
+	}
+
+	/**
+	 * Applies the next contact event found by the kinetic connectivity
+	 * detection (or replayed) and updates the routers of the hosts whose
+	 * connectivity changed
+	 * @param time Time of the event
+	 */
+	private void applyContactEvent(double time) {
+		simClock.setTime(time);
+		long start = monitor.start();
+		DTNHost[] changed = this.replay != null ?
+				replay.applyNextEvent(this) : kinetic.applyNextEvent();
+		monitor.stop(PerformanceMonitor.CONNECTIVITY, start);
+		for (DTNHost host : changed) {
+			updateHost(host, false);
+		}
+	}
+
+	/**
+	 * Processes the next batch of events and updates the hosts they concern
+	 * (see {@link #BATCH_EVENTS_S}). If any of the events may concern any
+	 * host, all hosts are updated.
+	 * @param limit Time after which no events are included in the batch
+	 * (the end of the update interval or the next contact event)
+	 */
+	private void processEventBatch(double limit) {
+		double batchEnd = Math.min(this.nextQueueEventTime +
+				this.eventBatchEpsilon, limit);
+		boolean allTouched = false;
+
+		if (this.touchedHosts == null) {
+			this.touchedHosts = new ArrayList<DTNHost>();
+			this.isTouched = new boolean[hosts.size()];
+		}
+
+		do {
+			simClock.setTime(this.nextQueueEventTime);
+			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			processEvent(ee);
+
+			if (!allTouched) {
+				int[] addresses = ee.getHostAddresses();
+				if (addresses == null) {
+					allTouched = true;
+				}
+				else {
+					for (int address : addresses) {
+						setTouched(address);
+					}
+				}
+			}
+			setNextEventQueue();
+		} while (this.nextQueueEventTime <= batchEnd);
+
+		if (allTouched) {
+			updateHosts();
+		}
+		else {
+			updateTouchedHosts();
+		}
+
+		for (int i=0, n = touchedHosts.size(); i < n; i++) {
+			isTouched[touchedHosts.get(i).getAddress()] = false;
 		}
+		touchedHosts.clear();
+	}
+
+	/**
+	 * Marks a host touched by an event of the current batch
+	 * @param address Address of the host
+	 */
+	private void setTouched(int address) {
+		if (!isTouched[address]) {
+			isTouched[address] = true;
+			touchedHosts.add(getNodeByAddress(address));
+		}
+	}
+
+	/**
+	 * Updates the hosts touched by the events of the current batch. The
+	 * hosts are updated in the order of their addresses, or in random order
+	 * if update order randomizing is on. With two-phase connectivity
+	 * detection, only the routers are updated since the hosts haven't moved
+	 * after the last connectivity update.
+	 */
+	private void updateTouchedHosts() {
+		boolean updateInterfaces = updatesConnectivity() &&
+				connectivityThreads == 0;
+
+		Collections.sort(touchedHosts);
+		if (this.updateOrder != null) {
+			shuffleRng.setSeed(SimClock.getIntTime());
+			Collections.shuffle(touchedHosts, shuffleRng);
+		}
+
+		for (int i=0, n = touchedHosts.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			updateHost(touchedHosts.get(i), updateInterfaces);
+		}
+	}
+
+	/**
+	 * Advances the clock over the update intervals during which no events
+	 * are due and no host would do anything if it was updated
+	 * (see {@link #EVENT_DRIVEN_S}). The update order is shuffled for every
+	 * skipped interval just like it would have been when updating the hosts.
+	 * One interval of slack is left before the next activity to be safe
+	 * from rounding differences.
+	 */
+	private void skipIdleIntervals() {
+		if (!initialUpdateDone || (simulateConOnce && simulateConnections)) {
+			return; /* initial connectivity must be simulated first */
+		}
+
+		setNextEventQueue();
+		double next = Math.min(this.nextQueueEventTime, getNextActivityTime());
+		if (this.replay != null) {
+			next = Math.min(next, replay.nextEventTime());
+		}
+		double runUntil = SimClock.getTime() + this.updateInterval;
+
+		while (runUntil + this.updateInterval < next && runUntil < endTime &&
+				!this.isCancelled) {
+			simClock.setTime(runUntil);
+			if (this.updateOrder != null) {
+				shuffleUpdateOrder();
+			}
+			runUntil = SimClock.getTime() + this.updateInterval;
+		}
+	}
+
+	/**
+	 * Returns the number of update intervals the next adaptive interval
+	 * covers (see {@link #MAX_UPDATE_INTERVAL_S}). The adaptive interval
+	 * ends at the latest with the update interval during which the next
+	 * event is due, so the event is processed at the same point of the
+	 * interval as with fixed intervals. The update order is shuffled for
+	 * every covered interval, so the hosts are updated in the same order as
+	 * with fixed intervals.
+	 * @return The number of intervals (at least one)
+	 */
+	private int getNrofAdaptiveIntervals() {
+		double now = SimClock.getTime();
+		double step = Math.min(this.maxUpdateInterval, endTime - now);
+		double nrofIntervals = Math.floor(getSafeStep(step) /
+				this.updateInterval);
+
+		setNextEventQueue();
+		double nextEvent = this.nextQueueEventTime;
+		if (this.replay != null) {
+			nextEvent = Math.min(nextEvent, replay.nextEventTime());
+		}
+		nrofIntervals = Math.min(nrofIntervals, Math.ceil(
+				(nextEvent - now) / this.updateInterval));
+
+		return Math.max(1, (int)nrofIntervals);
+	}
+
+	/**
+	 * Returns the longest time, up to the given limit, during which no host
+	 * changes its speed or direction or has any activity due and no pair of
+	 * interfaces comes within or goes out of range of each other
+	 * @param limit The maximum time
+	 * @return The time (zero or negative if the hosts must be updated on
+	 * the next interval)
+	 */
+	private double getSafeStep(double limit) {
+		double now = SimClock.getTime();
+		int n = hosts.size();
+		if (this.velocityX == null || this.velocityX.length != n) {
+			this.velocityX = new double[n];
+			this.velocityY = new double[n];
+			this.speeds = new double[n];
+		}
+		double[] vx = this.velocityX;
+		double[] vy = this.velocityY;
+		double[] speeds = this.speeds;
+		double maxSpeed = 0;
+
+		for (int i=0; i < n; i++) {
+			DTNHost host = hosts.get(i);
+			vx[i] = host.getVelocityX();
+			vy[i] = host.getVelocityY();
+			speeds[i] = Math.sqrt(vx[i] * vx[i] + vy[i] * vy[i]);
+			maxSpeed = Math.max(maxSpeed, speeds[i]);
+		}
+
+		for (int i=0; i < n && limit > 0; i++) {
+			DTNHost host = hosts.get(i);
+			limit = Math.min(limit, host.getNextMovementChange() - now);
+			limit = Math.min(limit, host.getNextNetworkActivityTime() - now);
+			if (!this.simulateConnections || maxSpeed == 0) {
+				continue;
+			}
+
+			List<NetworkInterface> interfaces = host.getInterfaces();
+			for (int k=0, m = interfaces.size(); k < m; k++) {
+				NetworkInterface ni = interfaces.get(k);
+				if (ni.optimizer == null) {
+					continue;
+				}
+				double range = ni.getTransmitRange();
+				/* interfaces that aren't near must cover the gap first */
+				limit = Math.min(limit, (ni.optimizer.getNearDistance(ni) -
+						range) / (speeds[i] + maxSpeed));
+
+				List<NetworkInterface> near = ni.getNearInterfaces();
+				for (int l=0, nrofNear = near.size(); l < nrofNear; l++) {
+					NetworkInterface other = near.get(l);
+					int j = other.getHost().getAddress();
+					if (other == ni || (vx[i] == vx[j] && vy[i] == vy[j])) {
+						continue; /* the distance stays the same */
+					}
+					limit = Math.min(limit, getRangeCrossingTime(
+							ni.getLocation(), other.getLocation(),
+							vx[j] - vx[i], vy[j] - vy[i],
+							Math.min(range, other.getTransmitRange())));
+				}
+			}
+		}
+
+		return limit;
+	}
+
+	/**
+	 * Returns the time after which the distance of two points moving at
+	 * constant velocities crosses the given range
+	 * @param a Location of the first point
+	 * @param b Location of the second point
+	 * @param wx X component of the velocity of the second point relative to
+	 * the first
+	 * @param wy Y component of the relative velocity
+	 * @param range The range
+	 * @return The time or Double.MAX_VALUE if the distance never crosses
+	 * the range
+	 */
+	private double getRangeCrossingTime(Coord a, Coord b, double wx,
+			double wy, double range) {
+		double px = b.getX() - a.getX();
+		double py = b.getY() - a.getY();
+
+		/* |p + w*t| = range */
+		double qa = wx * wx + wy * wy;
+		double qb = 2 * (px * wx + py * wy);
+		double qc = px * px + py * py - range * range;
+		double disc = qb * qb - 4 * qa * qc;
+		if (disc < 0 || (qc > 0 && qb >= 0)) {
+			return Double.MAX_VALUE; /* never within range */
+		}
+
+		double sq = Math.sqrt(disc);
+		return (qc > 0 ? -qb - sq : -qb + sq) / (2 * qa);
+	}
+
+	/**
+	 * Returns the earliest time when any of the hosts needs to be moved or
+	 * updated (see {@link DTNHost#getNextActivityTime()})
+	 * @return The earliest time of the next activity
+	 */
+	private double getNextActivityTime() {
+		double now = SimClock.getTime();
+		double next = Double.MAX_VALUE;
+
+		for (int i=0, n = hosts.size(); i < n && next > now; i++) {
+			next = Math.min(next, hosts.get(i).getNextActivityTime());
+		}
+
+		return next;
+	}
+
+	/**
+	 * Shuffles the update order of the hosts using the current sim time as
+	 * the seed
+	 */
+	private void shuffleUpdateOrder() {
+		shuffleUpdateOrder(SimClock.getIntTime());
+	}
+
+	/**
+	 * Shuffles the update order of the hosts
+	 * @param seed Seed for the shuffling
+	 */
+	private void shuffleUpdateOrder(int seed) {
+		shuffleRng.setSeed(seed);
+		Collections.shuffle(this.updateOrder, shuffleRng);
 	}
 
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. Idle hosts are skipped if
+	 * {@link #SKIP_IDLE_HOSTS_S} is enabled.
 	 */
 	private void updateHosts() {
+		boolean updateInterfaces = updatesConnectivity();
+		/* replayed hosts don't move, so they can't be told idle */
+		boolean skipIdle = this.skipIdleHosts && this.initialUpdateDone &&
+			this.replay == null;
+
+		if (connectivityThreads > 0 && updateInterfaces) {
+			long start = monitor.start();
+			updateConnectivity();
+			monitor.stop(PerformanceMonitor.CONNECTIVITY, start);
+			updateInterfaces = false; /* only routers are updated below */
+		}
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				DTNHost host = hosts.get(i);
+				if (skipIdle && host.isIdle()) {
+					continue;
+				}
+				updateHost(host, updateInterfaces);
 			}
 		}
 		else { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() :
 				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng);
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				DTNHost host = this.updateOrder.get(i);
+				if (skipIdle && host.isIdle()) {
+					continue;
+				}
+				updateHost(host, updateInterfaces);
 			}
 		}
 
 		if (simulateConOnce && simulateConnections) {
 			simulateConnections = false;
 		}
+		initialUpdateDone = true;
+	}
+
+	/**
+	 * Updates a host. If the performance monitor is enabled, the interface
+	 * and router updates are timed separately.
+	 * @param host The host to update
+	 * @param updateInterfaces Should the interfaces be updated too
+	 */
+	private void updateHost(DTNHost host, boolean updateInterfaces) {
+		if (updateInterfaces && this.replay != null) {
+			long start = monitor.start();
+			replay.applyEvents(host, this.replayLimit, this);
+			monitor.stop(PerformanceMonitor.CONNECTIVITY, start);
+			updateInterfaces = false;
+		}
+		if (!monitor.isEnabled()) {
+			host.update(updateInterfaces);
+			return;
+		}
+
+		long time = monitor.start();
+		boolean radioActive = host.updateInterfaces(updateInterfaces);
+		time = monitor.stop(PerformanceMonitor.CONNECTIVITY, time);
+		if (radioActive) {
+			host.updateRouter();
+			monitor.stop(PerformanceMonitor.ROUTING, time);
+		}
+	}
+
+	/**
+	 * Updates the connectivity of all hosts in two phases (see
+	 * {@link #CONNECTIVITY_THREADS_S}). The hosts list is ordered by the
+	 * host addresses, so the changes are applied in the address order.
+	 */
+	private void updateConnectivity() {
+		int n = hosts.size();
+		if (this.replay != null) {
+			replay.applyEvents(this.replayLimit, this);
+			return;
+		}
+
+		/* connectivity optimizers' data structures aren't thread safe */
+		for (int i=0; i < n; i++) {
+			hosts.get(i).prepareConnectivityUpdate();
+		}
+
+		if (connectivityPool != null) {
+			connectivityPool.invoke(new ConnectivityFinder(0, n));
+		}
+		else {
+			findNearLinks();
+			for (int i=0; i < n; i++) {
+				hosts.get(i).findConnectivityChanges();
+			}
+		}
+
+		for (int i=0; i < n; i++) {
+			hosts.get(i).applyConnectivityChanges();
+		}
+	}
+
+	/**
+	 * Finds the near interfaces that came within range for every
+	 * connectivity optimizer in use by examining every pair of near
+	 * interfaces once (see {@link NetworkInterface#findNearLinks(
+	 * ConnectivityOptimizer)})
+	 */
+	private void findNearLinks() {
+		if (this.optimizers == null) {
+			this.optimizers = new ArrayList<ConnectivityOptimizer>();
+		}
+		this.optimizers.clear();
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			List<NetworkInterface> net = hosts.get(i).getInterfaces();
+			for (int j=0, m = net.size(); j < m; j++) {
+				ConnectivityOptimizer optimizer = net.get(j).optimizer;
+				if (optimizer != null && !optimizers.contains(optimizer)) {
+					optimizers.add(optimizer);
+				}
+			}
+		}
+
+		for (int i=0, n = optimizers.size(); i < n; i++) {
+			NetworkInterface.findNearLinks(optimizers.get(i));
+		}
+	}
+
+	/**
+	 * Sets whether the hosts are moved. If movement is not simulated, the
+	 * hosts stay at their initial locations (e.g. when the contacts are
+	 * replayed from a trace, see {@link ContactTraceCache}).
+	 * @param simulateMovement Should the hosts be moved
+	 */
+	public void setSimulateMovement(boolean simulateMovement) {
+		this.simulateMovement = simulateMovement;
+	}
+
+	/**
+	 * Sets the contact trace that is replayed instead of simulating the
+	 * connectivity (see {@link ContactTraceCache})
+	 * @param replay The replayed trace
+	 */
+	void setContactReplay(ContactReplay replay) {
+		this.replay = replay;
 	}
 
 	/**
@@ -209,12 +982,158 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (!simulateMovement) {
+			return;
+		}
+		if (!movementModeChecked) {
+			initMovementPool();
+		}
+
+		if (movementPool != null) {
+			movementPool.invoke(new HostMover(0, hosts.size(),
+					timeIncrement));
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 		}
 	}
 
+	/**
+	 * Creates the pool for moving hosts in parallel if more than one
+	 * movement thread is requested and all hosts can be moved in parallel
+	 * (see {@link #MOVEMENT_THREADS_S}). This is done just before the first
+	 * movement since movement listeners are added after the World is created.
+	 */
+	private void initMovementPool() {
+		movementModeChecked = true;
+		if (movementThreads <= 1) {
+			return;
+		}
+
+		for (DTNHost host : hosts) {
+			if (!host.canMoveInParallel()) {
+				System.err.println("Warning: host " + host + " can't be " +
+						"moved in parallel with other hosts; moving all " +
+						"hosts serially");
+				return;
+			}
+		}
+
+		movementPool = new ForkJoinPool(movementThreads);
+	}
+
+	/**
+	 * Task that processes a range of hosts; splits the range between
+	 * threads if it is big enough
+	 */
+	@SuppressWarnings("serial")
+	private abstract class HostRangeTask extends RecursiveAction {
+		/** minimum number of hosts that one task processes */
+		private static final int MIN_HOSTS_PER_TASK = 16;
+		private final int from;
+		private final int to;
+
+		/**
+		 * Constructor.
+		 * @param from Index of the first host to process
+		 * @param to Index after the last host to process
+		 */
+		protected HostRangeTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Processes one host
+		 * @param host The host to process
+		 */
+		protected abstract void process(DTNHost host);
+
+		/**
+		 * Creates a task of the same type for a sub range
+		 * @param from Index of the first host to process
+		 * @param to Index after the last host to process
+		 * @return The new task
+		 */
+		protected abstract HostRangeTask subTask(int from, int to);
+
+		@Override
+		protected void compute() {
+			if (to - from <= MIN_HOSTS_PER_TASK) {
+				// pool threads must see the state of this world's run
+				SimContext previous = SimContext.setCurrent(context);
+				try {
+					for (int i = from; i < to; i++) {
+						process(hosts.get(i));
+					}
+				} finally {
+					SimContext.setCurrent(previous);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(subTask(from, mid), subTask(mid, to));
+		}
+	}
+
+	/**
+	 * Task that moves a range of hosts
+	 */
+	@SuppressWarnings("serial")
+	private class HostMover extends HostRangeTask {
+		private final double timeIncrement;
+
+		/**
+		 * Constructor.
+		 * @param from Index of the first host to move
+		 * @param to Index after the last host to move
+		 * @param timeIncrement How long time the hosts are moved
+		 */
+		public HostMover(int from, int to, double timeIncrement) {
+			super(from, to);
+			this.timeIncrement = timeIncrement;
+		}
+
+		@Override
+		protected void process(DTNHost host) {
+			host.move(timeIncrement);
+		}
+
+		@Override
+		protected HostRangeTask subTask(int from, int to) {
+			return new HostMover(from, to, timeIncrement);
+		}
+	}
+
+	/**
+	 * Task that finds the connectivity changes of a range of hosts
+	 */
+	@SuppressWarnings("serial")
+	private class ConnectivityFinder extends HostRangeTask {
+		/**
+		 * Constructor.
+		 * @param from Index of the first host
+		 * @param to Index after the last host
+		 */
+		public ConnectivityFinder(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		protected void process(DTNHost host) {
+			host.findConnectivityChanges();
+		}
+
+		@Override
+		protected HostRangeTask subTask(int from, int to) {
+			return new ConnectivityFinder(from, to);
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -222,6 +1141,14 @@ public class World {
 		this.isCancelled = true;
 	}
 
+	/**
+	 * Returns the timers and counters of the update phases
+	 * @return The performance monitor of this world
+	 */
+	public PerformanceMonitor getPerformanceMonitor() {
+		return this.monitor;
+	}
+
 	/**
 	 * Returns the hosts in a list
 	 * @return the hosts in a list
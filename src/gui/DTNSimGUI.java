@@ -111,6 +111,7 @@ public class DTNSimGUI extends DTNSimUI {
 			else {
 				try {
 					world.update();
+					checkpointIfDue();
 				} catch (AssertionError e) {
 					// handles both assertion errors and SimErrors
 					processAssertionError(e);
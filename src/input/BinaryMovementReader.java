@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import movement.Path;
+import core.Coord;
+import core.SettingsError;
+import core.SimError;
+
+/**
+ * Reader for binary movement traces recorded with
+ * {@link BinaryMovementWriter}. The record streams of the hosts are memory
+ * mapped and decoded only when the movement models ask for their next
+ * answers.
+ */
+public class BinaryMovementReader {
+	/** number of bytes in the file header before the host index */
+	private static final int HEADER_SIZE = 5 * 4;
+
+	private final String fileName;
+	private final int worldSizeX;
+	private final int worldSizeY;
+	/** mapped record streams of the hosts indexed by the host address */
+	private final ByteBuffer[] hostData;
+
+	/**
+	 * Constructor. Maps the record streams of the trace file to memory.
+	 * @param fileName Path of the trace file
+	 * @throws SettingsError if the file can't be read or isn't a binary
+	 * movement trace
+	 */
+	public BinaryMovementReader(String fileName) {
+		this.fileName = fileName;
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(fileName, "r");
+			FileChannel channel = file.getChannel();
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					HEADER_SIZE);
+			if (header.getInt() != BinaryMovementWriter.MAGIC ||
+					header.getInt() != BinaryMovementWriter.VERSION) {
+				throw new SettingsError(fileName + " is not a binary " +
+						"movement trace of a supported version");
+			}
+			int nrofHosts = header.getInt();
+			this.worldSizeX = header.getInt();
+			this.worldSizeY = header.getInt();
+
+			ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+					HEADER_SIZE, nrofHosts * 2 * 8);
+			this.hostData = new ByteBuffer[nrofHosts];
+			for (int i = 0; i < nrofHosts; i++) {
+				long offset = index.getLong();
+				long length = index.getLong();
+				hostData[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						offset, length);
+			}
+		} catch (IOException e) {
+			throw new SettingsError("Can't read movement trace " + fileName +
+					": " + e, e);
+		} finally {
+			if (file != null) {
+				try {
+					file.close(); // mappings stay valid
+				} catch (IOException e) {
+					// nothing sensible to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given file is a binary movement trace (based on
+	 * its extension)
+	 * @param fileName Name of the file
+	 * @return True if the file name has the binary movement trace extension
+	 */
+	public static boolean isBinaryMovementFile(String fileName) {
+		return new File(fileName).getName().endsWith(
+				BinaryMovementWriter.BINARY_EXT);
+	}
+
+	/**
+	 * Returns the width of the recorded world
+	 * @return the width of the recorded world
+	 */
+	public int getWorldSizeX() {
+		return this.worldSizeX;
+	}
+
+	/**
+	 * Returns the height of the recorded world
+	 * @return the height of the recorded world
+	 */
+	public int getWorldSizeY() {
+		return this.worldSizeY;
+	}
+
+	/**
+	 * Returns the trace of a host
+	 * @param address Network address of the host
+	 * @return The trace
+	 * @throws SimError if the trace has no record for the host
+	 */
+	public HostTrace getHostTrace(int address) {
+		if (address < 0 || address >= hostData.length) {
+			throw new SimError("Movement trace " + fileName + " has no " +
+					"records for host address " + address);
+		}
+		return new HostTrace(address, hostData[address].duplicate());
+	}
+
+	/**
+	 * Sequential reader of one host's records. The records must be read in
+	 * the order they were recorded.
+	 */
+	public class HostTrace {
+		private final int address;
+		private final ByteBuffer data;
+
+		private HostTrace(int address, ByteBuffer data) {
+			this.address = address;
+			this.data = data;
+		}
+
+		/**
+		 * Reads the initial location of the host
+		 * @return The location
+		 */
+		public Coord readInitialLocation() {
+			expect(BinaryMovementWriter.LOCATION);
+			return new Coord(data.getDouble(), data.getDouble());
+		}
+
+		/**
+		 * Reads the next time when a path is available
+		 * @return The time
+		 */
+		public double readNextPathAvailable() {
+			expect(BinaryMovementWriter.NEXT_TIME);
+			return data.getDouble();
+		}
+
+		/**
+		 * Reads the next path
+		 * @return The path or null if no path was available
+		 */
+		public Path readPath() {
+			if (peek() == BinaryMovementWriter.NO_PATH) {
+				data.get();
+				return null;
+			}
+			expect(BinaryMovementWriter.PATH);
+
+			int nrofCoords = data.getInt();
+			int nrofSpeeds = data.getInt();
+			Coord[] coords = new Coord[nrofCoords];
+			for (int i = 0; i < nrofCoords; i++) {
+				coords[i] = new Coord(data.getDouble(), data.getDouble());
+			}
+
+			Path path = new Path();
+			if (nrofSpeeds <= 1) { // constant speed (if any)
+				if (nrofSpeeds == 1) {
+					path.setSpeed(data.getDouble());
+				}
+				for (Coord c : coords) {
+					path.addWaypoint(c);
+				}
+			}
+			else if (nrofSpeeds == nrofCoords) {
+				for (Coord c : coords) {
+					path.addWaypoint(c, data.getDouble());
+				}
+			}
+			else {
+				throw new SimError("Invalid path with " + nrofCoords +
+						" waypoints and " + nrofSpeeds + " speeds for host " +
+						address + " in " + fileName);
+			}
+			return path;
+		}
+
+		private byte peek() {
+			if (!data.hasRemaining()) {
+				throw new SimError("Movement trace " + fileName + " ended " +
+						"for host address " + address);
+			}
+			return data.get(data.position());
+		}
+
+		private void expect(byte type) {
+			byte actual = peek();
+			if (actual != type) {
+				throw new SimError("Unexpected record '" + (char)actual +
+						"' (expected '" + (char)type + "') for host address " +
+						address + " in " + fileName);
+			}
+			data.get();
+		}
+	}
+}
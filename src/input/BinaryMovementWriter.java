@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import movement.MovementModel;
+import movement.Path;
+import core.Coord;
+import core.DTNHost;
+import core.SimError;
+
+/**
+ * <P>Records the movement of hosts to a binary movement trace that can be
+ * replayed with {@link movement.ExternalMovement}. The trace contains, for
+ * every host, the answers its movement model gave to the host: the initial
+ * location, the paths (with all waypoints and speeds) and the times when
+ * the next path is available. Replaying these answers in the same order
+ * moves the hosts exactly like in the recorded run, without per tick
+ * location samples.</P>
+ * <P>File format (big-endian): magic number, version, number of hosts and
+ * world size (ints); offset and length (longs) of every host's record
+ * stream; the record streams. Every record starts with a type byte:
+ * {@link #LOCATION} (x and y doubles), {@link #NEXT_TIME} (double),
+ * {@link #PATH} (number of waypoints and speeds as ints, waypoint x and y
+ * doubles, speed doubles) or {@link #NO_PATH}.</P>
+ * @see BinaryMovementReader
+ */
+public class BinaryMovementWriter {
+	/** file where the movement of the hosts is recorded -setting id
+	 * ({@value}) in the {@link MovementModel#MOVEMENT_MODEL_NS} namespace.
+	 * The file should have the {@link #BINARY_EXT} extension. */
+	public static final String RECORD_FILE_S = "recordFile";
+	/** Extension of binary movement trace files ({@value}) */
+	public static final String BINARY_EXT = ".binmov";
+
+	/** magic number in the beginning of the trace files */
+	static final int MAGIC = 0x4f4e454d;
+	/** version of the trace file format */
+	static final int VERSION = 1;
+	/** record type of an initial location */
+	static final byte LOCATION = 'L';
+	/** record type of a next path available time */
+	static final byte NEXT_TIME = 'T';
+	/** record type of a path */
+	static final byte PATH = 'P';
+	/** record type of a missing path */
+	static final byte NO_PATH = 'N';
+
+	private final String fileName;
+	private final int worldSizeX;
+	private final int worldSizeY;
+	/** record streams of the hosts indexed by the host address */
+	private final List<HostRecorder> recorders;
+
+	/**
+	 * Constructor.
+	 * @param fileName Path of the file where the trace is stored
+	 * @param worldSizeX Width of the world
+	 * @param worldSizeY Height of the world
+	 */
+	public BinaryMovementWriter(String fileName, int worldSizeX,
+			int worldSizeY) {
+		this.fileName = fileName;
+		this.worldSizeX = worldSizeX;
+		this.worldSizeY = worldSizeY;
+		this.recorders = new ArrayList<HostRecorder>();
+	}
+
+	/**
+	 * Creates a recorder for a host. Hosts must be added in the order of
+	 * their addresses.
+	 * @param host The host
+	 * @return The recorder of the host
+	 */
+	public HostRecorder addHost(DTNHost host) {
+		if (host.getAddress() != recorders.size()) {
+			throw new SimError("Host " + host + " added out of order");
+		}
+		HostRecorder r = new HostRecorder();
+		recorders.add(r);
+		return r;
+	}
+
+	/**
+	 * Stores the trace recorded so far to the file
+	 * @throws IOException If writing the file fails
+	 */
+	public void store() throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(recorders.size());
+			out.writeInt(worldSizeX);
+			out.writeInt(worldSizeY);
+
+			long offset = 5 * 4 + recorders.size() * 2 * 8;
+			for (HostRecorder r : recorders) {
+				out.writeLong(offset);
+				out.writeLong(r.bytes.size());
+				offset += r.bytes.size();
+			}
+			for (HostRecorder r : recorders) {
+				r.bytes.writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Records the answers of one host's movement model. A recorder is used
+	 * only by its own host, so hosts can be moved in parallel.
+	 */
+	public static class HostRecorder {
+		private final ByteArrayOutputStream bytes;
+		private final DataOutputStream out;
+
+		private HostRecorder() {
+			this.bytes = new ByteArrayOutputStream();
+			this.out = new DataOutputStream(bytes);
+		}
+
+		/**
+		 * Records the initial location of the host
+		 * @param c The location
+		 */
+		public void initialLocation(Coord c) {
+			try {
+				out.writeByte(LOCATION);
+				out.writeDouble(c.getX());
+				out.writeDouble(c.getY());
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Records the time when the next path is available
+		 * @param time The time
+		 */
+		public void nextPathAvailable(double time) {
+			try {
+				out.writeByte(NEXT_TIME);
+				out.writeDouble(time);
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Records a new path
+		 * @param path The path or null if no path was available
+		 */
+		public void newPath(Path path) {
+			try {
+				if (path == null) {
+					out.writeByte(NO_PATH);
+					return;
+				}
+				List<Coord> coords = path.getCoords();
+				List<Double> speeds = path.getSpeeds();
+				out.writeByte(PATH);
+				out.writeInt(coords.size());
+				out.writeInt(speeds.size());
+				for (Coord c : coords) {
+					out.writeDouble(c.getX());
+					out.writeDouble(c.getY());
+				}
+				for (Double speed : speeds) {
+					out.writeDouble(speed);
+				}
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+	}
+}
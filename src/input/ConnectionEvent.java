@@ -46,6 +46,11 @@ public class ConnectionEvent extends ExternalEvent {
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 
+	@Override
+	public int[] getHostAddresses() {
+		return new int[] {this.fromAddr, this.toAddr};
+	}
+
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " +
@@ -33,6 +33,7 @@ import static core.Constants.DEBUG;
  * @author teemuk
  */
 public class DTN2Events implements EventQueue {
+	private static final long serialVersionUID = 1L;
 
 	private Queue<ExternalEvent>	events;
 
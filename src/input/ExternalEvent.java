@@ -29,6 +29,17 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 		// this is just a dummy event
 	}
 
+	/**
+	 * Returns the addresses of the hosts whose state this event can change.
+	 * Used when the events are processed in batches (see
+	 * {@link World#BATCH_EVENTS_S}).
+	 * @return The addresses of the hosts or null if the event can concern
+	 * any host (this is the case with the dummy event)
+	 */
+	public int[] getHostAddresses() {
+		return null;
+	}
+
 	/**
 	 * Returns the time when this event should happen.
 	 * @return Event's time
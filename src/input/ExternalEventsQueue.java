@@ -5,16 +5,22 @@
 package input;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import core.ResourceCache;
 import core.Settings;
+import core.SimError;
 
 /**
  * Queue of external events. This class also takes care of buffering
  * the events and preloading only a proper amount of them.
  */
 public class ExternalEventsQueue implements EventQueue {
+	private static final long serialVersionUID = 1L;
+
 	/** ExternalEvents namespace ({@value})*/
 	public static final String SETTINGS_NAMESPACE = "ExternalEvents";
 	/** number of event to preload -setting id ({@value})*/
@@ -24,9 +30,15 @@ public class ExternalEventsQueue implements EventQueue {
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
+	/** kind of the event lists in the resource cache */
+	private static final String EVENTS_RESOURCE = "ExternalEvents";
 
 	private File eventsFile;
-	private ExternalEventsReader reader;
+	/** reader of the events file; re-opened when restored from a
+	 * checkpoint */
+	private transient ExternalEventsReader reader;
+	/** number of events read from the file so far */
+	private int nrofEventsRead;
 	private int nextEventIndex;
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
@@ -76,13 +88,8 @@ public class ExternalEventsQueue implements EventQueue {
 
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
-
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
-			this.reader = new BinaryEventsReader(eventsFile);
-		}
-		else {
-			this.reader = new StandardEventsReader(eventsFile);
-		}
+		this.reader = openReader();
+		this.nrofEventsRead = 0;
 
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
@@ -151,6 +158,7 @@ public class ExternalEventsQueue implements EventQueue {
 		}
 
 		List<ExternalEvent> events = reader.readEvents(nrof);
+		nrofEventsRead += events.size();
 
 		if (nrof > 0 && events.size() == 0) {
 			reader.close();
@@ -160,4 +168,106 @@ public class ExternalEventsQueue implements EventQueue {
 		return events;
 	}
 
+	/**
+	 * Opens a reader for the events file. Files that fit in the
+	 * {@link ResourceCache} are read completely and the events are shared
+	 * through the cache; bigger files are read in chunks as the events are
+	 * needed.
+	 * @return The reader
+	 */
+	private ExternalEventsReader openReader() {
+		File[] files = {eventsFile};
+		if (!ResourceCache.isCacheable(files)) {
+			return openFileReader();
+		}
+
+		try {
+			String kind = EVENTS_RESOURCE + ":" +
+				BinaryEventsReader.isBinaryEeFile(eventsFile);
+			return new SharedEventsReader(ResourceCache.get(kind, files,
+					new ResourceCache.Loader<List<ExternalEvent>>() {
+						public List<ExternalEvent> load() {
+							return readAllEvents();
+						}
+					}));
+		} catch (IOException e) {
+			throw new SimError("Can't read events file " + eventsFile, e);
+		}
+	}
+
+	/**
+	 * Reads all events of the events file
+	 * @return The events
+	 */
+	private List<ExternalEvent> readAllEvents() {
+		ExternalEventsReader r = openFileReader();
+		List<ExternalEvent> all = new ArrayList<ExternalEvent>();
+		List<ExternalEvent> events;
+		while ((events = r.readEvents(DEFAULT_NROF_PRELOAD)).size() > 0) {
+			all.addAll(events);
+		}
+		r.close();
+		return all;
+	}
+
+	/**
+	 * Opens a reader that reads the events from the events file
+	 * @return The reader
+	 */
+	private ExternalEventsReader openFileReader() {
+		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+			return new BinaryEventsReader(eventsFile);
+		}
+		else {
+			return new StandardEventsReader(eventsFile);
+		}
+	}
+
+	/**
+	 * Restores the queue from a checkpoint. The events file is re-opened
+	 * and the events that had already been read are skipped.
+	 * @param in The stream to read the queue from
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (allEventsRead) {
+			return;
+		}
+
+		this.reader = openReader();
+		for (int left = nrofEventsRead; left > 0; ) {
+			int skipped = reader.readEvents(Math.min(left, nrofPreload)).size();
+			if (skipped == 0) {
+				throw new IOException("Events file " + eventsFile +
+						" has fewer events than when the checkpoint was made");
+			}
+			left -= skipped;
+		}
+	}
+
+	/**
+	 * Reader of events shared through the resource cache
+	 */
+	private static class SharedEventsReader implements ExternalEventsReader {
+		private final List<ExternalEvent> events;
+		/** index of the next event to read */
+		private int next;
+
+		public SharedEventsReader(List<ExternalEvent> events) {
+			this.events = events;
+		}
+
+		public List<ExternalEvent> readEvents(int nrof) {
+			int end = (int)Math.min(events.size(), (long)next + nrof);
+			List<ExternalEvent> read =
+				new ArrayList<ExternalEvent>(events.subList(next, end));
+			next = end;
+			return read;
+		}
+
+		public void close() {
+			/* nothing to close */
+		}
+	}
 }
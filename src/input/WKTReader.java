@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Scanner;
 
 import core.Coord;
+import core.ResourceCache;
 
 /**
  * Class for reading "Well-known text syntax" files. See e.g.
@@ -95,6 +96,63 @@ public class WKTReader {
 		return lines;
 	}
 
+	/**
+	 * Reads point data from a file like {@link #readPoints(File)} but the
+	 * parsed points are shared through the {@link ResourceCache}, so the
+	 * same file is parsed only once
+	 * @param file The file to read points from
+	 * @return A list of new coordinates read from the file (the caller may
+	 * modify them)
+	 * @throws IOException if something went wrong while reading
+	 */
+	public static List<Coord> readCachedPoints(final File file)
+			throws IOException {
+		List<Coord> points = ResourceCache.get(POINT, new File[] {file},
+				new ResourceCache.Loader<List<Coord>>() {
+					public List<Coord> load() throws IOException {
+						return new WKTReader().readPoints(file);
+					}
+				});
+		return copyCoords(points);
+	}
+
+	/**
+	 * Reads line data from a file like {@link #readLines(File)} but the
+	 * parsed lines are shared through the {@link ResourceCache}, so the
+	 * same file is parsed only once
+	 * @param file The file to read data from
+	 * @return A list of new coordinate lists read from the file (the caller
+	 * may modify them)
+	 * @throws IOException if something went wrong while reading
+	 */
+	public static List<List<Coord>> readCachedLines(final File file)
+			throws IOException {
+		List<List<Coord>> lines = ResourceCache.get(LINESTRING,
+				new File[] {file},
+				new ResourceCache.Loader<List<List<Coord>>>() {
+					public List<List<Coord>> load() throws IOException {
+						return new WKTReader().readLines(file);
+					}
+				});
+		List<List<Coord>> copy = new ArrayList<List<Coord>>(lines.size());
+		for (List<Coord> line : lines) {
+			copy.add(copyCoords(line));
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a list with copies of coordinates
+	 * @param coords The coordinates to copy
+	 * @return A new list of new coordinates
+	 */
+	private static List<Coord> copyCoords(List<Coord> coords) {
+		List<Coord> copy = new ArrayList<Coord>(coords.size());
+		for (Coord c : coords) {
+			copy.add(c.clone());
+		}
+		return copy;
+	}
 
 	/**
 	 * Initialize the reader to use a certain input reader
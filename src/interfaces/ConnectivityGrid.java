@@ -4,15 +4,20 @@
  */
 package interfaces;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
 import core.Coord;
 import core.DTNSim;
+import core.HostPositions;
 import core.NetworkInterface;
+import core.RunLocal;
 import core.Settings;
 import core.SettingsError;
 import core.World;
@@ -37,9 +42,11 @@ import core.World;
  * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
- * from zero to conserve memory.
+ * from zero to conserve memory. {@link SparseConnectivityGrid} allocates
+ * only the occupied cells and supports negative coordinates.
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Cell based optimization cell size multiplier -setting id ({@value}).
@@ -53,51 +60,51 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public static final String CELL_SIZE_MULT_S = "cellSizeMult";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
+	/** how large member arrays are initially chosen */
+	private static final int EXPECTED_MEMBER_COUNT = 16;
 
 	private GridCell[][] cells;
-	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** grid indexes of the interfaces */
+	private HashMap<NetworkInterface, Integer> ginterfaces;
+	/** the interfaces by their grid indexes (null for removed ones) */
+	private NetworkInterface[] members;
+	/** addresses of the interfaces' hosts by grid index */
+	private int[] addresses;
+	/** cells of the interfaces by grid index */
+	private GridCell[] memberCells;
+	/** transmit ranges of the interfaces by grid index, refreshed by
+	 * {@link #forEachPairInRange(NearPairHandler)} */
+	private double[] ranges;
+	/** number of grid indexes used */
+	private int nrofMembers;
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-	private static int cellSizeMultiplier;
-
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
+	/** grids of the current simulation run, keyed by interface type */
+	private static final RunLocal<HashMap<Integer,ConnectivityGrid>>
+		gridobjects = new RunLocal<HashMap<Integer,ConnectivityGrid>>() {
+			@Override
+			protected HashMap<Integer,ConnectivityGrid> initialValue() {
+				return new HashMap<Integer, ConnectivityGrid>();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
-		reset();
 	}
 
 	public static void reset() {
-		gridobjects = new HashMap<Integer, ConnectivityGrid>();
-
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
-
-		s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
-		if (s.contains(CELL_SIZE_MULT_S)) {
-			cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
-		}
-		else {
-			cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
-		}
-		if (cellSizeMultiplier < 1) {
-			throw new SettingsError("Too small value (" + cellSizeMultiplier +
-					") for " + World.OPTIMIZATION_SETTINGS_NS +
-					"." + CELL_SIZE_MULT_S);
-		}
+		gridobjects.remove();
 	}
 
 	/**
 	 * Creates a new overlay connectivity grid
 	 * @param cellSize Cell's edge's length (must be larger than the largest
 	 * 	radio coverage's diameter)
+	 * @param worldSizeX Width of the simulation world
+	 * @param worldSizeY Height of the simulation world
 	 */
-	private ConnectivityGrid(int cellSize) {
+	private ConnectivityGrid(int cellSize, int worldSizeX, int worldSizeY) {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier
@@ -109,7 +116,11 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 				this.cells[i][j] = new GridCell();
 			}
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		ginterfaces = new HashMap<NetworkInterface,Integer>();
+		members = new NetworkInterface[0];
+		addresses = new int[0];
+		memberCells = new GridCell[0];
+		ranges = new double[0];
 	}
 
 	/**
@@ -121,13 +132,34 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key,
 			double maxRange) {
-		if (gridobjects.containsKey((Integer)key)) {
-			return (ConnectivityGrid)gridobjects.get((Integer)key);
-		} else {
+		HashMap<Integer,ConnectivityGrid> grids = gridobjects.get();
+		synchronized (grids) {
+			if (grids.containsKey((Integer)key)) {
+				return (ConnectivityGrid)grids.get((Integer)key);
+			}
+
+			Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+			int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+			int cellSizeMultiplier;
+
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+			if (s.contains(CELL_SIZE_MULT_S)) {
+				cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
+			}
+			else {
+				cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
+			}
+			if (cellSizeMultiplier < 1) {
+				throw new SettingsError("Too small value (" +
+						cellSizeMultiplier + ") for " +
+						World.OPTIMIZATION_SETTINGS_NS + "." +
+						CELL_SIZE_MULT_S);
+			}
+
 			ConnectivityGrid newgrid =
 				new ConnectivityGrid((int)Math.ceil(maxRange *
-						cellSizeMultiplier));
-			gridobjects.put((Integer)key,newgrid);
+						cellSizeMultiplier), worldSize[0], worldSize[1]);
+			grids.put((Integer)key,newgrid);
 			return newgrid;
 		}
 	}
@@ -137,9 +169,23 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
+		if (ginterfaces.containsKey(ni)) {
+			return;
+		}
+		if (nrofMembers == members.length) {
+			int capacity = Math.max(EXPECTED_MEMBER_COUNT, nrofMembers * 2);
+			members = Arrays.copyOf(members, capacity);
+			addresses = Arrays.copyOf(addresses, capacity);
+			memberCells = Arrays.copyOf(memberCells, capacity);
+			ranges = Arrays.copyOf(ranges, capacity);
+		}
+		int index = nrofMembers++;
 		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		members[index] = ni;
+		addresses[index] = ni.getHost().getAddress();
+		memberCells[index] = c;
+		c.add(index);
+		ginterfaces.put(ni, index);
 	}
 
 	/**
@@ -147,11 +193,12 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		Integer index = ginterfaces.remove(ni);
+		if (index != null) {
+			memberCells[index].remove(index);
+			members[index] = null;
+			memberCells[index] = null;
 		}
-		ginterfaces.remove(ni);
 	}
 
 	/**
@@ -169,42 +216,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
+		int index = ginterfaces.get(ni);
+		GridCell oldCell = memberCells[index];
 		GridCell newCell = cellFromCoord(ni.getLocation());
 
 		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+			oldCell.move(index, newCell);
+			memberCells[index] = newCell;
 		}
 	}
 
-	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells
-	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
-	}
-
-	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
-	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
-	}
-
 	/**
 	 * Get the cell having the specific coordinates
 	 * @param c Coordinates
@@ -237,19 +258,224 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
 		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
+		addNearInterfaces(ni, niList);
+		return niList;
+	}
 
-		if (loc != null) {
-			GridCell[] neighbors =
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+	/**
+	 * Adds the interfaces in the cell of the given interface and in the
+	 * neighboring cells to a list without allocating any new objects
+	 * @param ni The interface whose neighboring interfaces are added
+	 * @param to The list where the interfaces are added
+	 */
+	@Override
+	public void addNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
+
+		// +1 due empty cells on both sides of the matrix
+		Coord c = ni.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				GridCell cell = cells[i][j];
+				int[] cellMembers = cell.members;
+				for (int k=0, n = cell.size; k < n; k++) {
+					to.add(members[cellMembers[k]]);
+				}
 			}
 		}
+	}
 
-		return niList;
+	/**
+	 * Adds the other interfaces in the same cell or in the neighboring
+	 * cells that are within range of the given interface to a list. The
+	 * distances are compared straight from the host position arrays and the
+	 * transmit range of an other interface is read only if it is within the
+	 * range of the given interface.
+	 * @param ni The interface whose interfaces within range are added
+	 * @param to The list where the interfaces are added
+	 * @return The number of interfaces whose range was checked
+	 */
+	@Override
+	public int addInterfacesInRange(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		Integer index = ginterfaces.get(ni);
+		if (index == null) {
+			return 0;
+		}
+
+		HostPositions positions = ni.getHost().getPositions();
+		double[] xs = positions.getXs();
+		double[] ys = positions.getYs();
+		int self = index;
+		double x = xs[addresses[self]];
+		double y = ys[addresses[self]];
+		double range = ni.getTransmitRange();
+		int checks = 0;
+
+		// +1 due empty cells on both sides of the matrix
+		Coord c = ni.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				GridCell cell = cells[i][j];
+				int[] cellMembers = cell.members;
+				for (int k=0, n = cell.size; k < n; k++) {
+					int other = cellMembers[k];
+					if (other == self) {
+						continue;
+					}
+					checks++;
+					int address = addresses[other];
+					double dx = xs[address] - x;
+					double dy = ys[address] - y;
+					double d2 = dx*dx + dy*dy;
+					/* within the smaller range iff within both ranges */
+					if (HostPositions.isWithin(d2, range) &&
+							HostPositions.isWithin(d2,
+									members[other].getTransmitRange())) {
+						to.add(members[other]);
+					}
+				}
+			}
+		}
+		return checks;
+	}
+
+	/**
+	 * Calls the handler once for every unordered pair of interfaces that
+	 * are in the same cell or in neighboring cells. The pairs of a cell are
+	 * the pairs within the cell and the pairs with the cells to the right
+	 * of it and below it; the pairs with the other neighbors are the pairs
+	 * of those neighbors.
+	 * @param handler The handler of the pairs
+	 */
+	@Override
+	public void forEachNearPair(NearPairHandler handler) {
+		// +1 due empty cells on both sides of the matrix
+		for (int i = 1; i <= rows; i++) {
+			for (int j = 1; j <= cols; j++) {
+				GridCell cell = cells[i][j];
+				int[] cellMembers = cell.members;
+				for (int k=0, n = cell.size; k < n; k++) {
+					NetworkInterface ni = members[cellMembers[k]];
+					for (int l = k + 1; l < n; l++) {
+						handler.nearPair(ni, members[cellMembers[l]]);
+					}
+					addPairs(ni, cells[i][j+1], handler);
+					addPairs(ni, cells[i+1][j-1], handler);
+					addPairs(ni, cells[i+1][j], handler);
+					addPairs(ni, cells[i+1][j+1], handler);
+				}
+			}
+		}
 	}
 
+	/**
+	 * Calls the handler for the pairs of an interface and the interfaces
+	 * of a cell
+	 * @param ni The interface
+	 * @param cell The cell
+	 * @param handler The handler of the pairs
+	 */
+	private void addPairs(NetworkInterface ni, GridCell cell,
+			NearPairHandler handler) {
+		int[] cellMembers = cell.members;
+		for (int k=0, n = cell.size; k < n; k++) {
+			handler.nearPair(ni, members[cellMembers[k]]);
+		}
+	}
+
+	/**
+	 * Calls the handler once for every unordered pair of interfaces within
+	 * range of each other, going through the same pairs as
+	 * {@link #forEachNearPair(NearPairHandler)} but comparing the squared
+	 * distances straight from the host position arrays
+	 * @param handler The handler of the pairs
+	 */
+	@Override
+	public void forEachPairInRange(NearPairHandler handler) {
+		HostPositions positions = null;
+		for (int p=0; p < nrofMembers; p++) {
+			if (members[p] != null) {
+				ranges[p] = members[p].getTransmitRange();
+				positions = members[p].getHost().getPositions();
+			}
+		}
+		if (positions == null) {
+			return; /* no interfaces */
+		}
+
+		double[] xs = positions.getXs();
+		double[] ys = positions.getYs();
+		long checks = 0;
+		// +1 due empty cells on both sides of the matrix
+		for (int i = 1; i <= rows; i++) {
+			for (int j = 1; j <= cols; j++) {
+				GridCell cell = cells[i][j];
+				int[] cellMembers = cell.members;
+				for (int k=0, n = cell.size; k < n; k++) {
+					int p = cellMembers[k];
+					checks += addPairsInRange(p, cell, k + 1, xs, ys, handler);
+					checks += addPairsInRange(p, cells[i][j+1], 0, xs, ys,
+							handler);
+					checks += addPairsInRange(p, cells[i+1][j-1], 0, xs, ys,
+							handler);
+					checks += addPairsInRange(p, cells[i+1][j], 0, xs, ys,
+							handler);
+					checks += addPairsInRange(p, cells[i+1][j+1], 0, xs, ys,
+							handler);
+				}
+			}
+		}
+		addRangeChecks(checks);
+	}
+
+	/**
+	 * Calls the handler for the pairs of an interface and the interfaces
+	 * of a cell that are within range of each other
+	 * @param p Grid index of the interface
+	 * @param cell The cell
+	 * @param from Position of the first interface of the cell to check
+	 * @param xs The x coordinates of the hosts
+	 * @param ys The y coordinates of the hosts
+	 * @param handler The handler of the pairs
+	 * @return The number of pairs checked
+	 */
+	private int addPairsInRange(int p, GridCell cell, int from, double[] xs,
+			double[] ys, NearPairHandler handler) {
+		int[] cellMembers = cell.members;
+		int n = cell.size;
+		double x = xs[addresses[p]];
+		double y = ys[addresses[p]];
+		double range = ranges[p];
+		for (int k = from; k < n; k++) {
+			int q = cellMembers[k];
+			int address = addresses[q];
+			double dx = xs[address] - x;
+			double dy = ys[address] - y;
+			if (HostPositions.isWithin(dx*dx + dy*dy,
+					Math.min(range, ranges[q]))) {
+				handler.nearPair(members[p], members[q]);
+			}
+		}
+		return n - from;
+	}
+
+	/**
+	 * Returns the edge length of the cells: the interfaces within that
+	 * distance are always in the neighboring cells
+	 * @return The cell size
+	 */
+	@Override
+	public double getNearDistance() {
+		return this.cellSize;
+	}
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -261,53 +487,73 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * A single cell in the cell grid. Contains the interfaces that are
-	 * currently in that part of the grid.
+	 * A single cell in the cell grid. Contains the grid indexes of the
+	 * interfaces that are currently in that part of the grid.
 	 */
-	public class GridCell {
+	public class GridCell implements Serializable {
+		private static final long serialVersionUID = 1L;
+
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
-		private ArrayList<NetworkInterface> interfaces;
+		/** grid indexes of the interfaces in the order they were added */
+		private int[] members;
+		/** number of interfaces in this cell */
+		private int size;
 
 		private GridCell() {
-			this.interfaces = new ArrayList<NetworkInterface>(
-					EXPECTED_INTERFACE_COUNT);
+			this.members = new int[EXPECTED_INTERFACE_COUNT];
 		}
 
 		/**
 		 * Returns a list of of interfaces in this cell
-		 * @return a list of of interfaces in this cell
+		 * @return a new list of of interfaces in this cell
 		 */
 		public ArrayList<NetworkInterface> getInterfaces() {
-			return this.interfaces;
+			ArrayList<NetworkInterface> list =
+				new ArrayList<NetworkInterface>(size);
+			for (int k=0; k < size; k++) {
+				list.add(ConnectivityGrid.this.members[members[k]]);
+			}
+			return list;
 		}
 
 		/**
 		 * Adds an interface to this cell
-		 * @param ni The interface to add
+		 * @param index Grid index of the interface to add
 		 */
-		public void addInterface(NetworkInterface ni) {
-			this.interfaces.add(ni);
+		private void add(int index) {
+			if (size == members.length) {
+				members = Arrays.copyOf(members, size * 2);
+			}
+			members[size++] = index;
 		}
 
 		/**
-		 * Removes an interface from this cell
-		 * @param ni The interface to remove
+		 * Removes an interface from this cell keeping the order of the rest
+		 * @param index Grid index of the interface to remove
+		 * @return True if the interface was in this cell
 		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
+		private boolean remove(int index) {
+			for (int k=0; k < size; k++) {
+				if (members[k] == index) {
+					System.arraycopy(members, k + 1, members, k, size - k - 1);
+					size--;
+					return true;
+				}
+			}
+			return false;
 		}
 
 		/**
 		 * Moves a interface in a Cell to another Cell
-		 * @param ni The interface to move
+		 * @param index Grid index of the interface to move
 		 * @param to The cell where the interface should be moved to
 		 */
-		public void moveInterface(NetworkInterface ni, GridCell to) {
-			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni);
-			assert removeOk : "interface " + ni +
-				" not found from cell with " + interfaces.toString();
+		private void move(int index, GridCell to) {
+			to.add(index);
+			boolean removeOk = remove(index);
+			assert removeOk : "interface " + index +
+				" not found from cell with " + getInterfaces();
 		}
 
 		/**
@@ -316,7 +562,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		 */
 		public String toString() {
 			return getClass().getSimpleName() + " with " +
-				this.interfaces.size() + " interfaces :" + this.interfaces;
+				this.size + " interfaces :" + getInterfaces();
 		}
 	}
 
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.RunLocal;
+import core.Settings;
+import core.SettingsError;
+import core.World;
+
+/**
+ * <P>Connectivity optimizer that keeps the interfaces in a k-d tree and
+ * finds the near interfaces of an interface with a range query using the
+ * interface's own transmit range. Unlike with the {@link ConnectivityGrid},
+ * whose cell size is fixed by the range of the first interface of the
+ * type, interfaces with short ranges examine only the interfaces that are
+ * close to them even if some interfaces of the same type have much longer
+ * ranges (e.g., when the ranges are changed at run time through the
+ * {@link NetworkInterface#RANGE_ID} property), and the longer ranges are
+ * never missed. Negative coordinates are supported.</P>
+ * <P>The tree is rebuilt in bulk from the current locations when some
+ * interface has moved more than the slack (see {@link #SLACK_S}) from
+ * its location in the tree, or when interfaces are added or removed. The
+ * queries are widened by twice the slack, so between the rebuilds the near
+ * interfaces of an interface are all the interfaces within its transmit
+ * range plus the slack (see {@link #getNearDistance(NetworkInterface)}).
+ * A bigger slack means fewer rebuilds but more interfaces to examine.
+ * Enabled with the {@link #KD_TREE_S} setting. When all the interfaces
+ * of a type have the same range, the grid is usually as fast.</P>
+ */
+public class ConnectivityKdTree extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Should the k-d tree be used instead of the connectivity grid
+	 * -setting id ({@value}). Used in {@link World#OPTIMIZATION_SETTINGS_NS}
+	 * name space. Boolean (true/false) variable. Default is false. Takes
+	 * precedence over {@link SparseConnectivityGrid#SPARSE_GRID_S}.
+	 */
+	public static final String KD_TREE_S = "connectivityKdTree";
+
+	/**
+	 * How far the interfaces can move before the tree is rebuilt -setting
+	 * id ({@value}). Used in {@link World#OPTIMIZATION_SETTINGS_NS} name
+	 * space. Double (meters). Default is {@link #DEF_SLACK}.
+	 */
+	public static final String SLACK_S = "kdTreeSlack";
+	/** default value for the slack ({@value} meters) */
+	public static final double DEF_SLACK = 2;
+
+	/** the interfaces; the indexes are used as identifiers in the tree */
+	private ArrayList<NetworkInterface> interfaces;
+	/** indexes of the interfaces */
+	private HashMap<NetworkInterface, Integer> indexes;
+	/** x coordinates of the interfaces when the tree was built */
+	private double[] xs;
+	/** y coordinates of the interfaces when the tree was built */
+	private double[] ys;
+	/** indexes of the interfaces in the order of the implicit tree: the
+	 * median of every range is in the middle of the range */
+	private int[] tree;
+	/** does the tree need to be rebuilt before the next query */
+	private volatile boolean dirty;
+	private double slack;
+	/** reused list for the near interfaces in {@link #forEachNearPair(
+	 * NearPairHandler)} */
+	private transient List<NetworkInterface> pairCandidates;
+
+	/** trees of the current simulation run, keyed by interface type */
+	private static final RunLocal<HashMap<Integer,ConnectivityKdTree>>
+		treeobjects = new RunLocal<HashMap<Integer,ConnectivityKdTree>>() {
+			@Override
+			protected HashMap<Integer,ConnectivityKdTree> initialValue() {
+				return new HashMap<Integer, ConnectivityKdTree>();
+			}
+		};
+
+	static {
+		DTNSim.registerForReset(ConnectivityKdTree.class.getCanonicalName());
+	}
+
+	public static void reset() {
+		treeobjects.remove();
+	}
+
+	/**
+	 * Creates a new, empty tree
+	 * @param slack How far the interfaces can move before the tree is
+	 * rebuilt
+	 */
+	private ConnectivityKdTree(double slack) {
+		this.slack = slack;
+		this.interfaces = new ArrayList<NetworkInterface>();
+		this.indexes = new HashMap<NetworkInterface, Integer>();
+		this.xs = new double[0];
+		this.ys = new double[0];
+		this.tree = new int[0];
+	}
+
+	/**
+	 * Returns a k-d tree object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @return The tree object for a specific interface
+	 */
+	public static ConnectivityKdTree ConnectivityKdTreeFactory(int key) {
+		HashMap<Integer,ConnectivityKdTree> trees = treeobjects.get();
+		synchronized (trees) {
+			ConnectivityKdTree kdTree = trees.get((Integer)key);
+			if (kdTree != null) {
+				return kdTree;
+			}
+
+			Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+			double slack = s.getDouble(SLACK_S, DEF_SLACK);
+			if (slack < 0) {
+				throw new SettingsError("Negative value (" + slack +
+						") for " + s.getFullPropertyName(SLACK_S));
+			}
+
+			kdTree = new ConnectivityKdTree(slack);
+			trees.put((Integer)key, kdTree);
+			return kdTree;
+		}
+	}
+
+	/**
+	 * Adds a network interface to the tree
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (indexes.containsKey(ni)) {
+			return;
+		}
+		indexes.put(ni, interfaces.size());
+		interfaces.add(ni);
+		dirty = true;
+	}
+
+	/**
+	 * Removes a network interface from the tree
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		Integer index = indexes.remove(ni);
+		if (index == null) {
+			return;
+		}
+		NetworkInterface last = interfaces.remove(interfaces.size() - 1);
+		if (last != ni) {
+			interfaces.set(index, last);
+			indexes.put(last, index);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Adds interfaces to the tree
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Marks the tree to be rebuilt if the interface has moved more than the
+	 * slack from its location in the tree
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		if (dirty) {
+			return; /* rebuilt anyway */
+		}
+		int i = indexes.get(ni);
+		Coord c = ni.getLocation();
+		double dx = c.getX() - xs[i];
+		double dy = c.getY() - ys[i];
+		if (dx * dx + dy * dy > slack * slack) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * Returns all interfaces that are within the transmit range plus the
+	 * slack of the given interface and use the same technology and channel
+	 * @param ni The interface whose near interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
+		addNearInterfaces(ni, niList);
+		return niList;
+	}
+
+	/**
+	 * Adds the interfaces that are within the transmit range plus the slack
+	 * of the given interface to a list
+	 * @param ni The interface whose near interfaces are added
+	 * @param to The list where the interfaces are added
+	 */
+	@Override
+	public void addNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		if (!indexes.containsKey(ni)) {
+			return;
+		}
+		if (dirty) {
+			rebuild();
+		}
+
+		Coord c = ni.getLocation();
+		double near = getNearDistance(ni);
+		search(0, tree.length, 0, c.getX(), c.getY(), near + slack,
+				near * near, to);
+	}
+
+	/**
+	 * Calls the handler once for every unordered pair of interfaces that
+	 * can be within range of each other. A pair is handled from the end with
+	 * the shorter transmit range (or, with equal ranges, from the end with
+	 * the smaller index), whose near interfaces contain all the interfaces
+	 * within its range.
+	 * @param handler The handler of the pairs
+	 */
+	@Override
+	public void forEachNearPair(NearPairHandler handler) {
+		if (pairCandidates == null) {
+			pairCandidates = new ArrayList<NetworkInterface>();
+		}
+
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			NetworkInterface ni = interfaces.get(i);
+			double range = ni.getTransmitRange();
+			pairCandidates.clear();
+			addNearInterfaces(ni, pairCandidates);
+			for (int k=0, m = pairCandidates.size(); k < m; k++) {
+				NetworkInterface other = pairCandidates.get(k);
+				double otherRange = other.getTransmitRange();
+				if (otherRange > range || (otherRange == range &&
+						indexes.get(other) > i)) {
+					handler.nearPair(ni, other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the distance within which all the other interfaces are always
+	 * among the near interfaces of the interface: its transmit range plus
+	 * the slack
+	 * @param ni The interface
+	 * @return The distance
+	 */
+	@Override
+	public double getNearDistance(NetworkInterface ni) {
+		return ni.getTransmitRange() + slack;
+	}
+
+	/**
+	 * Finds the interfaces of a subtree whose location in the tree is within
+	 * the search radius and whose current location is within the near
+	 * distance of the query location
+	 * @param from Index of the first node of the subtree
+	 * @param to Index after the last node of the subtree
+	 * @param axis Splitting axis of the subtree's root (0 = x, 1 = y)
+	 * @param x X coordinate of the query location
+	 * @param y Y coordinate of the query location
+	 * @param radius The search radius
+	 * @param near2 Square of the near distance
+	 * @param result The list where the found interfaces are added
+	 */
+	private void search(int from, int to, int axis, double x, double y,
+			double radius, double near2, List<NetworkInterface> result) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			int i = tree[mid];
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			if (dx * dx + dy * dy <= radius * radius) {
+				NetworkInterface ni = interfaces.get(i);
+				Coord c = ni.getLocation();
+				dx = x - c.getX();
+				dy = y - c.getY();
+				if (dx * dx + dy * dy <= near2) {
+					result.add(ni);
+				}
+			}
+
+			/* the smaller half is before and the bigger after the median */
+			double d = axis == 0 ? x - xs[i] : y - ys[i];
+			if (d <= radius && d >= -radius) {
+				search(from, mid, 1 - axis, x, y, radius, near2, result);
+				from = mid + 1;
+			}
+			else if (d < 0) {
+				to = mid;
+			}
+			else {
+				from = mid + 1;
+			}
+			axis = 1 - axis;
+		}
+	}
+
+	/**
+	 * Rebuilds the tree from the current locations of the interfaces
+	 */
+	private synchronized void rebuild() {
+		if (!dirty) {
+			return; /* rebuilt by another thread */
+		}
+
+		int n = interfaces.size();
+		if (tree.length != n) {
+			xs = new double[n];
+			ys = new double[n];
+			tree = new int[n];
+		}
+		for (int i=0; i < n; i++) {
+			Coord c = interfaces.get(i).getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+			tree[i] = i;
+		}
+		build(0, n, 0);
+		dirty = false;
+	}
+
+	/**
+	 * Orders a range of the tree so that the median of the range along
+	 * the axis is in the middle, the smaller values before and the bigger
+	 * ones after it, and then orders the two halves along the other axis
+	 * @param from Index of the first node of the range
+	 * @param to Index after the last node of the range
+	 * @param axis The axis (0 = x, 1 = y)
+	 */
+	private void build(int from, int to, int axis) {
+		while (to - from > 1) {
+			int mid = (from + to) >>> 1;
+			select(from, to - 1, mid, axis == 0 ? xs : ys);
+			build(from, mid, 1 - axis);
+			from = mid + 1;
+			axis = 1 - axis;
+		}
+	}
+
+	/**
+	 * Partially sorts a range of the tree so that the node at index k is
+	 * the one that would be there if the range was sorted by the values
+	 * @param left Index of the first node of the range
+	 * @param right Index of the last node of the range
+	 * @param k The index to select
+	 * @param values Values of the interfaces to sort by
+	 */
+	private void select(int left, int right, int k, double[] values) {
+		while (right > left) {
+			double pivot = values[tree[(left + right) >>> 1]];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (values[tree[i]] < pivot) {
+					i++;
+				}
+				while (values[tree[j]] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = tree[i];
+					tree[i] = tree[j];
+					tree[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			}
+			else if (k >= i) {
+				left = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of the tree
+	 * @return a string representation of the tree
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + interfaces.size() +
+			" interfaces, slack=" + this.slack;
+	}
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.RunLocal;
+import core.Settings;
+import core.SettingsError;
+import core.World;
+
+/**
+ * <P>Connectivity optimizer that keeps a list of neighbours for every
+ * interface (a Verlet list). Every interface has an anchor location and
+ * two interfaces are each other's neighbours if their anchors are within
+ * the transmit range plus the skin (see {@link #SKIN_S}) of each other.
+ * The anchor of an interface is moved to its current location, and its
+ * neighbours are searched again, only when it has moved more than half of
+ * the skin from the anchor. Since neither end of a pair can be further
+ * than half of the skin from its anchor, all the interfaces within the
+ * transmit range of an interface are always among its neighbours, and
+ * between the searches the near interfaces of an interface are just its
+ * neighbour list.</P>
+ * <P>The lists are built for the transmit range the optimizer was created
+ * with, like the cell size of the {@link ConnectivityGrid}. A bigger skin
+ * means fewer searches but longer lists. Enabled with the
+ * {@link #NEIGHBOUR_LISTS_S} setting. Negative coordinates are
+ * supported.</P>
+ */
+public class ConnectivityNeighbourLists extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Should the neighbour lists be used instead of the connectivity grid
+	 * -setting id ({@value}). Used in {@link World#OPTIMIZATION_SETTINGS_NS}
+	 * name space. Boolean (true/false) variable. Default is false. Takes
+	 * precedence over {@link SparseConnectivityGrid#SPARSE_GRID_S} but
+	 * not over {@link ConnectivityKdTree#KD_TREE_S}.
+	 */
+	public static final String NEIGHBOUR_LISTS_S = "connectivityNeighbourLists";
+
+	/**
+	 * Width of the skin of the neighbour lists -setting id ({@value}).
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space. Double
+	 * (meters). Default is {@link #DEF_SKIN}.
+	 */
+	public static final String SKIN_S = "neighbourListSkin";
+	/** default value for the skin ({@value} meters) */
+	public static final double DEF_SKIN = 8;
+
+	/** multiplier for scrambling the keys of the anchor cells (the
+	 * golden ratio times 2^64) */
+	private static final long KEY_MULTIPLIER = 0x9E3779B97F4A7C15L;
+	/** initial capacity of the neighbour lists and the anchor cells */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** the interfaces; the indexes are used as identifiers in the lists */
+	private ArrayList<NetworkInterface> interfaces;
+	/** indexes of the interfaces */
+	private HashMap<NetworkInterface, Integer> indexes;
+	/** x coordinates of the anchors */
+	private double[] xs;
+	/** y coordinates of the anchors */
+	private double[] ys;
+	/** do the interfaces have an anchor yet */
+	private boolean[] anchored;
+	/** neighbours of the interfaces (indexes of the other interfaces) */
+	private int[][] lists;
+	/** number of neighbours of the interfaces */
+	private int[] listSizes;
+	/** keys of the anchor cells of the interfaces */
+	private long[] cellKeys;
+	/** cells of the anchors, keyed by the column and the row */
+	private HashMap<Long, AnchorCell> cells;
+	/** number of interfaces without an anchor */
+	private volatile int nrofUnanchored;
+
+	private double range;
+	private double skin;
+	/** size of the anchor cells: the range plus the skin */
+	private double cellSize;
+
+	/** neighbour lists of the current simulation run, keyed by interface
+	 * type */
+	private static final RunLocal<HashMap<Integer,ConnectivityNeighbourLists>>
+		listobjects =
+			new RunLocal<HashMap<Integer,ConnectivityNeighbourLists>>() {
+			@Override
+			protected HashMap<Integer,ConnectivityNeighbourLists>
+				initialValue() {
+				return new HashMap<Integer, ConnectivityNeighbourLists>();
+			}
+		};
+
+	static {
+		DTNSim.registerForReset(
+				ConnectivityNeighbourLists.class.getCanonicalName());
+	}
+
+	public static void reset() {
+		listobjects.remove();
+	}
+
+	/**
+	 * Creates new, empty neighbour lists
+	 * @param range The transmit range of the interfaces
+	 * @param skin Width of the skin
+	 */
+	private ConnectivityNeighbourLists(double range, double skin) {
+		this.range = range;
+		this.skin = skin;
+		this.cellSize = range + skin;
+		this.interfaces = new ArrayList<NetworkInterface>();
+		this.indexes = new HashMap<NetworkInterface, Integer>();
+		this.cells = new HashMap<Long, AnchorCell>();
+		this.xs = new double[0];
+		this.ys = new double[0];
+		this.anchored = new boolean[0];
+		this.lists = new int[0][];
+		this.listSizes = new int[0];
+		this.cellKeys = new long[0];
+	}
+
+	/**
+	 * Returns a neighbour list object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param range The transmit range of the interfaces
+	 * @return The neighbour list object for a specific interface
+	 */
+	public static ConnectivityNeighbourLists ConnectivityNeighbourListsFactory(
+			int key, double range) {
+		HashMap<Integer,ConnectivityNeighbourLists> objects =
+			listobjects.get();
+		synchronized (objects) {
+			ConnectivityNeighbourLists nl = objects.get((Integer)key);
+			if (nl != null) {
+				return nl;
+			}
+
+			Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+			double skin = s.getDouble(SKIN_S, DEF_SKIN);
+			if (skin < 0) {
+				throw new SettingsError("Negative value (" + skin +
+						") for " + s.getFullPropertyName(SKIN_S));
+			}
+
+			nl = new ConnectivityNeighbourLists(range, skin);
+			objects.put((Integer)key, nl);
+			return nl;
+		}
+	}
+
+	/**
+	 * Adds a network interface to the optimizer. The interface gets its
+	 * anchor when its location is updated (see
+	 * {@link #updateLocation(NetworkInterface)}) or its near interfaces
+	 * are needed, since the hosts may not have their initial locations
+	 * yet when the interfaces are added.
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (indexes.containsKey(ni)) {
+			return;
+		}
+		int i = interfaces.size();
+		if (i == xs.length) {
+			grow();
+		}
+		indexes.put(ni, i);
+		interfaces.add(ni);
+		anchored[i] = false;
+		listSizes[i] = 0;
+		nrofUnanchored++;
+	}
+
+	/**
+	 * Removes a network interface from the optimizer
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		Integer index = indexes.remove(ni);
+		if (index == null) {
+			return;
+		}
+		int i = index;
+		unanchor(i);
+
+		int last = interfaces.size() - 1;
+		NetworkInterface lastNi = interfaces.remove(last);
+		if (last == i) {
+			return;
+		}
+
+		/* move the last interface to the removed one's place */
+		interfaces.set(i, lastNi);
+		indexes.put(lastNi, i);
+		xs[i] = xs[last];
+		ys[i] = ys[last];
+		anchored[i] = anchored[last];
+		cellKeys[i] = cellKeys[last];
+		int[] tmp = lists[i];
+		lists[i] = lists[last];
+		lists[last] = tmp;
+		listSizes[i] = listSizes[last];
+		listSizes[last] = 0;
+		if (anchored[i]) {
+			for (int k=0; k < listSizes[i]; k++) {
+				replace(lists[lists[i][k]], listSizes[lists[i][k]], last, i);
+			}
+			AnchorCell cell = cells.get(cellKeys[i]);
+			replace(cell.members, cell.size, last, i);
+		}
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Moves the anchor of the interface to its current location and
+	 * searches its neighbours again if it has moved more than half of the
+	 * skin from the anchor. Must not be called concurrently with the other
+	 * methods.
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		int i = indexes.get(ni);
+		Coord c = ni.getLocation();
+		if (anchored[i]) {
+			double dx = c.getX() - xs[i];
+			double dy = c.getY() - ys[i];
+			if (dx * dx + dy * dy <= skin * skin / 4) {
+				return; /* the neighbour list is still valid */
+			}
+			unanchor(i);
+		}
+		else {
+			nrofUnanchored--;
+		}
+		anchor(i, c);
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * Returns the neighbours of the interface: the interfaces whose
+	 * anchors are within the range plus the skin of the interface's anchor
+	 * @param ni The interface whose neighbours are returned
+	 * @return List of the neighbours
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
+		addNearInterfaces(ni, niList);
+		return niList;
+	}
+
+	/**
+	 * Adds the neighbours of the interface to a list
+	 * @param ni The interface whose neighbours are added
+	 * @param to The list where the interfaces are added
+	 */
+	@Override
+	public void addNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		Integer index = indexes.get(ni);
+		if (index == null) {
+			return;
+		}
+		if (nrofUnanchored > 0) {
+			anchorAll();
+		}
+
+		int i = index;
+		int[] list = lists[i];
+		for (int k=0, n = listSizes[i]; k < n; k++) {
+			to.add(interfaces.get(list[k]));
+		}
+	}
+
+	/**
+	 * Calls the handler once for every pair of neighbours
+	 * @param handler The handler of the pairs
+	 */
+	@Override
+	public void forEachNearPair(NearPairHandler handler) {
+		if (nrofUnanchored > 0) {
+			anchorAll();
+		}
+
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			NetworkInterface ni = interfaces.get(i);
+			int[] list = lists[i];
+			for (int k=0, m = listSizes[i]; k < m; k++) {
+				if (list[k] > i) {
+					handler.nearPair(ni, interfaces.get(list[k]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the distance within which all the other interfaces are always
+	 * among the near interfaces: the transmit range
+	 * @return The distance
+	 */
+	@Override
+	public double getNearDistance() {
+		return this.range;
+	}
+
+	/**
+	 * Returns the distance within which all the other interfaces are always
+	 * among the neighbours of the given interface until its neighbours are
+	 * searched again. An other interface that isn't a neighbour has its
+	 * anchor further than the range plus the skin from the interface's
+	 * anchor and is at most half of the skin from its own anchor, so the
+	 * distance is the range plus half of the skin minus the distance the
+	 * interface has moved from its anchor.
+	 * @param ni The interface
+	 * @return The distance
+	 */
+	@Override
+	public double getNearDistance(NetworkInterface ni) {
+		Integer index = indexes.get(ni);
+		if (index == null || !anchored[index]) {
+			return this.range;
+		}
+		int i = index;
+		Coord c = ni.getLocation();
+		double dx = c.getX() - xs[i];
+		double dy = c.getY() - ys[i];
+		double moved = Math.sqrt(dx * dx + dy * dy);
+		return this.range + Math.max(0, this.skin / 2 - moved);
+	}
+
+	/**
+	 * Returns the total number of neighbours in the lists
+	 * @return The number of neighbours (every pair is counted twice)
+	 */
+	public int getNrofNeighbours() {
+		int total = 0;
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			total += listSizes[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Anchors all the interfaces that don't have an anchor yet to their
+	 * current locations
+	 */
+	private synchronized void anchorAll() {
+		if (nrofUnanchored == 0) {
+			return; /* anchored by another thread */
+		}
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			if (!anchored[i]) {
+				anchor(i, interfaces.get(i).getLocation());
+			}
+		}
+		nrofUnanchored = 0;
+	}
+
+	/**
+	 * Sets the anchor of an interface and adds the interface to the
+	 * neighbour lists of the interfaces whose anchors are within the range
+	 * plus the skin, and them to its list
+	 * @param i Index of the interface
+	 * @param c The new anchor
+	 */
+	private void anchor(int i, Coord c) {
+		double x = c.getX();
+		double y = c.getY();
+		int col = (int)Math.floor(x / cellSize);
+		int row = (int)Math.floor(y / cellSize);
+		xs[i] = x;
+		ys[i] = y;
+		anchored[i] = true;
+		cellKeys[i] = key(col, row);
+
+		double near2 = cellSize * cellSize;
+		for (int dc = -1; dc <= 1; dc++) {
+			for (int dr = -1; dr <= 1; dr++) {
+				AnchorCell cell = cells.get(key(col + dc, row + dr));
+				if (cell == null) {
+					continue;
+				}
+				for (int k=0; k < cell.size; k++) {
+					int j = cell.members[k];
+					double dx = x - xs[j];
+					double dy = y - ys[j];
+					if (dx * dx + dy * dy <= near2) {
+						addNeighbour(i, j);
+						addNeighbour(j, i);
+					}
+				}
+			}
+		}
+
+		AnchorCell cell = cells.get(cellKeys[i]);
+		if (cell == null) {
+			cell = new AnchorCell();
+			cells.put(cellKeys[i], cell);
+		}
+		cell.add(i);
+	}
+
+	/**
+	 * Removes the anchor of an interface: removes the interface from its
+	 * anchor cell and from the neighbour lists of its neighbours, and
+	 * clears its list
+	 * @param i Index of the interface
+	 */
+	private void unanchor(int i) {
+		if (!anchored[i]) {
+			nrofUnanchored--;
+			return;
+		}
+		int[] list = lists[i];
+		for (int k=0, n = listSizes[i]; k < n; k++) {
+			int j = list[k];
+			listSizes[j] = remove(lists[j], listSizes[j], i);
+		}
+		listSizes[i] = 0;
+
+		AnchorCell cell = cells.get(cellKeys[i]);
+		cell.size = remove(cell.members, cell.size, i);
+		if (cell.size == 0) {
+			cells.remove(cellKeys[i]);
+		}
+		anchored[i] = false;
+	}
+
+	/**
+	 * Adds an interface to the neighbour list of another interface
+	 * @param i Index of the interface whose list is appended
+	 * @param j Index of the neighbour
+	 */
+	private void addNeighbour(int i, int j) {
+		if (listSizes[i] == lists[i].length) {
+			int[] newList = new int[lists[i].length * 2];
+			System.arraycopy(lists[i], 0, newList, 0, listSizes[i]);
+			lists[i] = newList;
+		}
+		lists[i][listSizes[i]++] = j;
+	}
+
+	/**
+	 * Removes a value from the used part of an array by replacing it with
+	 * the last used value
+	 * @param values The array
+	 * @param size Number of values in use
+	 * @param value The value to remove
+	 * @return The new number of values
+	 */
+	private static int remove(int[] values, int size, int value) {
+		for (int k=0; k < size; k++) {
+			if (values[k] == value) {
+				values[k] = values[size - 1];
+				return size - 1;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Replaces a value in the used part of an array
+	 * @param values The array
+	 * @param size Number of values in use
+	 * @param value The value to replace
+	 * @param newValue The replacement
+	 */
+	private static void replace(int[] values, int size, int value,
+			int newValue) {
+		for (int k=0; k < size; k++) {
+			if (values[k] == value) {
+				values[k] = newValue;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the per-interface arrays
+	 */
+	private void grow() {
+		int capacity = Math.max(INITIAL_CAPACITY, xs.length * 2);
+		int old = xs.length;
+		double[] newXs = new double[capacity];
+		double[] newYs = new double[capacity];
+		boolean[] newAnchored = new boolean[capacity];
+		int[][] newLists = new int[capacity][];
+		int[] newListSizes = new int[capacity];
+		long[] newCellKeys = new long[capacity];
+		System.arraycopy(xs, 0, newXs, 0, old);
+		System.arraycopy(ys, 0, newYs, 0, old);
+		System.arraycopy(anchored, 0, newAnchored, 0, old);
+		System.arraycopy(lists, 0, newLists, 0, old);
+		System.arraycopy(listSizes, 0, newListSizes, 0, old);
+		System.arraycopy(cellKeys, 0, newCellKeys, 0, old);
+		for (int i = old; i < capacity; i++) {
+			newLists[i] = new int[INITIAL_CAPACITY];
+		}
+		xs = newXs;
+		ys = newYs;
+		anchored = newAnchored;
+		lists = newLists;
+		listSizes = newListSizes;
+		cellKeys = newCellKeys;
+	}
+
+	/**
+	 * Returns the key of an anchor cell. The column and the row are
+	 * scrambled with an odd multiplier (which keeps the keys unique),
+	 * since the hash code of a Long is the same for all the cells whose
+	 * column XOR row is the same.
+	 * @param col Column of the cell
+	 * @param row Row of the cell
+	 * @return The key
+	 */
+	private static long key(int col, int row) {
+		return (((long)col << 32) | (row & 0xffffffffL)) * KEY_MULTIPLIER;
+	}
+
+	/**
+	 * Returns a string representation of the neighbour lists
+	 * @return a string representation of the neighbour lists
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + interfaces.size() +
+			" interfaces, range=" + this.range + ", skin=" + this.skin;
+	}
+
+	/**
+	 * Indexes of the interfaces whose anchors are in the same cell
+	 */
+	private static class AnchorCell implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private int[] members = new int[INITIAL_CAPACITY];
+		private int size;
+
+		/**
+		 * Adds an interface to the cell
+		 * @param i Index of the interface
+		 */
+		private void add(int i) {
+			if (size == members.length) {
+				int[] newMembers = new int[size * 2];
+				System.arraycopy(members, 0, newMembers, 0, size);
+				members = newMembers;
+			}
+			members[size++] = i;
+		}
+	}
+}
@@ -4,15 +4,39 @@
  */
 package interfaces;
 
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
+import core.DTNHost;
+import core.HostPositions;
 import core.NetworkInterface;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
  * with network interfaces of a specific range
  */
-abstract public class ConnectivityOptimizer {
+abstract public class ConnectivityOptimizer implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** number of range checks made by
+	 * {@link #forEachPairInRange(NearPairHandler)} */
+	private long nrofRangeChecks;
+
+	/**
+	 * Handler for the pairs of near interfaces (see
+	 * {@link ConnectivityOptimizer#forEachNearPair(NearPairHandler)})
+	 */
+	public interface NearPairHandler {
+		/**
+		 * Handles a pair of interfaces that are near each other
+		 * @param ni1 The first interface
+		 * @param ni2 The second interface
+		 */
+		public void nearPair(NetworkInterface ni1, NetworkInterface ni2);
+	}
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -40,9 +64,168 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Adds the network interfaces that might be located so that they can be
+	 * connected with the network interface to a list (in the same order as
+	 * {@link #getNearInterfaces(NetworkInterface)} returns them). The
+	 * default implementation copies the result of
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers can override
+	 * this to find the interfaces without allocating new collections.
+	 *
+	 * @param ni network interface that needs to be connected
+	 * @param to The list where the interfaces are added
+	 */
+	public void addNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		to.addAll(getNearInterfaces(ni));
+	}
+
+	/**
+	 * Calls the handler once for every unordered pair of different
+	 * interfaces that are near each other, i.e., one of them is among the
+	 * near interfaces of the other. Pairs whose interfaces can't be within
+	 * range of each other may be left out. The default implementation goes
+	 * through
+	 * the near interfaces of every interface and skips the pairs that were
+	 * already handled from the other end; optimizers can override this to
+	 * enumerate every pair only once.
+	 *
+	 * @param handler The handler of the pairs
+	 */
+	public void forEachNearPair(NearPairHandler handler) {
+		Map<NetworkInterface, Integer> index =
+			new IdentityHashMap<NetworkInterface, Integer>();
+		for (NetworkInterface ni : getAllInterfaces()) {
+			index.put(ni, index.size());
+		}
+
+		for (NetworkInterface ni : getAllInterfaces()) {
+			int i = index.get(ni);
+			for (NetworkInterface other : getNearInterfaces(ni)) {
+				Integer j = index.get(other);
+				if (j != null && j > i) {
+					handler.nearPair(ni, other);
+				}
+				else if (j != null && j < i && !getNearInterfaces(other).
+						contains(ni)) {
+					handler.nearPair(ni, other); /* not found from other */
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the handler once for every unordered pair of different
+	 * interfaces that are within range of each other, i.e., within the
+	 * smaller transmit range of the two. The default implementation checks
+	 * the pairs of {@link #forEachNearPair(NearPairHandler)} using the
+	 * host positions; optimizers can override this to check the pairs
+	 * straight from the position arrays (see {@link HostPositions}).
+	 *
+	 * @param handler The handler of the pairs
+	 */
+	public void forEachPairInRange(final NearPairHandler handler) {
+		forEachNearPair(new NearPairHandler() {
+			public void nearPair(NetworkInterface ni1, NetworkInterface ni2) {
+				nrofRangeChecks++;
+				if (isWithinRange(ni1, ni2)) {
+					handler.nearPair(ni1, ni2);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds the other network interfaces that are within range of the
+	 * network interface to a list (in the order of
+	 * {@link #addNearInterfaces(NetworkInterface, List)}). Doesn't change
+	 * the state of the optimizer, so this can be called concurrently for
+	 * different interfaces.
+	 *
+	 * @param ni The network interface
+	 * @param to The list where the interfaces are added
+	 * @return The number of interfaces whose range was checked
+	 */
+	public int addInterfacesInRange(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		int start = to.size();
+		addNearInterfaces(ni, to);
+		int last = start;
+		int checks = 0;
+		for (int i = start, n = to.size(); i < n; i++) {
+			NetworkInterface other = to.get(i);
+			if (other != ni) {
+				checks++;
+				if (isWithinRange(ni, other)) {
+					to.set(last++, other);
+				}
+			}
+		}
+		for (int i = to.size() - 1; i >= last; i--) {
+			to.remove(i);
+		}
+		return checks;
+	}
+
+	/**
+	 * Returns the number of range checks made by
+	 * {@link #forEachPairInRange(NearPairHandler)}
+	 * @return The number of range checks
+	 */
+	public long getNrofRangeChecks() {
+		return this.nrofRangeChecks;
+	}
+
+	/**
+	 * Adds range checks to the number of range checks made
+	 * @param checks The number of checks to add
+	 */
+	protected void addRangeChecks(long checks) {
+		this.nrofRangeChecks += checks;
+	}
+
+	/**
+	 * Returns true if two interfaces are within the smaller transmit range
+	 * of the two of each other
+	 * @param ni1 The first interface
+	 * @param ni2 The second interface
+	 * @return True if the interfaces are within range of each other
+	 */
+	protected static boolean isWithinRange(NetworkInterface ni1,
+			NetworkInterface ni2) {
+		DTNHost h1 = ni1.getHost();
+		return h1.getPositions().isWithinDistance(h1.getAddress(),
+				ni2.getHost().getAddress(),
+				Math.min(ni1.getTransmitRange(), ni2.getTransmitRange()));
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Returns the distance within which all the other interfaces are
+	 * always among the near interfaces of an interface (see
+	 * {@link #getNearInterfaces(NetworkInterface)}). The default
+	 * implementation returns 0, i.e., nothing is guaranteed.
+	 * @return The distance
+	 */
+	public double getNearDistance() {
+		return 0;
+	}
+
+	/**
+	 * Returns the distance within which all the other interfaces are
+	 * always among the near interfaces of the given interface. The default
+	 * implementation returns {@link #getNearDistance()}; optimizers whose
+	 * near interfaces depend on the interface (e.g., on its transmit range)
+	 * can override this.
+	 * @param ni The interface
+	 * @return The distance
+	 */
+	public double getNearDistance(NetworkInterface ni) {
+		return getNearDistance();
+	}
 }
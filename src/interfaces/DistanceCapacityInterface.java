@@ -4,7 +4,8 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
+
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -17,6 +18,7 @@ import core.VBRConnection;
  * values using setting {@link #TRANSMIT_SPEEDS_S}.
  */
 public class DistanceCapacityInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Comma-separated list of speed values -setting id ({@value} ). The first
@@ -95,11 +97,25 @@ public class DistanceCapacityInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+		List<NetworkInterface> interfaces = getNearInterfaces();
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
+		}
+
+		/* update all connections */
+		for (Connection con : getConnections()) {
+			con.update();
 		}
+	}
+
+	@Override
+	public void findConnectivityChanges() {
+		findLinkChanges();
+	}
+
+	@Override
+	public void applyConnectivityChanges() {
+		applyLinkChanges();
 
 		/* update all connections */
 		for (Connection con : getConnections()) {
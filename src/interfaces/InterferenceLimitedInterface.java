@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.Connection;
 import core.NetworkInterface;
@@ -18,6 +18,8 @@ import core.VBRConnection;
  * transmissions. The configured transmit speed is the maximum obtainable speed.
  */
 public class InterferenceLimitedInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
+
 	protected int currentTransmitSpeed;
 	protected int numberOfTransmissions;
 
@@ -98,10 +100,10 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces)
-			connect(i);
+		List<NetworkInterface> interfaces = getNearInterfaces();
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
+		}
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
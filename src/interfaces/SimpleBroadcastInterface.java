@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.CBRConnection;
 import core.Connection;
@@ -16,6 +16,7 @@ import core.Settings;
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Reads the interface settings from the Settings file
@@ -87,13 +88,22 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+		List<NetworkInterface> interfaces = getNearInterfaces();
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
 		}
 	}
 
+	@Override
+	public void findConnectivityChanges() {
+		findLinkChanges();
+	}
+
+	@Override
+	public void applyConnectivityChanges() {
+		applyLinkChanges();
+	}
+
 	/**
 	 * Creates a connection to another host. This method does not do any checks
 	 * on whether the other node is in range or active
@@ -0,0 +1,485 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.RunLocal;
+import core.Settings;
+import core.SettingsError;
+import core.World;
+
+/**
+ * <P>Sparse version of the {@link ConnectivityGrid}. The interfaces are put
+ * on the cells of an unbounded grid the same way as in the connectivity
+ * grid, but only the cells that contain interfaces exist. The cells are
+ * stored in a hash table keyed by the cell coordinates packed in a
+ * primitive long, and a cell is removed when its last interface leaves it.
+ * The memory use therefore depends on the number of interfaces instead of
+ * the size of the world, and negative coordinates are supported. Useful for
+ * huge worlds with short radio ranges, where the dense grid would allocate
+ * millions of empty cells.</P>
+ * <P>The cells are of the same size as in the connectivity grid (see
+ * {@link ConnectivityGrid#CELL_SIZE_MULT_S}) and the near interfaces are
+ * returned in the same order, so the simulation results are the same with
+ * either grid. Enabled with the {@link #SPARSE_GRID_S} setting.</P>
+ */
+public class SparseConnectivityGrid extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Should the sparse connectivity grid be used instead of the
+	 * {@link ConnectivityGrid} -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Boolean
+	 * (true/false) variable. Default is false.
+	 */
+	public static final String SPARSE_GRID_S = "sparseConnectivityGrid";
+
+	/** initial capacity of the cell table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 64;
+	/** maximum number of empty cells kept for reuse */
+	private static final int MAX_FREE_CELLS = 64;
+
+	/** cell table's keys (valid only where the cell is not null) */
+	private long[] keys;
+	/** cell table (open addressing with linear probing) */
+	private GridCell[] table;
+	/** number of cells in the table */
+	private int nrofCells;
+	/** removed cells that can be reused */
+	private ArrayList<GridCell> freeCells;
+	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	private int cellSize;
+	/** grids of the current simulation run, keyed by interface type */
+	private static final RunLocal<HashMap<Integer,SparseConnectivityGrid>>
+		gridobjects = new RunLocal<HashMap<Integer,SparseConnectivityGrid>>() {
+			@Override
+			protected HashMap<Integer,SparseConnectivityGrid> initialValue() {
+				return new HashMap<Integer, SparseConnectivityGrid>();
+			}
+		};
+
+	static {
+		DTNSim.registerForReset(
+				SparseConnectivityGrid.class.getCanonicalName());
+	}
+
+	public static void reset() {
+		gridobjects.remove();
+	}
+
+	/**
+	 * Creates a new sparse connectivity grid
+	 * @param cellSize Cell's edge's length (must be larger than the largest
+	 * 	radio coverage's diameter)
+	 */
+	private SparseConnectivityGrid(int cellSize) {
+		this.cellSize = cellSize;
+		this.keys = new long[INITIAL_CAPACITY];
+		this.table = new GridCell[INITIAL_CAPACITY];
+		this.freeCells = new ArrayList<GridCell>();
+		this.ginterfaces = new HashMap<NetworkInterface, GridCell>();
+	}
+
+	/**
+	 * Returns a sparse connectivity grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  connectivity grid.
+	 * @return The connectivity grid object for a specific interface
+	 */
+	public static SparseConnectivityGrid SparseConnectivityGridFactory(
+			int key, double maxRange) {
+		HashMap<Integer,SparseConnectivityGrid> grids = gridobjects.get();
+		synchronized (grids) {
+			SparseConnectivityGrid grid = grids.get((Integer)key);
+			if (grid != null) {
+				return grid;
+			}
+
+			Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+			int cellSizeMultiplier = ConnectivityGrid.DEF_CON_CELL_SIZE_MULT;
+			if (s.contains(ConnectivityGrid.CELL_SIZE_MULT_S)) {
+				cellSizeMultiplier = s.getInt(ConnectivityGrid.CELL_SIZE_MULT_S);
+			}
+			if (cellSizeMultiplier < 1) {
+				throw new SettingsError("Too small value (" +
+						cellSizeMultiplier + ") for " +
+						World.OPTIMIZATION_SETTINGS_NS + "." +
+						ConnectivityGrid.CELL_SIZE_MULT_S);
+			}
+
+			grid = new SparseConnectivityGrid(
+					(int)Math.ceil(maxRange * cellSizeMultiplier));
+			grids.put((Integer)key, grid);
+			return grid;
+		}
+	}
+
+	/**
+	 * Adds a network interface to the grid
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		GridCell c = getOrCreateCell(keyFromCoord(ni.getLocation()));
+		c.interfaces.add(ni);
+		ginterfaces.put(ni, c);
+	}
+
+	/**
+	 * Removes a network interface from the grid
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		GridCell c = ginterfaces.remove(ni);
+		if (c != null) {
+			c.interfaces.remove(ni);
+			releaseIfEmpty(c);
+		}
+	}
+
+	/**
+	 * Adds interfaces to the grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's position in the grid
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		GridCell oldCell = ginterfaces.get(ni);
+		long key = keyFromCoord(ni.getLocation());
+
+		if (oldCell.key != key) {
+			GridCell newCell = getOrCreateCell(key);
+			newCell.interfaces.add(ni);
+			boolean removeOk = oldCell.interfaces.remove(ni);
+			assert removeOk : "interface " + ni +
+				" not found from cell with " + oldCell.interfaces;
+			releaseIfEmpty(oldCell);
+			ginterfaces.put(ni, newCell);
+		}
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return ginterfaces.keySet();
+	}
+
+	/**
+	 * Returns all interfaces that are "near" (i.e., in neighboring grid
+	 * cells) and use the same technology and channel as the given interface
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
+		addNearInterfaces(ni, niList);
+		return niList;
+	}
+
+	/**
+	 * Adds the interfaces in the cell of the given interface and in the
+	 * neighboring cells to a list (in the same order as
+	 * {@link ConnectivityGrid} adds them)
+	 * @param ni The interface whose neighboring interfaces are added
+	 * @param to The list where the interfaces are added
+	 */
+	@Override
+	public void addNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> to) {
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		int row = cellIndex(c.getY());
+		int col = cellIndex(c.getX());
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				GridCell cell = getCell(key(j, i));
+				if (cell == null) {
+					continue;
+				}
+				for (int k=0, n = cell.interfaces.size(); k < n; k++) {
+					to.add(cell.interfaces.get(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the handler once for every unordered pair of interfaces that
+	 * are in the same cell or in neighboring cells. The pairs of a cell are
+	 * the pairs within the cell and the pairs with the cells to the right
+	 * of it and below it.
+	 * @param handler The handler of the pairs
+	 */
+	@Override
+	public void forEachNearPair(NearPairHandler handler) {
+		for (int s=0; s < table.length; s++) {
+			GridCell cell = table[s];
+			if (cell == null) {
+				continue;
+			}
+			GridCell right = getCell(key(cell.col + 1, cell.row));
+			GridCell belowLeft = getCell(key(cell.col - 1, cell.row + 1));
+			GridCell below = getCell(key(cell.col, cell.row + 1));
+			GridCell belowRight = getCell(key(cell.col + 1, cell.row + 1));
+
+			ArrayList<NetworkInterface> cellInterfaces = cell.interfaces;
+			for (int k=0, n = cellInterfaces.size(); k < n; k++) {
+				NetworkInterface ni = cellInterfaces.get(k);
+				for (int l = k + 1; l < n; l++) {
+					handler.nearPair(ni, cellInterfaces.get(l));
+				}
+				addPairs(ni, right, handler);
+				addPairs(ni, belowLeft, handler);
+				addPairs(ni, below, handler);
+				addPairs(ni, belowRight, handler);
+			}
+		}
+	}
+
+	/**
+	 * Calls the handler for the pairs of an interface and the interfaces
+	 * of a cell
+	 * @param ni The interface
+	 * @param cell The cell (or null if the cell doesn't exist)
+	 * @param handler The handler of the pairs
+	 */
+	private void addPairs(NetworkInterface ni, GridCell cell,
+			NearPairHandler handler) {
+		if (cell == null) {
+			return;
+		}
+		ArrayList<NetworkInterface> cellInterfaces = cell.interfaces;
+		for (int k=0, n = cellInterfaces.size(); k < n; k++) {
+			handler.nearPair(ni, cellInterfaces.get(k));
+		}
+	}
+
+	/**
+	 * Returns the edge length of the cells: the interfaces within that
+	 * distance are always in the neighboring cells
+	 * @return The cell size
+	 */
+	@Override
+	public double getNearDistance() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns the number of cells that currently exist (i.e., contain
+	 * interfaces)
+	 * @return The number of cells
+	 */
+	public int getNrofCells() {
+		return this.nrofCells;
+	}
+
+	/**
+	 * Returns the index of the cell row or column of a coordinate
+	 * @param c The coordinate
+	 * @return The index of the cell
+	 */
+	private int cellIndex(double c) {
+		return (int)Math.floor(c / cellSize);
+	}
+
+	/**
+	 * Returns the key of the cell containing a location
+	 * @param c The location
+	 * @return The key of the cell
+	 */
+	private long keyFromCoord(Coord c) {
+		return key(cellIndex(c.getX()), cellIndex(c.getY()));
+	}
+
+	/**
+	 * Packs cell coordinates to a key
+	 * @param col Column of the cell
+	 * @param row Row of the cell
+	 * @return The key
+	 */
+	private static long key(int col, int row) {
+		return ((long)col << 32) | (row & 0xffffffffL);
+	}
+
+	/**
+	 * Returns the slot of the table where the search for a key starts
+	 * @param key The key
+	 * @return Index of the slot
+	 */
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & (table.length - 1);
+	}
+
+	/**
+	 * Returns the cell with the given key
+	 * @param key Key of the cell
+	 * @return The cell or null if it doesn't exist
+	 */
+	private GridCell getCell(long key) {
+		int mask = table.length - 1;
+		for (int s = slot(key); table[s] != null; s = (s + 1) & mask) {
+			if (keys[s] == key) {
+				return table[s];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cell with the given key and creates it if it doesn't
+	 * exist
+	 * @param key Key of the cell
+	 * @return The cell
+	 */
+	private GridCell getOrCreateCell(long key) {
+		GridCell cell = getCell(key);
+		if (cell != null) {
+			return cell;
+		}
+
+		if ((nrofCells + 1) * 2 > table.length) {
+			resize(table.length * 2);
+		}
+		if (freeCells.isEmpty()) {
+			cell = new GridCell();
+		}
+		else {
+			cell = freeCells.remove(freeCells.size() - 1);
+		}
+		cell.key = key;
+		cell.col = (int)(key >> 32);
+		cell.row = (int)key;
+		insert(cell);
+		nrofCells++;
+		return cell;
+	}
+
+	/**
+	 * Inserts a cell to the table. The cell must not be in the table.
+	 * @param cell The cell to insert
+	 */
+	private void insert(GridCell cell) {
+		int mask = table.length - 1;
+		int s = slot(cell.key);
+		while (table[s] != null) {
+			s = (s + 1) & mask;
+		}
+		keys[s] = cell.key;
+		table[s] = cell;
+	}
+
+	/**
+	 * Removes a cell from the table if it has no interfaces. The following
+	 * cells of the probe sequence are shifted back so that no deleted
+	 * markers are needed.
+	 * @param cell The cell
+	 */
+	private void releaseIfEmpty(GridCell cell) {
+		if (!cell.interfaces.isEmpty()) {
+			return;
+		}
+
+		int mask = table.length - 1;
+		int s = slot(cell.key);
+		while (table[s] != cell) {
+			s = (s + 1) & mask;
+		}
+		table[s] = null;
+		nrofCells--;
+
+		/* move back the cells whose probe sequence crosses the hole */
+		for (int next = (s + 1) & mask; table[next] != null;
+				next = (next + 1) & mask) {
+			int home = slot(keys[next]);
+			if (((next - home) & mask) >= ((next - s) & mask)) {
+				keys[s] = keys[next];
+				table[s] = table[next];
+				table[next] = null;
+				s = next;
+			}
+		}
+
+		if (freeCells.size() < MAX_FREE_CELLS) {
+			freeCells.add(cell);
+		}
+	}
+
+	/**
+	 * Rehashes the cells to a table of a new size
+	 * @param capacity The new size of the table (a power of two)
+	 */
+	private void resize(int capacity) {
+		GridCell[] old = table;
+		keys = new long[capacity];
+		table = new GridCell[capacity];
+		for (GridCell cell : old) {
+			if (cell != null) {
+				insert(cell);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + this.nrofCells +
+			" cells, cell size=" + this.cellSize;
+	}
+
+	/**
+	 * A single cell in the grid. Contains the interfaces that are
+	 * currently in that part of the grid.
+	 */
+	private static class GridCell implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		// how large array is initially chosen
+		private static final int EXPECTED_INTERFACE_COUNT = 5;
+		private ArrayList<NetworkInterface> interfaces;
+		private long key;
+		private int col;
+		private int row;
+
+		private GridCell() {
+			this.interfaces = new ArrayList<NetworkInterface>(
+					EXPECTED_INTERFACE_COUNT);
+		}
+
+		/**
+		 * Returns a string representation of the cell
+		 * @return a string representation of the cell
+		 */
+		public String toString() {
+			return getClass().getSimpleName() + " (" + col + "," + row +
+				") with " + this.interfaces.size() + " interfaces :" +
+				this.interfaces;
+		}
+	}
+}
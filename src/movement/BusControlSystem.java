@@ -4,6 +4,7 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -11,6 +12,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.RunLocal;
 
 /**
  * This class controls busses and passengers that can use the bus.
@@ -19,10 +21,19 @@ import core.DTNSim;
  *
  * @author Frans Ekman
  */
-public class BusControlSystem {
+public class BusControlSystem implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 
-	private static HashMap<Integer, BusControlSystem> systems;
+	/** bus control systems of the current simulation run */
+	private static final RunLocal<HashMap<Integer, BusControlSystem>>
+		systems = new RunLocal<HashMap<Integer, BusControlSystem>>() {
+			@Override
+			protected HashMap<Integer, BusControlSystem> initialValue() {
+				return new HashMap<Integer, BusControlSystem>();
+			}
+		};
 
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
@@ -32,7 +43,6 @@ public class BusControlSystem {
 
 	static {
 		DTNSim.registerForReset(BusControlSystem.class.getCanonicalName());
-		reset();
 	}
 
 	/**
@@ -46,7 +56,7 @@ public class BusControlSystem {
 	}
 
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		systems.remove();
 	}
 
 	/**
@@ -84,12 +94,13 @@ public class BusControlSystem {
 	 */
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
+		HashMap<Integer, BusControlSystem> runSystems = systems.get();
 
-		if (systems.containsKey(id)) {
-			return systems.get(id);
+		if (runSystems.containsKey(id)) {
+			return runSystems.get(id);
 		} else {
 			BusControlSystem bcs = new BusControlSystem(systemID);
-			systems.put(id, bcs);
+			runSystems.put(id, bcs);
 			return bcs;
 		}
 	}
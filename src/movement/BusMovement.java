@@ -6,9 +6,11 @@ package movement;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.map.MapNode;
 import core.Coord;
+import core.RunLocal;
 import core.Settings;
 
 /**
@@ -18,10 +20,18 @@ import core.Settings;
  * @author Frans Ekman
  */
 public class BusMovement extends MapRouteMovement {
+	private static final long serialVersionUID = 1L;
 
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
+	/** next free id (per simulation run) */
+	private static final RunLocal<AtomicInteger> nextID =
+		new RunLocal<AtomicInteger>() {
+			@Override
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger(0);
+			}
+		};
 	private boolean startMode;
 	private List<Coord> stops;
 
@@ -34,7 +44,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -52,7 +62,7 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
@@ -73,6 +83,14 @@ public class BusMovement extends MapRouteMovement {
 		return path;
 	}
 
+	/**
+	 * Returns false; the bus control system is shared by all busses
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public BusMovement replicate() {
 		return new BusMovement(this);
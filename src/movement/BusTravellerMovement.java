@@ -5,12 +5,14 @@
 package movement;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Random;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.RunLocal;
 import core.Settings;
 
 /**
@@ -27,6 +29,7 @@ import core.Settings;
  */
 public class BusTravellerMovement extends MapBasedMovement implements
 	SwitchableMovement, TransportMovement {
+	private static final long serialVersionUID = 1L;
 
 	public static final String PROBABILITIES_STRING = "probs";
 	public static final String PROBABILITY_TAKE_OTHER_BUS = "probTakeOtherBus";
@@ -52,7 +55,14 @@ public class BusTravellerMovement extends MapBasedMovement implements
 
 	private boolean takeBus;
 
-	private static int nextID = 0;
+	/** next free id (per simulation run) */
+	private static final RunLocal<AtomicInteger> nextID =
+		new RunLocal<AtomicInteger>() {
+			@Override
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger(0);
+			}
+		};
 
 	/**
 	 * Creates a BusTravellerModel
@@ -62,7 +72,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = nextID.get().getAndIncrement();
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -89,7 +99,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = nextID.get().getAndIncrement();
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -162,6 +172,14 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		return 0;
 	}
 
+	/**
+	 * Returns false; the bus control system is shared with other travellers
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new BusTravellerMovement(this);
@@ -351,7 +369,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	}
 
 	public static void reset() {
-		nextID = 0;
+		nextID.remove();
 	}
 
 }
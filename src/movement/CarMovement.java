@@ -18,6 +18,7 @@ import core.Settings;
  */
 public class CarMovement extends MapBasedMovement implements
 	SwitchableMovement, TransportMovement {
+	private static final long serialVersionUID = 1L;
 
 	private Coord from;
 	private Coord to;
@@ -70,6 +71,14 @@ public class CarMovement extends MapBasedMovement implements
 		return path;
 	}
 
+	/**
+	 * Returns false; the path finder is shared by all replicas
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	/**
 	 * @see SwitchableMovement
 	 * @return true
@@ -4,12 +4,14 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.RunLocal;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -17,7 +19,8 @@ import core.DTNSim;
  *
  * @author Frans Ekman
  */
-public class EveningActivityControlSystem {
+public class EveningActivityControlSystem implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	private HashMap<Integer, EveningActivityMovement> eveningActivityNodes;
 	private List<Coord> meetingSpots;
@@ -25,13 +28,20 @@ public class EveningActivityControlSystem {
 
 	private Random rng;
 
-	private static HashMap<Integer, EveningActivityControlSystem>
-		controlSystems;
+	/** control systems of the current simulation run */
+	private static final RunLocal<HashMap<Integer,
+		EveningActivityControlSystem>> controlSystems =
+			new RunLocal<HashMap<Integer, EveningActivityControlSystem>>() {
+			@Override
+			protected HashMap<Integer, EveningActivityControlSystem>
+				initialValue() {
+				return new HashMap<Integer, EveningActivityControlSystem>();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
 				getCanonicalName());
-		reset();
 	}
 
 	/**
@@ -44,7 +54,7 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		controlSystems.remove();
 	}
 
 	/**
@@ -127,12 +137,14 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
-		if (controlSystems.containsKey(new Integer(id))) {
-			return controlSystems.get(new Integer(id));
+		HashMap<Integer, EveningActivityControlSystem> systems =
+			controlSystems.get();
+		if (systems.containsKey(new Integer(id))) {
+			return systems.get(new Integer(id));
 		} else {
 			EveningActivityControlSystem scs =
 				new EveningActivityControlSystem(id);
-			controlSystems.put(new Integer(id), scs);
+			systems.put(new Integer(id), scs);
 			return scs;
 		}
 	}
@@ -9,11 +9,13 @@ import input.WKTReader;
 import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.RunLocal;
 import core.Settings;
 
 /**
@@ -26,6 +28,7 @@ import core.Settings;
  */
 public class EveningActivityMovement extends MapBasedMovement
 	implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	private static final int WALKING_TO_MEETING_SPOT_MODE = 0;
 	private static final int EVENING_ACTIVITY_MODE = 1;
@@ -44,8 +47,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	public static final String MAX_WAIT_TIME_SETTING =
 		"maxAfterShoppingStopTime";
 
-	private static int nrOfMeetingSpots = 10;
-
 	private int mode;
 	private boolean ready;
 	private DijkstraPathFinder pathFinder;
@@ -60,7 +61,14 @@ public class EveningActivityMovement extends MapBasedMovement
 
 	private int id;
 
-	private static int nextID = 0;
+	/** next free id (per simulation run) */
+	private static final RunLocal<AtomicInteger> nextID =
+		new RunLocal<AtomicInteger>() {
+			@Override
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger(0);
+			}
+		};
 
 	private int minGroupSize;
 	private int maxGroupSize;
@@ -75,7 +83,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		pathFinder = new DijkstraPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 
-		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
+		int nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
 
 		minGroupSize = settings.getInt(MIN_GROUP_SIZE_SETTING);
 		maxGroupSize = settings.getInt(MAX_GROUP_SIZE_SETTING);
@@ -103,7 +111,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		} else {
 			try {
 				meetingSpotLocations = new LinkedList<Coord>();
-				List<Coord> locationsRead = (new WKTReader()).readPoints(
+				List<Coord> locationsRead = WKTReader.readCachedPoints(
 						new File(shoppingSpotsFile));
 				for (Coord coord : locationsRead) {
 					SimMap map = getMap();
@@ -120,7 +128,7 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 
@@ -144,7 +152,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -222,6 +230,15 @@ public class EveningActivityMovement extends MapBasedMovement
 		}
 	}
 
+	/**
+	 * Returns false; the evening activity control system is shared with
+	 * other hosts
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new EveningActivityMovement(this);
@@ -277,7 +294,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	}
 
 	public static void reset() {
-		nextID = 0;
+		nextID.remove();
 	}
 
 	public int getMinGroupSize() {
@@ -4,6 +4,7 @@
  */
 package movement;
 
+import input.BinaryMovementReader;
 import input.ExternalMovementReader;
 
 import java.util.HashMap;
@@ -15,41 +16,52 @@ import java.util.Queue;
 import util.Tuple;
 
 import core.Coord;
+import core.DTNHost;
 import core.DTNSim;
+import core.RunLocal;
 import core.Settings;
 import core.SimClock;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. If the file
+ * has the {@link input.BinaryMovementWriter#BINARY_EXT} extension, it is a
+ * binary movement trace recorded with {@link input.BinaryMovementWriter}
+ * and every host replays its own recorded paths exactly. The activeness of
+ * the hosts then comes from the group settings of this model.
  */
 public class ExternalMovement extends MovementModel {
+	private static final long serialVersionUID = 1L;
+
 	/** Namespace for settings */
 	public static final String EXTERNAL_MOVEMENT_NS = "ExternalMovement";
-	/** external locations file's path -setting id ({@value})*/
+	/** external locations file's path -setting id ({@value}). Either a
+	 * text file for {@link ExternalMovementReader} or a binary movement
+	 * trace. */
 	public static final String MOVEMENT_FILE_S = "file";
 	/** number of preloaded intervals per preload run -setting id ({@value})*/
 	public static final String NROF_PRELOAD_S = "nrofPreload";
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
 
+	/** shared external data state of the current simulation run */
+	private static final RunLocal<ExternalData> runData =
+		new RunLocal<ExternalData>();
+
+	/** shared binary movement trace of the current run */
+	private static final RunLocal<BinaryMovementReader> runTrace =
+		new RunLocal<BinaryMovementReader>();
+
+	/** the external data this model gets its locations from (null if a
+	 * binary trace is replayed) */
+	private final ExternalData data;
+	/** the binary trace this model replays (null if text data is used) */
+	private final transient BinaryMovementReader trace;
+	/** records of this model's host in the binary trace */
+	private transient BinaryMovementReader.HostTrace hostTrace;
+
 	/** the very first location of the node */
 	private Coord intialLocation;
 	/** queue of path-start-time, path tuples */
@@ -67,7 +79,6 @@ public class ExternalMovement extends MovementModel {
 
 	static {
 		DTNSim.registerForReset(ExternalMovement.class.getCanonicalName());
-		reset();
 	}
 
 	/**
@@ -77,26 +88,27 @@ public class ExternalMovement extends MovementModel {
 	public ExternalMovement(Settings settings) {
 		super(settings);
 
-		if (idMapping == null) {
-			// run these the first time object is created or after reset call
-			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
-
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
-
-			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
-			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
-				}
+		Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
+		String file = s.getSetting(MOVEMENT_FILE_S);
+		if (BinaryMovementReader.isBinaryMovementFile(file)) {
+			BinaryMovementReader t = runTrace.get();
+			if (t == null) {
+				t = new BinaryMovementReader(file);
+				runTrace.set(t);
 			}
+			this.trace = t;
+			this.data = null;
+			return;
 		}
+
+		this.trace = null;
+		ExternalData d = runData.get();
+		if (d == null) {
+			// run these the first time object is created or after reset call
+			d = new ExternalData(new Settings(EXTERNAL_MOVEMENT_NS));
+			runData.set(d);
+		}
+		this.data = d;
 	}
 
 	/**
@@ -107,17 +119,23 @@ public class ExternalMovement extends MovementModel {
 	private ExternalMovement(MovementModel mm) {
 		super(mm);
 
+		this.data = ((ExternalMovement)mm).data;
+		this.trace = ((ExternalMovement)mm).trace;
+		if (trace != null) {
+			return; // host's records are found when the host is set
+		}
+
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 
-		if (initLocations.size() > 0) { // we have location data left
+		if (data.initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0);
+			Tuple<String, Coord> initLoc = data.initLocations.remove(0);
 			this.intialLocation = this.latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+			this.latestPathStartTime = data.initTime;
 
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			data.idMapping.put(initLoc.getKey(), this);
 			isActive = true;
 		}
 		else {
@@ -127,34 +145,35 @@ public class ExternalMovement extends MovementModel {
 		}
 	}
 
-	/**
-	 * Checks if more paths should be preloaded and preloads them if
-	 * needed.
-	 */
-	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
-		}
-
-		if (!Double.isNaN(lastPreloadTime) && SimClock.getTime() >=
-				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
-			for (int i=0; i < nrofPreload &&
-					!Double.isNaN(lastPreloadTime); i++) {
-				lastPreloadTime = readMorePaths();
-			}
+	@Override
+	public void setHost(DTNHost host) {
+		super.setHost(host);
+		if (trace != null) {
+			this.hostTrace = trace.getHostTrace(host.getAddress());
 		}
 	}
 
 	@Override
 	public Coord getInitialLocation() {
+		if (hostTrace != null) {
+			return hostTrace.readInitialLocation();
+		}
 		return this.intialLocation;
 	}
 
 	@Override
 	public boolean isActive() {
+		if (trace != null) {
+			return super.isActive();
+		}
 		return isActive;
 	}
 
+	@Override
+	public boolean isParallelSafe() {
+		return trace != null; // replayed hosts share no mutable state
+	}
+
 	/**
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
@@ -163,7 +182,7 @@ public class ExternalMovement extends MovementModel {
 	 * @param time When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+		assert data.samplingInterval > 0 : "Non-positive sampling interval!";
 
 		if (loc.equals(latestLocation)) { // node didn't move
 			if (latestPath != null) {
@@ -181,7 +200,8 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();
 		}
 
-		double speed = loc.distance(this.latestLocation) / samplingInterval;
+		double speed = loc.distance(this.latestLocation) /
+			data.samplingInterval;
 		latestPath.addWaypoint(loc, speed);
 
 		this.latestLocation = loc;
@@ -193,6 +213,9 @@ public class ExternalMovement extends MovementModel {
 	 */
 	@Override
 	public double nextPathAvailable() {
+		if (hostTrace != null) {
+			return hostTrace.readNextPathAvailable();
+		}
 		if (pathQueue.size() == 0) {
 			return latestPathStartTime;
 		}
@@ -205,7 +228,11 @@ public class ExternalMovement extends MovementModel {
 	public Path getPath() {
 		Path p;
 
-		checkPathNeed(); // check if we should preload more paths
+		if (hostTrace != null) {
+			return hostTrace.readPath();
+		}
+
+		data.checkPathNeed(); // check if we should preload more paths
 
 		if (SimClock.getTime() < this.nextPathAvailable()) {
 			return null;
@@ -224,12 +251,18 @@ public class ExternalMovement extends MovementModel {
 
 	@Override
 	public int getMaxX() {
-		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
+		if (trace != null) {
+			return trace.getWorldSizeX();
+		}
+		return (int)(data.reader.getMaxX() - data.reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
-		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
+		if (trace != null) {
+			return trace.getWorldSizeY();
+		}
+		return (int)(data.reader.getMaxY() - data.reader.getMinY()) + 1;
 	}
 
 
@@ -239,39 +272,96 @@ public class ExternalMovement extends MovementModel {
 	}
 
 	/**
-	 * Reads paths for the next time instance from the reader
-	 * @return The time stamp of the reading or Double.NaN if no movements
-	 * were read.
+	 * Reset state so that next instance will have a fresh state
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	public static void reset() {
+		runData.remove();
+		runTrace.remove();
+	}
 
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
-		}
+	/**
+	 * External location data shared by all external movement models of a
+	 * simulation run.
+	 */
+	private static class ExternalData {
+		private final ExternalMovementReader reader;
+
+		/** mapping of external id to movement model */
+		private final Map<String, ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private final List<Tuple<String, Coord>> initLocations;
+		/** time of the very first location data */
+		private final double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload = 10;
+
+		private ExternalData(Settings s) {
+			idMapping = new HashMap<String, ExternalMovement>();
+			reader = new ExternalMovementReader(s.getSetting(MOVEMENT_FILE_S));
 
-		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
-			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
-				// ...init phase or if there are more IDs than nodes
-				em.addLocation(t.getValue(), time);
+			initLocations = reader.readNextMovements();
+			initTime = reader.getLastTimeStamp();
+			samplingInterval = -1;
+			lastPreloadTime = -1;
+
+			if (s.contains(NROF_PRELOAD_S)) {
+				nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (nrofPreload <= 0) {
+					nrofPreload = 1;
+				}
 			}
 		}
 
-		if (list.size() > 0) {
-			return time;
-		}
-		else {
-			return Double.NaN;
+		/**
+		 * Checks if more paths should be preloaded and preloads them if
+		 * needed.
+		 */
+		private void checkPathNeed() {
+			if (samplingInterval == -1) { // first preload
+				lastPreloadTime = readMorePaths();
+			}
+
+			if (!Double.isNaN(lastPreloadTime) && SimClock.getTime() >=
+					lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS)) {
+				for (int i=0; i < nrofPreload &&
+						!Double.isNaN(lastPreloadTime); i++) {
+					lastPreloadTime = readMorePaths();
+				}
+			}
 		}
-	}
 
-	/**
-	 * Reset state so that next instance will have a fresh state
-	 */
-	public static void reset() {
-		idMapping = null;
+		/**
+		 * Reads paths for the next time instance from the reader
+		 * @return The time stamp of the reading or Double.NaN if no movements
+		 * were read.
+		 */
+		private double readMorePaths() {
+			List<Tuple<String, Coord>> list = reader.readNextMovements();
+			double time = reader.getLastTimeStamp();
+
+			if (samplingInterval == -1) {
+				samplingInterval = time - initTime;
+			}
+
+			for (Tuple<String, Coord> t : list) {
+				ExternalMovement em = idMapping.get(t.getKey());
+				if (em != null) { // skip unknown IDs, i.e. IDs not mentioned...
+					// ...in init phase or if there are more IDs than nodes
+					em.addLocation(t.getValue(), time);
+				}
+			}
+
+			if (list.size() > 0) {
+				return time;
+			}
+			else {
+				return Double.NaN;
+			}
+		}
 	}
 
 }
@@ -12,6 +12,8 @@ import core.SimScenario;
  * Location (movement) model that sets the nodes in a grid formation
  */
 public class GridLocation extends MovementModel {
+	private static final long serialVersionUID = 1L;
+
 	/** Sub name space for the grid location settings ({@value}) */
 	public static final String GRIDLOC_NS = "GridLocation";
 	/** How many rows of nodes there are -setting ({@value}).
@@ -26,6 +26,7 @@ import core.SimClock;
  */
 public class HomeActivityMovement extends MapBasedMovement
 	implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	private static final int WALKING_HOME_MODE = 0;
 	private static final int AT_HOME_MODE = 1;
@@ -77,7 +78,7 @@ public class HomeActivityMovement extends MapBasedMovement
 		} else {
 			try {
 				allHomes = new LinkedList<Coord>();
-				List<Coord> locationsRead = (new WKTReader()).readPoints(
+				List<Coord> locationsRead = WKTReader.readCachedPoints(
 						new File(homeLocationsFile));
 				for (Coord coord : locationsRead) {
 					SimMap map = getMap();
@@ -212,6 +213,14 @@ public class HomeActivityMovement extends MapBasedMovement
 		}
 	}
 
+	/**
+	 * Returns false; the path finder is shared by all replicas
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new HomeActivityMovement(this);
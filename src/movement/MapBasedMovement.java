@@ -8,7 +8,6 @@ import input.WKTMapReader;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -20,6 +19,7 @@ import java.util.Vector;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.ResourceCache;
 import core.Settings;
 import core.SettingsError;
 import core.SimError;
@@ -29,6 +29,8 @@ import core.SimError;
  * roads of a SimMap.
  */
 public class MapBasedMovement extends MovementModel implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
+
 	/** sim map for the model */
 	private SimMap map = null;
 	/** node where the last path ended or node next to initial placement */
@@ -60,10 +62,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
-	/** map cache -- in case last mm read the same map, use it without loading*/
-	private static SimMap cachedMap = null;
-	/** names of the previously cached map's files (for hit comparison) */
-	private static List<String> cachedMapFiles = null;
+	/** kind of the maps in the resource cache */
+	private static final String MAP_RESOURCE = "SimMap";
 
 	/**
 	 * Creates a new MapBasedMovement based on a Settings object's settings.
@@ -259,43 +259,47 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 	/**
 	 * Reads a sim map from location set to the settings, mirrors the map and
-	 * moves its upper left corner to origo.
+	 * moves its upper left corner to origo. The maps are shared through the
+	 * {@link ResourceCache}, so the same map files are read only once.
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
-		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
-		WKTMapReader r = new WKTMapReader(true);
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		final File[] files = new File[nrofMapFiles];
 
-		if (cachedMap == null) {
-			cachedMapFiles = new ArrayList<String>(); // no cache present
-		}
-		else { // something in cache
-			// check out if previously asked map was asked again
-			SimMap cached = checkCache(settings);
-			if (cached != null) {
-				nrofMapFilesRead = cachedMapFiles.size();
-				return cached; // we had right map cached -> return it
-			}
-			else { // no hit -> reset cache
-				cachedMapFiles = new ArrayList<String>();
-				cachedMap = null;
-			}
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			files[i-1] = new File(settings.getSetting(FILE_S + i));
 		}
 
 		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
-
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
-			}
-
+			SimMap simMap = ResourceCache.get(MAP_RESOURCE, files,
+					new ResourceCache.Loader<SimMap>() {
+						public SimMap load() throws IOException {
+							return readMap(files);
+						}
+					});
 			nrofMapFilesRead = nrofMapFiles;
+			return simMap;
 		} catch (IOException e) {
 			throw new SimError(e.toString(),e);
 		}
+	}
+
+	/**
+	 * Reads a sim map from files, mirrors the map and moves its upper left
+	 * corner to origo.
+	 * @param files The map files
+	 * @return A new SimMap
+	 * @throws IOException if the files couldn't be read
+	 */
+	private SimMap readMap(File[] files) throws IOException {
+		SimMap simMap;
+		WKTMapReader r = new WKTMapReader(true);
+
+		for (int i = 1; i <= files.length; i++ ) {
+			r.addPaths(files[i-1], i);
+		}
 
 		simMap = r.getMap();
 		checkMapConnectedness(simMap.getNodes());
@@ -305,7 +309,6 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		simMap.translate(-offset.getX(), -offset.getY());
 		checkCoordValidity(simMap.getNodes());
 
-		cachedMap = simMap;
 		return simMap;
 	}
 
@@ -372,28 +375,9 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		}
 	}
 
-	/**
-	 * Checks map cache if the requested map file(s) match to the cached
-	 * sim map
-	 * @param settings The Settings where map file names are found
-	 * @return A cached map or null if the cached map didn't match
-	 */
-	private SimMap checkCache(Settings settings) {
-		int nrofMapFiles = settings.getInt(NROF_FILES_S);
-
-		if (nrofMapFiles != cachedMapFiles.size() || cachedMap == null) {
-			return null; // wrong number of files
-		}
-
-		for (int i = 1; i <= nrofMapFiles; i++ ) {
-			String pathFile = settings.getSetting(FILE_S + i);
-			if (!pathFile.equals(cachedMapFiles.get(i-1))) {
-				return null;	// found wrong file name
-			}
-		}
-
-		// all files matched -> return cached map
-		return cachedMap;
+	@Override
+	public boolean isParallelSafe() {
+		return hasOwnRng();
 	}
 
 	@Override
@@ -21,6 +21,7 @@ import core.Settings;
  */
 public class MapRouteMovement extends MapBasedMovement implements
 	SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	/** Per node group setting used for selecting a route file ({@value}) */
 	public static final String ROUTE_FILE_S = "routeFile";
@@ -94,7 +95,13 @@ public class MapRouteMovement extends MapBasedMovement implements
 			this.route.setNextIndex(this.firstStopIndex);
 		}
 
-		this.pathFinder = proto.pathFinder;
+		if (hasOwnRng()) {
+			/* path finder isn't thread safe; hosts may be moved in parallel */
+			this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		}
+		else {
+			this.pathFinder = proto.pathFinder;
+		}
 
 		proto.nextRouteIndex++; // give routes in order
 		if (proto.nextRouteIndex >= proto.allRoutes.size()) {
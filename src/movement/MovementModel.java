@@ -4,14 +4,17 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.Random;
 
 import util.ActivenessHandler;
+import util.SplittableRng;
 
 import core.Coord;
 import core.DTNHost;
 import core.DTNSim;
 import core.ModuleCommunicationBus;
+import core.RunLocal;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -26,7 +29,9 @@ import core.SimError;
  * {@link #getInitialLocation()} and {@link #getPath()} are worthwhile to
  * override.</P>
  */
-public abstract class MovementModel {
+public abstract class MovementModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** node's speed CSV (min, max) -setting id ({@value})*/
 	public static final String SPEED = "speed";
 	/** node's wait time CSV (min, max) -setting id ({@value})*/
@@ -44,9 +49,32 @@ public abstract class MovementModel {
 	public static final String WORLD_SIZE = "worldSize";
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
+	/**
+	 * Should every movement model instance have its own random number
+	 * stream -setting id ({@value}). Boolean. Default is false (all models
+	 * share one generator). When enabled, every prototype's stream is split
+	 * from a root stream seeded with {@link #RNG_SEED} and every host's
+	 * stream is split from its prototype's stream. The random values a host
+	 * gets then don't depend on the order in which hosts are moved, which
+	 * is required for moving hosts in parallel (see
+	 * {@link core.World#MOVEMENT_THREADS_S}). Note that enabling this
+	 * changes the random values, and hence the movement, compared to the
+	 * shared generator.
+	 */
+	public static final String RNG_PER_HOST_S = "perHostRng";
+
+	/** random number generators of the current simulation run */
+	private static final RunLocal<RngState> rngState =
+		new RunLocal<RngState>() {
+			@Override
+			protected RngState initialValue() {
+				return new RngState();
+			}
+		};
 
-	/** common rng for all movement models in the simulation */
-	protected static Random rng;
+	/** rng of this movement model (the common rng unless per host rng
+	 * streams are in use) */
+	protected Random rng;
 
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -66,7 +94,6 @@ public abstract class MovementModel {
 	// static initialization of all movement models' random number generator
 	static {
 		DTNSim.registerForReset(MovementModel.class.getCanonicalName());
-		reset();
 	}
 
 	/**
@@ -93,6 +120,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = rngState.get().sharedRng;
 	}
 
 	/**
@@ -103,6 +131,9 @@ public abstract class MovementModel {
 		double[] speeds;
 		double[] times;
 
+		RngState rngs = rngState.get();
+		this.rng = (rngs.rootRng != null ? rngs.rootRng.split() :
+			rngs.sharedRng);
 		ah = new ActivenessHandler(settings);
 
 		if (settings.contains(SPEED)) {
@@ -149,6 +180,12 @@ public abstract class MovementModel {
 		this.maxY = mm.maxY;
 		this.ah = mm.ah;
 		this.comBus = null;
+		if (mm.rng instanceof SplittableRng) {
+			this.rng = ((SplittableRng)mm.rng).split();
+		}
+		else {
+			this.rng = mm.rng;
+		}
 	}
 
 	/**
@@ -232,6 +269,41 @@ public abstract class MovementModel {
 		return ah.isActive();
 	}
 
+	/**
+	 * Returns the next sim time when the result of {@link #isActive()} may
+	 * change.
+	 * @return The time of the next possible activeness change or
+	 * Double.MAX_VALUE if the activeness never changes
+	 */
+	public double getNextActivenessChange() {
+		if (ah == null) {
+			return Double.MAX_VALUE;
+		}
+		return ah.getNextChangeTime(0);
+	}
+
+	/**
+	 * Returns true if this movement model has its own random number stream
+	 * (see {@link #RNG_PER_HOST_S})
+	 * @return true if the random number stream is not shared
+	 */
+	protected boolean hasOwnRng() {
+		return this.rng instanceof SplittableRng;
+	}
+
+	/**
+	 * Returns true if this movement model can be moved concurrently with
+	 * other movement models, i.e., it has its own random number stream and
+	 * it doesn't modify any state shared with other models when a new path
+	 * is requested. This implementation returns false; models that don't
+	 * share mutable state should override this and return
+	 * {@link #hasOwnRng()}.
+	 * @return true if the model can be moved in parallel with other models
+	 */
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	/**
 	 * Returns a sim time when the next path is available. This implementation
 	 * returns a random time in future that is {@link #WAIT_TIME} from now.
@@ -275,13 +347,35 @@ public abstract class MovementModel {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		Settings s = new Settings(MOVEMENT_MODEL_NS);
-		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
-		}
-		else {
-			rng = new Random(0);
+		rngState.remove();
+	}
+
+	/**
+	 * Random number generators of one simulation run, created from the
+	 * settings of the run.
+	 */
+	private static class RngState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** common rng for all movement models in the simulation */
+		private final Random sharedRng;
+		/** root of the per host rng streams (null if not in use) */
+		private final SplittableRng rootRng;
+
+		private RngState() {
+			Settings s = new Settings(MOVEMENT_MODEL_NS);
+			int seed = 0;
+			if (s.contains(RNG_SEED)) {
+				seed = s.getInt(RNG_SEED);
+			}
+			sharedRng = new Random(seed);
+
+			if (s.getBoolean(RNG_PER_HOST_S, false)) {
+				rootRng = new SplittableRng(seed);
+			}
+			else {
+				rootRng = null;
+			}
 		}
 	}
 
@@ -30,6 +30,7 @@ import core.SimClock;
  */
 public class OfficeActivityMovement extends MapBasedMovement implements
 	SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	private static final int WALKING_TO_OFFICE_MODE = 0;
 	private static final int AT_OFFICE_MODE = 1;
@@ -47,8 +48,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public static final String OFFICE_LOCATIONS_FILE_SETTING =
 		"officeLocationsFile";
 
-	private static int nrOfOffices = 50;
-
+	private int nrOfOffices;
 	private int mode;
 	private int workDayLength;
 	private int startedWorkingTime;
@@ -107,8 +107,8 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		} else {
 			try {
 				allOffices = new LinkedList<Coord>();
-				List<Coord> locationsRead = (new WKTReader()).
-					readPoints(new File(officeLocationsFile));
+				List<Coord> locationsRead = WKTReader.readCachedPoints(
+						new File(officeLocationsFile));
 				for (Coord coord : locationsRead) {
 					SimMap map = getMap();
 					Coord offset = map.getOffset();
@@ -140,7 +140,14 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		this.workDayLength = proto.workDayLength;
 		startedWorkingTime = -1;
 		this.distance = proto.distance;
-		this.pathFinder = proto.pathFinder;
+		this.nrOfOffices = proto.nrOfOffices;
+		if (hasOwnRng()) {
+			/* path finder isn't thread safe; hosts may be moved in parallel */
+			this.pathFinder = new DijkstraPathFinder(null);
+		}
+		else {
+			this.pathFinder = proto.pathFinder;
+		}
 		this.mode = proto.mode;
 
 		if (proto.allOffices == null) {
@@ -160,7 +167,14 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = proto.officeMaxWaitTime;
 
 		deskLocation = getRandomCoorinateInsideOffice();
-		this.paretoRNG = proto.paretoRNG;
+		if (hasOwnRng()) {
+			/* wait times must be drawn from this model's rng */
+			this.paretoRNG = new ParetoRNG(rng, officeWaitTimeParetoCoeff,
+					officeMinWaitTime, officeMaxWaitTime);
+		}
+		else {
+			this.paretoRNG = proto.paretoRNG;
+		}
 	}
 
 	public Coord getRandomCoorinateInsideOffice() {
@@ -13,6 +13,7 @@ import core.Settings;
  * @author Frans Ekman
  */
 public class RandomWalk extends MovementModel implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	private Coord lastWaypoint;
 	private double minDistance;
@@ -76,6 +77,11 @@ public class RandomWalk extends MovementModel implements SwitchableMovement {
 		return p;
 	}
 
+	@Override
+	public boolean isParallelSafe() {
+		return hasOwnRng();
+	}
+
 	@Override
 	public RandomWalk replicate() {
 		return new RandomWalk(this);
@@ -17,6 +17,8 @@ import core.Settings;
  */
 public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	SwitchableMovement {
+	private static final long serialVersionUID = 1L;
+
 	/** the Dijkstra shortest path finder */
 	private DijkstraPathFinder pathFinder;
 
@@ -41,8 +43,16 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	protected ShortestPathMapBasedMovement(ShortestPathMapBasedMovement mbm) {
 		super(mbm);
-		this.pathFinder = mbm.pathFinder;
-		this.pois = mbm.pois;
+		if (hasOwnRng()) {
+			/* path finder isn't thread safe and POIs must use this model's
+			 * rng; hosts may be moved in parallel */
+			this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+			this.pois = new PointsOfInterest(mbm.pois, rng);
+		}
+		else {
+			this.pathFinder = mbm.pathFinder;
+			this.pois = mbm.pois;
+		}
 	}
 
 	@Override
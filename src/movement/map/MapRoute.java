@@ -8,6 +8,7 @@ import input.WKTReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,7 +20,9 @@ import core.SettingsError;
  * and the type is determined by the type parameter ({@value #CIRCULAR}
  * or {@value #PINGPONG}).
  */
-public class MapRoute {
+public class MapRoute implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Type of the route ID: circular ({@value}).
 	 * After reaching the last node on path, the next node is the first node */
 	public static final int CIRCULAR = 1;
@@ -125,7 +128,6 @@ public class MapRoute {
 	public static List<MapRoute> readRoutes(String fileName, int type,
 			SimMap map) {
 		List<MapRoute> routes = new ArrayList<MapRoute>();
-		WKTReader reader = new WKTReader();
 		List<List<Coord>> coords;
 		File routeFile = null;
 		boolean mirror = map.isMirrored();
@@ -138,7 +140,7 @@ public class MapRoute {
 
 		try {
 			routeFile = new File(fileName);
-			coords = reader.readLines(routeFile);
+			coords = WKTReader.readCachedLines(routeFile);
 		}
 		catch (IOException ioe){
 			throw new SettingsError("Couldn't read MapRoute-data file " +
@@ -8,6 +8,7 @@ import input.WKTReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -22,7 +23,9 @@ import core.SettingsError;
 /**
  * Handler for points of interest data.
  */
-public class PointsOfInterest {
+public class PointsOfInterest implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Points Of Interest settings namespace ({@value})*/
 	public static final String POI_NS = "PointsOfInterest";
 	/** Points Of Interest file path -prefix id ({@value})*/
@@ -67,6 +70,20 @@ public class PointsOfInterest {
 		readPois(settings);
 	}
 
+	/**
+	 * Copy constructor. The new instance shares the POIs with the prototype
+	 * but selects destinations using the given random number generator.
+	 * @param proto The prototype
+	 * @param rng The random number generator to use
+	 */
+	public PointsOfInterest(PointsOfInterest proto, Random rng) {
+		this.poiLists = proto.poiLists;
+		this.poiProbs = proto.poiProbs;
+		this.map = proto.map;
+		this.okMapNodeTypes = proto.okMapNodeTypes;
+		this.rng = rng;
+	}
+
 	/**
 	 * Selects a random destination from POIs or all MapNodes. Selecting among
 	 * POI groups is done by their probabilities. If sum of their probabilities
@@ -175,13 +192,12 @@ public class PointsOfInterest {
 	private List<MapNode> readPoisOf(int index, Coord offset) {
 		List<MapNode> nodes = new ArrayList<MapNode>();
 		Settings fileSettings = new Settings(POI_NS);
-		WKTReader reader = new WKTReader();
 
 		File poiFile = null;
 		List<Coord> coords = null;
 		try {
 			poiFile = new File(fileSettings.getSetting(POI_FILE_S + index));
-			coords = reader.readPoints(poiFile);
+			coords = WKTReader.readCachedPoints(poiFile);
 		}
 		catch (IOException ioe){
 			throw new SettingsError("Couldn't read POI-data from file '" +
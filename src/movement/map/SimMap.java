@@ -4,8 +4,12 @@
  */
 package movement.map;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +19,7 @@ import core.Coord;
  * A simulation map for node movement.
  */
 public class SimMap implements Serializable {
+	private static final long serialVersionUID = 1L;
 	private Coord minBound;
 	private Coord maxBound;
 	/** list representation of the map for efficient list-returning */
@@ -27,7 +32,7 @@ public class SimMap implements Serializable {
 	private boolean isMirrored;
 
 	/** is re-hash needed before using hash mode (some coordinates changed) */
-	private boolean needsRehash = false;
+	private volatile boolean needsRehash = false;
 
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -53,15 +58,27 @@ public class SimMap implements Serializable {
 	 */
 	public MapNode getNodeByCoord(Coord c) {
 		if (needsRehash) { // some coordinates have changed after creating hash
-			nodesMap.clear();
-			for (MapNode node : getNodes()) {
-				nodesMap.put(node.getLocation(), node); // re-hash
-			}
+			rehash();
 		}
 
 		return nodesMap.get(c);
 	}
 
+	/**
+	 * Re-hashes the nodes by their current coordinates. Synchronized
+	 * because hosts on the same map may be moved in parallel.
+	 */
+	private synchronized void rehash() {
+		if (!needsRehash) {
+			return; // another thread re-hashed already
+		}
+		nodesMap.clear();
+		for (MapNode node : getNodes()) {
+			nodesMap.put(node.getLocation(), node); // re-hash
+		}
+		needsRehash = false;
+	}
+
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -157,6 +174,39 @@ public class SimMap implements Serializable {
 		maxBound = new Coord(maxX, maxY);
 	}
 
+	/**
+	 * Writes the map with the neighbors of the nodes as node indexes
+	 * @param out The stream to write to
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		Map<MapNode, Integer> indexes = new HashMap<MapNode, Integer>();
+		for (int i = 0, n = nodes.size(); i < n; i++) {
+			indexes.put(nodes.get(i), i);
+		}
+		for (MapNode node : nodes) {
+			List<MapNode> neighbors = node.getNeighbors();
+			out.writeInt(neighbors.size());
+			for (MapNode neighbor : neighbors) {
+				out.writeInt(indexes.get(neighbor));
+			}
+		}
+	}
+
+	/**
+	 * Reads the map and links the nodes to their neighbors
+	 * @param in The stream to read from
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		for (MapNode node : nodes) {
+			for (int i = 0, n = in.readInt(); i < n; i++) {
+				node.addNeighbor(nodes.get(in.readInt()));
+			}
+		}
+	}
+
 	/**
 	 * Returns a String representation of the map
 	 * @return a String representation of the map
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import core.PerformanceMonitor;
+import core.SimScenario;
+
+/**
+ * Reports the wall clock time spent in each phase of the world updates and
+ * the counters of the {@link PerformanceMonitor} when the simulation ends.
+ * Enables the phase timers of the monitor. The time of a phase is given in
+ * milliseconds and as a share of the total time of all phases.
+ */
+public class PerformanceReport extends Report {
+	private PerformanceMonitor monitor;
+	private long startTime;
+
+	/**
+	 * Constructor.
+	 */
+	public PerformanceReport() {
+		this.monitor = SimScenario.getInstance().getWorld().
+			getPerformanceMonitor();
+		monitor.enable();
+		this.startTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public void done() {
+		write("Performance for scenario " + getScenarioName() +
+				"\nsim_time: " + format(getSimTime()));
+
+		double total = 0;
+		for (int i=0; i < PerformanceMonitor.PHASE_NAMES.length; i++) {
+			total += monitor.getPhaseTimeMillis(i);
+		}
+
+		String statsText = "wall_time_ms: " +
+			(System.currentTimeMillis() - this.startTime) +
+			"\nupdates: " + monitor.getUpdates();
+		for (int i=0; i < PerformanceMonitor.PHASE_NAMES.length; i++) {
+			double time = monitor.getPhaseTimeMillis(i);
+			statsText += "\n" + PerformanceMonitor.PHASE_NAMES[i] + "_ms: " +
+				format(time) + "\n" + PerformanceMonitor.PHASE_NAMES[i] +
+				"_share: " + format(total > 0 ? time / total : 0);
+		}
+		statsText += "\nevents: " + monitor.getEventsProcessed() +
+			"\nconnections_examined: " + monitor.getConnectionsExamined() +
+			"\nconnections_created: " + monitor.getConnectionsCreated() +
+			"\ntransfers_tried: " + monitor.getTransfersTried() +
+			"\ntransfers_started: " + monitor.getTransfersStarted();
+
+		write(statsText);
+		super.done();
+	}
+}
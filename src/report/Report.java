@@ -9,11 +9,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import core.Message;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -292,6 +294,18 @@ public abstract class Report {
 		this.warmupIDs.add(id);
 	}
 
+	/**
+	 * Makes this report ignore the given messages like the messages
+	 * created during the warm up period. Used for the messages that already
+	 * existed when a simulation run was restored from a checkpoint.
+	 * @param messages The messages to ignore
+	 */
+	public void addWarmupMessages(Collection<Message> messages) {
+		for (Message m : messages) {
+			addWarmupID(m.getId());
+		}
+	}
+
 	/**
 	 * Removes a warm up ID from the warm up ID set
 	 * @param id The ID to remove
@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 import routing.util.EnergyModel;
 import routing.util.MessageTransferAcceptPolicy;
@@ -29,6 +28,8 @@ import core.SimClock;
  * {@link #update()}).
  */
 public abstract class ActiveRouter extends MessageRouter {
+	private static final long serialVersionUID = 1L;
+
 	/** Delete delivered messages -setting id ({@value}). Boolean valued.
 	 * If set to true and final recipient of a message rejects it because it
 	 * already has it, the message is deleted from buffer. Default=false. */
@@ -48,6 +49,18 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
+	/** reused copy of the messages for
+	 * {@link #requestDeliverableMessages(Connection)} */
+	private ArrayList<Message> deliverableBuffer;
+	/** reused copy of the messages for
+	 * {@link #tryAllMessagesToAllConnections()} and
+	 * {@link #dropExpiredMessages()} */
+	private ArrayList<Message> sendBuffer;
+	/** reused list for {@link #getMessagesForConnected()} */
+	private ArrayList<Tuple<Message, Connection>> forConnected;
+	/** the tuples of the previous {@link #getMessagesForConnected()} call
+	 * (before sorting) */
+	private ArrayList<Tuple<Message, Connection>> forConnectedCache;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -83,6 +96,11 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
+		this.deliverableBuffer = new ArrayList<Message>();
+		this.sendBuffer = new ArrayList<Message>();
+		this.forConnected = new ArrayList<Tuple<Message, Connection>>();
+		this.forConnectedCache =
+			new ArrayList<Tuple<Message, Connection>>();
 		this.lastTtlCheck = 0;
 	}
 
@@ -108,16 +126,33 @@ public abstract class ActiveRouter extends MessageRouter {
 		DTNHost other = con.getOtherNode(getHost());
 		/* do a copy to avoid concurrent modification exceptions
 		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
-		for (Message m : temp) {
+		ArrayList<Message> temp = copyMessages(this.deliverableBuffer);
+		boolean started = false;
+		for (int i=0, n = temp.size(); i < n && !started; i++) {
+			Message m = temp.get(i);
 			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+				started = startTransfer(m, con) == RCV_OK;
 			}
 		}
-		return false;
+		temp.clear();
+		return started;
+	}
+
+	/**
+	 * Copies the messages this router is carrying to a list that is reused
+	 * between the calls, so that the messages can be iterated while
+	 * transfers remove messages without allocating a new list every time.
+	 * The caller should clear the list after use (so that it doesn't keep
+	 * the messages alive).
+	 * @param buffer The list to copy the messages to
+	 * @return The list
+	 */
+	private ArrayList<Message> copyMessages(ArrayList<Message> buffer) {
+		buffer.clear();
+		for (Message m : this.getMessageCollection()) {
+			buffer.add(m);
+		}
+		return buffer;
 	}
 
 	@Override
@@ -177,6 +212,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected int startTransfer(Message m, Connection con) {
 		int retVal;
 
+		this.nrofTransfersTried++;
 		if (!con.isReadyForTransfer()) {
 			return TRY_LATER_BUSY;
 		}
@@ -188,6 +224,7 @@ public abstract class ActiveRouter extends MessageRouter {
 
 		retVal = con.startTransfer(getHost(), m);
 		if (retVal == RCV_OK) { // started transfer
+			this.nrofTransfersStarted++;
 			addToSendingConnections(con);
 		}
 		else if (deleteDelivered && retVal == DENIED_OLD &&
@@ -291,13 +328,14 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * Drops messages whose TTL is less than zero.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl();
+		ArrayList<Message> messages = copyMessages(this.sendBuffer);
+		for (int i=0, n = messages.size(); i < n; i++) {
+			int ttl = messages.get(i).getTtl();
 			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+				deleteMessage(messages.get(i).getId(), true);
 			}
 		}
+		messages.clear();
 	}
 
 	/**
@@ -344,25 +382,49 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/**
 	 * Returns a list of message-connections tuples of the messages whose
-	 * recipient is some host that we're connected to at the moment.
+	 * recipient is some host that we're connected to at the moment. The
+	 * same list is reused by every call, so the list must not be used
+	 * after the next call.
 	 * @return a list of message-connections tuples
 	 */
 	protected List<Tuple<Message, Connection>> getMessagesForConnected() {
-		if (getNrofMessages() == 0 || getConnections().size() == 0) {
+		List<Tuple<Message, Connection>> forTuples = this.forConnected;
+		forTuples.clear();
+		List<Connection> connections = getConnections();
+		if (getNrofMessages() == 0 || connections.size() == 0) {
 			/* no messages -> empty list */
-			return new ArrayList<Tuple<Message, Connection>>(0);
+			this.forConnectedCache.clear();
+			return forTuples;
 		}
 
-		List<Tuple<Message, Connection>> forTuples =
-			new ArrayList<Tuple<Message, Connection>>();
+		/* the tuples of the previous call are reused (in the unsorted
+		 * order) when the messages and connections haven't changed */
+		List<Tuple<Message, Connection>> cache = this.forConnectedCache;
+		int k = 0;
 		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
+			for (int i=0, n = connections.size(); i < n; i++) {
+				Connection con = connections.get(i);
 				DTNHost to = con.getOtherNode(getHost());
 				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
+					Tuple<Message, Connection> t = k < cache.size() ?
+							cache.get(k) : null;
+					if (t == null || t.getKey() != m || t.getValue() != con) {
+						t = new Tuple<Message, Connection>(m,con);
+						if (k < cache.size()) {
+							cache.set(k, t);
+						}
+						else {
+							cache.add(t);
+						}
+					}
+					forTuples.add(t);
+					k++;
 				}
 			}
 		}
+		while (cache.size() > k) {
+			cache.remove(cache.size() - 1);
+		}
 
 		return forTuples;
 	}
@@ -381,7 +443,8 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		for (Tuple<Message, Connection> t : tuples) {
+		for (int i=0, n = tuples.size(); i < n; i++) {
+			Tuple<Message, Connection> t = tuples.get(i);
 			Message m = t.getKey();
 			Connection con = t.getValue();
 			if (startTransfer(m, con) == RCV_OK) {
@@ -402,7 +465,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	  * transfer was started.
 	  */
 	protected Message tryAllMessages(Connection con, List<Message> messages) {
-		for (Message m : messages) {
+		for (int i=0, n = messages.size(); i < n; i++) {
+			Message m = messages.get(i);
 			int retVal = startTransfer(m, con);
 			if (retVal == RCV_OK) {
 				return m;	// accepted a message, don't try others
@@ -453,11 +517,12 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
+		List<Message> messages = copyMessages(this.sendBuffer);
 		this.sortByQueueMode(messages);
 
-		return tryMessagesToConnections(messages, connections);
+		Connection con = tryMessagesToConnections(messages, connections);
+		messages.clear();
+		return con;
 	}
 
 	/**
@@ -484,7 +549,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		// didn't start transfer to any node -> ask messages from connected
-		for (Connection con : connections) {
+		for (int i=0, n = connections.size(); i < n; i++) {
+			Connection con = connections.get(i);
 			if (con.getOtherNode(getHost()).requestDeliverableMessages(con)) {
 				return con;
 			}
@@ -504,8 +570,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return; // nothing to shuffle
 		}
 
-		Random rng = new Random(SimClock.getIntTime());
-		Collections.shuffle(messages, rng);
+		Collections.shuffle(messages, getShuffleRng());
 	}
 
 	/**
@@ -631,6 +696,38 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the earliest time when this router needs an update: next TTL
+	 * check, end of an ongoing transfer or, if the router is not
+	 * transferring, the time given by the superclass.
+	 */
+	@Override
+	public double getNextActivityTime() {
+		double now = SimClock.getTime();
+		double next = lastTtlCheck + TTL_CHECK_INTERVAL;
+
+		if (energy != null) {
+			return now; // energy is consumed on every update
+		}
+
+		if (!isTransferring()) {
+			return Math.min(next, super.getNextActivityTime());
+		}
+
+		if (hasApplications()) {
+			return now;
+		}
+
+		for (Connection con : this.sendingConnections) {
+			if (!con.isUp() || !con.isTransferring()) {
+				return now; // needs to be removed from sending connections
+			}
+			next = Math.min(next, con.getTransferDoneTime());
+		}
+
+		return next;
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
@@ -7,13 +7,14 @@ import util.Tuple;
 import java.util.*;
 
 public class AntRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 
     private static final String ANT_NS = "AntRouter";
 
-    private static double UPDATE_INTERVAL;               // Update Interval
-    private static double PRED_INC;                      // prediction increased value per times.
-    private static double PRED_DEC;                      // prediction decreased value pre times.
-    private static double PRED_DEC_RATE;                 // prediction decreasing rate for hops.
+    private final double updateInterval;                // Update Interval
+    private final double predInc;                       // prediction increased value per times.
+    private final double predDec;                       // prediction decreased value pre times.
+    private final double predDecRate;                   // prediction decreasing rate for hops.
 
     private Map<DTNHost, Double> predictions;            // Ant Router predictions table.
     private Map<DTNHost, Double> predictions_update;     // predictions update time.
@@ -34,11 +35,11 @@ public class AntRouter extends ActiveRouter {
         predictions_update = new HashMap<>();
         known_host = new ArrayList<>();
 
-        UPDATE_INTERVAL = ant_router_settings.getDouble("UPDATE_INTERVAL");
+        updateInterval = ant_router_settings.getDouble("UPDATE_INTERVAL");
 
-        PRED_INC = ant_router_settings.getDouble("PRED_INC");
-        PRED_DEC = ant_router_settings.getDouble("PRED_DEC");
-        PRED_DEC_RATE = ant_router_settings.getDouble("PRED_DEC_RATE");
+        predInc = ant_router_settings.getDouble("PRED_INC");
+        predDec = ant_router_settings.getDouble("PRED_DEC");
+        predDecRate = ant_router_settings.getDouble("PRED_DEC_RATE");
     }
 
     /**
@@ -49,6 +50,11 @@ public class AntRouter extends ActiveRouter {
     private AntRouter(AntRouter r) {
         super(r);
 
+        this.updateInterval = r.updateInterval;
+        this.predInc = r.predInc;
+        this.predDec = r.predDec;
+        this.predDecRate = r.predDecRate;
+
         this.predictions = new HashMap<>();
         this.known_host = new ArrayList<>();
         this.predictions_update = new HashMap<>();
@@ -80,12 +86,12 @@ public class AntRouter extends ActiveRouter {
         // If Ant Packet, update predictions
         if (msg.getId().contains("Ant")) {
 
-            // Direct from is updated for PRED_INC
+            // Direct from is updated for predInc
             if (predictions.containsKey(from)) {
-                predictions.put(from, predictions.get(from) + PRED_INC);
+                predictions.put(from, predictions.get(from) + predInc);
                 predictions_update.put(from, SimClock.getTime());
             } else {
-                predictions.put(from, PRED_INC);
+                predictions.put(from, predInc);
                 predictions_update.put(from, SimClock.getTime());
             }
 
@@ -93,10 +99,10 @@ public class AntRouter extends ActiveRouter {
             DTNHost host = msg.getFrom();
             int HopCount = msg.getHopCount();
             if (predictions.containsKey(host)) {
-                predictions.put(host, predictions.get(host) + PRED_INC * Math.pow(PRED_DEC_RATE, HopCount - 1));
+                predictions.put(host, predictions.get(host) + predInc * Math.pow(predDecRate, HopCount - 1));
                 predictions_update.put(host, SimClock.getTime());
             } else {
-                predictions.put(host, PRED_INC * Math.pow(PRED_DEC_RATE, HopCount - 1));
+                predictions.put(host, predInc * Math.pow(predDecRate, HopCount - 1));
                 predictions_update.put(host, SimClock.getTime());
             }
 
@@ -142,25 +148,25 @@ public class AntRouter extends ActiveRouter {
     }
 
     /**
-     * If passed UPDATE_INTERVAL, generate and send ANT_ECHO_PACKET
+     * If passed updateInterval, generate and send ANT_ECHO_PACKET
      * And decrease predictions anytime.
      */
     private void updateAntTable() {
 
         double now_time = SimClock.getTime();
-        if ((now_time - last_update_time) / UPDATE_INTERVAL - 1 >= 0) {
+        if ((now_time - last_update_time) / updateInterval - 1 >= 0) {
 
             for (DTNHost host : known_host) {
                 if (predictions_update.containsKey(host)) {
                     double update_time = predictions_update.get(host);
                     double pred = predictions.get(host);
 
-                    if (pred - PRED_DEC > 0)
-                        predictions.put(host, pred - PRED_DEC);
+                    if (pred - predDec > 0)
+                        predictions.put(host, pred - predDec);
                     else
                         predictions.put(host, 0.0);
 
-                    if (now_time - update_time - UPDATE_INTERVAL > 0) {
+                    if (now_time - update_time - updateInterval > 0) {
                         Message msg = new Message(getHost(), host, "Ant Echo --" + getHost() + "-" + host, 512);
                         createNewMessage(msg);
                         predictions_update.put(host, now_time);
@@ -176,6 +182,16 @@ public class AntRouter extends ActiveRouter {
 
     }
 
+    /**
+     * The ant table is updated (and echo messages created) every
+     * updateInterval seconds.
+     */
+    @Override
+    public double getNextActivityTime() {
+        return Math.min(super.getNextActivityTime(),
+                last_update_time + updateInterval);
+    }
+
     /**
      * Get the prediction of the host in this router's predictions table
      *
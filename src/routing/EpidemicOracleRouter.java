@@ -20,13 +20,19 @@ import static core.Constants.DEBUG;
  * <B>Note:</B> This router module also bypasses ActiveRouter.update()
  */
 public class EpidemicOracleRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 
 	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
+	private static final RunLocal<List<EpidemicOracleRouter>> allRouters =
+		new RunLocal<List<EpidemicOracleRouter>>() {
+			@Override
+			protected List<EpidemicOracleRouter> initialValue() {
+				return new ArrayList<EpidemicOracleRouter>();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
-		reset();
 	}
 
 	/**
@@ -44,7 +50,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
-		allRouters.add(this);
+		allRouters.get().add(this);
 	}
 
 	@Override
@@ -114,7 +120,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
+			for (EpidemicOracleRouter r : allRouters.get()) {
 				if (r != this && r != from.getRouter()) {
 					r.removeDeliveredMessage(id);
 				}
@@ -177,7 +183,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 * Resets the static router list
 	 */
 	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
+		allRouters.remove();
 	}
 
 }
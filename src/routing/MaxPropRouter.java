@@ -36,6 +36,8 @@ import core.Settings;
  * Protocols</I> Chants, 2008
  */
 public class MaxPropRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
+
     /** Router's setting namespace ({@value})*/
 	public static final String MAXPROP_NS = "MaxPropRouter";
 	/**
@@ -44,7 +46,7 @@ public class MaxPropRouter extends ActiveRouter {
 	public static final String PROB_SET_MAX_SIZE_S = "probSetMaxSize";
     /** Default value for the meeting probability set maximum size ({@value}).*/
     public static final int DEFAULT_PROB_SET_MAX_SIZE = 50;
-    private static int probSetMaxSize;
+    private int probSetMaxSize;
 
 	/** probabilities of meeting hosts */
 	private MeetingProbabilitySet probs;
@@ -112,6 +114,7 @@ public class MaxPropRouter extends ActiveRouter {
 	protected MaxPropRouter(MaxPropRouter r) {
 		super(r);
 		this.alpha = r.alpha;
+		this.probSetMaxSize = r.probSetMaxSize;
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
@@ -44,6 +44,8 @@ import core.SimClock;
  * @version 1.0
  */
 public class MaxPropRouterWithEstimation extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
+
 	/** probabilities of meeting hosts */
 	private MeetingProbabilitySet probs;
 	/** meeting probabilities of all hosts from this host's point of view
@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -26,7 +27,9 @@ import util.Tuple;
 /**
  * Superclass for message routers.
  */
-public abstract class MessageRouter {
+public abstract class MessageRouter implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Message buffer size -setting id ({@value}). Long value in bytes.*/
 	public static final String B_SIZE_S = "bufferSize";
 	/**
@@ -52,6 +55,11 @@ public abstract class MessageRouter {
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
 
+	/** odd multiplier that scrambles the hashes of the message IDs for the
+	 * random queue mode's ordering (see
+	 * {@link #compareByQueueMode(Message, Message)}) */
+	private static final int ID_HASH_SCRAMBLER = 0x9e3779b9;
+
 	/** Setting string for random queue mode */
 	public static final String STR_Q_MODE_RANDOM = "RANDOM";
 	/** Setting string for FIFO queue mode */
@@ -84,6 +92,30 @@ public abstract class MessageRouter {
 	/** Maximum Ttl value */
 	public static final int MAX_TTL_VALUE = 35791394;
 
+	/** orders messages by their receiving times */
+	private static final Comparator<Message> FIFO_ORDER =
+		new Comparator<Message>() {
+		/** Compares two messages by their receiving time */
+		public int compare(Message m1, Message m2) {
+			double diff = m1.getReceiveTime() - m2.getReceiveTime();
+			if (diff == 0) {
+				return 0;
+			}
+			return (diff < 0 ? -1 : 1);
+		}
+	};
+
+	/** orders tuples of messages and connections by the messages'
+	 * receiving times */
+	private static final Comparator<Tuple<Message, Connection>>
+		TUPLE_FIFO_ORDER = new Comparator<Tuple<Message, Connection>>() {
+		/** Compares two tuples by their messages' receiving time */
+		public int compare(Tuple<Message, Connection> t1,
+				Tuple<Message, Connection> t2) {
+			return FIFO_ORDER.compare(t1.getKey(), t2.getKey());
+		}
+	};
+
 	private List<MessageListener> mListeners;
 	/** The messages being transferred with msgID_hostName keys */
 	private HashMap<String, Message> incomingMessages;
@@ -104,6 +136,17 @@ public abstract class MessageRouter {
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
+	/** applications that want to receive the messages of an application ID
+	 * (see {@link #getApplications(String)}); cleared when applications are
+	 * added */
+	private transient HashMap<String, Collection<Application>>
+		receivingApplications;
+	/** random number generator for shuffling (see {@link #getShuffleRng()}) */
+	private transient Random shuffleRng;
+	/** number of transfers this router has tried to start */
+	long nrofTransfersTried;
+	/** number of transfers this router has started */
+	long nrofTransfersStarted;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -190,6 +233,9 @@ public abstract class MessageRouter {
 	 * interval to update the status of transfer(s).
 	 */
 	public void update(){
+		if (this.applications.isEmpty()) {
+			return; /* nothing to update */
+		}
 		for (Collection<Application> apps : this.applications.values()) {
 			for (Application app : apps) {
 				app.update(this.host);
@@ -197,6 +243,31 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the earliest sim time when this router may need an update
+	 * without an external event or a change in connectivity (e.g., for
+	 * starting new transfers or updating applications).
+	 * Routers that do something periodically should override this.
+	 * @return The time of the next update needed by this router, current
+	 * time if the router must be updated on every interval, or
+	 * Double.MAX_VALUE if the router has nothing to do
+	 */
+	public double getNextActivityTime() {
+		if (hasApplications() ||
+				(getNrofMessages() > 0 && host.getConnections().size() > 0)) {
+			return SimClock.getTime();
+		}
+		return Double.MAX_VALUE;
+	}
+
+	/**
+	 * Returns true if any applications are attached to this router
+	 * @return true if any applications are attached to this router
+	 */
+	protected boolean hasApplications() {
+		return this.applications.size() > 0;
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -266,6 +337,22 @@ public abstract class MessageRouter {
 		return this.messages.size();
 	}
 
+	/**
+	 * Returns the number of times this router has tried to start a transfer
+	 * @return The number of transfer attempts
+	 */
+	public long getNrofTransfersTried() {
+		return this.nrofTransfersTried;
+	}
+
+	/**
+	 * Returns the number of transfers this router has started
+	 * @return The number of started transfers
+	 */
+	public long getNrofTransfersStarted() {
+		return this.nrofTransfersStarted;
+	}
+
 	/**
 	 * Returns the size of the message buffer.
 	 * @return The size or Integer.MAX_VALUE if the size isn't defined.
@@ -525,36 +612,22 @@ public abstract class MessageRouter {
 	protected List sortByQueueMode(List list) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
+			Collections.shuffle(list, getShuffleRng());
 			break;
 		case Q_MODE_FIFO:
-			Collections.sort(list,
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " +
-								"the list");
-					}
-
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
-				}
-			});
+			if (list.isEmpty()) {
+				break;
+			}
+			if (list.get(0) instanceof Tuple) {
+				Collections.sort(list, TUPLE_FIFO_ORDER);
+			}
+			else if (list.get(0) instanceof Message) {
+				Collections.sort(list, FIFO_ORDER);
+			}
+			else {
+				throw new SimError("Invalid type of objects in " +
+						"the list");
+			}
 			break;
 		/* add more queue modes here */
 		default:
@@ -564,6 +637,20 @@ public abstract class MessageRouter {
 		return list;
 	}
 
+	/**
+	 * Returns the random number generator for shuffling messages. The
+	 * generator is re-seeded with the current sim time on every call, so
+	 * the shuffles are repeatable.
+	 * @return The random number generator
+	 */
+	protected Random getShuffleRng() {
+		if (this.shuffleRng == null) {
+			this.shuffleRng = new Random();
+		}
+		this.shuffleRng.setSeed(SimClock.getIntTime());
+		return this.shuffleRng;
+	}
+
 	/**
 	 * Gives the order of the two given messages as defined by the current
 	 * queue mode
@@ -575,12 +662,15 @@ public abstract class MessageRouter {
 	protected int compareByQueueMode(Message m1, Message m2) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			/* return randomly (enough) but consistently -1, 0 or 1 */
-			int hash_diff = m1.hashCode() - m2.hashCode();
-			if (hash_diff == 0) {
+			/* return randomly (enough) but consistently -1, 0 or 1; the
+			   scrambled hashes of the IDs are the same for all copies of a
+			   message and on every run, unlike the identity hash codes */
+			int hash1 = m1.getId().hashCode() * ID_HASH_SCRAMBLER;
+			int hash2 = m2.getId().hashCode() * ID_HASH_SCRAMBLER;
+			if (hash1 == hash2) {
 				return 0;
 			}
-			return (hash_diff < 0 ? -1 : 1);
+			return (hash1 < hash2 ? -1 : 1);
 		case Q_MODE_FIFO:
 			double diff = m1.getReceiveTime() - m2.getReceiveTime();
 			if (diff == 0) {
@@ -632,6 +722,7 @@ public abstract class MessageRouter {
 	 * @param app	The application to attach to this router.
 	 */
 	public void addApplication(Application app) {
+		this.receivingApplications = null;
 		if (!this.applications.containsKey(app.getAppID())) {
 			this.applications.put(app.getAppID(),
 					new LinkedList<Application>());
@@ -645,8 +736,21 @@ public abstract class MessageRouter {
 	 *
 	 * @param ID	The application ID or <code>null</code> for all apps.
 	 * @return		A list of all applications that want to receive the message.
+	 * 				The list can't be modified.
 	 */
 	public Collection<Application> getApplications(String ID) {
+		if (this.applications.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (this.receivingApplications == null) {
+			this.receivingApplications =
+				new HashMap<String, Collection<Application>>();
+		}
+		Collection<Application> cached = this.receivingApplications.get(ID);
+		if (cached != null) {
+			return cached;
+		}
+
 		LinkedList<Application>	apps = new LinkedList<Application>();
 		// Applications that match
 		Collection<Application> tmp = this.applications.get(ID);
@@ -660,7 +764,10 @@ public abstract class MessageRouter {
 				apps.addAll(tmp);
 			}
 		}
-		return apps;
+
+		cached = Collections.unmodifiableCollection(apps);
+		this.receivingApplications.put(ID, cached);
+		return cached;
 	}
 
 	/**
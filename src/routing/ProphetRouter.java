@@ -28,6 +28,8 @@ import core.SimClock;
  * Anders Lindgren et al.
  */
 public class ProphetRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
+
 	/** delivery predictability initialization constant*/
 	public static final double P_INIT = 0.75;
 	/** delivery predictability transitivity scaling constant default value */
@@ -36,6 +36,8 @@ import core.SimClock;
  *
  */
 public class ProphetRouterWithEstimation extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
+
 	/** delivery predictability initialization constant*/
 	public static final double P_INIT = 0.75;
 	/** delivery predictability transitivity scaling constant default value */
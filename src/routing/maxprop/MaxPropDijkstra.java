@@ -4,6 +4,7 @@
  */
 package routing.maxprop;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -16,7 +17,9 @@ import java.util.Set;
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
  */
-public class MaxPropDijkstra {
+public class MaxPropDijkstra implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Value for infinite distance  */
 	private static final Double INFINITY = Double.MAX_VALUE;
 	/** Initial size of the priority queue */
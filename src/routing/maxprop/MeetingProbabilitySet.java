@@ -4,6 +4,7 @@
  */
 package routing.maxprop;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,7 +17,9 @@ import static core.Constants.DEBUG;
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
  */
-public class MeetingProbabilitySet {
+public class MeetingProbabilitySet implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
 	/** meeting probabilities (probability that the next node one meets is X) */
 	private Map<Integer, Double> probs;
@@ -15,6 +15,8 @@ import core.*;
  * increase from {@link #scanEnergy} value).
  */
 public class EnergyModel implements ModuleCommunicationListener {
+	private static final long serialVersionUID = 1L;
+
 	/** Initial units of energy -setting id ({@value}). Can be either a
 	 * single value, or a range of two values. In the latter case, the used
 	 * value is a uniformly distributed random value between the two values. */
@@ -57,7 +59,9 @@ public class EnergyModel implements ModuleCommunicationListener {
 	/** sim time of the last energy updated */
 	private double lastUpdate;
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
+	/** random number generator for the initial energy levels (per
+	 * simulation run) */
+	private static final RunLocal<Random> rng = new RunLocal<Random>();
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -118,11 +122,13 @@ public class EnergyModel implements ModuleCommunicationListener {
 			this.currentEnergy = range[0];
 		}
 		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
+			Random r = rng.get();
+			if (r == null) {
+				r = new Random((int)(range[0] + range[1]));
+				rng.set(r);
 			}
 			this.currentEnergy = range[0] +
-				rng.nextDouble() * (range[1] - range[0]);
+				r.nextDouble() * (range[1] - range[0]);
 		}
 	}
 
@@ -4,6 +4,7 @@
  */
 package routing.util;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 import util.Range;
@@ -42,7 +43,8 @@ import core.Settings;
  * </P>
  * @author Ari
  */
-public class MessageTransferAcceptPolicy {
+public class MessageTransferAcceptPolicy implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/** Namespace for all "Message Transfer Accept policy" settings ({@value})*/
 	public static final String MTA_POLICY_NS = "mtaPolicy";
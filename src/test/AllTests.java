@@ -50,6 +50,18 @@ public class AllTests {
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(SimContextTest.class);
+		suite.addTestSuite(SimCheckpointTest.class);
+		suite.addTestSuite(ContactTraceCacheTest.class);
+		suite.addTestSuite(BinaryMovementTraceTest.class);
+		suite.addTestSuite(PerformanceMonitorTest.class);
+		suite.addTestSuite(KineticConnectivityTest.class);
+		suite.addTestSuite(SimScenarioTest.class);
+		suite.addTestSuite(ResourceCacheTest.class);
+		suite.addTestSuite(SparseConnectivityGridTest.class);
+		suite.addTestSuite(ConnectivityKdTreeTest.class);
+		suite.addTestSuite(ConnectivityNeighbourListsTest.class);
+		suite.addTestSuite(HostPositionsTest.class);
 		//$JUnit-END$
 		return suite;
 	}
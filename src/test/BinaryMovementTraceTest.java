@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.BinaryMovementReader;
+import input.BinaryMovementWriter;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.ExternalMovement;
+import movement.MovementModel;
+import movement.Path;
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Tests recording binary movement traces and replaying them with
+ * {@link ExternalMovement}
+ */
+public class BinaryMovementTraceTest extends TestCase {
+	private static final double END_TIME = 200;
+	private File traceFile;
+	private File replayTraceFile;
+	private TestSettings ts;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		traceFile = File.createTempFile("movement",
+				BinaryMovementWriter.BINARY_EXT);
+		replayTraceFile = File.createTempFile("movement",
+				BinaryMovementWriter.BINARY_EXT);
+
+		ts = ScenarioTestUtils.createSettings();
+		String gns = ScenarioTestUtils.GROUP_PREFIX;
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "10");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "PassiveRouter");
+		ts.putSetting("radio.transmitRange", "10");
+		ts.putSetting("MovementModel.worldSize", "500,400");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		traceFile.delete();
+		replayTraceFile.delete();
+		super.tearDown();
+	}
+
+	public void testReplayMovesHostsIdentically() throws IOException {
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				BinaryMovementWriter.RECORD_FILE_S, traceFile.getPath());
+		List<String> recorded = run();
+		assertTrue(traceFile.length() > 0);
+
+		/* record the replay too; it must produce an identical trace */
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				BinaryMovementWriter.RECORD_FILE_S, replayTraceFile.getPath());
+		ts.putSetting(SimScenario.GROUP_NS + "." +
+				SimScenario.MOVEMENT_MODEL_S, "ExternalMovement");
+		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
+				ExternalMovement.MOVEMENT_FILE_S, traceFile.getPath());
+		List<String> replayed = run();
+
+		assertEquals(recorded, replayed);
+		assertTrue(Arrays.equals(readBytes(traceFile),
+				readBytes(replayTraceFile)));
+	}
+
+	public void testPathRecords() throws Exception {
+		BinaryMovementWriter w = new BinaryMovementWriter(
+				traceFile.getPath(), 100, 200);
+		DTNSim.createRunContext(0);
+		DTNHost host = new TestUtils(null, null, ts).createHost();
+		BinaryMovementWriter.HostRecorder r = w.addHost(host);
+
+		Path constant = new Path(2.5);
+		constant.addWaypoint(new Coord(1, 2));
+		constant.addWaypoint(new Coord(3, 4));
+		Path varying = new Path();
+		varying.addWaypoint(new Coord(5, 6), 1.0);
+		varying.addWaypoint(new Coord(7, 8), 3.0);
+
+		r.initialLocation(new Coord(0, 1));
+		r.nextPathAvailable(12.5);
+		r.newPath(constant);
+		r.newPath(null);
+		r.newPath(varying);
+		w.store();
+
+		BinaryMovementReader reader =
+			new BinaryMovementReader(traceFile.getPath());
+		assertEquals(100, reader.getWorldSizeX());
+		assertEquals(200, reader.getWorldSizeY());
+		BinaryMovementReader.HostTrace t = reader.getHostTrace(0);
+		assertEquals(new Coord(0, 1), t.readInitialLocation());
+		assertEquals(12.5, t.readNextPathAvailable());
+
+		Path p = t.readPath();
+		assertEquals(new Coord(1, 2), p.getNextWaypoint());
+		assertEquals(2.5, p.getSpeed());
+		assertEquals(new Coord(3, 4), p.getNextWaypoint());
+		assertEquals(2.5, p.getSpeed());
+		assertNull(t.readPath());
+		p = t.readPath();
+		assertEquals(new Coord(5, 6), p.getNextWaypoint());
+		assertEquals(1.0, p.getSpeed());
+		assertEquals(new Coord(7, 8), p.getNextWaypoint());
+		assertEquals(3.0, p.getSpeed());
+		assertFalse(p.hasNext());
+	}
+
+	/**
+	 * Runs a simulation and returns the host locations after every update
+	 */
+	private List<String> run() {
+		DTNSim.createRunContext(0);
+		SimScenario scen = SimScenario.getInstance();
+		World world = scen.getWorld();
+		List<String> locations = new ArrayList<String>();
+
+		while (SimClock.getTime() < END_TIME) {
+			world.update();
+			List<Coord> step = new ArrayList<Coord>();
+			for (DTNHost h : world.getHosts()) {
+				step.add(h.getLocation().clone());
+			}
+			locations.add(SimClock.getTime() + " " + step);
+		}
+		scen.simulationDone();
+		return locations;
+	}
+
+	private byte[] readBytes(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try {
+			byte[] bytes = new byte[(int)f.length()];
+			in.readFully(bytes);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import static test.ConnectivityTestUtils.iface;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import interfaces.ConnectivityKdTree;
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.World;
+
+/**
+ * Tests for the k-d tree connectivity optimizer
+ */
+public class ConnectivityKdTreeTest extends TestCase {
+	private static final double RANGE = 10;
+	private static final double SLACK = 5;
+
+	private TestSettings ts;
+	private ConnectivityTestUtils utils;
+	private ConnectivityKdTree kdTree;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(ConnectivityKdTree.KD_TREE_S, "true");
+		ts.putSetting(ConnectivityKdTree.SLACK_S, "" + SLACK);
+		ts.restoreNameSpace();
+		DTNHost.reset();
+		ConnectivityKdTree.reset();
+		utils = new ConnectivityTestUtils(ts);
+		kdTree = ConnectivityKdTree.ConnectivityKdTreeFactory(
+				TestUtils.IFACE_NS.hashCode());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		new TestSettings();
+		ConnectivityKdTree.reset();
+		super.tearDown();
+	}
+
+	public void testMixedRanges() {
+		DTNHost shortRange = utils.createHost(new Coord(0, 0), RANGE);
+		DTNHost close = utils.createHost(new Coord(-8, 0), RANGE);
+		DTNHost longRange = utils.createHost(new Coord(300, -300), 500);
+		DTNHost far = utils.createHost(new Coord(0, 400), RANGE);
+
+		NetworkInterface ni = iface(shortRange);
+		assertEquals(2, kdTree.getNearInterfaces(ni).size());
+		assertTrue(kdTree.getNearInterfaces(ni).contains(iface(close)));
+		assertEquals(3, kdTree.getNearInterfaces(iface(longRange)).size());
+		assertEquals(1, kdTree.getNearInterfaces(iface(far)).size());
+
+		/* only the pair within the shorter range is connected */
+		utils.update();
+		assertEquals(1, shortRange.getConnections().size());
+		assertEquals(0, longRange.getConnections().size());
+	}
+
+	public void testNearInterfaces() {
+		Random rng = new Random(1);
+		for (int i=0; i < 300; i++) {
+			utils.createHost(new Coord(rng.nextDouble() * 1000 - 500,
+					rng.nextDouble() * 1000 - 500),
+					i % 10 == 0 ? 100 : RANGE);
+		}
+		utils.update();
+		assertNearInterfaces();
+
+		/* some moves stay within the slack, some don't */
+		for (int round=0; round < 10; round++) {
+			for (DTNHost h : utils.getHosts()) {
+				Coord c = h.getLocation();
+				h.setLocation(new Coord(c.getX() + rng.nextDouble() * 4 - 2,
+						c.getY() + rng.nextDouble() * 4 - 2));
+				iface(h).updateLocation();
+			}
+			assertNearInterfaces();
+		}
+	}
+
+	/**
+	 * Checks that the near interfaces of every interface are the ones
+	 * within its near distance and that every pair within range is
+	 * handled exactly once
+	 */
+	private void assertNearInterfaces() {
+		utils.assertPairsInRange(ConnectivityTestUtils.getNearPairs(kdTree));
+
+		for (DTNHost h : utils.getHosts()) {
+			NetworkInterface ni = iface(h);
+			double near = kdTree.getNearDistance(ni);
+			assertEquals(ni.getTransmitRange() + SLACK, near, 0);
+
+			Set<NetworkInterface> expected = new HashSet<NetworkInterface>();
+			for (DTNHost other : utils.getHosts()) {
+				if (h.getLocation().distance(other.getLocation()) <= near) {
+					expected.add(iface(other));
+				}
+			}
+			assertEquals(expected, new HashSet<NetworkInterface>(
+					kdTree.getNearInterfaces(ni)));
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import static test.ConnectivityTestUtils.iface;
+
+import java.util.Random;
+import java.util.Set;
+
+import interfaces.ConnectivityNeighbourLists;
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.World;
+
+/**
+ * Tests for the neighbour list connectivity optimizer
+ */
+public class ConnectivityNeighbourListsTest extends TestCase {
+	private static final double RANGE = 10;
+	private static final double SKIN = 4;
+
+	private TestSettings ts;
+	private ConnectivityTestUtils utils;
+	private ConnectivityNeighbourLists lists;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(ConnectivityNeighbourLists.NEIGHBOUR_LISTS_S, "true");
+		ts.putSetting(ConnectivityNeighbourLists.SKIN_S, "" + SKIN);
+		ts.restoreNameSpace();
+		DTNHost.reset();
+		ConnectivityNeighbourLists.reset();
+		utils = new ConnectivityTestUtils(ts);
+		lists = ConnectivityNeighbourLists.ConnectivityNeighbourListsFactory(
+				TestUtils.IFACE_NS.hashCode(), RANGE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		new TestSettings();
+		ConnectivityNeighbourLists.reset();
+		super.tearDown();
+	}
+
+	public void testListsUpdated() {
+		DTNHost h1 = utils.createHost(new Coord(-100, -100), RANGE);
+		DTNHost h2 = utils.createHost(new Coord(-95, -104), RANGE);
+		/* within the skin */
+		DTNHost h3 = utils.createHost(new Coord(-100, -87), RANGE);
+		utils.update();
+		assertEquals(2, lists.getNearInterfaces(iface(h1)).size());
+		assertFalse(lists.getNearInterfaces(iface(h2)).contains(iface(h3)));
+		assertEquals(1, h1.getConnections().size());
+
+		/* moves within half of the skin keep the old lists */
+		move(h3, new Coord(-100, -88.9));
+		assertEquals(4, lists.getNrofNeighbours());
+		move(h1, new Coord(-100, -98.1));
+		assertEquals(4, lists.getNrofNeighbours());
+		assertEquals(2, h1.getConnections().size());
+
+		/* moving further searches the neighbours again */
+		move(h1, new Coord(0, 0));
+		assertEquals(0, lists.getNearInterfaces(iface(h1)).size());
+		assertEquals(0, lists.getNrofNeighbours());
+		assertEquals(0, h1.getConnections().size());
+	}
+
+	public void testNearDistance() {
+		DTNHost h1 = utils.createHost(new Coord(0, 0), RANGE);
+		utils.createHost(new Coord(50, 0), RANGE);
+		utils.update();
+		assertEquals(RANGE + SKIN / 2, lists.getNearDistance(iface(h1)), 0);
+
+		/* moving within half of the skin shrinks the distance */
+		move(h1, new Coord(1.5, 0));
+		assertEquals(RANGE + SKIN / 2 - 1.5,
+				lists.getNearDistance(iface(h1)), 1e-9);
+		move(h1, new Coord(10, 0));
+		assertEquals(RANGE + SKIN / 2, lists.getNearDistance(iface(h1)), 0);
+	}
+
+	public void testRemoveInterface() {
+		DTNHost h1 = utils.createHost(new Coord(0, 0), RANGE);
+		DTNHost h2 = utils.createHost(new Coord(5, 0), RANGE);
+		DTNHost h3 = utils.createHost(new Coord(10, 0), RANGE);
+		utils.update();
+		assertEquals(6, lists.getNrofNeighbours());
+
+		lists.removeInterface(iface(h1));
+		utils.getHosts().remove(h1);
+		assertEquals(2, lists.getAllInterfaces().size());
+		assertEquals(2, lists.getNrofNeighbours());
+		assertTrue(lists.getNearInterfaces(iface(h3)).contains(iface(h2)));
+
+		move(h3, new Coord(100, 0));
+		assertEquals(0, lists.getNrofNeighbours());
+	}
+
+	public void testNearInterfaces() {
+		Random rng = new Random(1);
+		for (int i=0; i < 300; i++) {
+			utils.createHost(new Coord(rng.nextDouble() * 300 - 150,
+					rng.nextDouble() * 300 - 150), RANGE);
+		}
+		utils.update();
+		assertNearInterfaces();
+
+		/* some moves stay within half of the skin, some don't */
+		for (int round=0; round < 20; round++) {
+			for (DTNHost h : utils.getHosts()) {
+				Coord c = h.getLocation();
+				h.setLocation(new Coord(c.getX() + rng.nextDouble() * 2 - 1,
+						c.getY() + rng.nextDouble() * 2 - 1));
+				iface(h).updateLocation();
+			}
+			assertNearInterfaces();
+		}
+	}
+
+	/**
+	 * Checks that all the interfaces within range of each other are each
+	 * other's neighbours and that every pair of neighbours is handled
+	 * exactly once
+	 */
+	private void assertNearInterfaces() {
+		Set<String> pairs = ConnectivityTestUtils.getNearPairs(lists);
+		assertEquals(lists.getNrofNeighbours(), pairs.size() * 2);
+		utils.assertPairsInRange(pairs);
+
+		for (DTNHost h : utils.getHosts()) {
+			NetworkInterface ni = iface(h);
+			for (DTNHost other : utils.getHosts()) {
+				if (other != h && h.getLocation().distance(
+						other.getLocation()) <= RANGE) {
+					assertTrue(lists.getNearInterfaces(ni).contains(
+							iface(other)));
+				}
+			}
+		}
+	}
+
+	private void move(DTNHost host, Coord location) {
+		host.setLocation(location);
+		utils.update();
+	}
+}
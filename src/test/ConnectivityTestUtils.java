@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.NearPairHandler;
+import interfaces.SimpleBroadcastInterface;
+import junit.framework.Assert;
+import routing.PassiveRouter;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+
+/**
+ * Convenience methods for the tests of the connectivity optimizers: creates
+ * stationary hosts with one {@link SimpleBroadcastInterface} each and
+ * checks the pairs the optimizers find.
+ */
+public class ConnectivityTestUtils {
+	private TestSettings settings;
+	private List<DTNHost> hosts;
+
+	/**
+	 * Creates a test utils object suitable for creating new hosts.
+	 * @param settings Settings for the interfaces and the routers
+	 */
+	public ConnectivityTestUtils(TestSettings settings) {
+		this.settings = settings;
+		this.hosts = new ArrayList<DTNHost>();
+	}
+
+	/**
+	 * Creates a stationary host with a passive router and one interface of
+	 * the {@link TestUtils#IFACE_NS} type
+	 * @param location The location of the host
+	 * @param range Transmit range of the interface
+	 * @return The new host
+	 */
+	public DTNHost createHost(Coord location, double range) {
+		settings.setNameSpace(TestUtils.IFACE_NS);
+		settings.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + range);
+		settings.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(new SimpleBroadcastInterface(settings));
+		settings.restoreNameSpace();
+
+		DTNHost host = new DTNHost(null, null, "n", li,
+				new ModuleCommunicationBus(), new StationaryMovement(location),
+				new PassiveRouter(settings));
+		hosts.add(host);
+		return host;
+	}
+
+	/**
+	 * Returns all the hosts created so far
+	 * @return The hosts
+	 */
+	public List<DTNHost> getHosts() {
+		return this.hosts;
+	}
+
+	/**
+	 * Updates the connections of all the hosts
+	 */
+	public void update() {
+		for (DTNHost h : hosts) {
+			h.update(true);
+		}
+	}
+
+	/**
+	 * Returns the (only) interface of a host
+	 * @param host The host
+	 * @return The interface
+	 */
+	public static NetworkInterface iface(DTNHost host) {
+		return host.getInterfaces().get(0);
+	}
+
+	/**
+	 * Returns a string that identifies an unordered pair of interfaces
+	 * @param ni1 The first interface
+	 * @param ni2 The second interface
+	 * @return The pair as "smaller address-bigger address"
+	 */
+	public static String pair(NetworkInterface ni1, NetworkInterface ni2) {
+		int a1 = ni1.getHost().getAddress();
+		int a2 = ni2.getHost().getAddress();
+		return Math.min(a1, a2) + "-" + Math.max(a1, a2);
+	}
+
+	/**
+	 * Returns the near pairs of an optimizer (see
+	 * {@link ConnectivityOptimizer#forEachNearPair(NearPairHandler)})
+	 * and checks that every pair is of different interfaces and handled
+	 * only once
+	 * @param optimizer The optimizer
+	 * @return The pairs (see {@link #pair(NetworkInterface, NetworkInterface)})
+	 */
+	public static Set<String> getNearPairs(ConnectivityOptimizer optimizer) {
+		final Set<String> pairs = new HashSet<String>();
+		optimizer.forEachNearPair(new NearPairHandler() {
+			public void nearPair(NetworkInterface ni1, NetworkInterface ni2) {
+				Assert.assertNotSame(ni1, ni2);
+				Assert.assertTrue(pairs.add(pair(ni1, ni2)));
+			}
+		});
+		return pairs;
+	}
+
+	/**
+	 * Checks that all the pairs of interfaces that are within range of
+	 * each other are among the given pairs
+	 * @param pairs The pairs (see
+	 * {@link #pair(NetworkInterface, NetworkInterface)})
+	 */
+	public void assertPairsInRange(Set<String> pairs) {
+		for (DTNHost h : hosts) {
+			NetworkInterface ni = iface(h);
+			for (DTNHost other : hosts) {
+				NetworkInterface oni = iface(other);
+				if (oni != ni && h.getLocation().distance(other.getLocation())
+						<= Math.min(ni.getTransmitRange(),
+								oni.getTransmitRange())) {
+					Assert.assertTrue(pairs.contains(pair(ni, oni)));
+				}
+			}
+		}
+	}
+}
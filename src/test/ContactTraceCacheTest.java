@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueueHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import report.MessageStatsReport;
+import report.Report;
+import core.ConnectionListener;
+import core.ContactTraceCache;
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Tests recording and replaying contact traces
+ */
+public class ContactTraceCacheTest extends TestCase {
+	private File cacheDir;
+	private File statsFile;
+	private TestSettings ts;
+	private List<Coord> initialLocations;
+	private List<Coord> finalLocations;
+	private String messageStats;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cacheDir = File.createTempFile("contactcache", "");
+		cacheDir.delete();
+
+		statsFile = File.createTempFile("stats", ".txt");
+
+		ts = ScenarioTestUtils.createSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ContactTraceCache.CACHE_DIR_S, cacheDir.getPath());
+		ts.putSetting("MessageStatsReport." + Report.OUTPUT_SETTING,
+				statsFile.getPath());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		cacheDir.delete();
+		statsFile.delete();
+		super.tearDown();
+	}
+
+	public void testReplayWithDifferentRouter() {
+		List<String> recorded = run();
+		assertTrue("No contacts", recorded.size() > 0);
+		assertEquals(1, cacheDir.listFiles().length);
+		assertFalse(initialLocations.equals(finalLocations));
+
+		new TestSettings(SimScenario.GROUP_NS).putSetting(
+				SimScenario.ROUTER_S, "DirectDeliveryRouter");
+		List<String> replayed = run();
+		assertEquals(recorded, replayed);
+		assertEquals(1, cacheDir.listFiles().length);
+		/* replayed runs don't move the hosts */
+		assertEquals(initialLocations, finalLocations);
+	}
+
+	public void testReplayedRoutingIsIdentical() throws IOException {
+		ScenarioTestUtils.addMessageGenerator(ts, "1,5", "0,20");
+		List<String> recorded = run();
+		String recordedStats = messageStats;
+		assertFalse("No messages were delivered",
+				recordedStats.contains("\ndelivered: 0\n"));
+
+		List<String> replayed = run();
+		assertEquals(1, cacheDir.listFiles().length);
+		assertEquals(recorded, replayed);
+		assertEquals(recordedStats, messageStats);
+	}
+
+	public void testEventsFileChangeMissesCache() throws IOException {
+		File eventsFile = File.createTempFile("events", ".txt");
+		eventsFile.deleteOnExit();
+		writeFile(eventsFile, "10.05 CONN 0 1 up\n");
+		String ens = EventQueueHandler.SETTINGS_NAMESPACE;
+		ts.putSetting(ens + "." + EventQueueHandler.NROF_SETTING, "1");
+		ts.putSetting(ens + "1." + EventQueueHandler.PATH_SETTING,
+				eventsFile.getPath());
+
+		run();
+		assertEquals(1, cacheDir.listFiles().length);
+
+		writeFile(eventsFile, "10.05 CONN 0 2 up\n20.05 CONN 3 4 up\n");
+		List<String> recorded = run();
+		assertEquals(2, cacheDir.listFiles().length);
+		assertTrue(recorded.contains("20.05 n3 n4 up"));
+
+		/* the contacts of the events file are not replayed twice */
+		List<String> replayed = run();
+		assertEquals(2, cacheDir.listFiles().length);
+		assertEquals(recorded, replayed);
+		eventsFile.delete();
+	}
+
+	public void testIncompleteRunIsNotStored() {
+		DTNSim.createRunContext(0);
+		SimScenario scen = SimScenario.getInstance();
+		scen.getWorld().update();
+		scen.simulationDone();
+		assertEquals(0, cacheDir.listFiles().length);
+	}
+
+	/**
+	 * Runs a simulation until its end time
+	 * @return The connection events of the run
+	 */
+	private List<String> run() {
+		final List<String> contacts = new ArrayList<String>();
+		DTNSim.createRunContext(0);
+		SimScenario scen = SimScenario.getInstance();
+		MessageStatsReport stats = new MessageStatsReport();
+		scen.addMessageListener(stats);
+		scen.addConnectionListener(new ConnectionListener() {
+			public void hostsConnected(DTNHost h1, DTNHost h2) {
+				contacts.add(SimClock.getTime() + " " + h1 + " " + h2 + " up");
+			}
+			public void hostsDisconnected(DTNHost h1, DTNHost h2) {
+				contacts.add(SimClock.getTime() + " " + h1 + " " + h2 +
+						" down");
+			}
+		});
+
+		World world = scen.getWorld();
+		initialLocations = getLocations(world);
+		while (SimClock.getTime() < scen.getEndTime()) {
+			world.update();
+		}
+		scen.simulationDone();
+		finalLocations = getLocations(world);
+		stats.done();
+		messageStats = readFile(statsFile);
+		return contacts;
+	}
+
+	private String readFile(File f) {
+		StringBuilder contents = new StringBuilder();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(f));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				contents.append(line).append('\n');
+			}
+			reader.close();
+		} catch (IOException e) {
+			fail("Can't read " + f + ": " + e);
+		}
+		return contents.toString();
+	}
+
+	private void writeFile(File f, String contents) throws IOException {
+		FileWriter fw = new FileWriter(f);
+		fw.write(contents);
+		fw.close();
+	}
+
+	private List<Coord> getLocations(World world) {
+		List<Coord> locations = new ArrayList<Coord>();
+		for (DTNHost h : world.getHosts()) {
+			locations.add(h.getLocation().clone());
+		}
+		return locations;
+	}
+}
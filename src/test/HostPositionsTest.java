@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import routing.PassiveRouter;
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.HostPositions;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Tests for keeping the {@link HostPositions} in sync with the locations
+ * of the hosts
+ */
+public class HostPositionsTest extends TestCase {
+	private TestSettings ts;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		SimClock.reset();
+		DTNHost.reset();
+		HostPositions.reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		new TestSettings();
+		super.tearDown();
+	}
+
+	public void testInitMovement() {
+		DTNHost h1 = createHost(new StationaryMovement(new Coord(10, 20)));
+		DTNHost h2 = createHost(new StationaryMovement(new Coord(30, 40)));
+
+		assertPosition(h1, 10, 20);
+		assertPosition(h2, 30, 40);
+		assertSame(h1.getPositions(), h2.getPositions());
+	}
+
+	public void testParallelInitMovement() {
+		ts = ScenarioTestUtils.createSettings();
+		String gns = ScenarioTestUtils.GROUP_PREFIX;
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "100");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "PassiveRouter");
+		ts.putSetting(gns + SimScenario.NROF_INTERF_S, "0");
+		ts.putSetting("MovementModel.worldSize", "500,400");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.MOVEMENT_THREADS_S, "4");
+		DTNSim.createRunContext(0);
+
+		for (DTNHost h : SimScenario.getInstance().getHosts()) {
+			assertPosition(h, h.getLocation().getX(), h.getLocation().getY());
+		}
+	}
+
+	public void testSetLocation() {
+		DTNHost h = createHost(new StationaryMovement(new Coord(0, 0)));
+		h.setLocation(new Coord(5, 6));
+		assertPosition(h, 5, 6);
+	}
+
+	public void testMove() {
+		DTNHost h = createHost(new LineMovement(1, new Coord(0, 0),
+				new Coord(10, 0), new Coord(10, 5)));
+
+		/* moving along the path, past a waypoint and to the end of it */
+		h.move(4);
+		assertPosition(h, 4, 0);
+		h.move(8);
+		assertPosition(h, 10, 2);
+		h.move(10);
+		assertPosition(h, 10, 5);
+	}
+
+	public void testIsWithinDistance() {
+		Random rng = new Random(1);
+		DTNHost h1 = createHost(new StationaryMovement(new Coord(0, 0)));
+		DTNHost h2 = createHost(new StationaryMovement(new Coord(0, 0)));
+		HostPositions positions = h1.getPositions();
+
+		for (int i=0; i < 1000; i++) {
+			Coord c = new Coord(rng.nextDouble() * 100, rng.nextDouble() * 100);
+			h2.setLocation(c);
+			/* distances at and right around the limit */
+			double distance = h1.getLocation().distance(c);
+			double[] limits = {distance, Math.nextUp(distance),
+					Math.nextAfter(distance, 0), distance * (1 + 1e-12)};
+			for (double limit : limits) {
+				assertEquals(distance <= limit, positions.isWithinDistance(
+						h1.getAddress(), h2.getAddress(), limit));
+			}
+		}
+	}
+
+	private void assertPosition(DTNHost h, double x, double y) {
+		assertEquals(x, h.getLocation().getX(), 1e-9);
+		assertEquals(y, h.getLocation().getY(), 1e-9);
+		assertEquals(h.getLocation().getX(), h.getPositions().getX(
+				h.getAddress()));
+		assertEquals(h.getLocation().getY(), h.getPositions().getY(
+				h.getAddress()));
+	}
+
+	private DTNHost createHost(MovementModel mm) {
+		return new DTNHost(null, null, "h", new ArrayList<NetworkInterface>(),
+				new ModuleCommunicationBus(), mm, new PassiveRouter(ts));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+import junit.framework.TestCase;
+import routing.PassiveRouter;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the kinetic connectivity detection of the World
+ */
+public class KineticConnectivityTest extends TestCase {
+	/* for rounding errors of the crossing times */
+	private static final double TIME_DELTA = 0.000001;
+	private static final double RANGE = 30;
+	private static final double HOST_SPEED = 10;
+
+	@Override
+	protected void tearDown() throws Exception {
+		new TestSettings();
+		ConnectivityGrid.reset();
+		super.tearDown();
+	}
+
+	/**
+	 * A host passes by a stationary host at constant speed. The contact
+	 * starts when the moving host is 30 m before (after 7 s of movement)
+	 * and ends when it is 30 m past (after 13 s) the stationary host.
+	 */
+	public void testExactContactTimes() {
+		List<Double> times = runPassBy(true, 4);
+		assertEquals(2, times.size());
+		assertEquals(7.0, times.get(0), TIME_DELTA);
+		assertEquals(13.0, times.get(1), TIME_DELTA);
+
+		/* the same with a waypoint in the middle of a step */
+		times = runPassBy(true, 3);
+		assertEquals(7.0, times.get(0), TIME_DELTA);
+		assertEquals(13.0, times.get(1), TIME_DELTA);
+	}
+
+	public void testSampledContactTimes() {
+		List<Double> times = runPassBy(false, 4);
+		assertEquals(2, times.size());
+		assertEquals(8.0, times.get(0), TIME_DELTA);
+		assertEquals(16.0, times.get(1), TIME_DELTA);
+	}
+
+	/**
+	 * Runs a scenario where one host passes by another and returns the
+	 * times of the connection events
+	 * @param kinetic Should the contacts be detected kinetically
+	 * @param interval Update interval
+	 * @return The times of the connection up and down events
+	 */
+	private List<Double> runPassBy(boolean kinetic, double interval) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.KINETIC_CONTACTS_S, "" + kinetic);
+		ts.putSetting("MovementModel.worldSize", "500,500");
+		SimClock.reset();
+		DTNHost.reset();
+		ConnectivityGrid.reset();
+
+		final List<Double> times = new ArrayList<Double>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				times.add(SimClock.getTime());
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				times.add(SimClock.getTime());
+			}
+		});
+
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		NetworkInterface ni = new SimpleBroadcastInterface(ts);
+		ni.setClisteners(cl);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+		PassiveRouter router = new PassiveRouter(ts);
+
+		/* the moving host passes a waypoint at x=240 after 11 s */
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(new DTNHost(null, null, "s", li,
+				new ModuleCommunicationBus(),
+				new StationaryMovement(new Coord(250, 250)), router));
+		hosts.add(new DTNHost(null, null, "m", li,
+				new ModuleCommunicationBus(), new LineMovement(HOST_SPEED,
+						new Coord(350, 250), new Coord(240, 250),
+						new Coord(150, 250)), router));
+
+		World w = new World(hosts, 500, 500, interval,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		while (SimClock.getTime() < 30) {
+			w.update();
+		}
+
+		return times;
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import movement.MovementModel;
+import movement.Path;
+import core.Coord;
+
+/**
+ * A movement model for testing purposes where nodes move along one path at
+ * constant speed and then stay at the end of the path
+ */
+public class LineMovement extends MovementModel {
+	private static final long serialVersionUID = 1L;
+	private double speed;
+	private Coord[] points;
+	private boolean moved;
+
+	/**
+	 * Constructor.
+	 * @param speed Speed of the movement
+	 * @param points The waypoints of the path (the first one is the
+	 * initial location)
+	 */
+	public LineMovement(double speed, Coord... points) {
+		this.speed = speed;
+		this.points = points;
+	}
+
+	@Override
+	public Coord getInitialLocation() {
+		return points[0].clone();
+	}
+
+	@Override
+	public Path getPath() {
+		if (moved) {
+			return null;
+		}
+		moved = true;
+		Path p = new Path(speed);
+		for (Coord c : points) {
+			p.addWaypoint(c.clone());
+		}
+		return p;
+	}
+
+	@Override
+	public double nextPathAvailable() {
+		return moved ? Double.MAX_VALUE : 0;
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public LineMovement replicate() {
+		return new LineMovement(speed, points);
+	}
+}
@@ -178,7 +178,14 @@ public class MapBasedMovementTest extends TestCase {
 		// second call should return the same map object
 		assertTrue(firstMap == secondMap);
 
-		writeToNewFile(); // change the map file
+		writeToNewFile(); // new map file with the same contents
+		mbm = (MapBasedMovement)s.createIntializedObject(mmbClass);
+
+		// the maps are cached by the contents of the files
+		assertTrue(firstMap == mbm.getMap());
+
+		// change the map file
+		writeToNewFile(WKT + "LINESTRING (4.0 1.0, 5.0 1.0)\n");
 		mbm = (MapBasedMovement)s.createIntializedObject(mmbClass);
 		SimMap thirdMap = mbm.getMap();
 
@@ -239,16 +246,20 @@ public class MapBasedMovementTest extends TestCase {
 	}
 
 	private String writeToNewFile() throws IOException {
+		return writeToNewFile(WKT);
+	}
+
+	private String writeToNewFile(String wkt) throws IOException {
 		File tempFile = File.createTempFile("mapCachingTest", ".tmp");
 		tempFile.deleteOnExit();
-		writeToFile(tempFile.getAbsolutePath());
+		writeToFile(tempFile.getAbsolutePath(), wkt);
 		return tempFile.getAbsolutePath();
 	}
 
-	private void writeToFile(String path) throws IOException {
+	private void writeToFile(String path, String wkt) throws IOException {
 		File tempFile = new File(path);
 		PrintWriter out = new PrintWriter(tempFile);
-		out.println(WKT);
+		out.println(wkt);
 		out.close();
 		String ns = MapBasedMovement.MAP_BASE_MOVEMENT_NS + ".";
 
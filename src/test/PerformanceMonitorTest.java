@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import core.ConnectionListener;
+import core.DTNHost;
+import core.DTNSim;
+import core.PerformanceMonitor;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Tests the timers and counters of the world update phases
+ */
+public class PerformanceMonitorTest extends TestCase {
+	private static final int NROF_UPDATES = 500;
+	private int nrofConnected;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = ScenarioTestUtils.createSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				PerformanceMonitor.PERFORMANCE_MONITOR_S, "true");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testCounters() throws Exception {
+		DTNSim.createRunContext(0);
+		SimScenario scen = SimScenario.getInstance();
+		scen.addConnectionListener(new ConnectionListener() {
+			public void hostsConnected(DTNHost h1, DTNHost h2) {
+				nrofConnected++;
+			}
+			public void hostsDisconnected(DTNHost h1, DTNHost h2) {}
+		});
+		World world = scen.getWorld();
+		PerformanceMonitor monitor = world.getPerformanceMonitor();
+		assertTrue(monitor.isEnabled());
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName(PerformanceMonitor.MBEAN_NAME)));
+
+		for (int i = 0; i < NROF_UPDATES; i++) {
+			world.update();
+		}
+
+		assertEquals(NROF_UPDATES, monitor.getUpdates());
+		assertEquals(SimClock.getTime(), monitor.getSimTime());
+		assertTrue(nrofConnected > 0);
+		assertEquals(nrofConnected, monitor.getConnectionsCreated());
+		assertTrue(monitor.getConnectionsExamined() >=
+			monitor.getConnectionsCreated());
+		assertTrue(monitor.getMovementTimeMillis() > 0);
+		assertTrue(monitor.getConnectivityTimeMillis() > 0);
+		assertTrue(monitor.getRoutingTimeMillis() > 0);
+		assertEquals(0, monitor.getEventsProcessed());
+		assertEquals(0, monitor.getTransfersStarted()); // no messages
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import core.ResourceCache;
+import core.World;
+
+/**
+ * Tests for the cache of scenario input files
+ */
+public class ResourceCacheTest extends TestCase {
+	private static final String KIND = "test";
+
+	private int nrofLoads;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		new TestSettings();
+		ResourceCache.clear();
+		nrofLoads = 0;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ResourceCache.clear();
+		super.tearDown();
+	}
+
+	public void testContentKey() throws IOException {
+		File f1 = writeFile("abc");
+		File f2 = writeFile("abc");
+
+		Object first = get(f1);
+		assertSame(first, get(f1));
+		assertSame(first, get(f2)); /* same contents */
+		assertEquals(1, nrofLoads);
+
+		writeFile(f2, "abcd");
+		assertNotSame(first, get(f2));
+		assertEquals(2, nrofLoads);
+		assertSame(first, get(f1));
+	}
+
+	public void testEviction() throws IOException {
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(ResourceCache.CACHE_SIZE_S, "5");
+		File f1 = writeFile("abc");
+		File f2 = writeFile("def");
+		File big = writeFile("abcdef");
+
+		Object first = get(f1);
+		get(f2); /* exceeds the size -> first is evicted */
+		assertEquals(1, ResourceCache.size());
+		assertNotSame(first, get(f1));
+		assertEquals(3, nrofLoads);
+
+		/* too big to be cached */
+		assertNotSame(get(big), get(big));
+		assertEquals(1, ResourceCache.size());
+
+		ts.putSetting(ResourceCache.CACHE_SIZE_S, "0");
+		assertNotSame(get(f1), get(f1));
+	}
+
+	public void testDifferentResourcesLoadedConcurrently() throws Exception {
+		File f1 = writeFile("abc");
+		final File f2 = writeFile("def");
+		final CountDownLatch secondStarted = new CountDownLatch(1);
+		final boolean[] overlapped = new boolean[1];
+
+		/* the first load waits until the second one has started */
+		Thread first = new Thread() {
+			public void run() {
+				try {
+					ResourceCache.get(KIND, new File[] {f2},
+							new ResourceCache.Loader<Object>() {
+								public Object load() throws IOException {
+									try {
+										overlapped[0] = secondStarted.await(
+												10, TimeUnit.SECONDS);
+									} catch (InterruptedException e) {
+										throw new IOException(e);
+									}
+									return new Object();
+								}
+							});
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		first.start();
+		Thread.sleep(100);
+		ResourceCache.get(KIND, new File[] {f1},
+				new ResourceCache.Loader<Object>() {
+					public Object load() {
+						secondStarted.countDown();
+						return new Object();
+					}
+				});
+		first.join();
+
+		assertTrue(overlapped[0]);
+		assertEquals(2, ResourceCache.size());
+	}
+
+	public void testSameResourceLoadedOnce() throws Exception {
+		final File f = writeFile("abc");
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final Object[] results = new Object[2];
+		final ResourceCache.Loader<Object> loader =
+			new ResourceCache.Loader<Object>() {
+				public Object load() throws IOException {
+					loads.incrementAndGet();
+					started.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					return new Object();
+				}
+			};
+
+		Thread[] threads = new Thread[2];
+		for (int i=0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = ResourceCache.get(KIND,
+								new File[] {f}, loader);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+		}
+		threads[0].start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		threads[1].start();
+		Thread.sleep(100); /* the second request waits for the first */
+		release.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(1, loads.get());
+		assertNotNull(results[0]);
+		assertSame(results[0], results[1]);
+	}
+
+	private Object get(File f) throws IOException {
+		return ResourceCache.get(KIND, new File[] {f},
+				new ResourceCache.Loader<Object>() {
+					public Object load() {
+						nrofLoads++;
+						return new Object();
+					}
+				});
+	}
+
+	private File writeFile(String contents) throws IOException {
+		File f = File.createTempFile("resourceCacheTest", ".tmp");
+		f.deleteOnExit();
+		writeFile(f, contents);
+		return f;
+	}
+
+	private void writeFile(File f, String contents) throws IOException {
+		PrintWriter out = new PrintWriter(f);
+		out.print(contents);
+		out.close();
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueueHandler;
+import core.SimScenario;
+
+/**
+ * Settings of the small scenario that the tests running whole simulations
+ * share: one group ("n") of 20 epidemic routing hosts that move with the
+ * random waypoint model in a 500x500 world and have one
+ * SimpleBroadcastInterface ("radio") with 100m range. Tests override only
+ * the settings they vary.
+ */
+public class ScenarioTestUtils {
+	/** prefix of the settings of the (first) group */
+	public static final String GROUP_PREFIX = SimScenario.GROUP_NS + ".";
+	/** name of the interface of the hosts */
+	public static final String IFACE_NAME = "radio";
+
+	/**
+	 * Creates new test settings with the shared scenario
+	 * @return The settings
+	 */
+	public static TestSettings createSettings() {
+		TestSettings ts = new TestSettings();
+		String gns = GROUP_PREFIX;
+		ts.putSetting(gns + SimScenario.GROUP_ID_S, "n");
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "20");
+		ts.putSetting(gns + SimScenario.MOVEMENT_MODEL_S, "RandomWaypoint");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "EpidemicRouter");
+		ts.putSetting(gns + SimScenario.NROF_INTERF_S, "1");
+		ts.putSetting(gns + SimScenario.INTERFACENAME_S + "1", IFACE_NAME);
+		ts.putSetting(gns + "bufferSize", "1M");
+		ts.putSetting(gns + "speed", "1,5");
+		ts.putSetting(gns + "waitTime", "0,10");
+		ts.putSetting(IFACE_NAME + ".type", "SimpleBroadcastInterface");
+		ts.putSetting(IFACE_NAME + ".transmitSpeed", "10k");
+		ts.putSetting(IFACE_NAME + ".transmitRange", "100");
+		ts.putSetting("MovementModel.worldSize", "500,500");
+		return ts;
+	}
+
+	/**
+	 * Adds a message generator of 10k-50k messages (with prefix "M") as the
+	 * only event generator of the scenario
+	 * @param ts The settings to add the generator to
+	 * @param interval Message creation interval range
+	 * @param hosts Address range of the source and destination hosts
+	 */
+	public static void addMessageGenerator(TestSettings ts, String interval,
+			String hosts) {
+		String ens = EventQueueHandler.SETTINGS_NAMESPACE;
+		ts.putSetting(ens + "." + EventQueueHandler.NROF_SETTING, "1");
+		ts.putSetting(ens + "1.class", "MessageEventGenerator");
+		ts.putSetting(ens + "1.interval", interval);
+		ts.putSetting(ens + "1.size", "10k,50k");
+		ts.putSetting(ens + "1.hosts", hosts);
+		ts.putSetting(ens + "1.prefix", "M");
+	}
+}
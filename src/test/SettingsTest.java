@@ -204,6 +204,33 @@ public class SettingsTest extends TestCase {
 		assertEquals(CSV_RS_V[1],vals[1]);
 	}
 
+	/**
+	 * Tests the settings served from the run index's snapshot
+	 */
+	public void testSnapshot() throws Exception {
+		Settings.setRunIndex(1);
+		assertEquals(1.1, s.getDouble("double"));
+		assertEquals("val2", s.getSetting(RS_S));
+		assertEquals(CSV_RS_V[2], s.getCsvInts(CSV_RS_S, 2)[0]);
+
+		/* the returned arrays must not be shared */
+		double[] csv = s.getCsvDoubles("csvDoubles", 3);
+		csv[0] = 0;
+		assertEquals(1.1, s.getCsvDoubles("csvDoubles", 3)[0]);
+		assertTrue(s.getCsvRanges("csvInts")[1].isInRange(2));
+		s.getCsvRanges("csvInts")[1] = null;
+		assertNotNull(s.getCsvRanges("csvInts")[1]);
+
+		/* settings added after the snapshot was created */
+		File tempFile = File.createTempFile("settingsTest", ".tmp");
+		tempFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(tempFile);
+		out.println("double = 2.2");
+		out.close();
+		Settings.addSettings(tempFile.getAbsolutePath());
+		assertEquals(2.2, s.getDouble("double"));
+	}
+
 	public void testInvalidRunIndex() {
 		assertEquals("[val1 ; val2",s.getSetting(IRS_S));
 	}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.DirectDeliveryRouter;
+import core.Connection;
+import core.DTNHost;
+import core.DTNSim;
+import core.SimCheckpoint;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Tests writing and restoring simulation checkpoints
+ */
+public class SimCheckpointTest extends TestCase {
+	private static final double CHECKPOINT_TIME = 50;
+	private static final double END_TIME = 100;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = ScenarioTestUtils.createSettings();
+		ScenarioTestUtils.addMessageGenerator(ts, "1,5", "0,20");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testRestoredRunContinuesIdentically() throws Exception {
+		DTNSim.createRunContext(0);
+		World world = SimScenario.getInstance().getWorld();
+		runUntil(world, CHECKPOINT_TIME);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SimCheckpoint.write(out);
+		double checkpointTime = SimClock.getTime();
+
+		runUntil(world, END_TIME);
+		List<String> expected = getState(world);
+		assertTrue("No messages were created",
+				expected.toString().contains("[M"));
+
+		DTNSim.createRunContext(0);
+		assertEquals(0.0, SimClock.getTime());
+		SimCheckpoint.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(checkpointTime, SimClock.getTime());
+
+		World restored = SimScenario.getInstance().getWorld();
+		assertNotSame(world, restored);
+		runUntil(restored, END_TIME);
+
+		assertEquals(expected, getState(restored));
+	}
+
+	public void testRestoreWithNewRouters() throws Exception {
+		DTNSim.createRunContext(0);
+		World world = SimScenario.getInstance().getWorld();
+		runUntil(world, CHECKPOINT_TIME);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SimCheckpoint.write(out);
+		runUntil(world, END_TIME);
+		List<String> expected = getLocations(world);
+
+		new TestSettings(SimScenario.GROUP_NS).putSetting(
+				SimScenario.ROUTER_S, "DirectDeliveryRouter");
+		DTNSim.createRunContext(0);
+		SimCheckpoint.read(new ByteArrayInputStream(out.toByteArray()));
+		SimScenario scen = SimScenario.getInstance();
+		scen.replaceRouters();
+
+		for (DTNHost h : scen.getHosts()) {
+			assertTrue(h.getRouter() instanceof DirectDeliveryRouter);
+			assertEquals(0, h.getNrofMessages());
+		}
+
+		// movement and connectivity don't depend on the routers
+		runUntil(scen.getWorld(), END_TIME);
+		assertEquals(expected, getLocations(scen.getWorld()));
+	}
+
+	private void runUntil(World world, double time) {
+		while (SimClock.getTime() < time) {
+			world.update();
+		}
+	}
+
+	/**
+	 * Returns the locations, connections and buffered messages of the hosts
+	 */
+	private List<String> getState(World world) {
+		List<String> state = new ArrayList<String>();
+		for (DTNHost h : world.getHosts()) {
+			state.add(h + " " + h.getLocation() + " " + h.getConnections() +
+					" " + h.getMessageCollection());
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the locations and connected peers of the hosts
+	 */
+	private List<String> getLocations(World world) {
+		List<String> state = new ArrayList<String>();
+		for (DTNHost h : world.getHosts()) {
+			String peers = "";
+			for (Connection con : h.getConnections()) {
+				peers += " " + con.getOtherNode(h);
+			}
+			state.add(h + " " + h.getLocation() + peers);
+		}
+		return state;
+	}
+}
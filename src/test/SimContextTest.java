@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.DTNSim;
+import core.RunLocal;
+import core.Settings;
+import core.SimClock;
+import core.SimContext;
+
+/**
+ * Tests that the state of simulation runs is isolated by run contexts
+ */
+public class SimContextTest extends TestCase {
+	private RunLocal<Integer> counter;
+	private SimContext origContext;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		origContext = SimContext.getCurrent();
+		counter = new RunLocal<Integer>() {
+			@Override
+			protected Integer initialValue() {
+				return 0;
+			}
+		};
+		SimClock.reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		assertSame(origContext, SimContext.getCurrent());
+		SimClock.reset();
+		Settings.setRunIndex(0);
+		super.tearDown();
+	}
+
+	public void testClockIsolation() {
+		SimClock.getInstance().setTime(5.0);
+		SimContext context = new SimContext(origContext);
+
+		SimContext.setCurrent(context);
+		assertEquals(0.0, SimClock.getTime());
+		SimClock.getInstance().advance(1.5);
+		assertEquals(1.5, SimClock.getTime());
+
+		SimContext.setCurrent(null);
+		assertEquals(5.0, SimClock.getTime());
+	}
+
+	public void testRunLocalIsolation() {
+		counter.set(3);
+		SimContext context = new SimContext(origContext);
+
+		SimContext.setCurrent(context);
+		assertEquals(0, (int)counter.get());
+		counter.set(7);
+
+		SimContext.setCurrent(null);
+		assertEquals(3, (int)counter.get());
+		counter.remove();
+		assertEquals(0, (int)counter.get());
+
+		SimContext.setCurrent(context);
+		assertEquals(7, (int)counter.get());
+	}
+
+	public void testCreateRunContext() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting("runSetting", "[a ; b ; c]");
+
+		SimContext context = DTNSim.createRunContext(2);
+		assertSame(context, SimContext.getCurrent());
+		assertEquals("c", new Settings().getSetting("runSetting"));
+
+		SimContext.setCurrent(null);
+		Settings.setRunIndex(0);
+		assertEquals("a", new Settings().getSetting("runSetting"));
+	}
+
+	public void testSettingsIsolation() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting("value", "1");
+		assertEquals(1, new Settings().getInt("value"));
+
+		SimContext context = DTNSim.createRunContext(0);
+		assertEquals(1, new Settings().getInt("value"));
+		ts.putSetting("value", "2");
+		assertEquals(2, new Settings().getInt("value"));
+
+		SimContext.setCurrent(null);
+		assertEquals(1, new Settings().getInt("value"));
+		SimContext.setCurrent(context);
+		assertEquals(2, new Settings().getInt("value"));
+	}
+
+	public void testSettingsOutputIsolation() throws IOException {
+		File outFile = File.createTempFile("settings-out", ".txt");
+		outFile.deleteOnExit();
+		File propFile = File.createTempFile("settings", ".txt");
+		propFile.deleteOnExit();
+		FileWriter fw = new FileWriter(propFile);
+		fw.write(Settings.SETTING_OUTPUT_S + " = " +
+				outFile.getPath().replace('\\', '/') + "\n");
+		fw.write("runValue = [a ; b]\n");
+		fw.close();
+
+		SimContext context = new SimContext(origContext);
+		SimContext.setCurrent(context);
+		Settings.init(propFile.getPath());
+		Settings.setRunIndex(1);
+		assertEquals("b", new Settings().getSetting("runValue"));
+
+		SimContext.setCurrent(null);
+		new TestSettings().putSetting("runValue", "c");
+		assertEquals("c", new Settings().getSetting("runValue"));
+
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(outFile));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		assertEquals(2, lines.size());
+		assertEquals("# Settings for run 2", lines.get(0));
+		assertEquals("runValue = b", lines.get(1));
+	}
+
+	public void testConcurrentRuns() throws Exception {
+		final int nrofRuns = 4;
+		final double[] results = new double[nrofRuns];
+		Thread[] threads = new Thread[nrofRuns];
+
+		for (int i = 0; i < nrofRuns; i++) {
+			final int run = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					SimContext.setCurrent(new SimContext(origContext));
+					for (int j = 0; j <= run * 100; j++) {
+						SimClock.getInstance().advance(1.0);
+						counter.set(counter.get() + 1);
+					}
+					results[run] = SimClock.getTime() + counter.get();
+				}
+			};
+			threads[i].start();
+		}
+
+		for (int i = 0; i < nrofRuns; i++) {
+			threads[i].join();
+			assertEquals(2.0 * (i * 100 + 1), results[i]);
+		}
+		assertEquals(0.0, SimClock.getTime());
+	}
+}
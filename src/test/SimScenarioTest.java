@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.DTNHost;
+import core.DTNSim;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Tests for creating the hosts of a {@link SimScenario}
+ */
+public class SimScenarioTest extends TestCase {
+	private TestSettings ts;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = ScenarioTestUtils.createSettings();
+		ts.putSetting(SimScenario.SCENARIO_NS + "." +
+				SimScenario.NROF_GROUPS_S, "2");
+		String gns = ScenarioTestUtils.GROUP_PREFIX;
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "100");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "PassiveRouter");
+		ts.putSetting(SimScenario.GROUP_NS + "2." + SimScenario.GROUP_ID_S,
+				"w");
+		ts.putSetting(SimScenario.GROUP_NS + "2." +
+				SimScenario.MOVEMENT_MODEL_S, "RandomWalk");
+		ts.putSetting("radio.transmitRange", "10");
+		ts.putSetting("MovementModel.worldSize", "500,400");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_PER_HOST_S, "true");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		new TestSettings();
+		super.tearDown();
+	}
+
+	public void testParallelHostCreation() {
+		List<String> serial = createHosts(1);
+		List<String> parallel = createHosts(4);
+
+		assertEquals(200, serial.size());
+		assertEquals(serial, parallel);
+	}
+
+	/**
+	 * Creates the hosts of the scenario with the given number of threads
+	 * @param nrofThreads Number of movement threads
+	 * @return Descriptions of the hosts (address, name, initial location and
+	 * the first path's time) in the order of the hosts
+	 */
+	private List<String> createHosts(int nrofThreads) {
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.MOVEMENT_THREADS_S, "" + nrofThreads);
+		DTNSim.createRunContext(0);
+		List<String> hosts = new ArrayList<String>();
+
+		for (DTNHost h : SimScenario.getInstance().getHosts()) {
+			hosts.add(h.getAddress() + " " + h + " " + h.getLocation() +
+					" " + h.getNextActivityTime());
+		}
+		return hosts;
+	}
+}
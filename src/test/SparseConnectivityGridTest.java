@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import static test.ConnectivityTestUtils.iface;
+import static test.ConnectivityTestUtils.pair;
+
+import java.util.Random;
+import java.util.Set;
+
+import interfaces.ConnectivityGrid;
+import interfaces.SparseConnectivityGrid;
+import junit.framework.TestCase;
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.World;
+
+/**
+ * Tests for the sparse connectivity grid
+ */
+public class SparseConnectivityGridTest extends TestCase {
+	private static final double RANGE = 10;
+	/* cell size is the range times the default multiplier (5) */
+	private static final double CELL_SIZE = 50;
+
+	private TestSettings ts;
+	private ConnectivityTestUtils utils;
+	private SparseConnectivityGrid grid;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				SparseConnectivityGrid.SPARSE_GRID_S, "true");
+		ts.putSetting("MovementModel.worldSize", "1000,1000");
+		DTNHost.reset();
+		ConnectivityGrid.reset();
+		SparseConnectivityGrid.reset();
+		utils = new ConnectivityTestUtils(ts);
+		grid = SparseConnectivityGrid.SparseConnectivityGridFactory(
+				TestUtils.IFACE_NS.hashCode(), RANGE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		new TestSettings();
+		ConnectivityGrid.reset();
+		SparseConnectivityGrid.reset();
+		super.tearDown();
+	}
+
+	public void testNegativeCoordinates() {
+		DTNHost h1 = utils.createHost(new Coord(-100, -100), RANGE);
+		DTNHost h2 = utils.createHost(new Coord(-95, -108), RANGE);
+		DTNHost h3 = utils.createHost(new Coord(1000000, -5000000), RANGE);
+		/* different cell */
+		DTNHost h4 = utils.createHost(new Coord(5, 5), RANGE);
+		DTNHost h5 = utils.createHost(new Coord(-3, 2), RANGE);
+		utils.update();
+
+		assertEquals(5, grid.getNrofCells());
+		assertTrue(isConnected(h1, h2));
+		assertFalse(isConnected(h1, h3));
+		assertEquals(0, h3.getConnections().size());
+		assertTrue(isConnected(h4, h5));
+	}
+
+	public void testCellsReleased() {
+		DTNHost h1 = utils.createHost(new Coord(0, 0), RANGE);
+		utils.createHost(new Coord(1, 1), RANGE);
+		assertEquals(1, grid.getNrofCells());
+
+		for (int i=1; i <= 100; i++) {
+			h1.setLocation(new Coord(-i * CELL_SIZE, i * CELL_SIZE));
+			utils.update();
+			assertEquals(2, grid.getNrofCells());
+		}
+		h1.setLocation(new Coord(2, 2));
+		utils.update();
+		assertEquals(1, grid.getNrofCells());
+	}
+
+	public void testSameAsDenseGrid() {
+		Random rng = new Random(1);
+		for (int i=0; i < 500; i++) {
+			utils.createHost(new Coord(rng.nextDouble() * 1000,
+					rng.nextDouble() * 1000), RANGE);
+		}
+		utils.update(); /* interfaces are added to the grid at (0,0) */
+		ConnectivityGrid dense = ConnectivityGrid.ConnectivityGridFactory(
+				0, RANGE);
+		for (DTNHost h : utils.getHosts()) {
+			dense.addInterface(iface(h));
+		}
+
+		Set<String> pairs = ConnectivityTestUtils.getNearPairs(grid);
+		int nrofPairs = 0;
+		for (DTNHost h : utils.getHosts()) {
+			NetworkInterface ni = iface(h);
+			assertEquals(dense.getNearInterfaces(ni),
+					grid.getNearInterfaces(ni));
+			for (NetworkInterface other : grid.getNearInterfaces(ni)) {
+				if (other != ni) {
+					assertTrue(pairs.contains(pair(ni, other)));
+					nrofPairs++;
+				}
+			}
+		}
+		assertEquals(nrofPairs, pairs.size() * 2);
+		utils.assertPairsInRange(pairs);
+	}
+
+	private boolean isConnected(DTNHost h1, DTNHost h2) {
+		for (Connection c : h1.getConnections()) {
+			if (c.getOtherNode(h1) == h2) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -20,9 +20,12 @@ import core.SimClock;
  * easily read from test cases.
  */
 public class TestDTNHost extends DTNHost {
+	private static final long serialVersionUID = 1L;
 	public double lastUpdate = 0;
 	public int nrofConnect = 0;
 	public int nrofUpdate = 0;
+	/** the value returned by {@link #getNextActivityTime()} */
+	public double nextActivityTime = 0;
 	public Message recvMessage;
 	public DTNHost recvFrom;
 	public String abortedId;
@@ -53,6 +56,11 @@ public class TestDTNHost extends DTNHost {
 		this.lastUpdate = SimClock.getTime();
 	}
 
+	@Override
+	public double getNextActivityTime() {
+		return this.nextActivityTime;
+	}
+
 	@Override
 	public int receiveMessage(Message m, DTNHost from) {
 		this.recvMessage = m;
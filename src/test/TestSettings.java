@@ -43,7 +43,7 @@ public class TestSettings extends core.Settings {
 	}
 
 	public static void init(String propFile) throws SettingsError {
-		props = new Properties();
+		setProps(new Properties());
 	}
 
 	/**
@@ -59,7 +59,7 @@ public class TestSettings extends core.Settings {
 			nameSpace += ".";
 		}
 
-		if (props == null) {
+		if (getProps() == null) {
 			try {
 				init(null);
 			} catch (SettingsError e) {
@@ -68,7 +68,7 @@ public class TestSettings extends core.Settings {
 			}
 		}
 
-		props.put(nameSpace + key, value);
+		putProperty(nameSpace + key, value);
 	}
 
 }
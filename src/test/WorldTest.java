@@ -5,15 +5,39 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityNeighbourLists;
+import interfaces.SimpleBroadcastInterface;
 import junit.framework.TestCase;
+import movement.MapBasedMovement;
+import movement.MovementModel;
+import movement.OfficeActivityMovement;
+import movement.RandomWaypoint;
+import movement.map.MapNode;
+import report.ContactTimesReport;
+import report.EventLogReport;
+import report.MessageStatsReport;
+import report.Report;
+import routing.PassiveRouter;
+import core.ConnectionListener;
+import core.Coord;
 import core.DTNHost;
+import core.DTNSim;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
+import core.Settings;
 import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
 import core.UpdateListener;
 import core.World;
 
@@ -101,6 +125,490 @@ public class WorldTest extends TestCase {
 
 	}
 
+	public void testEventDrivenUpdates() {
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(World.EVENT_DRIVEN_S, "true");
+		TestScenario scen = new TestScenario();
+		world = new World(scen.getHosts(), scen.getWorldSizeX(),
+				scen.getWorldSizeY(), scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents());
+
+		for (TestDTNHost h : testHosts) {
+			h.nextActivityTime = 10.05;
+		}
+
+		world.update(); /* the first update is never skipped */
+		assertEquals(0.1, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(1);
+
+		/* all the idle intervals before the activity are skipped */
+		world.update();
+		assertEquals(10.0, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(2);
+
+		/* when the activity is due, hosts are updated every interval */
+		for (TestDTNHost h : testHosts) {
+			h.nextActivityTime = 0;
+		}
+		world.update();
+		assertEquals(10.1, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(3);
+	}
+
+	public void testEventDrivenScenario() throws IOException {
+		try {
+			List<String> fixed = new ArrayList<String>();
+			int fixedUpdates = runReportedScenario(false, fixed);
+			List<String> eventDriven = new ArrayList<String>();
+			int eventDrivenUpdates = runReportedScenario(true, eventDriven);
+
+			assertFalse("No messages were delivered",
+					fixed.get(0).contains("\ndelivered: 0\n"));
+			assertEquals(fixed, eventDriven);
+			assertTrue(eventDrivenUpdates < fixedUpdates / 2);
+		} finally {
+			SimContext.setCurrent(null);
+			new TestSettings();
+		}
+	}
+
+	/**
+	 * Runs a scenario of mostly waiting epidemic routing hosts with message,
+	 * connection and event log reports
+	 * @param eventDriven Are the idle intervals skipped
+	 * @param reports The list where the contents of the reports are added
+	 * @return The number of world updates run
+	 * @throws IOException If the reports can't be read
+	 */
+	private int runReportedScenario(boolean eventDriven,
+			List<String> reports) throws IOException {
+		TestSettings ts = ScenarioTestUtils.createSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.EVENT_DRIVEN_S, "" + eventDriven);
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.END_TIME_S,
+				"5000");
+		String gns = ScenarioTestUtils.GROUP_PREFIX;
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "5");
+		ts.putSetting(gns + "speed", "5,10");
+		ts.putSetting(gns + "waitTime", "600,1200");
+		ts.putSetting("radio.transmitSpeed", "100k");
+		ScenarioTestUtils.addMessageGenerator(ts, "100,200", "0,5");
+
+		List<Report> reporters = new ArrayList<Report>();
+		List<File> files = new ArrayList<File>();
+		for (String name : new String[] {"MessageStatsReport",
+				"ContactTimesReport", "EventLogReport"}) {
+			File f = File.createTempFile(name, ".txt");
+			f.deleteOnExit();
+			ts.putSetting(name + "." + Report.OUTPUT_SETTING, f.getPath());
+			files.add(f);
+		}
+
+		DTNSim.createRunContext(0);
+		SimScenario scen = SimScenario.getInstance();
+		MessageStatsReport msr = new MessageStatsReport();
+		scen.addMessageListener(msr);
+		reporters.add(msr);
+		ContactTimesReport ctr = new ContactTimesReport();
+		scen.addConnectionListener(ctr);
+		reporters.add(ctr);
+		EventLogReport elr = new EventLogReport();
+		scen.addMessageListener(elr);
+		scen.addConnectionListener(elr);
+		reporters.add(elr);
+
+		World w = scen.getWorld();
+		int nrofUpdates = 0;
+		while (SimClock.getTime() < scen.getEndTime()) {
+			w.update();
+			nrofUpdates++;
+		}
+
+		for (int i=0; i < reporters.size(); i++) {
+			reporters.get(i).done();
+			reports.add(readFile(files.get(i)));
+		}
+		return nrofUpdates;
+	}
+
+	/**
+	 * Returns the lines of a file
+	 */
+	private String readFile(File f) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		StringBuilder contents = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			contents.append(line).append('\n');
+		}
+		reader.close();
+		return contents.toString();
+	}
+
+	public void testSkipIdleHosts() {
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(World.SKIP_IDLE_HOSTS_S, "true");
+		TestScenario scen = new TestScenario();
+		world = new World(scen.getHosts(), scen.getWorldSizeX(),
+				scen.getWorldSizeY(), scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents());
+
+		for (int i=0; i<5; i++) {
+			testHosts.get(i).nextActivityTime = Double.MAX_VALUE;
+		}
+
+		world.update(); /* all hosts are updated on the first update */
+		assertNrofUpdates(1);
+
+		world.update();
+		for (int i=0; i<testHosts.size(); i++) {
+			assertEquals(i < 5 ? 1 : 2, testHosts.get(i).nrofUpdate);
+		}
+
+		/* an idle host is updated again when it has something to do */
+		testHosts.get(0).nextActivityTime = 0;
+		world.update();
+		assertEquals(2, testHosts.get(0).nrofUpdate);
+		assertEquals(1, testHosts.get(1).nrofUpdate);
+	}
+
+	public void testBatchedEvents() throws Exception {
+		DTNHost.reset();
+		setUp(); /* host addresses must match the indexes of the hosts */
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(World.BATCH_EVENTS_S, "true");
+		ts.putSetting(World.EVENT_BATCH_EPSILON_S, "0.02");
+
+		final List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new TestEvent(0.03, 1));
+		events.add(new TestEvent(0.04, 2));
+		events.add(new TestEvent(0.06, 1));
+		events.add(new TestEvent(0.15, 1, 2, 3));
+		events.add(new ExternalEvent(0.15)); /* concerns all hosts */
+		eQueues.add(new EventQueue() {
+			public ExternalEvent nextEvent() {
+				return events.remove(0);
+			}
+			public double nextEventsTime() {
+				return events.isEmpty() ? Double.MAX_VALUE :
+					events.get(0).getTime();
+			}
+		});
+		TestScenario scen = new TestScenario();
+		world = new World(scen.getHosts(), scen.getWorldSizeX(),
+				scen.getWorldSizeY(), scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents());
+
+		/* two batches (0.03-0.04 and 0.06) and the interval's update */
+		world.update();
+		assertEquals(1, testHosts.get(0).nrofUpdate);
+		assertEquals(3, testHosts.get(1).nrofUpdate);
+		assertEquals(2, testHosts.get(2).nrofUpdate);
+		assertEquals(1, testHosts.get(3).nrofUpdate);
+
+		/* the dummy event in the batch causes an update of all hosts */
+		world.update();
+		assertEquals(3, testHosts.get(0).nrofUpdate);
+		assertEquals(5, testHosts.get(1).nrofUpdate);
+		assertEquals(4, testHosts.get(2).nrofUpdate);
+		assertEquals(3, testHosts.get(3).nrofUpdate);
+	}
+
+	/** Event that concerns the given hosts but does nothing */
+	@SuppressWarnings("serial")
+	private static class TestEvent extends ExternalEvent {
+		private int[] addresses;
+
+		public TestEvent(double time, int... addresses) {
+			super(time);
+			this.addresses = addresses;
+		}
+
+		@Override
+		public int[] getHostAddresses() {
+			return this.addresses;
+		}
+	}
+
+	public void testParallelMovement() {
+		try {
+			List<Coord> serial = moveHosts(false, 1);
+			List<Coord> parallel = moveHosts(false, 4);
+			assertEquals(serial, parallel);
+		} finally {
+			new TestSettings();
+			MovementModel.reset();
+		}
+	}
+
+	public void testParallelMapBasedMovement() {
+		/* office hosts find their paths and draw their wait times at the
+		 * same time */
+		try {
+			List<Coord> serial = moveHosts(true, 1);
+			List<Coord> parallel = moveHosts(true, 4);
+			assertEquals(serial, parallel);
+		} finally {
+			new TestSettings();
+			MovementModel.reset();
+		}
+	}
+
+	/**
+	 * Moves random waypoint or office activity hosts (with per host rng
+	 * streams) for a while using the given number of movement threads
+	 * @param office If true, {@link OfficeMovement} hosts are moved on the
+	 * default map; if false, random waypoint hosts
+	 * @param nrofThreads Number of movement threads
+	 * @return The final locations of the hosts
+	 */
+	private List<Coord> moveHosts(boolean office, int nrofThreads) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_PER_HOST_S, "true");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.MOVEMENT_THREADS_S, "" + nrofThreads);
+		SimClock.reset();
+		MovementModel.reset();
+
+		MovementModel proto;
+		if (office) {
+			String ns = MapBasedMovement.MAP_BASE_MOVEMENT_NS + ".";
+			String[] maps = {"roads", "main_roads", "pedestrian_paths",
+					"shops"};
+			ts.putSetting(ns + MapBasedMovement.NROF_FILES_S,
+					"" + maps.length);
+			for (int i=0; i < maps.length; i++) {
+				ts.putSetting(ns + MapBasedMovement.FILE_S + (i + 1),
+						"data/" + maps[i] + ".wkt");
+			}
+			ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+					MovementModel.WORLD_SIZE, "4500,3400");
+			ts.putSetting(MovementModel.SPEED, "10,10");
+			ts.putSetting(OfficeActivityMovement.WORK_DAY_LENGTH_SETTING,
+					"28800");
+			ts.putSetting(OfficeActivityMovement.NR_OF_OFFICES_SETTING, "5");
+			ts.putSetting(OfficeActivityMovement.OFFICE_SIZE_SETTING, "100");
+			ts.putSetting(OfficeActivityMovement.
+					OFFICE_WAIT_TIME_PARETO_COEFF_SETTING, "0.5");
+			ts.putSetting(OfficeActivityMovement.OFFICE_MIN_WAIT_TIME_SETTING,
+					"10");
+			ts.putSetting(OfficeActivityMovement.OFFICE_MAX_WAIT_TIME_SETTING,
+					"100");
+			proto = new OfficeMovement(ts);
+		}
+		else {
+			proto = new RandomWaypoint(ts);
+		}
+		TestUtils utils = new TestUtils(null, null, ts);
+		for (int i=0; i<100; i++) {
+			utils.createHost(proto, null);
+		}
+
+		World w = new World(utils.getAllHosts(), worldSizeX, worldSizeY,
+				1, new ArrayList<UpdateListener>(), false, eQueues);
+		for (int i=0; i < (office ? 2000 : 500); i++) {
+			w.update();
+		}
+
+		List<Coord> locations = new ArrayList<Coord>();
+		for (DTNHost h : utils.getAllHosts()) {
+			locations.add(h.getLocation().clone());
+		}
+		return locations;
+	}
+
+	public void testTwoPhaseConnectivity() {
+		/* one thread examines the pairs of near interfaces once per grid,
+		 * more threads from both ends of the pair */
+		try {
+			List<String> serial = connectRandomWaypointHosts(1);
+			List<String> parallel = connectRandomWaypointHosts(4);
+			assertTrue(serial.size() > 0);
+			assertEquals(serial, parallel);
+		} finally {
+			new TestSettings();
+			MovementModel.reset();
+			ConnectivityGrid.reset();
+		}
+	}
+
+	/**
+	 * Moves random waypoint hosts with simple broadcast interfaces for a
+	 * while using two-phase connectivity updates
+	 * @param nrofThreads Number of connectivity threads
+	 * @return The connection events in the order they happened
+	 */
+	private List<String> connectRandomWaypointHosts(int nrofThreads) {
+		final List<String> events = new ArrayList<String>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add(SimClock.getTime() + " up " + host1 + " " + host2);
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add(SimClock.getTime() + " down " + host1 + " " +
+						host2);
+			}
+		});
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.CONNECTIVITY_THREADS_S, "" + nrofThreads);
+		SimClock.reset();
+		DTNHost.reset();
+		MovementModel.reset();
+		ConnectivityGrid.reset();
+
+		MovementModel proto = new RandomWaypoint(ts);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "50");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		NetworkInterface ni = new SimpleBroadcastInterface(ts);
+		ni.setClisteners(cl);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+		PassiveRouter router = new PassiveRouter(ts);
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<100; i++) {
+			hosts.add(new DTNHost(null, null, "n", li,
+					new ModuleCommunicationBus(), proto, router));
+		}
+
+		World w = new World(hosts, worldSizeX, worldSizeY, 1,
+				new ArrayList<UpdateListener>(), true, eQueues);
+		for (int i=0; i<500; i++) {
+			w.update();
+		}
+
+		return events;
+	}
+
+	public void testAdaptiveUpdateInterval() {
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(World.MAX_UPDATE_INTERVAL_S, "1");
+		TestScenario scen = new TestScenario();
+		world = new World(scen.getHosts(), scen.getWorldSizeX(),
+				scen.getWorldSizeY(), scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents());
+		world.scheduleUpdate(2.55);
+
+		world.update(); /* the first interval is never adapted */
+		assertEquals(0.1, SimClock.getTime(), TIME_DELTA);
+
+		/* nothing moves or happens: the interval grows to the maximum */
+		world.update();
+		assertEquals(1.1, SimClock.getTime(), TIME_DELTA);
+		world.update();
+		assertEquals(2.1, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(3);
+
+		/* the interval ends on the interval of the scheduled update */
+		world.update();
+		assertEquals(2.6, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(5);
+		world.update();
+		assertEquals(3.6, SimClock.getTime(), TIME_DELTA);
+	}
+
+	public void testAdaptiveIntervalContactTimes() {
+		try {
+			List<String> fixed = new ArrayList<String>();
+			int fixedUpdates = runPassBy(0, false, fixed);
+			List<String> adaptive = new ArrayList<String>();
+			int adaptiveUpdates = runPassBy(5, false, adaptive);
+
+			assertEquals(2, fixed.size());
+			assertEquals(fixed, adaptive);
+			assertTrue(adaptiveUpdates < fixedUpdates / 2);
+		} finally {
+			new TestSettings();
+			ConnectivityGrid.reset();
+		}
+	}
+
+	public void testAdaptiveIntervalNeighbourLists() {
+		try {
+			List<String> fixed = new ArrayList<String>();
+			int fixedUpdates = runPassBy(0, true, fixed);
+			List<String> adaptive = new ArrayList<String>();
+			int adaptiveUpdates = runPassBy(5, true, adaptive);
+
+			assertEquals(2, fixed.size());
+			assertEquals(fixed, adaptive);
+			assertTrue(adaptiveUpdates < fixedUpdates / 2);
+		} finally {
+			new TestSettings();
+			ConnectivityNeighbourLists.reset();
+		}
+	}
+
+	/**
+	 * Runs a scenario where a host passes by a stationary host and records
+	 * the connection events
+	 * @param maxInterval Maximum adaptive update interval (0 = fixed)
+	 * @param neighbourLists If true, the neighbour lists are used instead of
+	 * the connectivity grid
+	 * @param events The list where the connection events are added
+	 * @return The number of update intervals run
+	 */
+	private int runPassBy(double maxInterval, boolean neighbourLists,
+			final List<String> events) {
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add(String.format("%.1f up", SimClock.getTime()));
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add(String.format("%.1f down", SimClock.getTime()));
+			}
+		});
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.MAX_UPDATE_INTERVAL_S, "" + maxInterval);
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ConnectivityNeighbourLists.NEIGHBOUR_LISTS_S, "" + neighbourLists);
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ConnectivityNeighbourLists.SKIN_S, "40");
+		ts.putSetting("MovementModel.worldSize", "500,500");
+		SimClock.reset();
+		DTNHost.reset();
+		ConnectivityGrid.reset();
+		ConnectivityNeighbourLists.reset();
+
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "30");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		NetworkInterface ni = new SimpleBroadcastInterface(ts);
+		ni.setClisteners(cl);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+		PassiveRouter router = new PassiveRouter(ts);
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(new DTNHost(null, null, "s", li,
+				new ModuleCommunicationBus(),
+				new StationaryMovement(new Coord(250, 250)), router));
+		hosts.add(new DTNHost(null, null, "m", li,
+				new ModuleCommunicationBus(), new LineMovement(10,
+						new Coord(452.5, 250), new Coord(50, 250)), router));
+
+		World w = new World(hosts, 500, 500, 0.1,
+				new ArrayList<UpdateListener>(), true, eQueues);
+		int nrofUpdates = 0;
+		while (SimClock.getTime() < 60) {
+			w.update();
+			nrofUpdates++;
+		}
+
+		return nrofUpdates;
+	}
 
 	/** Dummy scenario for providing test values for the World */
 	@SuppressWarnings("serial")
@@ -146,4 +654,32 @@ public class WorldTest extends TestCase {
 			this.hosts = new ArrayList<DTNHost>();
 		}
 	}
+
+	/**
+	 * Office activity movement that starts from a random map node, like
+	 * it does as a part of the working day movement
+	 */
+	@SuppressWarnings("serial")
+	private static class OfficeMovement extends OfficeActivityMovement {
+		public OfficeMovement(Settings settings) {
+			super(settings);
+		}
+
+		public OfficeMovement(OfficeMovement proto) {
+			super(proto);
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			List<MapNode> nodes = getMap().getNodes();
+			Coord c = nodes.get(rng.nextInt(nodes.size())).getLocation();
+			setLocation(c);
+			return c.clone();
+		}
+
+		@Override
+		public MapBasedMovement replicate() {
+			return new OfficeMovement(this);
+		}
+	}
 }
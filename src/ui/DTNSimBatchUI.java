@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package ui;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DTNSim;
+
+/**
+ * Text user interface for running batch runs in parallel. The runs are
+ * spread across worker processes (child JVMs started with
+ * {@link DTNSim#BATCH_WORKER_FLAG}). Every worker gets a new run index
+ * through its standard input whenever it has finished the previous run.
+ * The output of the workers is shown in a combined console view where
+ * every line is prefixed with the number of the run it belongs to.
+ * Finally, the wall clock time of every run and of the whole batch is
+ * reported.
+ */
+public class DTNSimBatchUI {
+	private final int nrofWorkers;
+	private final int firstRun;
+	private final int lastRun;
+	private final List<String> confFiles;
+
+	/** index of the next run to give to a worker */
+	private int nextRun;
+	/** number of finished runs */
+	private int nrofDone;
+	/** wall clock durations (seconds) of the runs; NaN if not (yet) done */
+	private final double[] durations;
+
+	/**
+	 * Constructor.
+	 * @param nrofWorkers Number of parallel worker processes
+	 * @param firstRun Index of the first run
+	 * @param lastRun Index after the last run
+	 * @param confFiles Settings files given to the workers
+	 */
+	public DTNSimBatchUI(int nrofWorkers, int firstRun, int lastRun,
+			List<String> confFiles) {
+		this.nrofWorkers = Math.min(nrofWorkers, lastRun - firstRun);
+		this.firstRun = firstRun;
+		this.lastRun = lastRun;
+		this.confFiles = confFiles;
+		this.nextRun = firstRun;
+		this.durations = new double[lastRun - firstRun];
+		for (int i = 0; i < durations.length; i++) {
+			durations[i] = Double.NaN;
+		}
+	}
+
+	/**
+	 * Runs all the runs and waits until the workers are done
+	 * @return True if all runs finished normally, false if not
+	 */
+	public boolean start() {
+		long startTime = System.currentTimeMillis();
+		List<Thread> workers = new ArrayList<Thread>();
+
+		print("Running runs " + (firstRun + 1) + "-" + lastRun + " using " +
+				nrofWorkers + " workers");
+
+		for (int i = 0; i < nrofWorkers; i++) {
+			final Process p;
+			try {
+				p = startWorker();
+			} catch (IOException e) {
+				print("Failed to start worker: " + e);
+				break;
+			}
+			Thread t = new Thread("batch worker " + (i + 1)) {
+				@Override
+				public void run() {
+					handleWorker(p);
+				}
+			};
+			t.start();
+			workers.add(t);
+		}
+
+		for (Thread t : workers) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		double duration = (System.currentTimeMillis() - startTime)/1000.0;
+		return printSummary(duration);
+	}
+
+	/**
+	 * Starts a new worker process
+	 * @return The worker process
+	 * @throws IOException If the process couldn't be started
+	 */
+	private Process startWorker() throws IOException {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(System.getProperty("java.home") + File.separator + "bin" +
+				File.separator + "java");
+		cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(DTNSim.class.getName());
+		cmd.add(DTNSim.BATCH_WORKER_FLAG);
+		cmd.addAll(confFiles);
+
+		ProcessBuilder pb = new ProcessBuilder(cmd);
+		pb.redirectErrorStream(true);
+		return pb.start();
+	}
+
+	/**
+	 * Feeds run indexes to a worker and shows its output until there are
+	 * no runs left or the worker exits
+	 * @param p The worker process
+	 */
+	private void handleWorker(Process p) {
+		PrintWriter toWorker = new PrintWriter(p.getOutputStream(), true);
+		BufferedReader fromWorker = new BufferedReader(
+				new InputStreamReader(p.getInputStream()));
+		int run = takeNextRun();
+
+		try {
+			if (run >= 0) {
+				toWorker.println(run);
+			}
+			else {
+				toWorker.close();
+			}
+
+			String line;
+			while ((line = fromWorker.readLine()) != null) {
+				if (!line.startsWith(DTNSim.RUN_DONE_MARKER)) {
+					print("[run " + (run + 1) + "] " + line);
+					continue;
+				}
+
+				runDone(run, Double.parseDouble(line.substring(
+						DTNSim.RUN_DONE_MARKER.length()).trim()));
+				run = takeNextRun();
+				if (run >= 0) {
+					toWorker.println(run);
+				}
+				else {
+					toWorker.close(); // no more runs; worker exits
+				}
+			}
+		} catch (IOException e) {
+			print("[run " + (run + 1) + "] Lost connection to worker: " + e);
+		}
+
+		try {
+			p.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (run >= 0) {
+			print("[run " + (run + 1) + "] Worker exited before the run " +
+					"was done (exit value " + p.exitValue() + ")");
+		}
+	}
+
+	/**
+	 * Returns the index of the next run to give to a worker
+	 * @return The run index or -1 if there are no runs left
+	 */
+	private synchronized int takeNextRun() {
+		if (nextRun >= lastRun) {
+			return -1;
+		}
+		return nextRun++;
+	}
+
+	/**
+	 * Records a finished run
+	 * @param run Index of the run
+	 * @param duration Wall clock duration of the run (seconds)
+	 */
+	private synchronized void runDone(int run, double duration) {
+		durations[run - firstRun] = duration;
+		nrofDone++;
+		print("Run " + (run + 1) + " done in " +
+				String.format("%.2f", duration) + "s (" + nrofDone + "/" +
+				durations.length + ")");
+	}
+
+	/**
+	 * Prints the wall clock time of every run and the whole batch
+	 * @param duration Wall clock duration of the whole batch (seconds)
+	 * @return True if all runs were done
+	 */
+	private synchronized boolean printSummary(double duration) {
+		double sum = 0;
+		List<Integer> failed = new ArrayList<Integer>();
+
+		print("---");
+		for (int i = 0; i < durations.length; i++) {
+			if (Double.isNaN(durations[i])) {
+				failed.add(firstRun + i + 1);
+				continue;
+			}
+			sum += durations[i];
+			print("Run " + (firstRun + i + 1) + ": " +
+					String.format("%.2f", durations[i]) + "s");
+		}
+		if (failed.size() > 0) {
+			print("Runs not done: " + failed);
+		}
+		print("Sum of run times " + String.format("%.2f", sum) + "s");
+
+		return failed.size() == 0;
+	}
+
+	private synchronized void print(String txt) {
+		System.out.println(txt);
+	}
+}
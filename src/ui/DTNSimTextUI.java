@@ -27,6 +27,7 @@ public class DTNSimTextUI extends DTNSimUI {
 		while (simTime < endTime && !simCancelled){
 			try {
 				world.update();
+				checkpointIfDue();
 			} catch (AssertionError e) {
 				e.printStackTrace();
 				done();
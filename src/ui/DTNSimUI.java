@@ -9,10 +9,12 @@ import java.util.Vector;
 import report.Report;
 import core.ApplicationListener;
 import core.ConnectionListener;
+import core.DTNHost;
 import core.MessageListener;
 import core.MovementListener;
 import core.Settings;
 import core.SettingsError;
+import core.SimCheckpoint;
 import core.SimClock;
 import core.SimError;
 import core.SimScenario;
@@ -58,6 +60,10 @@ public abstract class DTNSimUI {
 	protected SimScenario scen;
 	/** simtime of last UI update */
 	protected double lastUpdate;
+	/** file where a checkpoint is written (null if none or already done) */
+	private String checkpointFile;
+	/** simtime after which the checkpoint is written */
+	private double checkpointTime;
 
 	/**
 	 * Constructor.
@@ -90,10 +96,18 @@ public abstract class DTNSimUI {
 
 		try {
 			settings = new Settings();
-			
+			Settings cpSettings = new Settings(SimCheckpoint.CHECKPOINT_NS);
+
 			// set time before instantiate scenario
 			double warmupTime = 0;
-			if (settings.contains(MM_WARMUP_S)) {
+			boolean restored = false;
+			if (cpSettings.contains(SimCheckpoint.RESTORE_FILE_S)) {
+				// restored run continues from the checkpoint, no warmup
+				SimCheckpoint.restore(cpSettings.getSetting(
+						SimCheckpoint.RESTORE_FILE_S));
+				restored = true;
+			}
+			else if (settings.contains(MM_WARMUP_S)) {
 				warmupTime = settings.getDouble(MM_WARMUP_S);
 				if (warmupTime > 0) {
 					SimClock c = SimClock.getInstance();
@@ -102,6 +116,10 @@ public abstract class DTNSimUI {
 			}
 			
 			this.scen = SimScenario.getInstance();
+			if (restored && cpSettings.getBoolean(
+					SimCheckpoint.NEW_ROUTERS_S, false)) {
+				scen.replaceRouters();
+			}
 
 			// add reports
 			for (int i=1, n = settings.getInt(NROF_REPORT_S); i<=n; i++){
@@ -110,8 +128,24 @@ public abstract class DTNSimUI {
 						reportClass));
 			}
 
+			if (restored) {
+				// reports didn't see the events of the checkpointed messages
+				for (DTNHost host : scen.getHosts()) {
+					for (Report r : reports) {
+						r.addWarmupMessages(host.getMessageCollection());
+					}
+				}
+			}
+
 			this.world = this.scen.getWorld();
 			world.warmupMovementModel(warmupTime);
+
+			if (cpSettings.contains(SimCheckpoint.SAVE_FILE_S)) {
+				checkpointFile = cpSettings.getSetting(
+						SimCheckpoint.SAVE_FILE_S);
+				checkpointTime = cpSettings.getDouble(
+						SimCheckpoint.SAVE_TIME_S);
+			}
 		}
 		catch (SettingsError se) {
 			System.err.println("Can't start: error in configuration file(s)");
@@ -125,6 +159,18 @@ public abstract class DTNSimUI {
 		}
 	}
 
+	/**
+	 * Writes the checkpoint if one was requested and the simulation has
+	 * reached the checkpoint time. Should be called after every world
+	 * update.
+	 */
+	protected void checkpointIfDue() {
+		if (checkpointFile != null && SimClock.getTime() >= checkpointTime) {
+			SimCheckpoint.save(checkpointFile);
+			checkpointFile = null;
+		}
+	}
+
 	/**
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
@@ -132,6 +178,7 @@ public abstract class DTNSimUI {
 		for (Report r : this.reports) {
 			r.done();
 		}
+		scen.simulationDone();
 	}
 
 	/**
@@ -4,6 +4,7 @@
  */
 package util;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -15,7 +16,8 @@ import core.SimClock;
  * Object of this class tell the models when a node belonging
  * to a certain group is active and when not.
  */
-public class ActivenessHandler {
+public class ActivenessHandler implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * <P>Active times -setting id ({@value})</P>
@@ -132,12 +134,22 @@ public class ActivenessHandler {
 			}
 		}
 
+		return isInActiveTimes(SimClock.getTime() + offset);
+	}
+
+	/**
+	 * Returns true if the given time is within the current active time range.
+	 * Moves on to the next range if the current one has ended. Synchronized
+	 * because the same handler is shared by all hosts of a group and they
+	 * may be moved in parallel.
+	 * @param time The time to check
+	 * @return true if the time is in the active range
+	 */
+	private synchronized boolean isInActiveTimes(double time) {
 		if (curRange == null) {
 			return false; // out of active times
 		}
 
-		double time = SimClock.getTime() + offset;
-
 		if (this.curRange.isOut(time)) { // time for the next time range
 			this.curRange = activeTimes.poll();
 			if (curRange == null) {
@@ -148,6 +160,53 @@ public class ActivenessHandler {
 		return curRange.isInRange(time);
 	}
 
+	/**
+	 * Returns the next simulation time when the result of
+	 * {@link #isActive(int)} may change. The returned time can be earlier
+	 * than the actual change but never later.
+	 * @param offset The offset (as given for {@link #isActive(int)})
+	 * @return The time of the next possible change, or Double.MAX_VALUE if
+	 * the activeness never changes anymore
+	 */
+	public double getNextChangeTime(int offset) {
+		double now = SimClock.getTime();
+
+		if (this.activeTimes == null) {
+			if (this.activePeriods == null) {
+				return Double.MAX_VALUE; // always active
+			}
+
+			int time = SimClock.getIntTime() + this.activePeriodsOffset + offset;
+			if (time < 0) {
+				return now;
+			}
+			int cycle = this.activePeriods[0] + this.activePeriods[1];
+			int timeIndex = time % cycle;
+			int untilChange;
+			if (timeIndex <= this.activePeriods[0]) {
+				untilChange = this.activePeriods[0] + 1 - timeIndex;
+			} else {
+				untilChange = cycle - timeIndex;
+			}
+			/* integer time is rounded -> change can happen 0.5s earlier */
+			return SimClock.getIntTime() + untilChange - 0.5;
+		}
+
+		if (curRange == null) {
+			return Double.MAX_VALUE; // out of active times
+		}
+
+		double time = now + offset;
+		if (time < curRange.start) {
+			return curRange.start - offset;
+		}
+		if (!curRange.isOut(time)) {
+			return curRange.end - offset;
+		}
+
+		return now; // next range is taken into use on the next check
+	}
+
 	/**
 	 * Class for handling time ranges
 	 */
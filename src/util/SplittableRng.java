@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Random;
+
+/**
+ * A {@link Random} whose values are drawn from a SplitMix64 generator (the
+ * algorithm of {@link java.util.SplittableRandom}, which gives the same
+ * values for the same seed). New, statistically independent generators can
+ * be split from an existing one, so every user of random numbers (e.g.
+ * every host) can have its own stream whose values don't depend on the
+ * order in which the streams are used. Unlike
+ * {@link java.util.SplittableRandom}, the generator is serializable so its
+ * state can be stored in simulation checkpoints. The generator is not
+ * thread safe; each stream should be used by only one thread at a time.
+ */
+public class SplittableRng extends Random {
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/** current seed; advanced by gamma on every step */
+	private long seed;
+	/** step value (odd) of this stream */
+	private final long gamma;
+
+	/**
+	 * Creates a new generator with the given seed
+	 * @param seed The seed
+	 */
+	public SplittableRng(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private SplittableRng(long seed, long gamma) {
+		super(0);
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Splits a new generator from this one. The new generator's values
+	 * are independent of the values this generator returns after the split.
+	 * @return A new generator
+	 */
+	public SplittableRng split() {
+		return new SplittableRng(nextLong(), mixGamma(nextSeed()));
+	}
+
+	private long nextSeed() {
+		return seed += gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int)(nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) { // power of two
+			r &= m;
+		}
+		else { // reject over-represented candidates
+			for (int u = r >>> 1; u + m - (r = u % bound) < 0;
+					u = mix32(nextSeed()) >>> 1);
+		}
+		return r;
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+}